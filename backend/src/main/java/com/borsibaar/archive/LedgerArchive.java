@@ -0,0 +1,263 @@
+package com.borsibaar.archive;
+
+import com.borsibaar.archive.LedgerArchiveFile.Column;
+import com.borsibaar.repository.LedgerRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Ledger rows moved out of {@code inventory_transactions} by
+ * {@link com.borsibaar.jobs.LedgerArchiveJob}, one {@link LedgerArchiveFile}
+ * per organization and UTC month under {@code app.ledger-archive.directory}
+ * (e.g. {@code 12/2025-06.ledger}). Files are replaced atomically, never
+ * changed in place.
+ * <p>
+ * The files are local to this node. With several backend nodes the directory
+ * must be shared between them, or the archived history is only seen by the
+ * node that wrote it.
+ */
+@Component
+public class LedgerArchive {
+
+    private static final DateTimeFormatter FILE_MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String EXTENSION = ".ledger";
+
+    private final Path directory;
+
+    @Autowired
+    public LedgerArchive(@Value("${app.ledger-archive.directory:ledger-archive}") String directory) {
+        this(Path.of(directory));
+    }
+
+    LedgerArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Stores the organization's rows of the month, together with those an
+     * earlier call stored for it. The file is on disk when this returns.
+     */
+    public void write(Long organizationId, YearMonth month, List<LedgerRow> rows) {
+        Path file = file(organizationId, month);
+        try {
+            Files.createDirectories(file.getParent());
+            List<LedgerRow> merged = new ArrayList<>(rows);
+            if (Files.exists(file)) {
+                // Left by a run whose deletion from the table did not commit, so its rows may come again
+                Set<Long> ids = new HashSet<>();
+                rows.forEach(row -> ids.add(row.id()));
+                LedgerArchiveFile existing = LedgerArchiveFile.open(file);
+                for (int i = 0; i < existing.size(); i++) {
+                    if (!ids.contains(existing.column(Column.ID)[i])) {
+                        merged.add(existing.row(i));
+                    }
+                }
+            }
+            Path temp = Files.createTempFile(file.getParent(), month.format(FILE_MONTH), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer contents = ByteBuffer.wrap(LedgerArchiveFile.encode(merged));
+                while (contents.hasRemaining()) {
+                    channel.write(contents);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive ledger of organization " + organizationId
+                    + " for " + month, e);
+        }
+    }
+
+    /**
+     * Archived rows of one inventory, newest first, in the order and with the
+     * filters of {@code InventoryTransactionRepository.findHistoryPage}: of
+     * {@code type} and within {@code [from, to)} unless {@code null}, and
+     * after the cursor {@code (afterCreatedAt, afterId)} if given. Only the
+     * files of months the bounds reach are read.
+     */
+    public List<LedgerRow> findHistory(Long organizationId, Long inventoryId, String type, OffsetDateTime from,
+            OffsetDateTime to, OffsetDateTime afterCreatedAt, Long afterId, int limit) {
+        List<LedgerRow> rows = new ArrayList<>();
+        if (limit <= 0) {
+            return rows;
+        }
+        long fromMicros = from != null ? LedgerArchiveFile.toMicros(from) : Long.MIN_VALUE;
+        long toMicros = to != null ? LedgerArchiveFile.toMicros(to) : Long.MAX_VALUE;
+        long afterMicros = afterCreatedAt != null ? LedgerArchiveFile.toMicros(afterCreatedAt) : Long.MAX_VALUE;
+        long afterRowId = afterCreatedAt != null ? afterId : Long.MAX_VALUE;
+
+        for (YearMonth month : months(organizationId)) {
+            long monthStart = LedgerArchiveFile.toMicros(start(month));
+            long monthEnd = LedgerArchiveFile.toMicros(start(month.plusMonths(1)));
+            if (monthEnd <= fromMicros) {
+                break;
+            }
+            if (monthStart >= toMicros || monthStart > afterMicros) {
+                continue;
+            }
+            LedgerArchiveFile file = open(file(organizationId, month));
+            long inventoryRef = file.longRef(inventoryId);
+            long typeRef = type != null ? file.stringRef(type) : 0;
+            if (inventoryRef < 0 || typeRef < 0) {
+                continue;
+            }
+            long[] createdAt = file.column(Column.CREATED_AT);
+            long[] ids = file.column(Column.ID);
+            long[] inventories = file.column(Column.INVENTORY_ID);
+            long[] types = file.column(Column.TRANSACTION_TYPE);
+            for (int i = file.size() - 1; i >= 0; i--) {
+                if (createdAt[i] < fromMicros) {
+                    break;
+                }
+                if (inventories[i] != inventoryRef || (typeRef != 0 && types[i] != typeRef)
+                        || createdAt[i] >= toMicros || createdAt[i] > afterMicros
+                        || (createdAt[i] == afterMicros && ids[i] >= afterRowId)) {
+                    continue;
+                }
+                rows.add(file.row(i));
+                if (rows.size() == limit) {
+                    return rows;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Archived rows of the organization, oldest first, in the order and with
+     * the filters of {@code LedgerExportRepository.streamLedger}: of
+     * {@code type} and within {@code [from, to)} unless {@code null}. The
+     * files are read one month at a time, as the iterator reaches them.
+     */
+    public Iterator<LedgerRow> ledger(Long organizationId, String type, OffsetDateTime from, OffsetDateTime to) {
+        long fromMicros = from != null ? LedgerArchiveFile.toMicros(from) : Long.MIN_VALUE;
+        long toMicros = to != null ? LedgerArchiveFile.toMicros(to) : Long.MAX_VALUE;
+        Iterator<YearMonth> months = months(organizationId).reversed().stream()
+                .filter(month -> LedgerArchiveFile.toMicros(start(month.plusMonths(1))) > fromMicros
+                        && LedgerArchiveFile.toMicros(start(month)) < toMicros)
+                .iterator();
+
+        return new Iterator<>() {
+            private LedgerArchiveFile file;
+            private long typeRef;
+            private int index;
+            private LedgerRow next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (file == null || index == file.size()) {
+                        if (!months.hasNext()) {
+                            return false;
+                        }
+                        file = open(file(organizationId, months.next()));
+                        typeRef = type != null ? file.stringRef(type) : 0;
+                        index = typeRef < 0 ? file.size() : 0;
+                        continue;
+                    }
+                    long createdAt = file.column(Column.CREATED_AT)[index];
+                    if (createdAt >= fromMicros && createdAt < toMicros
+                            && (typeRef == 0 || file.column(Column.TRANSACTION_TYPE)[index] == typeRef)) {
+                        next = file.row(index);
+                    }
+                    index++;
+                }
+                return true;
+            }
+
+            @Override
+            public LedgerRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LedgerRow row = next;
+                next = null;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * End of the newest month archived for the organization, or for any
+     * organization when {@code organizationId} is {@code null}, or
+     * {@code null} if nothing is archived. The ledger table no longer holds
+     * every row before it.
+     */
+    public OffsetDateTime archivedUntil(Long organizationId) {
+        List<Long> organizationIds = organizationId != null ? List.of(organizationId) : organizationIds();
+        return organizationIds.stream()
+                .flatMap(id -> months(id).stream().limit(1))
+                .max(Comparator.naturalOrder())
+                .map(month -> start(month.plusMonths(1)))
+                .orElse(null);
+    }
+
+    /** Archived months of the organization, newest first. */
+    public List<YearMonth> months(Long organizationId) {
+        Path organizationDirectory = directory.resolve(String.valueOf(organizationId));
+        if (!Files.isDirectory(organizationDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(organizationDirectory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("\\d{4}-\\d{2}\\" + EXTENSION))
+                    .map(name -> YearMonth.parse(name.substring(0, 7), FILE_MONTH))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list ledger archive of organization " + organizationId, e);
+        }
+    }
+
+    private List<Long> organizationIds() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> directories = Files.list(directory)) {
+            return directories.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("\\d+"))
+                    .map(Long::valueOf)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list ledger archive " + directory, e);
+        }
+    }
+
+    private Path file(Long organizationId, YearMonth month) {
+        return directory.resolve(String.valueOf(organizationId)).resolve(month.format(FILE_MONTH) + EXTENSION);
+    }
+
+    private static LedgerArchiveFile open(Path file) {
+        try {
+            return LedgerArchiveFile.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read ledger archive " + file, e);
+        }
+    }
+
+    private static OffsetDateTime start(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
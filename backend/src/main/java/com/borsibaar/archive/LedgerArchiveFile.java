@@ -0,0 +1,313 @@
+package com.borsibaar.archive;
+
+import com.borsibaar.pricing.FixedPoint;
+import com.borsibaar.repository.LedgerRow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ledger rows in a column-oriented file, read through a memory mapping.
+ * <p>
+ * Rows are sorted by {@code (createdAt, id)} and every column is stored as
+ * one block of variable-length integers: timestamps (in microseconds) and ids
+ * as the difference to the previous row, quantities and prices as fixed-point
+ * ten-thousandths ({@link FixedPoint}), the quantity and price after a
+ * transaction as their difference to what the values before imply (usually
+ * 0), and strings and the ids that repeat (inventory, product, bar station)
+ * as indexes into dictionaries stored once per file. The header holds the
+ * offset of every block, so a reader decodes only the columns it looks at.
+ * <p>
+ * Not thread-safe; decoded columns are cached in the instance.
+ */
+final class LedgerArchiveFile {
+
+    enum Column {
+        CREATED_AT, ID, INVENTORY_ID, TRANSACTION_TYPE, PRODUCT_ID, PRODUCT_NAME, QUANTITY_CHANGE,
+        QUANTITY_BEFORE, QUANTITY_AFTER, PRICE_BEFORE, PRICE_AFTER, REFERENCE_ID, BAR_STATION_ID, CREATED_BY, NOTES
+    }
+
+    static final int MAGIC = 0x42424c41;
+    static final short VERSION = 1;
+
+    private static final Column[] COLUMNS = Column.values();
+    // Magic, version, row count, the two dictionary offsets and one offset per column
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4 + 4 + 4 * COLUMNS.length;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int[] offsets = new int[COLUMNS.length];
+    private final String[] strings;
+    private final long[] longs;
+    private final Map<Column, long[]> columns = new EnumMap<>(Column.class);
+
+    LedgerArchiveFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        ByteBuffer header = buffer.duplicate().position(0);
+        if (header.getInt() != MAGIC || header.getShort() != VERSION) {
+            throw new IllegalArgumentException("Not a ledger archive file");
+        }
+        size = header.getInt();
+        int stringsOffset = header.getInt();
+        int longsOffset = header.getInt();
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = header.getInt();
+        }
+
+        ByteBuffer in = buffer.duplicate().position(stringsOffset);
+        strings = new String[(int) readUnsigned(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[(int) readUnsigned(in)];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(longsOffset);
+        longs = new long[(int) readUnsigned(in)];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = readSigned(in);
+        }
+    }
+
+    static LedgerArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new LedgerArchiveFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Dictionary entry of a string (e.g. a transaction type) as stored in its
+     * columns, or -1 if no row of the file has it.
+     */
+    long stringRef(String value) {
+        return indexOf(strings, value);
+    }
+
+    /** As {@link #stringRef}, for inventory, product and bar station ids. */
+    long longRef(long value) {
+        for (int i = 0; i < longs.length; i++) {
+            if (longs[i] == value) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Values of a column by row: microseconds, ids and fixed-point units as
+     * such, dictionary columns as references (0 for {@code null}),
+     * {@link Column#QUANTITY_AFTER} as the difference to quantity before plus
+     * change and {@link Column#PRICE_AFTER} as the difference to price before.
+     */
+    long[] column(Column column) {
+        return columns.computeIfAbsent(column, c -> {
+            ByteBuffer in = buffer.duplicate().position(offsets[c.ordinal()]);
+            long[] values = new long[size];
+            boolean delta = c == Column.CREATED_AT || c == Column.ID;
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                values[i] = isReference(c) ? readUnsigned(in) : readSigned(in);
+                if (delta) {
+                    values[i] += previous;
+                    previous = values[i];
+                }
+            }
+            return values;
+        });
+    }
+
+    LedgerRow row(int index) {
+        long quantityBefore = column(Column.QUANTITY_BEFORE)[index];
+        long quantityChange = column(Column.QUANTITY_CHANGE)[index];
+        long priceBefore = column(Column.PRICE_BEFORE)[index];
+        return new LedgerRow(
+                column(Column.ID)[index],
+                toTime(column(Column.CREATED_AT)[index]),
+                string(Column.TRANSACTION_TYPE, index),
+                longValue(Column.INVENTORY_ID, index),
+                longValue(Column.PRODUCT_ID, index),
+                string(Column.PRODUCT_NAME, index),
+                decimal(quantityChange),
+                decimal(quantityBefore),
+                decimal(quantityBefore + quantityChange + column(Column.QUANTITY_AFTER)[index]),
+                decimal(priceBefore),
+                decimal(priceBefore + column(Column.PRICE_AFTER)[index]),
+                string(Column.REFERENCE_ID, index),
+                longValue(Column.BAR_STATION_ID, index),
+                string(Column.CREATED_BY, index),
+                string(Column.NOTES, index));
+    }
+
+    static long toMicros(OffsetDateTime time) {
+        Instant instant = time.toInstant();
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000);
+    }
+
+    static OffsetDateTime toTime(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L)
+                .atOffset(ZoneOffset.UTC);
+    }
+
+    /**
+     * Encodes the rows, in any order, into the contents of a file.
+     */
+    static byte[] encode(List<LedgerRow> rows) {
+        LedgerRow[] sorted = rows.toArray(LedgerRow[]::new);
+        Arrays.sort(sorted, Comparator.comparing(LedgerRow::createdAt).thenComparing(LedgerRow::id));
+
+        Map<String, Integer> strings = new HashMap<>();
+        Map<Long, Integer> longs = new HashMap<>();
+        EnumMap<Column, Output> blocks = new EnumMap<>(Column.class);
+        for (Column column : COLUMNS) {
+            blocks.put(column, new Output());
+        }
+        long previousMicros = 0;
+        long previousId = 0;
+        for (LedgerRow row : sorted) {
+            long micros = toMicros(row.createdAt());
+            blocks.get(Column.CREATED_AT).writeSigned(micros - previousMicros);
+            previousMicros = micros;
+            blocks.get(Column.ID).writeSigned(row.id() - previousId);
+            previousId = row.id();
+            blocks.get(Column.INVENTORY_ID).writeUnsigned(reference(longs, row.inventoryId()));
+            blocks.get(Column.TRANSACTION_TYPE).writeUnsigned(reference(strings, row.transactionType()));
+            blocks.get(Column.PRODUCT_ID).writeUnsigned(reference(longs, row.productId()));
+            blocks.get(Column.PRODUCT_NAME).writeUnsigned(reference(strings, row.productName()));
+            long quantityChange = FixedPoint.of(row.quantityChange());
+            long quantityBefore = FixedPoint.of(row.quantityBefore());
+            blocks.get(Column.QUANTITY_CHANGE).writeSigned(quantityChange);
+            blocks.get(Column.QUANTITY_BEFORE).writeSigned(quantityBefore);
+            blocks.get(Column.QUANTITY_AFTER).writeSigned(
+                    FixedPoint.of(row.quantityAfter()) - quantityBefore - quantityChange);
+            long priceBefore = FixedPoint.of(row.priceBefore());
+            blocks.get(Column.PRICE_BEFORE).writeSigned(priceBefore);
+            blocks.get(Column.PRICE_AFTER).writeSigned(FixedPoint.of(row.priceAfter()) - priceBefore);
+            blocks.get(Column.REFERENCE_ID).writeUnsigned(reference(strings, row.referenceId()));
+            blocks.get(Column.BAR_STATION_ID).writeUnsigned(reference(longs, row.barStationId()));
+            blocks.get(Column.CREATED_BY).writeUnsigned(reference(strings, row.createdBy()));
+            blocks.get(Column.NOTES).writeUnsigned(reference(strings, row.notes()));
+        }
+
+        Output stringBlock = new Output();
+        String[] stringValues = new String[strings.size()];
+        strings.forEach((value, reference) -> stringValues[reference - 1] = value);
+        stringBlock.writeUnsigned(stringValues.length);
+        for (String value : stringValues) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            stringBlock.writeUnsigned(bytes.length);
+            stringBlock.write(bytes, 0, bytes.length);
+        }
+        Output longBlock = new Output();
+        long[] longValues = new long[longs.size()];
+        longs.forEach((value, reference) -> longValues[reference - 1] = value);
+        longBlock.writeUnsigned(longValues.length);
+        for (long value : longValues) {
+            longBlock.writeSigned(value);
+        }
+
+        int length = HEADER_SIZE + stringBlock.size() + longBlock.size()
+                + blocks.values().stream().mapToInt(Output::size).sum();
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(MAGIC).putShort(VERSION).putInt(sorted.length);
+        int offset = HEADER_SIZE;
+        out.putInt(offset);
+        offset += stringBlock.size();
+        out.putInt(offset);
+        offset += longBlock.size();
+        for (Column column : COLUMNS) {
+            out.putInt(offset);
+            offset += blocks.get(column).size();
+        }
+        out.put(stringBlock.toByteArray()).put(longBlock.toByteArray());
+        for (Column column : COLUMNS) {
+            out.put(blocks.get(column).toByteArray());
+        }
+        return out.array();
+    }
+
+    private static boolean isReference(Column column) {
+        return switch (column) {
+            case INVENTORY_ID, TRANSACTION_TYPE, PRODUCT_ID, PRODUCT_NAME, REFERENCE_ID, BAR_STATION_ID, CREATED_BY,
+                 NOTES -> true;
+            default -> false;
+        };
+    }
+
+    private static <T> int reference(Map<T, Integer> dictionary, T value) {
+        return value != null ? dictionary.computeIfAbsent(value, v -> dictionary.size() + 1) : 0;
+    }
+
+    private static long indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private String string(Column column, int index) {
+        long reference = column(column)[index];
+        return reference != 0 ? strings[(int) reference - 1] : null;
+    }
+
+    private Long longValue(Column column, int index) {
+        long reference = column(column)[index];
+        return reference != 0 ? longs[(int) reference - 1] : null;
+    }
+
+    private static BigDecimal decimal(long units) {
+        return BigDecimal.valueOf(units, FixedPoint.SCALE);
+    }
+
+    private static long readUnsigned(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long readSigned(ByteBuffer in) {
+        long zigzag = readUnsigned(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        void writeUnsigned(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+    }
+}
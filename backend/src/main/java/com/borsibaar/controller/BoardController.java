@@ -0,0 +1,36 @@
+package com.borsibaar.controller;
+
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.service.BoardService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+@RestController
+@RequestMapping("/api/board")
+@RequiredArgsConstructor
+public class BoardController {
+
+    private final BoardService boardService;
+    private final InventoryVersions inventoryVersions;
+
+    /**
+     * All categories of the organization with their priced products, for the
+     * public price board. Written from a pre-serialized snapshot; a poll with
+     * the current ETag gets 304 without the snapshot being looked at.
+     */
+    @GetMapping("/{organizationId}")
+    public ResponseEntity<byte[]> getBoard(@PathVariable Long organizationId, WebRequest webRequest) {
+        if (webRequest.checkNotModified(inventoryVersions.current(organizationId))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(boardService.getBoardJson(organizationId));
+    }
+}
@@ -2,13 +2,25 @@ package com.borsibaar.controller;
 
 import com.borsibaar.dto.*;
 import com.borsibaar.entity.User;
+import com.borsibaar.pricing.InventoryVersions;
 import com.borsibaar.service.InventoryService;
+import com.borsibaar.service.InventoryStreamService;
+import com.borsibaar.service.LedgerExportService;
+import com.borsibaar.service.SalesRollupService;
 import com.borsibaar.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @RestController
@@ -17,11 +29,16 @@ import java.util.List;
 public class InventoryController {
 
     private final InventoryService inventoryService;
+    private final InventoryVersions inventoryVersions;
+    private final InventoryStreamService inventoryStreamService;
+    private final LedgerExportService ledgerExportService;
+    private final SalesRollupService salesRollupService;
 
     @GetMapping
     public List<InventoryResponseDto> getOrganizationInventory(
             @RequestParam(required = false) Long categoryId,
-            @RequestParam(required = false) Long organizationId) {
+            @RequestParam(required = false) Long organizationId,
+            WebRequest webRequest) {
         // If organizationId is provided, use it (for public access)
         // Otherwise, get from authenticated user
         Long orgId;
@@ -31,6 +48,10 @@ public class InventoryController {
             User user = SecurityUtils.getCurrentUser();
             orgId = user.getOrganizationId();
         }
+        // Unchanged since the caller's last poll: 304 straight from memory
+        if (webRequest.checkNotModified(inventoryVersions.current(orgId))) {
+            return null;
+        }
         return inventoryService.getByOrganization(orgId, categoryId);
     }
 
@@ -63,10 +84,19 @@ public class InventoryController {
         return inventoryService.adjustStock(request, user.getId(), user.getOrganizationId());
     }
 
+    /**
+     * The product's ledger newest first, one page at a time. Each page holds
+     * the {@code nextCursor} to pass for the one after it.
+     */
     @GetMapping("/product/{productId}/history")
-    public List<InventoryTransactionResponseDto> getTransactionHistory(
+    public InventoryTransactionPageResponseDto getTransactionHistory(
             @PathVariable Long productId,
-            @RequestParam(required = false) Long organizationId) {
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
         Long orgId;
         if (organizationId != null) {
             orgId = organizationId;
@@ -74,18 +104,125 @@ public class InventoryController {
             User user = SecurityUtils.getCurrentUser();
             orgId = user.getOrganizationId();
         }
-        return inventoryService.getTransactionHistory(productId, orgId);
+        return inventoryService.getTransactionHistory(productId, orgId, type, from, to, cursor, limit);
+    }
+
+    /**
+     * The organization's whole ledger, oldest first, as NDJSON or CSV. Rows are
+     * written while they are read, so the response starts right away and a
+     * client that hangs up stops the query.
+     */
+    @GetMapping("/transactions/export")
+    public void exportTransactions(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+            HttpServletResponse response) throws IOException {
+        User user = SecurityUtils.getCurrentUser();
+        LedgerExportService.Format exportFormat = LedgerExportService.Format.of(format);
+        response.setContentType(exportFormat.contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + exportFormat.fileName() + "\"");
+        ledgerExportService.export(user.getOrganizationId(), type, from, to, exportFormat,
+                response.getOutputStream());
     }
 
+    /**
+     * Sales per seller and bar station, optionally within a time range. Counted
+     * in whole hours from the hourly rollup.
+     */
     @GetMapping("/sales-stats")
-    public List<UserSalesStatsResponseDto> getUserSalesStats() {
+    public List<UserSalesStatsResponseDto> getUserSalesStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to) {
         User user = SecurityUtils.getCurrentUser();
-        return inventoryService.getUserSalesStats(user.getOrganizationId());
+        return inventoryService.getUserSalesStats(user.getOrganizationId(), from, to);
+    }
+
+    /**
+     * Recomputes the organization's hourly sales rollup from the ledger, over
+     * the given range or all of it.
+     */
+    @PostMapping("/sales-rollup/rebuild")
+    public SalesRollupRebuildResponseDto rebuildSalesRollup(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to) {
+        User user = SecurityUtils.getCurrentUser();
+        SecurityUtils.requireAdminRole(user);
+        return salesRollupService.rebuild(user.getOrganizationId(), from, to);
+    }
+
+    /**
+     * Sale latency and stock-row lock waits of this node over the last
+     * evaluation window, plus the products currently in striped-stock mode.
+     */
+    @GetMapping("/contention")
+    public StockContentionResponseDto getStockContention() {
+        SecurityUtils.requireAdminRole();
+        return inventoryService.getStockContention();
+    }
+
+    /**
+     * Quantity sold per product within the last {@code windowSeconds} and the
+     * smoothed rate per minute, from memory rather than the ledger.
+     */
+    @GetMapping("/velocity")
+    public List<ProductVelocityResponseDto> getVelocity(
+            @RequestParam(defaultValue = "300") long windowSeconds,
+            @RequestParam(required = false) Long organizationId) {
+        Long orgId;
+        if (organizationId != null) {
+            orgId = organizationId;
+        } else {
+            User user = SecurityUtils.getCurrentUser();
+            orgId = user.getOrganizationId();
+        }
+        return inventoryService.getVelocity(orgId, windowSeconds);
+    }
+
+    /**
+     * Products changed since the {@code version} of an earlier response, or the
+     * whole listing if that is not known any more (or {@code since} is absent).
+     */
+    @GetMapping("/changes")
+    public InventoryChangesResponseDto getChanges(
+            @RequestParam(required = false) String since,
+            @RequestParam(required = false) Long organizationId) {
+        Long orgId;
+        if (organizationId != null) {
+            orgId = organizationId;
+        } else {
+            User user = SecurityUtils.getCurrentUser();
+            orgId = user.getOrganizationId();
+        }
+        return inventoryService.getChangesSince(orgId, since);
+    }
+
+    /**
+     * Server-sent events with the same changes, pushed as they happen. A
+     * reconnecting client's {@code Last-Event-ID} is taken as {@code since}.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(required = false) Long organizationId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Long orgId;
+        if (organizationId != null) {
+            orgId = organizationId;
+        } else {
+            User user = SecurityUtils.getCurrentUser();
+            orgId = user.getOrganizationId();
+        }
+        return inventoryStreamService.subscribe(orgId, lastEventId);
     }
 
     @GetMapping("/station-sales-stats")
-    public List<StationSalesStatsResponseDto> getStationSalesStats() {
+    public List<StationSalesStatsResponseDto> getStationSalesStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to) {
         User user = SecurityUtils.getCurrentUser();
-        return inventoryService.getStationSalesStats(user.getOrganizationId());
+        return inventoryService.getStationSalesStats(user.getOrganizationId(), from, to);
     }
 }
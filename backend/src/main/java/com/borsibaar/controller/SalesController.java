@@ -3,7 +3,7 @@ package com.borsibaar.controller;
 import com.borsibaar.dto.SaleRequestDto;
 import com.borsibaar.dto.SaleResponseDto;
 import com.borsibaar.entity.User;
-import com.borsibaar.service.SalesService;
+import com.borsibaar.service.SaleSubmissionService;
 import com.borsibaar.util.SecurityUtils;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -15,12 +15,17 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class SalesController {
 
-    private final SalesService salesService;
+    private final SaleSubmissionService saleSubmissionService;
 
+    /**
+     * Records a sale. Clients should send a unique {@code Idempotency-Key} per
+     * sale and reuse it on retries; a retry returns the original sale.
+     */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public SaleResponseDto processSale(@RequestBody @Valid SaleRequestDto request) {
+    public SaleResponseDto processSale(@RequestBody @Valid SaleRequestDto request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         User user = SecurityUtils.getCurrentUser();
-        return salesService.processSale(request, user.getId(), user.getOrganizationId());
+        return saleSubmissionService.submit(request, user.getId(), user.getOrganizationId(), idempotencyKey);
     }
 }
\ No newline at end of file
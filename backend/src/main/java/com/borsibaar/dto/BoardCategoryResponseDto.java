@@ -0,0 +1,9 @@
+package com.borsibaar.dto;
+
+import java.util.List;
+
+public record BoardCategoryResponseDto(
+        Long id,
+        String name,
+        List<InventoryResponseDto> products) {
+}
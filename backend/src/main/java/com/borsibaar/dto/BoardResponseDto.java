@@ -0,0 +1,10 @@
+package com.borsibaar.dto;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public record BoardResponseDto(
+        Long organizationId,
+        OffsetDateTime generatedAt,
+        List<BoardCategoryResponseDto> categories) {
+}
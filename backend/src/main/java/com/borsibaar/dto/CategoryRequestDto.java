@@ -4,5 +4,10 @@ import jakarta.validation.constraints.NotBlank;
 
 public record CategoryRequestDto(
                 @NotBlank String name,
-                Boolean dynamicPricing) {
+                Boolean dynamicPricing,
+                String pricingStrategy) {
+
+        public CategoryRequestDto(String name, Boolean dynamicPricing) {
+                this(name, dynamicPricing, null);
+        }
 }
@@ -3,5 +3,10 @@ package com.borsibaar.dto;
 public record CategoryResponseDto(
                 Long id,
                 String name,
-                Boolean dynamicPricing) {
+                Boolean dynamicPricing,
+                String pricingStrategy) {
+
+        public CategoryResponseDto(Long id, String name, Boolean dynamicPricing) {
+                this(id, name, dynamicPricing, null);
+        }
 }
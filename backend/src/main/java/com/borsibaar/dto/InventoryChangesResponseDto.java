@@ -0,0 +1,17 @@
+package com.borsibaar.dto;
+
+import java.util.List;
+
+/**
+ * Products changed since the version a client last saw. When {@code full} is
+ * set, {@code products} is the whole listing and replaces what the client has.
+ *
+ * @param version            to pass as {@code since} on the next poll
+ * @param removedProductIds  products no longer listed (deleted or inactive)
+ */
+public record InventoryChangesResponseDto(
+        String version,
+        boolean full,
+        List<InventoryResponseDto> products,
+        List<Long> removedProductIds) {
+}
@@ -6,6 +6,7 @@ public record InventoryResponseDto(
         Long id,
         Long organizationId,
         Long productId,
+        Long categoryId,
         String productName,
         BigDecimal quantity,
         BigDecimal unitPrice,
@@ -0,0 +1,12 @@
+package com.borsibaar.dto;
+
+import java.util.List;
+
+/**
+ * @param nextCursor pass as {@code cursor} for the next (older) page;
+ *                   {@code null} on the last page
+ */
+public record InventoryTransactionPageResponseDto(
+        List<InventoryTransactionResponseDto> items,
+        String nextCursor) {
+}
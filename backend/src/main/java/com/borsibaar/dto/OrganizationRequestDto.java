@@ -7,5 +7,10 @@ import java.math.BigDecimal;
 public record OrganizationRequestDto(
         @NotBlank String name,
         @DecimalMin("0.00") BigDecimal priceIncreaseStep,
-        @DecimalMin("0.00") BigDecimal priceDecreaseStep) {
+        @DecimalMin("0.00") BigDecimal priceDecreaseStep,
+        String pricingStrategy) {
+
+    public OrganizationRequestDto(String name, BigDecimal priceIncreaseStep, BigDecimal priceDecreaseStep) {
+        this(name, priceIncreaseStep, priceDecreaseStep, null);
+    }
 }
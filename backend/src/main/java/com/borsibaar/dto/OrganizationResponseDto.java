@@ -9,5 +9,11 @@ public record OrganizationResponseDto(
                 OffsetDateTime createdAt,
                 OffsetDateTime updatedAt,
                 BigDecimal priceIncreaseStep,
-                BigDecimal priceDecreaseStep) {
+                BigDecimal priceDecreaseStep,
+                String pricingStrategy) {
+
+        public OrganizationResponseDto(Long id, String name, OffsetDateTime createdAt, OffsetDateTime updatedAt,
+                        BigDecimal priceIncreaseStep, BigDecimal priceDecreaseStep) {
+                this(id, name, createdAt, updatedAt, priceIncreaseStep, priceDecreaseStep, null);
+        }
 }
@@ -0,0 +1,12 @@
+package com.borsibaar.dto;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+public record ProductVelocityResponseDto(
+        Long productId,
+        long windowSeconds,
+        BigDecimal soldInWindow,
+        double soldPerMinute,
+        OffsetDateTime lastSaleAt) {
+}
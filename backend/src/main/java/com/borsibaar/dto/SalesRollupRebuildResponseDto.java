@@ -0,0 +1,10 @@
+package com.borsibaar.dto;
+
+import java.time.OffsetDateTime;
+
+public record SalesRollupRebuildResponseDto(
+        OffsetDateTime from,
+        OffsetDateTime to,
+        int chunks,
+        long rows) {
+}
@@ -0,0 +1,13 @@
+package com.borsibaar.dto;
+
+import java.util.List;
+
+public record StockContentionResponseDto(
+        long windowSeconds,
+        long saleCount,
+        double saleLatencyP50Millis,
+        double saleLatencyP99Millis,
+        double stockUpdateP99Millis,
+        boolean stripingEnabled,
+        List<Long> stripedInventoryIds) {
+}
@@ -25,6 +25,13 @@ public class Category {
     @Column(name = "dynamic_pricing", nullable = false)
     private boolean dynamicPricing;
 
+    /**
+     * Name of the {@link com.borsibaar.pricing.PricingStrategy} for this category's
+     * products; {@code null} uses the organization's.
+     */
+    @Column(name = "pricing_strategy", length = 32)
+    private String pricingStrategy;
+
     @OneToMany(mappedBy = "category")
     private Set<Product> products = new HashSet<>();
 }
@@ -44,6 +44,18 @@ public class Inventory {
     @Column(name = "adjusted_price", precision = 19, scale = 4)
     private BigDecimal adjustedPrice;
 
+    /**
+     * Time of the latest sale, maintained by the sale statements themselves.
+     */
+    @Column(name = "last_sale_at", insertable = false, updatable = false)
+    private OffsetDateTime lastSaleAt;
+
+    /**
+     * Time at which {@link #adjustedPrice} was last set; idle decay counts from here.
+     */
+    @Column(name = "price_anchored_at")
+    private OffsetDateTime priceAnchoredAt;
+
     @OneToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "product_id")
     private Product product;
@@ -59,5 +71,6 @@ public class Inventory {
         this.adjustedPrice = adjustedPrice;
         this.createdAt = OffsetDateTime.now();
         this.updatedAt = OffsetDateTime.now();
+        this.priceAnchoredAt = this.createdAt;
     }
 }
@@ -0,0 +1,37 @@
+package com.borsibaar.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * One sub-counter of a striped inventory row. Rows are written with plain SQL
+ * by {@link com.borsibaar.repository.InventoryStockShardRepository}.
+ */
+@Entity
+@Table(name = "inventory_stock_shards",
+        uniqueConstraints = @UniqueConstraint(columnNames = { "inventory_id", "shard_no" }))
+@Getter
+@Setter
+@NoArgsConstructor
+public class InventoryStockShard {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "inventory_id", nullable = false)
+    private Long inventoryId;
+
+    @Column(name = "shard_no", nullable = false)
+    private int shardNo;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal quantity;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+}
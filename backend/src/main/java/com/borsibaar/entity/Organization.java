@@ -30,4 +30,17 @@ public class Organization {
 
     @Column(name = "price_decrease_step", precision = 19, scale = 4)
     private BigDecimal priceDecreaseStep;
+
+    /**
+     * Name of the {@link com.borsibaar.pricing.PricingStrategy} for categories
+     * without one of their own; {@code null} prices linearly.
+     */
+    @Column(name = "pricing_strategy", length = 32)
+    private String pricingStrategy;
+
+    /**
+     * Time of the latest sale, to within a second; maintained by the sale path.
+     */
+    @Column(name = "last_sale_at", insertable = false, updatable = false)
+    private OffsetDateTime lastSaleAt;
 }
@@ -0,0 +1,79 @@
+package com.borsibaar.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Sales of one product by one seller at one bar station within one UTC hour.
+ * Rows are written with plain SQL by
+ * {@link com.borsibaar.repository.SalesRollupRepository}.
+ */
+@Entity
+@Table(name = "sales_rollup_hourly")
+@IdClass(SalesRollupHourly.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+public class SalesRollupHourly {
+
+    /** {@code barStationId} of sales made outside a bar station. */
+    public static final long NO_STATION = 0L;
+
+    /** {@code userId} of sales without a recorded seller. */
+    public static final UUID NO_USER = new UUID(0L, 0L);
+
+    @Id
+    @Column(name = "organization_id")
+    private Long organizationId;
+
+    @Id
+    @Column(name = "sale_hour")
+    private OffsetDateTime saleHour;
+
+    @Id
+    @Column(name = "bar_station_id")
+    private Long barStationId;
+
+    @Id
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    /**
+     * Sales whose first line is this product. A sale of several products is
+     * counted once, so sums over products are distinct sales.
+     */
+    @Column(name = "sales_count", nullable = false)
+    private long salesCount;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal quantity;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal revenue;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long organizationId;
+        private OffsetDateTime saleHour;
+        private Long barStationId;
+        private UUID userId;
+        private Long productId;
+    }
+}
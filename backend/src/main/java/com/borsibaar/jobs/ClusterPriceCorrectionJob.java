@@ -0,0 +1,145 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryBatchRepository.PriceDecay;
+import com.borsibaar.repository.PriceJobLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Price decay for deployments with several backend nodes, replacing
+ * {@link PriceCorrectionJob} when {@code app.pricing.cluster.enabled} is set.
+ * <p>
+ * Every tick each node renews its lease row and takes the organizations whose
+ * id modulo the number of live nodes equals its rank among them, so the nodes
+ * decay disjoint sets of organizations in parallel. A node that stops renewing
+ * drops out once its lease expires and its organizations move to the others on
+ * their next tick. While nodes join or leave their views can briefly overlap;
+ * each organization is then held by a transaction-scoped advisory lock, and
+ * the decay statement itself skips products repriced within the last minute,
+ * so no price is lowered twice.
+ * <p>
+ * Work is found in the database rather than from this node's own sales, as a
+ * node usually decays organizations whose sales went to other nodes. Their
+ * price books only see the new prices after they reload; enabling lazy decay
+ * avoids that.
+ */
+@Slf4j
+@Service
+public class ClusterPriceCorrectionJob {
+
+    private final InventoryBatchRepository inventoryBatchRepository;
+    private final PriceJobLeaseRepository priceJobLeaseRepository;
+    private final PriceEngine priceEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final LongSupplier clock;
+
+    @Value("${app.pricing.cluster.enabled:false}")
+    private boolean enabled;
+    @Value("${app.pricing.lazy-decay.enabled:false}")
+    private boolean lazyDecay;
+    @Value("${app.pricing.cluster.node-id:}")
+    private String nodeId;
+    @Value("${app.pricing.cluster.lease-ttl-ms:3000}")
+    private long leaseTtlMillis;
+
+    @Autowired
+    public ClusterPriceCorrectionJob(InventoryBatchRepository inventoryBatchRepository,
+            PriceJobLeaseRepository priceJobLeaseRepository,
+            PriceEngine priceEngine,
+            PlatformTransactionManager transactionManager) {
+        this(inventoryBatchRepository, priceJobLeaseRepository, priceEngine, transactionManager,
+                System::currentTimeMillis);
+    }
+
+    ClusterPriceCorrectionJob(InventoryBatchRepository inventoryBatchRepository,
+            PriceJobLeaseRepository priceJobLeaseRepository,
+            PriceEngine priceEngine,
+            PlatformTransactionManager transactionManager,
+            LongSupplier clock) {
+        this.inventoryBatchRepository = inventoryBatchRepository;
+        this.priceJobLeaseRepository = priceJobLeaseRepository;
+        this.priceEngine = priceEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && !lazyDecay;
+    }
+
+    @Scheduled(fixedDelayString = "${app.pricing.cluster.tick-ms:1000}")
+    public void adjustPrices() {
+        if (!isEnabled()) {
+            return;
+        }
+        long nowMillis = clock.getAsLong();
+        OffsetDateTime now = OffsetDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneOffset.UTC);
+        OffsetDateTime idleSince = now.minus(Duration.ofMillis(PriceCorrectionJob.IDLE_MILLIS));
+
+        List<String> liveNodes = priceJobLeaseRepository.renewAndFindLiveNodes(nodeId, now,
+                Duration.ofMillis(leaseTtlMillis));
+        int partition = liveNodes.indexOf(nodeId);
+        if (partition < 0) {
+            return;
+        }
+
+        List<PriceDecay> rows = transactionTemplate.execute(status -> {
+            // An organization counts as active like in PriceCorrectionJob: it sold within the idle time
+            List<Long> organizationIds = priceJobLeaseRepository.lockActiveOrganizations(idleSince, partition,
+                    liveNodes.size());
+            if (organizationIds.isEmpty()) {
+                return List.<PriceDecay>of();
+            }
+            List<PriceDecay> decayed = inventoryBatchRepository.decayIdlePrices(organizationIds, idleSince,
+                    "REDUCE-" + nowMillis, now).stream()
+                    .filter(row -> row.priceAfter() != null)
+                    .toList();
+            decayed.stream()
+                    .collect(Collectors.groupingBy(PriceDecay::organizationId,
+                            Collectors.mapping(PriceDecay::productId, Collectors.toList())))
+                    .forEach(priceEngine::evictAfterCompletion);
+            return decayed;
+        });
+        if (rows != null && !rows.isEmpty()) {
+            log.info("Updated prices of {} products as node {} of {}", rows.size(), partition + 1, liveNodes.size());
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            // Lets the other nodes take over on their next tick instead of after the lease expires
+            priceJobLeaseRepository.release(nodeId);
+        } catch (RuntimeException e) {
+            log.warn("Could not release price job lease of node {}", nodeId, e);
+        }
+    }
+}
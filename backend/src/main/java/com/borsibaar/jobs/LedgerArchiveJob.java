@@ -0,0 +1,130 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.repository.LedgerArchiveRepository;
+import com.borsibaar.repository.LedgerArchiveRepository.ArchivableMonth;
+import com.borsibaar.repository.LedgerExportRepository;
+import com.borsibaar.repository.LedgerPartitionRepository;
+import com.borsibaar.repository.LedgerRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Moves ledger rows older than {@code app.ledger-archive.max-age-days} from
+ * {@code inventory_transactions} into the {@link LedgerArchive}, a whole UTC
+ * month of one organization at a time, so the table and its indexes only hold
+ * recent months. The history endpoint and the ledger export continue into the
+ * archive; the sales rollup rebuild leaves the archived months alone.
+ * <p>
+ * Each month is read, written to its file and deleted in one transaction. If
+ * the deletion does not commit, the rows are in both places until the next
+ * run archives them again. On PostgreSQL the partitions left empty are then
+ * dropped, which returns their space without waiting for vacuum.
+ * <p>
+ * Off unless {@code app.ledger-archive.enabled} is set, on one node only.
+ */
+@Slf4j
+@Service
+public class LedgerArchiveJob {
+
+    private final LedgerArchiveRepository ledgerArchiveRepository;
+    private final LedgerExportRepository ledgerExportRepository;
+    private final LedgerPartitionRepository ledgerPartitionRepository;
+    private final LedgerArchive ledgerArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final LongSupplier clock;
+
+    @Value("${app.ledger-archive.enabled:false}")
+    private boolean enabled;
+    @Value("${app.ledger-archive.max-age-days:180}")
+    private int maxAgeDays;
+
+    @Autowired
+    public LedgerArchiveJob(LedgerArchiveRepository ledgerArchiveRepository,
+            LedgerExportRepository ledgerExportRepository,
+            LedgerPartitionRepository ledgerPartitionRepository,
+            LedgerArchive ledgerArchive,
+            PlatformTransactionManager transactionManager) {
+        this(ledgerArchiveRepository, ledgerExportRepository, ledgerPartitionRepository, ledgerArchive,
+                transactionManager, System::currentTimeMillis);
+    }
+
+    LedgerArchiveJob(LedgerArchiveRepository ledgerArchiveRepository,
+            LedgerExportRepository ledgerExportRepository,
+            LedgerPartitionRepository ledgerPartitionRepository,
+            LedgerArchive ledgerArchive,
+            PlatformTransactionManager transactionManager,
+            LongSupplier clock) {
+        this.ledgerArchiveRepository = ledgerArchiveRepository;
+        this.ledgerExportRepository = ledgerExportRepository;
+        this.ledgerPartitionRepository = ledgerPartitionRepository;
+        this.ledgerArchive = ledgerArchive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+    }
+
+    @Scheduled(cron = "${app.ledger-archive.cron:0 45 4 * * *}", zone = "UTC")
+    public void scheduledArchive() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    /**
+     * Archives every month that ended at least {@code max-age-days} ago.
+     *
+     * @return the number of rows moved
+     */
+    public long archive() {
+        OffsetDateTime now = Instant.ofEpochMilli(clock.getAsLong()).atOffset(ZoneOffset.UTC);
+        YearMonth firstKept = YearMonth.from(now.minusDays(maxAgeDays));
+        long moved = 0;
+        for (ArchivableMonth month : ledgerArchiveRepository.findMonthsBefore(
+                firstKept.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC))) {
+            try {
+                moved += transactionTemplate.execute(status -> archiveMonth(month));
+            } catch (RuntimeException e) {
+                // Retried on the next run
+                log.warn("Could not archive ledger of organization {} for {}", month.organizationId(),
+                        month.month(), e);
+            }
+        }
+        if (moved > 0) {
+            log.info("Archived {} ledger rows older than {}", moved, firstKept);
+        }
+        if (ledgerPartitionRepository.isPartitioned()) {
+            for (YearMonth month : ledgerPartitionRepository.findMonthsBefore(firstKept)) {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(
+                        status -> ledgerPartitionRepository.dropIfEmpty(month)))) {
+                    log.info("Dropped empty ledger partition {}", LedgerPartitionRepository.partitionName(month));
+                }
+            }
+        }
+        return moved;
+    }
+
+    private int archiveMonth(ArchivableMonth month) {
+        OffsetDateTime from = month.month().atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        List<LedgerRow> rows = new ArrayList<>();
+        ledgerExportRepository.streamLedger(month.organizationId(), null, from, from.plusMonths(1), rows::add);
+        ledgerArchive.write(month.organizationId(), month.month(), rows);
+        int deleted = ledgerArchiveRepository.deleteMonth(month.organizationId(), month.month());
+        if (deleted != rows.size()) {
+            throw new IllegalStateException("Read " + rows.size() + " ledger rows but deleted " + deleted);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,73 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.repository.LedgerPartitionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps monthly partitions of the ledger ready ahead of the sales that will
+ * land in them: on startup and every night, the partitions of the current UTC
+ * month and the {@code app.ledger-partitions.months-ahead} following ones are
+ * created unless they exist. Rows that find no partition go to the default
+ * partition; creating their month later moves them into it, which locks the
+ * ledger while they are copied, so the job should still run well before the
+ * month starts. Does nothing unless the ledger is partitioned, i.e. on
+ * PostgreSQL.
+ */
+@Slf4j
+@Service
+public class LedgerPartitionJob {
+
+    private final LedgerPartitionRepository ledgerPartitionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final LongSupplier clock;
+
+    @Value("${app.ledger-partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Autowired
+    public LedgerPartitionJob(LedgerPartitionRepository ledgerPartitionRepository,
+            PlatformTransactionManager transactionManager) {
+        this(ledgerPartitionRepository, transactionManager, System::currentTimeMillis);
+    }
+
+    LedgerPartitionJob(LedgerPartitionRepository ledgerPartitionRepository,
+            PlatformTransactionManager transactionManager, LongSupplier clock) {
+        this.ledgerPartitionRepository = ledgerPartitionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.ledger-partitions.cron:0 15 4 * * *}", zone = "UTC")
+    public void createPartitions() {
+        if (!ledgerPartitionRepository.isPartitioned()) {
+            return;
+        }
+        YearMonth current = YearMonth.from(Instant.ofEpochMilli(clock.getAsLong()).atOffset(ZoneOffset.UTC));
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                Integer moved = transactionTemplate.execute(status -> ledgerPartitionRepository.createMonth(month));
+                if (moved != null && moved > 0) {
+                    log.info("Moved {} ledger rows of {} out of the default partition", moved, month);
+                }
+            } catch (RuntimeException e) {
+                // Also when another node created it at the same moment; the next run checks again
+                log.warn("Could not create ledger partition {}", LedgerPartitionRepository.partitionName(month), e);
+            }
+        }
+    }
+}
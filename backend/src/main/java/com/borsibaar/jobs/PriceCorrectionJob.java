@@ -1,90 +1,239 @@
 package com.borsibaar.jobs;
 
-import com.borsibaar.entity.Inventory;
-import com.borsibaar.entity.InventoryTransaction;
-import com.borsibaar.entity.Product;
-import com.borsibaar.repository.*;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.TimingWheel;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryBatchRepository.PriceDecay;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
 
+/**
+ * Lowers the price of dynamic-pricing products that stop selling while their
+ * organization keeps selling.
+ * <p>
+ * Every sale arms a decay timer for the sold products on a {@link TimingWheel}.
+ * When a timer fires the product has not been sold here for
+ * {@link #IDLE_MILLIS}: if its organization sold anything within that time the
+ * price goes down one step and the timer is re-armed, otherwise the product
+ * waits for the organization's next sale. Products that reach their minimum
+ * price are dropped until they are sold again. A run only touches the products
+ * that are due, however large the ledger grows.
+ * <p>
+ * Timers are armed by the sales of this node; whether a product or its
+ * organization sold anywhere is checked against the {@code last_sale_at}
+ * columns the sale statements maintain.
+ * <p>
+ * With {@link LazyPriceDecay} enabled prices decay on read and the job does
+ * nothing; with several nodes {@link ClusterPriceCorrectionJob} takes over.
+ */
+@Slf4j
 @Service
 public class PriceCorrectionJob {
 
-    private final InventoryRepository inventoryRepository;
-    private final InventoryTransactionRepository inventoryTransactionRepository;
+    static final long IDLE_MILLIS = LazyPriceDecay.IDLE_MILLIS;
+    private static final long TICK_MILLIS = 1_000;
+
+    private record SaleEvent(Long organizationId, List<Long> productIds, long soldAt) {
+    }
+
+    private final InventoryBatchRepository inventoryBatchRepository;
     private final ProductRepository productRepository;
+    private final OrganizationRepository organizationRepository;
+    private final PriceEngine priceEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final LongSupplier clock;
+
+    @Value("${app.pricing.lazy-decay.enabled:false}")
+    private boolean lazyDecay;
+    @Value("${app.pricing.cluster.enabled:false}")
+    private boolean clusterMode;
+
+    private final Queue<SaleEvent> sales = new ConcurrentLinkedQueue<>();
 
-    public PriceCorrectionJob(InventoryRepository inventoryRepository,
-            InventoryTransactionRepository inventoryTransactionRepository,
-            ProductRepository productRepository) {
-        this.inventoryRepository = inventoryRepository;
-        this.inventoryTransactionRepository = inventoryTransactionRepository;
+    // Only used by the scheduler thread
+    private final TimingWheel<Long> timers;
+    private final Map<Long, Long> organizationOfProduct = new HashMap<>();
+    private final Set<Long> seenOrganizations = new HashSet<>();
+    private final Map<Long, Set<Long>> waitingForOrganization = new HashMap<>();
+
+    @Autowired
+    public PriceCorrectionJob(InventoryBatchRepository inventoryBatchRepository,
+            ProductRepository productRepository,
+            OrganizationRepository organizationRepository,
+            PriceEngine priceEngine,
+            PlatformTransactionManager transactionManager) {
+        this(inventoryBatchRepository, productRepository, organizationRepository, priceEngine, transactionManager,
+                System::currentTimeMillis);
+    }
+
+    PriceCorrectionJob(InventoryBatchRepository inventoryBatchRepository,
+            ProductRepository productRepository,
+            OrganizationRepository organizationRepository,
+            PriceEngine priceEngine,
+            PlatformTransactionManager transactionManager,
+            LongSupplier clock) {
+        this.inventoryBatchRepository = inventoryBatchRepository;
         this.productRepository = productRepository;
+        this.organizationRepository = organizationRepository;
+        this.priceEngine = priceEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+        // One-second ticks; the levels cover about a minute, an hour and three days
+        this.timers = new TimingWheel<>(TICK_MILLIS, 64, 3, clock.getAsLong());
+    }
+
+    /**
+     * Restarts the decay timers of the sold products once the current
+     * transaction commits.
+     */
+    public void recordSale(Long organizationId, Collection<Long> productIds) {
+        if (lazyDecay || clusterMode) {
+            return;
+        }
+        SaleEvent event = new SaleEvent(organizationId, List.copyOf(productIds), clock.getAsLong());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            sales.add(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sales.add(event);
+            }
+        });
     }
 
-    @Scheduled(cron = "0 * * * * *")
-    public void adjustPrices() {
-        System.out.println("Running price reduction job");
-        List<Product> inactiveProducts = productRepository.findByActiveOrgAndInactiveSalesLastMinute();
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    public synchronized void adjustPrices() {
+        long now = clock.getAsLong();
+        for (SaleEvent sale = sales.poll(); sale != null; sale = sales.poll()) {
+            onSale(sale);
+        }
+
+        List<Long> expired = new ArrayList<>();
+        timers.advance(now, expired::add);
+        if (expired.isEmpty()) {
+            return;
+        }
 
-        if (inactiveProducts.isEmpty()) {
-            System.out.println("No product prices to update automatically");
+        // Sales of every node count, so activity is read from the database
+        Set<Long> activeOrganizations = new HashSet<>(
+                organizationRepository.findIdsWithSalesSince(toDateTime(now - IDLE_MILLIS)));
+        List<Long> idleProducts = new ArrayList<>();
+        for (Long productId : expired) {
+            Long organizationId = organizationOfProduct.get(productId);
+            if (activeOrganizations.contains(organizationId)) {
+                idleProducts.add(productId);
+            } else {
+                waitingForOrganization.computeIfAbsent(organizationId, id -> new HashSet<>()).add(productId);
+            }
+        }
+        if (idleProducts.isEmpty()) {
             return;
         }
 
-        int updatedCount = 0;
-        for (Product product : inactiveProducts) {
-            Inventory inventory = Optional.ofNullable(product.getInventory())
-                    .orElseGet(() -> {
-                        Inventory newInv = new Inventory();
-                        newInv.setOrganizationId(product.getOrganizationId());
-                        newInv.setProduct(product);
-                        newInv.setQuantity(BigDecimal.ZERO);
-                        newInv.setAdjustedPrice(product.getBasePrice());
-                        newInv.setCreatedAt(OffsetDateTime.now());
-                        newInv.setUpdatedAt(OffsetDateTime.now());
-                        return newInv;
-                    });
-
-            BigDecimal decreaseAmount = product.getOrganization().getPriceDecreaseStep();
-            BigDecimal minPrice = Optional.ofNullable(product.getMinPrice()).orElse(decreaseAmount);
-            BigDecimal currentPrice = Optional.ofNullable(inventory.getAdjustedPrice()).orElse(product.getBasePrice());
-            BigDecimal newPrice = currentPrice.subtract(decreaseAmount);
-            if (newPrice.compareTo(minPrice) < 0) {
-                newPrice = minPrice;
+        Map<Long, Long> nextTimers;
+        try {
+            nextTimers = transactionTemplate.execute(status -> decay(idleProducts, now));
+        } catch (RuntimeException e) {
+            // Try again on the next tick
+            idleProducts.forEach(productId -> timers.schedule(productId, now));
+            throw e;
+        }
+        for (Long productId : idleProducts) {
+            Long deadline = nextTimers.get(productId);
+            if (deadline != null) {
+                timers.schedule(productId, deadline);
+            } else {
+                organizationOfProduct.remove(productId);
             }
+        }
+    }
+
+    private void onSale(SaleEvent sale) {
+        Long organizationId = sale.organizationId();
+        if (seenOrganizations.add(organizationId)) {
+            // First sale since startup: the organization's unsold products can decay too
+            productRepository.findDynamicPricingIdsByOrganizationId(organizationId)
+                    .forEach(productId -> track(productId, organizationId, sale.soldAt()));
+        }
+
+        Set<Long> waiting = waitingForOrganization.remove(organizationId);
+        if (waiting != null) {
+            waiting.forEach(productId -> timers.schedule(productId, sale.soldAt() + IDLE_MILLIS));
+        }
+        sale.productIds().forEach(productId -> track(productId, organizationId, sale.soldAt()));
+    }
+
+    private void track(Long productId, Long organizationId, long soldAt) {
+        organizationOfProduct.put(productId, organizationId);
+        Set<Long> waiting = waitingForOrganization.get(organizationId);
+        if (waiting != null) {
+            waiting.remove(productId);
+        }
+        timers.schedule(productId, soldAt + IDLE_MILLIS);
+    }
 
-            if (newPrice.compareTo(currentPrice) == 0) {
-                // already at lowest price
-                continue;
+    /**
+     * Lowers the price of the given products by one step, unless they were sold
+     * on another node in the meantime. One statement, however many products.
+     *
+     * @return when to look at each product next; products at their minimum
+     *         price are left out
+     */
+    private Map<Long, Long> decay(List<Long> productIds, long nowMillis) {
+        // Priced as of this tick, so the next tick a minute on finds them idle again
+        List<PriceDecay> rows = inventoryBatchRepository.decayPrices(productIds,
+                toDateTime(nowMillis - IDLE_MILLIS), "REDUCE-" + nowMillis, toDateTime(nowMillis));
+
+        Map<Long, Long> nextTimers = new HashMap<>();
+        Map<Long, List<Long>> decayedByOrganization = new HashMap<>();
+        for (PriceDecay row : rows) {
+            if (row.priceAfter() != null) {
+                decayedByOrganization.computeIfAbsent(row.organizationId(), id -> new ArrayList<>())
+                        .add(row.productId());
+                if (row.priceAfter().compareTo(row.minPrice()) > 0) {
+                    nextTimers.put(row.productId(), nowMillis + IDLE_MILLIS);
+                }
+            } else if (row.idleFrom() != null
+                    && row.idleFrom().toInstant().toEpochMilli() > nowMillis - IDLE_MILLIS) {
+                // Sold or repriced by another node meanwhile
+                nextTimers.put(row.productId(), row.idleFrom().toInstant().toEpochMilli() + IDLE_MILLIS);
             }
+        }
 
-            inventory.setAdjustedPrice(newPrice);
-            inventory.setUpdatedAt(OffsetDateTime.now());
-            inventory = inventoryRepository.save(inventory);
-
-            // Create price reduction transaction
-            InventoryTransaction transaction = new InventoryTransaction();
-            transaction.setInventory(inventory);
-            transaction.setTransactionType("ADJUSTMENT");
-            transaction.setQuantityChange(BigDecimal.ZERO);
-            transaction.setQuantityBefore(inventory.getQuantity());
-            transaction.setQuantityAfter(inventory.getQuantity());
-            transaction.setPriceBefore(currentPrice);
-            transaction.setPriceAfter(newPrice);
-            transaction.setReferenceId("REDUCE-" + System.currentTimeMillis());
-            transaction.setNotes("PriceCorrectionJob");
-            transaction.setCreatedBy(null);
-            transaction.setCreatedAt(OffsetDateTime.now());
-            inventoryTransactionRepository.save(transaction);
-
-            updatedCount++;
+        if (!decayedByOrganization.isEmpty()) {
+            decayedByOrganization.forEach(priceEngine::evictAfterCompletion);
+            log.info("Updated prices of {} products", rows.stream().filter(row -> row.priceAfter() != null).count());
         }
-        System.out.println("Updated prices of " + updatedCount + " products.");
+        return nextTimers;
+    }
+
+    private static OffsetDateTime toDateTime(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
     }
 }
@@ -15,6 +15,7 @@ public interface OrganizationMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true) // set in service
     @Mapping(target = "updatedAt", ignore = true) // set in service
+    @Mapping(target = "lastSaleAt", ignore = true) // maintained by the sale statements
     @Mapping(target = "priceIncreaseStep", source = "priceIncreaseStep")
     @Mapping(target = "priceDecreaseStep", source = "priceDecreaseStep")
     Organization toEntity(OrganizationRequestDto request);
@@ -25,6 +26,7 @@ public interface OrganizationMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "lastSaleAt", ignore = true)
     @Mapping(target = "priceIncreaseStep", source = "priceIncreaseStep")
     @Mapping(target = "priceDecreaseStep", source = "priceDecreaseStep")
     void updateEntity(@MappingTarget Organization target, OrganizationRequestDto source);
@@ -0,0 +1,61 @@
+package com.borsibaar.pricing;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Which products of one organization changed at each of its last
+ * {@code capacity} revisions. A revision that may have changed anything (an
+ * eviction without product ids) is logged as such, and no change set can be
+ * given across it.
+ */
+class ChangeLog {
+
+    private static final Object EVERYTHING = new Object();
+
+    private final Object[] changes;
+    private long revision;
+
+    ChangeLog(int capacity) {
+        this.changes = new Object[capacity];
+    }
+
+    /**
+     * Moves to the next revision.
+     *
+     * @param productIds products changed at it, {@code null} if it may have
+     *                   changed anything
+     */
+    synchronized long record(Collection<Long> productIds) {
+        revision++;
+        changes[(int) (revision % changes.length)] = productIds != null ? Set.copyOf(productIds) : EVERYTHING;
+        return revision;
+    }
+
+    synchronized long revision() {
+        return revision;
+    }
+
+    /**
+     * Products changed after {@code since} up to the current revision, or
+     * {@code null} if that is no longer known: the revisions in between were
+     * overwritten, one of them may have changed anything, or {@code since} was
+     * never reached.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized Set<Long> changedSince(long since) {
+        if (since < 0 || since > revision || revision - since > changes.length) {
+            return null;
+        }
+        Set<Long> changed = new HashSet<>();
+        for (long r = since + 1; r <= revision; r++) {
+            Object productIds = changes[(int) (r % changes.length)];
+            if (productIds == EVERYTHING) {
+                return null;
+            }
+            changed.addAll((Set<Long>) productIds);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,66 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.stock.SalesRateTracker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Raises the price faster the more the product sold recently: each sale adds
+ * the increase step times the number of sales in the last window divided by
+ * {@code target-sales}, at least one step and at most {@code max-multiplier}
+ * steps. Idle products decay linearly.
+ * <p>
+ * Recent sales are those {@link SalesRateTracker} counted on this node, so the
+ * window cannot exceed {@link SalesRateTracker#MAX_WINDOW_MILLIS}.
+ */
+@Component
+public class DemandRatePricingStrategy implements PricingStrategy {
+
+    public static final String NAME = "demand-rate";
+
+    private final long windowMillis;
+    private final int targetSales;
+    private final long maxMultiplier;
+
+    public DemandRatePricingStrategy(
+            @Value("${app.pricing.demand-rate.window-ms:300000}") long windowMillis,
+            @Value("${app.pricing.demand-rate.target-sales:10}") int targetSales,
+            @Value("${app.pricing.demand-rate.max-multiplier:4}") int maxMultiplier) {
+        if (windowMillis <= 0 || targetSales <= 0 || maxMultiplier < 1) {
+            throw new IllegalArgumentException("app.pricing.demand-rate settings must be positive");
+        }
+        if (windowMillis > SalesRateTracker.MAX_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("app.pricing.demand-rate.window-ms must be at most "
+                    + SalesRateTracker.MAX_WINDOW_MILLIS);
+        }
+        this.windowMillis = windowMillis;
+        this.targetSales = targetSales;
+        this.maxMultiplier = maxMultiplier * FixedPoint.ONE;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public long priceAfterSale(long price, long increaseStep, long maxPrice, int recentSales) {
+        long multiplier = Math.clamp(recentSales * FixedPoint.ONE / targetSales, FixedPoint.ONE, maxMultiplier);
+        return Math.min(price + FixedPoint.multiply(increaseStep, multiplier), maxPrice);
+    }
+
+    @Override
+    public long priceAfterIdle(long price, long decreaseStep, long minPrice, long idleMinutes) {
+        return LinearPricingStrategy.linearDecay(price, decreaseStep, minPrice, idleMinutes);
+    }
+
+    @Override
+    public long salesWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public boolean decaysLinearly() {
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package com.borsibaar.pricing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Increases like {@link LinearPricingStrategy}, but an idle product loses a
+ * fixed share of its distance to the minimum price every minute: fast right
+ * after demand stops, then ever more slowly. The decrease step is not used.
+ */
+@Component
+public class ExponentialDecayPricingStrategy implements PricingStrategy {
+
+    public static final String NAME = "exponential-decay";
+
+    // Share of the distance to the minimum that is kept per idle minute
+    private final long retained;
+
+    public ExponentialDecayPricingStrategy(
+            @Value("${app.pricing.exponential-decay.rate:0.10}") BigDecimal ratePerMinute) {
+        if (ratePerMinute.signum() < 0 || ratePerMinute.compareTo(BigDecimal.ONE) > 0) {
+            throw new IllegalArgumentException("app.pricing.exponential-decay.rate must be between 0 and 1");
+        }
+        this.retained = FixedPoint.ONE - FixedPoint.of(ratePerMinute);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public long priceAfterSale(long price, long increaseStep, long maxPrice, int recentSales) {
+        return Math.min(price + increaseStep, maxPrice);
+    }
+
+    @Override
+    public long priceAfterIdle(long price, long decreaseStep, long minPrice, long idleMinutes) {
+        if (retained >= FixedPoint.ONE) {
+            return price;
+        }
+        long gap = price - minPrice;
+        if (gap <= 0) {
+            return price;
+        }
+        return minPrice + FixedPoint.multiply(gap, FixedPoint.power(retained, idleMinutes));
+    }
+}
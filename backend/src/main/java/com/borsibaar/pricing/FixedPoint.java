@@ -0,0 +1,64 @@
+package com.borsibaar.pricing;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Prices as {@code long}s in ten-thousandths, the scale of the price columns,
+ * so pricing strategies can work on primitives. Conversion happens once per
+ * sale line, at the edge of the price book.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 4;
+    public static final long ONE = 10_000;
+    /** Upper bound of a product without a maximum price. */
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    // Scale of the intermediate results of power(), five decimals finer than prices
+    private static final long FINE_ONE = 1_000_000_000;
+
+    private FixedPoint() {
+    }
+
+    public static long of(BigDecimal value) {
+        return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static long of(BigDecimal value, long ifNull) {
+        return value != null ? of(value) : ifNull;
+    }
+
+    /**
+     * @param minScale scale the result has at least, so a price keeps the
+     *                 number of decimals it was entered with
+     */
+    public static BigDecimal toDecimal(long units, int minScale) {
+        BigDecimal value = BigDecimal.valueOf(units, SCALE).stripTrailingZeros();
+        return value.setScale(Math.max(value.scale(), Math.min(minScale, SCALE)));
+    }
+
+    /**
+     * {@code a * b} where {@code b} is a fixed-point factor, rounded down.
+     */
+    public static long multiply(long a, long b) {
+        return Math.multiplyExact(a, b) / ONE;
+    }
+
+    /**
+     * {@code factor ^ exponent} for a fixed-point factor between 0 and
+     * {@link #ONE}, by squaring, rounded down. Intermediate results keep five
+     * more decimals, so that rounding does not add up over the squarings.
+     */
+    public static long power(long factor, long exponent) {
+        long base = factor * (FINE_ONE / ONE);
+        long result = FINE_ONE;
+        for (long remaining = exponent; remaining > 0 && result > 0; remaining >>= 1) {
+            if ((remaining & 1) == 1) {
+                result = result * base / FINE_ONE;
+            }
+            base = base * base / FINE_ONE;
+        }
+        return result / (FINE_ONE / ONE);
+    }
+}
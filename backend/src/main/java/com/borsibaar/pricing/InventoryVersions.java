@@ -0,0 +1,78 @@
+package com.borsibaar.pricing;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Version of an organization's inventory listing and price board as served by
+ * this node, used as their ETag and as the key of the board snapshot. Reading
+ * it only touches memory.
+ * <p>
+ * The version is this process's epoch, the organization and its
+ * {@link PriceEngine#revision(Long)}, so it never repeats across restarts,
+ * nodes or organizations. With lazy decay or several nodes, prices also change
+ * without this node's revision moving; the version then additionally changes
+ * every {@code app.inventory.version.window-ms}, which bounds how long a stale
+ * response can be confirmed.
+ */
+@Component
+public class InventoryVersions {
+
+    private final PriceEngine priceEngine;
+    private final boolean timeBound;
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+    @Autowired
+    public InventoryVersions(PriceEngine priceEngine,
+            @Value("${app.pricing.lazy-decay.enabled:false}") boolean lazyDecay,
+            @Value("${app.pricing.cluster.enabled:false}") boolean clusterMode,
+            @Value("${app.inventory.version.window-ms:5000}") long windowMillis) {
+        this(priceEngine, lazyDecay || clusterMode, windowMillis, System::currentTimeMillis);
+    }
+
+    InventoryVersions(PriceEngine priceEngine, boolean timeBound, long windowMillis, LongSupplier clock) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("app.inventory.version.window-ms must be positive");
+        }
+        this.priceEngine = priceEngine;
+        this.timeBound = timeBound;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+    }
+
+    public String current(Long organizationId) {
+        return version(organizationId, priceEngine.revision(organizationId));
+    }
+
+    /**
+     * The {@link PriceEngine#revision(Long)} a version handed out by
+     * {@link #current(Long)} stands for, or {@code null} if changes since it
+     * cannot be told from this node's revisions: it comes from another process
+     * or organization, or, when prices also move without a revision, from an
+     * earlier window.
+     */
+    public Long revisionOf(Long organizationId, String version) {
+        String prefix = epoch + "-" + organizationId + "-";
+        if (version == null || !version.startsWith(prefix)) {
+            return null;
+        }
+        String[] parts = version.substring(prefix.length()).split("-", -1);
+        try {
+            long revision = Long.parseLong(parts[0]);
+            return version.equals(version(organizationId, revision)) ? revision : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String version(Long organizationId, long revision) {
+        String version = epoch + "-" + organizationId + "-" + revision;
+        return timeBound ? version + "-" + clock.getAsLong() / windowMillis : version;
+    }
+}
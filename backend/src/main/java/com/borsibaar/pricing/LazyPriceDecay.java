@@ -0,0 +1,102 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.repository.InventoryListingRow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+/**
+ * Idle price decay computed on read instead of written by the price job.
+ * <p>
+ * The stored price is an anchor: the price set by the latest sale, together
+ * with {@code price_anchored_at}. The current price is the anchor lowered by
+ * the product's {@link PricingStrategy} for every full {@link #IDLE_MILLIS}
+ * since then, down to the minimum price (the decrease step if none is set). Decay stops a
+ * minute after the organization's last sale, so while the organization keeps
+ * selling this gives the job's prices without any writes between sales, and
+ * nothing has to catch up after downtime. The decayed price is written back by
+ * the next sale of the product.
+ * <p>
+ * When disabled, the stored price is the current price and
+ * {@link com.borsibaar.jobs.PriceCorrectionJob} keeps it up to date.
+ */
+@Component
+public class LazyPriceDecay {
+
+    public static final long IDLE_MILLIS = 60_000;
+
+    private final boolean enabled;
+    private final PricingStrategies pricingStrategies;
+
+    public LazyPriceDecay(@Value("${app.pricing.lazy-decay.enabled:false}") boolean enabled,
+            PricingStrategies pricingStrategies) {
+        this.enabled = enabled;
+        this.pricingStrategies = pricingStrategies;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Current price of the inventory row. The product's organization must be
+     * loaded for lazy decay to apply.
+     */
+    public BigDecimal currentPrice(Inventory inventory, Product product, OffsetDateTime now) {
+        BigDecimal storedPrice = Optional.ofNullable(inventory.getAdjustedPrice()).orElse(product.getBasePrice());
+        Organization organization = product.getOrganization();
+        if (!enabled || organization == null || product.getCategory() == null
+                || !product.getCategory().isDynamicPricing()) {
+            return storedPrice;
+        }
+        PricingStrategy strategy = pricingStrategies.resolve(product.getCategory().getPricingStrategy(),
+                organization.getPricingStrategy());
+        return decayedPrice(strategy, storedPrice, inventory.getPriceAnchoredAt(), organization.getPriceDecreaseStep(),
+                product.getMinPrice(), organization.getLastSaleAt(), now);
+    }
+
+    /**
+     * Current price of a listing row, which carries its own pricing inputs.
+     */
+    public BigDecimal currentPrice(InventoryListingRow row, OffsetDateTime now) {
+        BigDecimal storedPrice = Optional.ofNullable(row.adjustedPrice()).orElse(row.basePrice());
+        if (!enabled || !row.dynamicPricing()) {
+            return storedPrice;
+        }
+        PricingStrategy strategy = pricingStrategies.resolve(row.categoryPricingStrategy(),
+                row.organizationPricingStrategy());
+        return decayedPrice(strategy, storedPrice, row.priceAnchoredAt(), row.priceDecreaseStep(), row.minPrice(),
+                row.organizationLastSaleAt(), now);
+    }
+
+    static BigDecimal decayedPrice(PricingStrategy strategy, BigDecimal anchorPrice, OffsetDateTime anchoredAt,
+            BigDecimal step, BigDecimal minPrice, OffsetDateTime organizationLastSaleAt, OffsetDateTime now) {
+        if (anchorPrice == null || anchoredAt == null || organizationLastSaleAt == null
+                || step == null || step.signum() <= 0) {
+            return anchorPrice;
+        }
+        BigDecimal floor = minPrice != null ? minPrice : step;
+        if (anchorPrice.compareTo(floor) <= 0) {
+            return anchorPrice;
+        }
+
+        OffsetDateTime decayUntil = organizationLastSaleAt.plus(Duration.ofMillis(IDLE_MILLIS));
+        if (now.isBefore(decayUntil)) {
+            decayUntil = now;
+        }
+        long steps = Duration.between(anchoredAt, decayUntil).toMillis() / IDLE_MILLIS;
+        if (steps <= 0) {
+            return anchorPrice;
+        }
+        long price = strategy.priceAfterIdle(FixedPoint.of(anchorPrice), FixedPoint.of(step), FixedPoint.of(floor),
+                steps);
+        return FixedPoint.toDecimal(price, Math.max(anchorPrice.scale(), step.scale()));
+    }
+}
@@ -0,0 +1,45 @@
+package com.borsibaar.pricing;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * One increase step per sale up to the maximum price, one decrease step per
+ * idle minute down to the minimum price. The default.
+ */
+@Component
+public class LinearPricingStrategy implements PricingStrategy {
+
+    public static final String NAME = "linear";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public long priceAfterSale(long price, long increaseStep, long maxPrice, int recentSales) {
+        return Math.min(price + increaseStep, maxPrice);
+    }
+
+    @Override
+    public long priceAfterIdle(long price, long decreaseStep, long minPrice, long idleMinutes) {
+        return linearDecay(price, decreaseStep, minPrice, idleMinutes);
+    }
+
+    @Override
+    public boolean decaysLinearly() {
+        return true;
+    }
+
+    static long linearDecay(long price, long decreaseStep, long minPrice, long idleMinutes) {
+        if (decreaseStep <= 0 || idleMinutes <= 0) {
+            return price;
+        }
+        // Steps needed to reach the minimum, so the product below cannot overflow
+        long stepsToMinimum = (price - minPrice + decreaseStep - 1) / decreaseStep;
+        if (idleMinutes >= stepsToMinimum) {
+            return minPrice;
+        }
+        return price - decreaseStep * idleMinutes;
+    }
+}
@@ -0,0 +1,93 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Current prices, price bounds and stock of every product of one organization.
+ * All reads and writes happen while holding {@link #lock}, which makes the book
+ * the single writer for the organization's prices.
+ */
+public class OrgPriceBook {
+    @Getter
+    private final Long organizationId;
+    @Getter
+    private final BigDecimal priceIncreaseStep;
+    @Getter
+    private final BigDecimal priceDecreaseStep;
+    @Getter
+    private final long priceIncreaseStepUnits;
+    @Getter
+    private final long priceDecreaseStepUnits;
+    // As loaded, then moved forward by sales and the rows they lock
+    @Getter
+    private OffsetDateTime organizationLastSaleAt;
+
+    private final String organizationPricingStrategy;
+    private final PricingStrategies pricingStrategies;
+    private final Map<Long, ProductPriceState> products = new HashMap<>();
+    // Changed by the work currently holding the lock
+    private final Set<Long> changedProductIds = new HashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    OrgPriceBook(Organization organization, Iterable<Product> products, Map<Long, BigDecimal> shardTotals,
+            PricingStrategies pricingStrategies) {
+        this.organizationId = organization.getId();
+        this.priceIncreaseStep = Optional.ofNullable(organization.getPriceIncreaseStep()).orElse(BigDecimal.ZERO);
+        this.priceDecreaseStep = Optional.ofNullable(organization.getPriceDecreaseStep()).orElse(BigDecimal.ZERO);
+        this.priceIncreaseStepUnits = FixedPoint.of(priceIncreaseStep);
+        this.priceDecreaseStepUnits = FixedPoint.of(priceDecreaseStep);
+        this.organizationLastSaleAt = organization.getLastSaleAt();
+        this.organizationPricingStrategy = organization.getPricingStrategy();
+        this.pricingStrategies = pricingStrategies;
+        for (Product product : products) {
+            put(product, shardTotals);
+        }
+    }
+
+    ProductPriceState get(Long productId) {
+        return products.get(productId);
+    }
+
+    ProductPriceState put(Product product, Map<Long, BigDecimal> shardTotals) {
+        String categoryStrategy = product.getCategory() != null ? product.getCategory().getPricingStrategy() : null;
+        ProductPriceState state = new ProductPriceState(product, shardTotals,
+                pricingStrategies.resolve(categoryStrategy, organizationPricingStrategy));
+        products.put(state.getProductId(), state);
+        return state;
+    }
+
+    void recordSale(OffsetDateTime soldAt) {
+        if (soldAt != null && (organizationLastSaleAt == null || soldAt.isAfter(organizationLastSaleAt))) {
+            organizationLastSaleAt = soldAt;
+        }
+    }
+
+    void markChanged(Long productId) {
+        changedProductIds.add(productId);
+    }
+
+    Set<Long> drainChanged() {
+        Set<Long> changed = Set.copyOf(changedProductIds);
+        changedProductIds.clear();
+        return changed;
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+}
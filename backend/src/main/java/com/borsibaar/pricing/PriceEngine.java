@@ -0,0 +1,365 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.dto.SaleItemRequestDto;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StripedStockManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory price and stock engine with one {@link OrgPriceBook} per organization.
+ * <p>
+ * Books are loaded lazily with a single query and then kept current by the sale
+ * path. With several nodes, another node's sales leave a book behind, so a
+ * sale first locks its rows and prices from what they hold. Anything that changes pricing inputs outside of a sale (stock
+ * corrections, product or organization changes, price job) must call
+ * {@link #evict(Long)} so the book is reloaded on next use. Both move the
+ * organization's {@link #revision(Long)}, and the products changed at each of
+ * the last {@code app.inventory.changes.capacity} revisions are kept for
+ * {@link #changedSince(Long, long)}.
+ */
+@Component
+@RequiredArgsConstructor
+public class PriceEngine {
+
+    private final ProductRepository productRepository;
+    private final OrganizationRepository organizationRepository;
+    private final InventoryBatchRepository inventoryBatchRepository;
+    private final StripedStockManager stripedStockManager;
+    private final LazyPriceDecay lazyPriceDecay;
+    private final PricingStrategies pricingStrategies;
+    private final SalesRateTracker salesRateTracker;
+
+    private final Map<Long, OrgPriceBook> books = new ConcurrentHashMap<>();
+    private final Map<Long, ChangeLog> changeLogs = new ConcurrentHashMap<>();
+
+    @Value("${app.inventory.changes.capacity:1024}")
+    private int changeLogCapacity = 1024;
+
+    /**
+     * Runs {@code work} as the single writer of the organization's price book.
+     * The book is evicted when the work fails or the surrounding transaction
+     * rolls back, so memory never keeps state the database did not accept.
+     * <p>
+     * The lock is released before the transaction commits. If the book is
+     * evicted in between, the next caller reloads it from rows that do not
+     * include this work yet, so that reload is evicted again once the
+     * transaction commits.
+     */
+    public <T> T execute(Long organizationId, Function<OrgPriceBook, T> work) {
+        OrgPriceBook book = getBook(organizationId);
+        book.lock();
+        try {
+            T result = work.apply(book);
+            afterCompletion(organizationId, book, book.drainChanged());
+            return result;
+        } catch (RuntimeException e) {
+            book.drainChanged();
+            evict(organizationId);
+            throw e;
+        } finally {
+            book.unlock();
+        }
+    }
+
+    /**
+     * Validates the whole basket against the book and, only if every line is
+     * valid, applies the stock and price changes. Must be called from within
+     * {@link #execute(Long, Function)}.
+     */
+    public List<SaleQuote> applySale(OrgPriceBook book, List<SaleItemRequestDto> items) {
+        return applySale(book, items, OffsetDateTime.now());
+    }
+
+    /**
+     * Same as {@link #applySale(OrgPriceBook, List)}, pricing the basket as of
+     * {@code soldAt}, the time the sale is persisted with.
+     * <p>
+     * The inventory rows of the basket are locked first and the book is brought
+     * up to date with them, so the customer is charged from the committed price
+     * and stock. Striped products are the exception: their rows are not locked,
+     * and they are priced from the book.
+     */
+    public List<SaleQuote> applySale(OrgPriceBook book, List<SaleItemRequestDto> items, OffsetDateTime soldAt) {
+        prepare(book, items);
+        syncWithRows(book, items);
+
+        Map<Long, BigDecimal> quantities = new HashMap<>();
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        // Earlier lines of the same product count as recent sales of the later ones
+        Map<Long, Integer> basketSales = new HashMap<>();
+        List<SaleQuote> quotes = new ArrayList<>(items.size());
+        long soldAtMillis = soldAt.toInstant().toEpochMilli();
+
+        for (SaleItemRequestDto item : items) {
+            ProductPriceState state = resolve(book, item.productId());
+
+            BigDecimal oldQuantity = quantities.getOrDefault(state.getProductId(), state.getQuantity());
+            BigDecimal newQuantity = oldQuantity.subtract(item.quantity());
+            if (newQuantity.compareTo(BigDecimal.ZERO) < 0) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Insufficient stock for " + state.getName() +
+                                ". Available: " + oldQuantity + ", Requested: "
+                                + item.quantity());
+            }
+
+            BigDecimal priceBefore = prices.containsKey(state.getProductId())
+                    ? prices.get(state.getProductId())
+                    : currentPrice(book, state, soldAt);
+            int recentSales = recentSales(book, state, soldAtMillis)
+                    + basketSales.getOrDefault(state.getProductId(), 0);
+            BigDecimal priceAfter = priceAfterSale(book, state, priceBefore, recentSales);
+            basketSales.merge(state.getProductId(), 1, Integer::sum);
+
+            quantities.put(state.getProductId(), newQuantity);
+            prices.put(state.getProductId(), priceAfter);
+            quotes.add(new SaleQuote(state.getProductId(), state.getInventoryId(), state.getName(),
+                    item.quantity(), oldQuantity, newQuantity, priceBefore, priceAfter));
+        }
+
+        quantities.forEach((productId, quantity) -> book.get(productId).apply(quantity, prices.get(productId), soldAt));
+        quantities.keySet().forEach(book::markChanged);
+        book.recordSale(soldAt);
+        salesRateTracker.recordSale(book.getOrganizationId(), quotes, soldAtMillis);
+        return quotes;
+    }
+
+    public void evict(Long organizationId) {
+        evict(organizationId, null);
+    }
+
+    /**
+     * Same as {@link #evict(Long)}, for a change limited to the given products.
+     */
+    public void evict(Long organizationId, Collection<Long> productIds) {
+        books.remove(organizationId);
+        nextRevision(organizationId, productIds);
+    }
+
+    /**
+     * Counter that moves forward whenever the organization's prices or stock
+     * may have changed through this node: once a sale's transaction completes,
+     * and on every eviction. Views derived from prices can be cached until it
+     * moves.
+     */
+    public long revision(Long organizationId) {
+        ChangeLog changeLog = changeLogs.get(organizationId);
+        return changeLog != null ? changeLog.revision() : 0;
+    }
+
+    /**
+     * Products of the organization whose price, stock or listing may have
+     * changed after revision {@code since}, or {@code null} if that is no longer
+     * known and the caller must start over from the full listing.
+     */
+    public Set<Long> changedSince(Long organizationId, long since) {
+        ChangeLog changeLog = changeLogs.get(organizationId);
+        if (changeLog == null) {
+            return since == 0 ? Set.of() : null;
+        }
+        return changeLog.changedSince(since);
+    }
+
+    /**
+     * Evicts the organization's book once the current transaction completes, so
+     * a concurrent reload cannot pick up the pre-commit state.
+     */
+    public void evictAfterCompletion(Long organizationId) {
+        evictAfterCompletion(organizationId, null);
+    }
+
+    /**
+     * Same as {@link #evictAfterCompletion(Long)}, for a change limited to the
+     * given products.
+     */
+    public void evictAfterCompletion(Long organizationId, Collection<Long> productIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(organizationId, productIds);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                evict(organizationId, productIds);
+            }
+        });
+    }
+
+    /**
+     * Moves the organization's {@link #revision(Long)} once the current
+     * transaction completes, for changes to what is listed (e.g. categories)
+     * that leave the price book and every product's listing valid.
+     */
+    public void markChangedAfterCompletion(Long organizationId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            nextRevision(organizationId, Set.of());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                nextRevision(organizationId, Set.of());
+            }
+        });
+    }
+
+    private OrgPriceBook getBook(Long organizationId) {
+        return books.computeIfAbsent(organizationId, this::load);
+    }
+
+    private OrgPriceBook load(Long organizationId) {
+        Organization organization = organizationRepository.findById(organizationId)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Organization not found: " + organizationId));
+        List<Product> products = productRepository.findAllForPricingByOrganizationId(organizationId);
+        return new OrgPriceBook(organization, products, stripedStockManager.shardTotals(inventoryIds(products)),
+                pricingStrategies);
+    }
+
+    /**
+     * Loads every basket product that is not part of the book yet (another
+     * organization's product, or one created after the book was loaded) with a
+     * single query, and rejects the basket if any of them cannot be sold here.
+     */
+    private void prepare(OrgPriceBook book, List<SaleItemRequestDto> items) {
+        Set<Long> missing = new LinkedHashSet<>();
+        for (SaleItemRequestDto item : items) {
+            if (book.get(item.productId()) == null) {
+                missing.add(item.productId());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Product> loaded = new HashMap<>();
+        productRepository.findAllForSaleByIdIn(missing).forEach(product -> loaded.put(product.getId(), product));
+        for (Long productId : missing) {
+            Product product = loaded.get(productId);
+            if (product == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found: " + productId);
+            }
+            if (!book.getOrganizationId().equals(product.getOrganizationId())) {
+                throw new ResponseStatusException(
+                        HttpStatus.FORBIDDEN, "Product does not belong to your organization");
+            }
+        }
+        Map<Long, BigDecimal> shardTotals = stripedStockManager.shardTotals(inventoryIds(loaded.values()));
+        missing.forEach(productId -> book.put(loaded.get(productId), shardTotals));
+    }
+
+    /**
+     * Locks the basket's inventory rows in id order and takes over their stock,
+     * price and the organization's last sale time. Only the basket is brought
+     * up to date; other products catch up when they are sold.
+     */
+    private void syncWithRows(OrgPriceBook book, List<SaleItemRequestDto> items) {
+        Map<Long, ProductPriceState> states = new HashMap<>();
+        for (SaleItemRequestDto item : items) {
+            ProductPriceState state = book.get(item.productId());
+            if (state.hasInventory() && !stripedStockManager.isStriped(state.getInventoryId())) {
+                states.put(state.getInventoryId(), state);
+            }
+        }
+        inventoryBatchRepository.lockForSale(states.keySet()).forEach((inventoryId, row) -> {
+            states.get(inventoryId).sync(row.quantity().add(row.shardQuantity()), row.adjustedPrice(),
+                    row.priceAnchoredAt());
+            book.recordSale(row.organizationLastSaleAt());
+        });
+    }
+
+    private static List<Long> inventoryIds(Collection<Product> products) {
+        return products.stream()
+                .filter(product -> product.getInventory() != null)
+                .map(product -> product.getInventory().getId())
+                .toList();
+    }
+
+    private ProductPriceState resolve(OrgPriceBook book, Long productId) {
+        ProductPriceState state = book.get(productId);
+
+        if (!state.isActive()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Product is not active: " + state.getName());
+        }
+        if (!state.hasInventory()) {
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "No inventory found for product: " + state.getName());
+        }
+        return state;
+    }
+
+    private BigDecimal currentPrice(OrgPriceBook book, ProductPriceState state, OffsetDateTime at) {
+        if (!lazyPriceDecay.isEnabled() || !state.isDynamicPricing()) {
+            return state.getPrice();
+        }
+        return LazyPriceDecay.decayedPrice(state.getStrategy(), state.getPrice(), state.getPriceAnchoredAt(),
+                book.getPriceDecreaseStep(), state.getMinPrice(), book.getOrganizationLastSaleAt(), at);
+    }
+
+    /**
+     * Committed sales of the product within the strategy's window, for the
+     * strategies that price by them.
+     */
+    private int recentSales(OrgPriceBook book, ProductPriceState state, long nowMillis) {
+        long windowMillis = state.getStrategy().salesWindowMillis();
+        return windowMillis > 0
+                ? salesRateTracker.salesWithin(book.getOrganizationId(), state.getProductId(), nowMillis, windowMillis)
+                : 0;
+    }
+
+    private BigDecimal priceAfterSale(OrgPriceBook book, ProductPriceState state, BigDecimal priceBefore,
+            int recentSales) {
+        if (!state.isDynamicPricing()) {
+            return priceBefore;
+        }
+        long priceAfter = state.getStrategy().priceAfterSale(FixedPoint.of(priceBefore),
+                book.getPriceIncreaseStepUnits(), state.getMaxPriceUnits(), recentSales);
+        return FixedPoint.toDecimal(priceAfter, Math.max(priceBefore.scale(), book.getPriceIncreaseStep().scale()));
+    }
+
+    private void afterCompletion(Long organizationId, OrgPriceBook book, Set<Long> changedProductIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            nextRevision(organizationId, changedProductIds);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // Another book may have been loaded while this one was still uncommitted
+                if (status != STATUS_COMMITTED || books.get(organizationId) != book) {
+                    evict(organizationId);
+                } else {
+                    nextRevision(organizationId, changedProductIds);
+                }
+            }
+        });
+    }
+
+    private void nextRevision(Long organizationId, Collection<Long> productIds) {
+        changeLogs.computeIfAbsent(organizationId, id -> new ChangeLog(changeLogCapacity)).record(productIds);
+    }
+}
@@ -0,0 +1,61 @@
+package com.borsibaar.pricing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The available {@link PricingStrategy} beans by name. A category's strategy
+ * takes precedence over its organization's; without either, or with a name
+ * that is no longer available, products are priced linearly.
+ */
+@Slf4j
+@Component
+public class PricingStrategies {
+
+    private final Map<String, PricingStrategy> strategies = new TreeMap<>();
+    private final PricingStrategy fallback;
+
+    public PricingStrategies(Collection<PricingStrategy> strategies) {
+        for (PricingStrategy strategy : strategies) {
+            if (this.strategies.put(strategy.name(), strategy) != null) {
+                throw new IllegalStateException("Duplicate pricing strategy: " + strategy.name());
+            }
+        }
+        this.fallback = this.strategies.getOrDefault(LinearPricingStrategy.NAME, new LinearPricingStrategy());
+    }
+
+    public Set<String> names() {
+        return strategies.keySet();
+    }
+
+    public boolean contains(String name) {
+        return strategies.containsKey(name);
+    }
+
+    /**
+     * Whether the named strategy can be selected when prices are not decayed
+     * lazily: see {@link PricingStrategy#decaysLinearly()}.
+     */
+    public boolean decaysLinearly(String name) {
+        PricingStrategy strategy = strategies.get(name);
+        return strategy != null && strategy.decaysLinearly();
+    }
+
+    public PricingStrategy resolve(String categoryStrategy, String organizationStrategy) {
+        String name = categoryStrategy != null ? categoryStrategy : organizationStrategy;
+        if (name == null) {
+            return fallback;
+        }
+        PricingStrategy strategy = strategies.get(name);
+        if (strategy == null) {
+            log.warn("Unknown pricing strategy '{}', pricing linearly", name);
+            return fallback;
+        }
+        return strategy;
+    }
+}
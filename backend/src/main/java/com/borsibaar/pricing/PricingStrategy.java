@@ -0,0 +1,45 @@
+package com.borsibaar.pricing;
+
+/**
+ * Pricing rule of dynamic-pricing products, selected per category or per
+ * organization by {@link #name()}. Implementations are Spring beans and are
+ * picked up by {@link PricingStrategies}.
+ * <p>
+ * Strategies run on the sale path while the organization's price book is
+ * locked, and on every read with lazy decay, so they work on
+ * {@link FixedPoint} longs and must not allocate.
+ */
+public interface PricingStrategy {
+
+    String name();
+
+    /**
+     * @param maxPrice    {@link FixedPoint#NO_LIMIT} if the product has none
+     * @param recentSales sales of the product within {@link #salesWindowMillis()}
+     *                    before this one; always 0 for strategies without a window
+     */
+    long priceAfterSale(long price, long increaseStep, long maxPrice, int recentSales);
+
+    /**
+     * Price after {@code idleMinutes} full minutes without a sale while the
+     * organization kept selling. Only called with {@code price > minPrice}.
+     */
+    long priceAfterIdle(long price, long decreaseStep, long minPrice, long idleMinutes);
+
+    /**
+     * Length of the window recent sales are counted over, or {@code 0} if the
+     * strategy does not use them and no sale times need to be kept.
+     */
+    default long salesWindowMillis() {
+        return 0;
+    }
+
+    /**
+     * Whether {@link #priceAfterIdle} lowers the price by the decrease step per
+     * idle minute. Without lazy decay the price job decays prices in SQL, one
+     * step at a time, so only such strategies are priced as configured.
+     */
+    default boolean decaysLinearly() {
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Product;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Mutable in-memory pricing and stock state of a single product.
+ * Only accessed while holding the owning {@link OrgPriceBook} lock.
+ */
+@Getter
+public class ProductPriceState {
+    private final Long productId;
+    private final Long inventoryId;
+    private final String name;
+    private final boolean active;
+    private final boolean dynamicPricing;
+    private final BigDecimal basePrice;
+    private final BigDecimal minPrice;
+    private final BigDecimal maxPrice;
+    private final long maxPriceUnits;
+    private final PricingStrategy strategy;
+
+    private BigDecimal price;
+    private OffsetDateTime priceAnchoredAt;
+    private BigDecimal quantity;
+
+    /**
+     * @param shardTotals stock held in striped shards, by inventory id; it is
+     *                    part of the product's available stock
+     */
+    ProductPriceState(Product product, Map<Long, BigDecimal> shardTotals, PricingStrategy strategy) {
+        Inventory inventory = product.getInventory();
+        this.productId = product.getId();
+        this.inventoryId = inventory != null ? inventory.getId() : null;
+        this.name = product.getName();
+        this.active = product.isActive();
+        this.dynamicPricing = product.getCategory() != null && product.getCategory().isDynamicPricing();
+        this.basePrice = product.getBasePrice();
+        this.minPrice = product.getMinPrice();
+        this.maxPrice = product.getMaxPrice();
+        this.maxPriceUnits = FixedPoint.of(maxPrice, FixedPoint.NO_LIMIT);
+        this.strategy = strategy;
+        this.price = inventory != null
+                ? Optional.ofNullable(inventory.getAdjustedPrice()).orElse(product.getBasePrice())
+                : product.getBasePrice();
+        this.priceAnchoredAt = inventory != null ? inventory.getPriceAnchoredAt() : null;
+        this.quantity = inventory != null
+                ? inventory.getQuantity().add(shardTotals.getOrDefault(inventory.getId(), BigDecimal.ZERO))
+                : null;
+    }
+
+    public boolean hasInventory() {
+        return inventoryId != null;
+    }
+
+    /**
+     * Takes over the stock and price stored in the product's inventory row.
+     */
+    void sync(BigDecimal storedQuantity, BigDecimal storedPrice, OffsetDateTime storedAnchoredAt) {
+        apply(storedQuantity, storedPrice != null ? storedPrice : basePrice, storedAnchoredAt);
+    }
+
+    void apply(BigDecimal newQuantity, BigDecimal newPrice, OffsetDateTime pricedAt) {
+        this.quantity = newQuantity;
+        this.price = newPrice;
+        this.priceAnchoredAt = pricedAt;
+    }
+}
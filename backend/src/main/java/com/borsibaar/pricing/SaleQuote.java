@@ -0,0 +1,22 @@
+package com.borsibaar.pricing;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of pricing one sale line in memory: the stock and price transition
+ * that has to be persisted for the product's inventory row.
+ */
+public record SaleQuote(
+        Long productId,
+        Long inventoryId,
+        String productName,
+        BigDecimal quantity,
+        BigDecimal quantityBefore,
+        BigDecimal quantityAfter,
+        BigDecimal priceBefore,
+        BigDecimal priceAfter) {
+
+    public BigDecimal totalPrice() {
+        return priceBefore.multiply(quantity);
+    }
+}
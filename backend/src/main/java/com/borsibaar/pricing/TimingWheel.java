@@ -0,0 +1,169 @@
+package com.borsibaar.pricing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel with one timer per key. Timers fire on the first
+ * tick at or after their deadline.
+ * <p>
+ * Level {@code i} has {@code wheelSize} buckets of {@code tick * wheelSize^i}
+ * milliseconds each. A timer is placed on the lowest level whose span covers
+ * its deadline and moves down a level each time the wheel above turns over, so
+ * scheduling, rescheduling and cancelling are O(1) and advancing the clock
+ * only touches buckets that are due. Timers further out than the top level
+ * can cover are parked on it and re-placed on every turn.
+ * <p>
+ * Not thread-safe.
+ */
+public class TimingWheel<K> {
+
+    private record Timer<K>(K key, long deadline, int level, int bucket) {
+    }
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<List<Set<K>>> levels;
+    private final Map<K, Timer<K>> timers = new HashMap<>();
+    private final List<K> due = new ArrayList<>();
+
+    private long currentTime;
+
+    public TimingWheel(long tickMillis, int wheelSize, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levels = new ArrayList<>(levels);
+        for (int i = 0; i < levels; i++) {
+            List<Set<K>> buckets = new ArrayList<>(wheelSize);
+            for (int j = 0; j < wheelSize; j++) {
+                buckets.add(new LinkedHashSet<>());
+            }
+            this.levels.add(buckets);
+        }
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+    }
+
+    /**
+     * Arms the key's timer for {@code deadline}, replacing any earlier one.
+     */
+    public void schedule(K key, long deadline) {
+        cancel(key);
+        place(key, deadline);
+    }
+
+    public boolean cancel(K key) {
+        Timer<K> timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        if (timer.level() < 0) {
+            due.remove(key);
+        } else {
+            levels.get(timer.level()).get(timer.bucket()).remove(key);
+        }
+        return true;
+    }
+
+    public boolean isScheduled(K key) {
+        return timers.containsKey(key);
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    /**
+     * Moves the clock forward to {@code now} and hands every key whose
+     * deadline has passed to {@code expired}, earliest tick first.
+     */
+    public void advance(long now, Consumer<K> expired) {
+        fireDue(expired);
+        while (currentTime + tickMillis <= now) {
+            currentTime += tickMillis;
+            // Turn over every level whose lower level completed a revolution
+            long span = tickMillis;
+            int level = 0;
+            while (level + 1 < levels.size() && (currentTime / span) % wheelSize == 0) {
+                span *= wheelSize;
+                level++;
+            }
+            for (int i = level; i > 0; i--) {
+                cascade(i);
+            }
+            Set<K> bucket = levels.get(0).get(bucketIndex(currentTime, tickMillis));
+            for (K key : bucket) {
+                markDue(key, timers.get(key).deadline());
+            }
+            bucket.clear();
+            fireDue(expired);
+        }
+    }
+
+    private void cascade(int level) {
+        long span = levelTick(level);
+        Set<K> bucket = levels.get(level).get(bucketIndex(currentTime, span));
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<K> keys = new ArrayList<>(bucket);
+        bucket.clear();
+        keys.forEach(key -> place(key, timers.get(key).deadline()));
+    }
+
+    private void place(K key, long deadline) {
+        // Timers fire on the first tick at or after their deadline
+        long slot = Math.ceilDiv(deadline, tickMillis) * tickMillis;
+        long delay = slot - currentTime;
+        if (delay <= 0) {
+            markDue(key, deadline);
+            return;
+        }
+        int level = 0;
+        long span = tickMillis;
+        while (level + 1 < levels.size() && delay >= span * wheelSize) {
+            span *= wheelSize;
+            level++;
+        }
+        int bucket = bucketIndex(slot, span);
+        levels.get(level).get(bucket).add(key);
+        timers.put(key, new Timer<>(key, deadline, level, bucket));
+    }
+
+    private void fireDue(Consumer<K> expired) {
+        if (due.isEmpty()) {
+            return;
+        }
+        List<K> keys = new ArrayList<>(due);
+        due.clear();
+        for (K key : keys) {
+            // Skip timers cancelled or rescheduled by an earlier callback of the same tick
+            Timer<K> timer = timers.get(key);
+            if (timer != null && timer.level() < 0) {
+                timers.remove(key);
+                expired.accept(key);
+            }
+        }
+    }
+
+    private void markDue(K key, long deadline) {
+        due.add(key);
+        timers.put(key, new Timer<>(key, deadline, -1, -1));
+    }
+
+    private long levelTick(int level) {
+        long span = tickMillis;
+        for (int i = 0; i < level; i++) {
+            span *= wheelSize;
+        }
+        return span;
+    }
+
+    private int bucketIndex(long time, long span) {
+        return (int) Math.floorMod(time / span, (long) wheelSize);
+    }
+}
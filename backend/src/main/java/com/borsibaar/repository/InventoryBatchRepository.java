@@ -0,0 +1,243 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.pricing.SaleQuote;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inventory row updates that are sent to the database as JDBC batches, so a
+ * multi-line sale or a price job tick costs one round trip instead of one per row.
+ * The sale path's organization update is kept here too. Runs on the connection
+ * of the surrounding JPA transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class InventoryBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Guarded stock decrement for every sale line, which also records the sale
+     * time and anchors the new price at it. An entry of {@code 0} in the result means that line's row did not
+     * have enough stock left.
+     */
+    public int[] decrementStockAndSetPrices(List<SaleQuote> quotes, OffsetDateTime updatedAt) {
+        return jdbcTemplate.batchUpdate("""
+                UPDATE inventory
+                SET quantity = quantity - ?, adjusted_price = ?, updated_at = ?, last_sale_at = ?,
+                    price_anchored_at = ?
+                WHERE id = ? AND quantity >= ?
+                """, quotes, quotes.size(), (ps, quote) -> {
+            ps.setBigDecimal(1, quote.quantity());
+            ps.setBigDecimal(2, quote.priceAfter());
+            ps.setObject(3, updatedAt);
+            ps.setObject(4, updatedAt);
+            ps.setObject(5, updatedAt);
+            ps.setLong(6, quote.inventoryId());
+            ps.setBigDecimal(7, quote.quantity());
+        })[0];
+    }
+
+    /**
+     * Post-sale price of a product and the time of the sale that set it.
+     */
+    public record PriceAfterSale(BigDecimal price, OffsetDateTime soldAt) {
+    }
+
+    /**
+     * Writes post-sale prices of products whose stock was sold from elsewhere
+     * (striped shards), recording each sale's time with them. A row whose
+     * price was anchored at or after that sale keeps its newer price.
+     */
+    public void updatePricesAfterSales(Map<Long, PriceAfterSale> pricesByInventoryId) {
+        if (pricesByInventoryId.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                UPDATE inventory SET adjusted_price = ?, updated_at = ?, last_sale_at = ?, price_anchored_at = ?
+                WHERE id = ? AND (price_anchored_at IS NULL OR price_anchored_at < ?)
+                """, pricesByInventoryId.entrySet(), pricesByInventoryId.size(), (ps, entry) -> {
+                    OffsetDateTime soldAt = entry.getValue().soldAt();
+                    ps.setBigDecimal(1, entry.getValue().price());
+                    ps.setObject(2, soldAt);
+                    ps.setObject(3, soldAt);
+                    ps.setObject(4, soldAt);
+                    ps.setLong(5, entry.getKey());
+                    ps.setObject(6, soldAt);
+                });
+    }
+
+    /**
+     * Post-sale prices the ledger holds but the inventory rows do not: rows
+     * whose newest ledger entry is a sale after their price anchor.
+     */
+    public Map<Long, PriceAfterSale> findUnwrittenPricesAfterSales(Collection<Long> inventoryIds) {
+        Map<Long, PriceAfterSale> prices = new HashMap<>();
+        if (inventoryIds.isEmpty()) {
+            return prices;
+        }
+        namedParameterJdbcTemplate.query("""
+                SELECT t.inventory_id, t.price_after, t.created_at
+                FROM inventory i
+                JOIN inventory_transactions t ON t.inventory_id = i.id
+                WHERE i.id IN (:ids) AND t.transaction_type = 'SALE'
+                  AND (i.price_anchored_at IS NULL OR t.created_at > i.price_anchored_at)
+                  AND t.id = (SELECT t2.id FROM inventory_transactions t2 WHERE t2.inventory_id = i.id
+                              ORDER BY t2.created_at DESC, t2.id DESC LIMIT 1)
+                """, new MapSqlParameterSource("ids", inventoryIds), rs -> {
+                    prices.put(rs.getLong("inventory_id"), new PriceAfterSale(rs.getBigDecimal("price_after"),
+                            rs.getObject("created_at", OffsetDateTime.class)));
+                });
+        return prices;
+    }
+
+    /**
+     * Moves the organization's last sale time forward. The row is only written
+     * when the stored time is more than {@code resolution} old, so concurrent
+     * sales of one organization do not all queue on its row lock.
+     */
+    public void recordOrganizationSale(Long organizationId, OffsetDateTime soldAt, Duration resolution) {
+        jdbcTemplate.update("""
+                UPDATE organizations SET last_sale_at = ?
+                WHERE id = ? AND (last_sale_at IS NULL OR last_sale_at < ?)
+                """, soldAt, organizationId, soldAt.minus(resolution));
+    }
+
+    /**
+     * Lowers the price of every given dynamic-pricing product that has been idle
+     * since {@code idleSince} (neither sold nor repriced) by its organization's
+     * decrease step, down to its minimum price (the step if none is set), and
+     * writes the ledger rows for the changes. Both happen in a single statement;
+     * rows are locked in id order and re-read if a sale changed them meanwhile.
+     * Running it twice for the same minute changes nothing the second time.
+     *
+     * @return one row per product that has an inventory row, with
+     *         {@code priceAfter} left {@code null} when its price was not changed
+     */
+    public List<PriceDecay> decayPrices(Collection<Long> productIds, OffsetDateTime idleSince, String referenceId,
+            OffsetDateTime now) {
+        return decay("i.product_id IN (:productIds)",
+                new MapSqlParameterSource("productIds", productIds), idleSince, referenceId, now);
+    }
+
+    /**
+     * Same as {@link #decayPrices}, for every idle product of the given
+     * organizations. Only the rows that are due are locked and returned.
+     */
+    public List<PriceDecay> decayIdlePrices(Collection<Long> organizationIds, OffsetDateTime idleSince,
+            String referenceId, OffsetDateTime now) {
+        return decay("""
+                p.organization_id IN (:organizationIds)
+                AND (GREATEST(i.last_sale_at, i.price_anchored_at) IS NULL
+                     OR GREATEST(i.last_sale_at, i.price_anchored_at) <= :idleSince)
+                AND COALESCE(i.adjusted_price, p.base_price) > COALESCE(p.min_price, o.price_decrease_step)
+                """,
+                new MapSqlParameterSource("organizationIds", organizationIds), idleSince, referenceId, now);
+    }
+
+    private List<PriceDecay> decay(String filter, MapSqlParameterSource params, OffsetDateTime idleSince,
+            String referenceId, OffsetDateTime now) {
+        params.addValue("idleSince", idleSince)
+                .addValue("referenceId", referenceId)
+                .addValue("now", now);
+        return namedParameterJdbcTemplate.query("""
+                WITH due AS (
+                    SELECT i.id, i.product_id, p.organization_id, i.quantity,
+                           GREATEST(i.last_sale_at, i.price_anchored_at) AS idle_from,
+                           COALESCE(i.adjusted_price, p.base_price) AS price_before,
+                           COALESCE(p.min_price, o.price_decrease_step) AS min_price,
+                           o.price_decrease_step AS step
+                    FROM inventory i
+                    JOIN products p ON p.id = i.product_id
+                    JOIN categories c ON c.id = p.category_id
+                    JOIN organizations o ON o.id = p.organization_id
+                    WHERE %s
+                      AND c.dynamic_pricing = TRUE
+                    ORDER BY i.id
+                    FOR UPDATE OF i
+                ), updated AS (
+                    UPDATE inventory i
+                    SET adjusted_price = GREATEST(due.price_before - due.step, due.min_price), updated_at = :now,
+                        price_anchored_at = :now
+                    FROM due
+                    WHERE i.id = due.id
+                      AND (due.idle_from IS NULL OR due.idle_from <= :idleSince)
+                      AND due.price_before > due.min_price
+                    RETURNING i.id, i.adjusted_price
+                ), ledger AS (
+                    INSERT INTO inventory_transactions (id, inventory_id, transaction_type, quantity_change,
+                        quantity_before, quantity_after, price_before, price_after, reference_id, notes, created_at)
+                    SELECT nextval('inventory_transactions_seq'), due.id, 'ADJUSTMENT', 0, due.quantity, due.quantity,
+                           due.price_before, updated.adjusted_price, :referenceId, 'PriceCorrectionJob', :now
+                    FROM updated JOIN due ON due.id = updated.id
+                )
+                SELECT due.product_id, due.organization_id, due.idle_from, due.min_price,
+                       updated.adjusted_price AS price_after
+                FROM due LEFT JOIN updated ON updated.id = due.id
+                """.formatted(filter), params, (rs, rowNum) -> new PriceDecay(
+                rs.getLong("product_id"),
+                rs.getLong("organization_id"),
+                rs.getObject("idle_from", OffsetDateTime.class),
+                rs.getBigDecimal("min_price"),
+                rs.getBigDecimal("price_after")));
+    }
+
+    /**
+     * @param idleFrom time of the product's latest sale or price change
+     */
+    public record PriceDecay(Long productId, Long organizationId, OffsetDateTime idleFrom, BigDecimal minPrice,
+            BigDecimal priceAfter) {
+    }
+
+    /**
+     * Pricing inputs of an inventory row as committed, read under the row lock.
+     *
+     * @param shardQuantity          stock held in the row's striped shards
+     * @param organizationLastSaleAt last sale of the product's organization
+     */
+    public record SaleRow(BigDecimal quantity, BigDecimal shardQuantity, BigDecimal adjustedPrice,
+            OffsetDateTime priceAnchoredAt, OffsetDateTime organizationLastSaleAt) {
+    }
+
+    /**
+     * Locks the given rows in id order and reads what a sale prices them from,
+     * in one query. Neither the shards nor the organization row are locked.
+     */
+    public Map<Long, SaleRow> lockForSale(Collection<Long> inventoryIds) {
+        Map<Long, SaleRow> rows = new HashMap<>();
+        if (inventoryIds.isEmpty()) {
+            return rows;
+        }
+        namedParameterJdbcTemplate.query("""
+                SELECT i.id, i.quantity, i.adjusted_price, i.price_anchored_at,
+                       (SELECT COALESCE(SUM(s.quantity), 0) FROM inventory_stock_shards s
+                        WHERE s.inventory_id = i.id) AS shard_quantity,
+                       (SELECT o.last_sale_at FROM products p JOIN organizations o ON o.id = p.organization_id
+                        WHERE p.id = i.product_id) AS organization_last_sale_at
+                FROM inventory i
+                WHERE i.id IN (:ids)
+                ORDER BY i.id
+                FOR UPDATE
+                """, new MapSqlParameterSource("ids", inventoryIds), rs -> {
+                    rows.put(rs.getLong("id"), new SaleRow(
+                            rs.getBigDecimal("quantity"),
+                            rs.getBigDecimal("shard_quantity"),
+                            rs.getBigDecimal("adjusted_price"),
+                            rs.getObject("price_anchored_at", OffsetDateTime.class),
+                            rs.getObject("organization_last_sale_at", OffsetDateTime.class)));
+                });
+        return rows;
+    }
+}
@@ -0,0 +1,30 @@
+package com.borsibaar.repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * One inventory row of an organization's listing with the product fields it
+ * shows and the pricing inputs lazy decay needs, read in a single query by
+ * {@link InventoryRepository#findListing(Long, Long)}.
+ */
+public record InventoryListingRow(
+        Long id,
+        Long organizationId,
+        Long productId,
+        Long categoryId,
+        String productName,
+        String description,
+        BigDecimal quantity,
+        BigDecimal adjustedPrice,
+        OffsetDateTime priceAnchoredAt,
+        OffsetDateTime updatedAt,
+        BigDecimal basePrice,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        boolean dynamicPricing,
+        String categoryPricingStrategy,
+        BigDecimal priceDecreaseStep,
+        OffsetDateTime organizationLastSaleAt,
+        String organizationPricingStrategy) {
+}
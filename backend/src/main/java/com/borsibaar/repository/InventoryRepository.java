@@ -2,10 +2,14 @@ package com.borsibaar.repository;
 
 import com.borsibaar.entity.Inventory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,10 +19,79 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
     List<Inventory> findByOrganizationId(Long organizationId);
 
-    @Query("SELECT i FROM Inventory i JOIN Product p ON i.productId = p.id " +
-            "WHERE i.organizationId = :organizationId AND p.categoryId = :categoryId")
-    List<Inventory> findByOrganizationIdAndCategoryId(@Param("organizationId") Long organizationId,
+    /**
+     * The organization's stock of active products, optionally of one category,
+     * ordered by product name. One statement, whatever the number of rows.
+     */
+    @Query("""
+            SELECT new com.borsibaar.repository.InventoryListingRow(
+                i.id, p.organizationId, p.id, p.categoryId, p.name, p.description, i.quantity, i.adjustedPrice,
+                i.priceAnchoredAt, i.updatedAt, p.basePrice, p.minPrice, p.maxPrice,
+                c.dynamicPricing, c.pricingStrategy, o.priceDecreaseStep, o.lastSaleAt, o.pricingStrategy)
+            FROM Inventory i
+            JOIN Product p ON p.id = i.productId
+            JOIN Category c ON c.id = p.categoryId
+            JOIN Organization o ON o.id = p.organizationId
+            WHERE p.organizationId = :organizationId AND p.isActive = TRUE
+            AND (:categoryId IS NULL OR p.categoryId = :categoryId)
+            ORDER BY p.name
+            """)
+    List<InventoryListingRow> findListing(@Param("organizationId") Long organizationId,
             @Param("categoryId") Long categoryId);
 
+    /**
+     * Rows of {@link #findListing(Long, Long)} for the given products only.
+     * Products that are inactive or not listed are left out.
+     */
+    @Query("""
+            SELECT new com.borsibaar.repository.InventoryListingRow(
+                i.id, p.organizationId, p.id, p.categoryId, p.name, p.description, i.quantity, i.adjustedPrice,
+                i.priceAnchoredAt, i.updatedAt, p.basePrice, p.minPrice, p.maxPrice,
+                c.dynamicPricing, c.pricingStrategy, o.priceDecreaseStep, o.lastSaleAt, o.pricingStrategy)
+            FROM Inventory i
+            JOIN Product p ON p.id = i.productId
+            JOIN Category c ON c.id = p.categoryId
+            JOIN Organization o ON o.id = p.organizationId
+            WHERE p.organizationId = :organizationId AND p.isActive = TRUE AND p.id IN :productIds
+            ORDER BY p.name
+            """)
+    List<InventoryListingRow> findListingByProductIds(@Param("organizationId") Long organizationId,
+            @Param("productIds") Collection<Long> productIds);
+
     boolean existsByProductId(Long productId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity - :quantity, i.updatedAt = :updatedAt " +
+            "WHERE i.id = :id AND i.quantity >= :quantity")
+    int decrementStock(@Param("id") Long id,
+            @Param("quantity") BigDecimal quantity,
+            @Param("updatedAt") OffsetDateTime updatedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity + :quantity, i.updatedAt = :updatedAt WHERE i.id = :id")
+    int incrementStock(@Param("id") Long id,
+            @Param("quantity") BigDecimal quantity,
+            @Param("updatedAt") OffsetDateTime updatedAt);
+
+    /**
+     * Sets the stock to {@code newQuantity} only while it still is
+     * {@code expectedQuantity}; no row is updated when it changed meanwhile.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Inventory i SET i.quantity = :newQuantity, i.updatedAt = :updatedAt " +
+            "WHERE i.id = :id AND i.quantity = :expectedQuantity")
+    int replaceStock(@Param("id") Long id,
+            @Param("expectedQuantity") BigDecimal expectedQuantity,
+            @Param("newQuantity") BigDecimal newQuantity,
+            @Param("updatedAt") OffsetDateTime updatedAt);
+
+    /**
+     * Reads the stock straight from the database. Called after a guarded update
+     * in the same transaction, it returns the post-update value of the locked row.
+     */
+    @Query("SELECT i.quantity FROM Inventory i WHERE i.id = :id")
+    BigDecimal findQuantityById(@Param("id") Long id);
+
+    @Query(value = "SELECT quantity FROM inventory WHERE id = :id FOR UPDATE", nativeQuery = true)
+    BigDecimal lockQuantityById(@Param("id") Long id);
 }
@@ -0,0 +1,94 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class InventoryStockShardRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public void insertShards(Long inventoryId, List<BigDecimal> quantities, OffsetDateTime updatedAt) {
+        List<Object[]> rows = new ArrayList<>(quantities.size());
+        for (int shardNo = 0; shardNo < quantities.size(); shardNo++) {
+            rows.add(new Object[] { inventoryId, shardNo, quantities.get(shardNo), updatedAt });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO inventory_stock_shards (inventory_id, shard_no, quantity, updated_at) VALUES (?, ?, ?, ?)",
+                rows);
+    }
+
+    /**
+     * Guarded decrement of one shard; returns {@code 0} when the shard does not
+     * exist (any more) or has less than {@code quantity} left.
+     */
+    public int decrement(Long inventoryId, int shardNo, BigDecimal quantity, OffsetDateTime updatedAt) {
+        return jdbcTemplate.update("""
+                UPDATE inventory_stock_shards
+                SET quantity = quantity - ?, updated_at = ?
+                WHERE inventory_id = ? AND shard_no = ? AND quantity >= ?
+                """, quantity, updatedAt, inventoryId, shardNo, quantity);
+    }
+
+    /**
+     * Locks all shards of the inventory row, in shard order, and returns their
+     * quantities by shard number.
+     */
+    public Map<Integer, BigDecimal> lockShards(Long inventoryId) {
+        return lockShards(inventoryId, 0);
+    }
+
+    /**
+     * Locks the shards of the inventory row from {@code fromShardNo} up, in
+     * shard order, and returns their quantities by shard number.
+     */
+    public Map<Integer, BigDecimal> lockShards(Long inventoryId, int fromShardNo) {
+        Map<Integer, BigDecimal> shards = new LinkedHashMap<>();
+        jdbcTemplate.query("""
+                SELECT shard_no, quantity FROM inventory_stock_shards
+                WHERE inventory_id = ? AND shard_no >= ? ORDER BY shard_no FOR UPDATE
+                """, rs -> {
+                    shards.put(rs.getInt("shard_no"), rs.getBigDecimal("quantity"));
+                }, inventoryId, fromShardNo);
+        return shards;
+    }
+
+    public void deleteByInventoryId(Long inventoryId) {
+        jdbcTemplate.update("DELETE FROM inventory_stock_shards WHERE inventory_id = ?", inventoryId);
+    }
+
+    public Map<Long, BigDecimal> sumByInventoryIds(Collection<Long> inventoryIds) {
+        Map<Long, BigDecimal> totals = new HashMap<>();
+        if (inventoryIds.isEmpty()) {
+            return totals;
+        }
+        namedParameterJdbcTemplate.query("""
+                SELECT inventory_id, SUM(quantity) AS total
+                FROM inventory_stock_shards
+                WHERE inventory_id IN (:ids)
+                GROUP BY inventory_id
+                """, new MapSqlParameterSource("ids", inventoryIds),
+                rs -> {
+                    totals.put(rs.getLong("inventory_id"), rs.getBigDecimal("total"));
+                });
+        return totals;
+    }
+
+    public List<Long> findStripedInventoryIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT inventory_id FROM inventory_stock_shards", Long.class);
+    }
+}
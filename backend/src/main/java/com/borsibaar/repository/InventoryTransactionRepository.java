@@ -1,38 +1,43 @@
 package com.borsibaar.repository;
 
 import com.borsibaar.entity.InventoryTransaction;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface InventoryTransactionRepository extends JpaRepository<InventoryTransaction, Long> {
 
-    List<InventoryTransaction> findByInventoryIdOrderByCreatedAtDesc(Long inventoryId);
-
-    Optional<InventoryTransaction> findFirstByInventoryIdOrderByCreatedAtDesc(Long inventoryId);
-
-    List<InventoryTransaction> findByReferenceId(String referenceId);
-
+    /**
+     * One page of an inventory's ledger, newest first, optionally of one type
+     * and time range. Pages are keyed on {@code (createdAt, id)}: the next page
+     * starts after the last row of the previous one, so every page costs the
+     * same however deep it is. Served by {@code idx_inventory_trans_history};
+     * on PostgreSQL the time range and the cursor also limit the scan to the
+     * monthly partitions they reach, and without them the newest months are
+     * read first until the page is full.
+     */
     @Query("""
             SELECT it FROM InventoryTransaction it
-            JOIN Inventory i ON it.inventoryId = i.id
-            WHERE i.organizationId = :organizationId
-            AND it.transactionType = 'SALE'
-            ORDER BY it.createdAt DESC
+            WHERE it.inventoryId = :inventoryId
+            AND (:type IS NULL OR it.transactionType = :type)
+            AND (:from IS NULL OR it.createdAt >= :from)
+            AND (:to IS NULL OR it.createdAt < :to)
+            AND (:afterCreatedAt IS NULL OR (it.createdAt <= :afterCreatedAt
+                AND (it.createdAt < :afterCreatedAt OR it.id < :afterId)))
+            ORDER BY it.createdAt DESC, it.id DESC
             """)
-    List<InventoryTransaction> findSaleTransactionsByOrganizationId(@Param("organizationId") Long organizationId);
+    List<InventoryTransaction> findHistoryPage(@Param("inventoryId") Long inventoryId,
+            @Param("type") String type,
+            @Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to,
+            @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+            @Param("afterId") Long afterId,
+            Limit limit);
 
-    @Query(value = """
-              SELECT DISTINCT i.organizationId
-              FROM InventoryTransaction it
-              JOIN Inventory i ON i.id = it.inventoryId
-              WHERE it.transactionType = 'SALE'
-                AND it.createdAt >= (CURRENT_TIMESTAMP - 60 SECOND)
-            """)
-    List<Long> findOrganizationIdsWithSalesInLastMinute();
 }
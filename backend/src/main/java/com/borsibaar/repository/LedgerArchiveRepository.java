@@ -0,0 +1,53 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Finds and removes the ledger rows that {@code LedgerArchiveJob} moves to the
+ * archive files. Months are UTC months, like the ledger's partitions.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerArchiveRepository {
+
+    public record ArchivableMonth(Long organizationId, YearMonth month) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Organizations and months that have ledger rows before {@code before},
+     * oldest month first.
+     */
+    public List<ArchivableMonth> findMonthsBefore(OffsetDateTime before) {
+        return jdbcTemplate.query("""
+                SELECT DISTINCT i.organization_id,
+                       DATE_TRUNC('month', t.created_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS first_day
+                FROM inventory_transactions t
+                JOIN inventory i ON i.id = t.inventory_id
+                WHERE t.created_at < ?
+                ORDER BY first_day, i.organization_id
+                """, (rs, rowNum) -> new ArchivableMonth(rs.getLong("organization_id"),
+                YearMonth.from(rs.getObject("first_day", OffsetDateTime.class).withOffsetSameInstant(ZoneOffset.UTC))),
+                before);
+    }
+
+    /**
+     * @return the number of rows deleted
+     */
+    public int deleteMonth(Long organizationId, YearMonth month) {
+        OffsetDateTime from = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        return jdbcTemplate.update("""
+                DELETE FROM inventory_transactions
+                WHERE inventory_id IN (SELECT id FROM inventory WHERE organization_id = ?)
+                  AND created_at >= ? AND created_at < ?
+                """, organizationId, from, from.plusMonths(1));
+    }
+}
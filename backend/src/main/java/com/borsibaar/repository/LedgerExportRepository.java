@@ -0,0 +1,86 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Reads an organization's whole ledger as a stream. Rows are fetched from a
+ * forward-only cursor {@code app.ledger-export.fetch-size} at a time and handed
+ * to the consumer one by one, so memory does not grow with the ledger.
+ * <p>
+ * PostgreSQL only uses a cursor inside a transaction; callers must hold one.
+ * Rows moved to the {@link com.borsibaar.archive.LedgerArchive} are not read.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerExportRepository {
+
+    private static final String LEDGER_SQL = """
+            SELECT t.id, t.created_at, t.transaction_type, t.inventory_id, i.product_id, p.name AS product_name,
+                   t.quantity_change, t.quantity_before, t.quantity_after, t.price_before, t.price_after,
+                   t.reference_id, t.bar_station_id, t.created_by, t.notes
+            FROM inventory_transactions t
+            JOIN inventory i ON i.id = t.inventory_id
+            JOIN products p ON p.id = i.product_id
+            WHERE i.organization_id = ?
+              AND (CAST(? AS VARCHAR(20)) IS NULL OR t.transaction_type = ?)
+              AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR t.created_at >= ?)
+              AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR t.created_at < ?)
+            ORDER BY t.created_at, t.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.ledger-export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    /**
+     * Passes every matching row to {@code consumer}, oldest first. An exception
+     * thrown by the consumer stops the query and closes its cursor.
+     */
+    public void streamLedger(Long organizationId, String type, OffsetDateTime from, OffsetDateTime to,
+            Consumer<LedgerRow> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(LEDGER_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, organizationId);
+            ps.setString(2, type);
+            ps.setString(3, type);
+            ps.setObject(4, from);
+            ps.setObject(5, from);
+            ps.setObject(6, to);
+            ps.setObject(7, to);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(toRow(rs)));
+    }
+
+    private static LedgerRow toRow(ResultSet rs) throws SQLException {
+        Object createdBy = rs.getObject("created_by");
+        return new LedgerRow(
+                rs.getLong("id"),
+                rs.getObject("created_at", OffsetDateTime.class),
+                rs.getString("transaction_type"),
+                rs.getLong("inventory_id"),
+                rs.getLong("product_id"),
+                rs.getString("product_name"),
+                rs.getBigDecimal("quantity_change"),
+                rs.getBigDecimal("quantity_before"),
+                rs.getBigDecimal("quantity_after"),
+                rs.getBigDecimal("price_before"),
+                rs.getBigDecimal("price_after"),
+                rs.getString("reference_id"),
+                rs.getObject("bar_station_id", Long.class),
+                createdBy != null ? createdBy.toString() : null,
+                rs.getString("notes"));
+    }
+}
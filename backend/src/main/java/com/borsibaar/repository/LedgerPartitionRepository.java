@@ -0,0 +1,104 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Monthly partitions of {@code inventory_transactions} on PostgreSQL, where
+ * the ledger is range-partitioned on {@code created_at} by UTC month. Other
+ * databases (H2 in the tests) keep a plain table.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerPartitionRepository {
+
+    private static final String PREFIX = "inventory_transactions_p";
+    private static final String DEFAULT_PARTITION = "inventory_transactions_default";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public static String partitionName(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    public boolean isPartitioned() {
+        Boolean postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        return Boolean.TRUE.equals(postgres) && Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('inventory_transactions'))
+                """, Boolean.class));
+    }
+
+    /**
+     * Creates the partition of the month unless it exists. Rows of the month
+     * that went to the default partition meanwhile, which would make creating
+     * it fail, are moved into it: the default partition is detached, the month
+     * created, and the rows inserted again through the ledger. Detaching locks
+     * the ledger until the transaction ends, so no row can arrive in between.
+     * Must run in a transaction.
+     *
+     * @return the number of rows moved out of the default partition
+     */
+    public int createMonth(YearMonth month) {
+        String partition = partitionName(month);
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class,
+                partition))) {
+            return 0;
+        }
+        String from = month.atDay(1) + " 00:00:00+00";
+        String to = month.plusMonths(1).atDay(1) + " 00:00:00+00";
+        String create = "CREATE TABLE IF NOT EXISTS " + partition
+                + " PARTITION OF inventory_transactions FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        String inMonth = " WHERE created_at >= CAST(? AS TIMESTAMPTZ) AND created_at < CAST(? AS TIMESTAMPTZ)";
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + inMonth + ")", Boolean.class, from, to))) {
+            jdbcTemplate.execute(create);
+            return 0;
+        }
+        jdbcTemplate.execute("ALTER TABLE inventory_transactions DETACH PARTITION " + DEFAULT_PARTITION);
+        jdbcTemplate.execute(create);
+        int moved = jdbcTemplate.update("INSERT INTO inventory_transactions SELECT * FROM " + DEFAULT_PARTITION
+                + inMonth, from, to);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + inMonth, from, to);
+        jdbcTemplate.execute("ALTER TABLE inventory_transactions ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+        return moved;
+    }
+
+    /** Months before {@code month} that have a partition, oldest first. */
+    public List<YearMonth> findMonthsBefore(YearMonth month) {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass('inventory_transactions')
+                """, String.class).stream()
+                .filter(name -> name.matches(PREFIX + "\\d{6}"))
+                .map(name -> YearMonth.parse(name.substring(PREFIX.length()), SUFFIX))
+                .filter(partitionMonth -> partitionMonth.isBefore(month))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Drops the partition of the month if it has no rows. The partition is
+     * locked first, so no row can arrive in between; dropping also locks the
+     * ledger briefly. Must run in a transaction.
+     *
+     * @return whether the partition was dropped
+     */
+    public boolean dropIfEmpty(YearMonth month) {
+        String partition = partitionName(month);
+        jdbcTemplate.execute("LOCK TABLE " + partition + " IN ACCESS EXCLUSIVE MODE");
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + ")",
+                Boolean.class))) {
+            return false;
+        }
+        jdbcTemplate.execute("DROP TABLE " + partition);
+        return true;
+    }
+}
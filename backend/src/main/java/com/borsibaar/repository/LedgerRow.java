@@ -0,0 +1,26 @@
+package com.borsibaar.repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * One inventory transaction with the product it belongs to, as exported by
+ * {@link LedgerExportRepository}.
+ */
+public record LedgerRow(
+        Long id,
+        OffsetDateTime createdAt,
+        String transactionType,
+        Long inventoryId,
+        Long productId,
+        String productName,
+        BigDecimal quantityChange,
+        BigDecimal quantityBefore,
+        BigDecimal quantityAfter,
+        BigDecimal priceBefore,
+        BigDecimal priceAfter,
+        String referenceId,
+        Long barStationId,
+        String createdBy,
+        String notes) {
+}
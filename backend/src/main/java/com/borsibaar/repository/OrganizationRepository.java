@@ -2,6 +2,18 @@ package com.borsibaar.repository;
 
 import com.borsibaar.entity.Organization;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.List;
 
 public interface OrganizationRepository extends JpaRepository<Organization, Long> {
+
+    /**
+     * Organizations that sold anything since {@code since}; an index range scan
+     * on {@code organizations.last_sale_at}.
+     */
+    @Query("SELECT o.id FROM Organization o WHERE o.lastSaleAt >= :since")
+    List<Long> findIdsWithSalesSince(@Param("since") OffsetDateTime since);
 }
@@ -0,0 +1,81 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Lease rows and advisory locks that let several backend nodes share the price
+ * job. PostgreSQL only.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PriceJobLeaseRepository {
+
+    // High 32 bits of the advisory lock keys taken per organization; the low 32 bits are the id
+    private static final int ORGANIZATION_LOCK_SPACE = 0x50524a42;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Renews this node's lease for {@code ttl}, drops expired leases, and
+     * returns the ids of all nodes holding a live lease, in order. One
+     * statement.
+     */
+    public List<String> renewAndFindLiveNodes(String nodeId, OffsetDateTime now, Duration ttl) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("nodeId", nodeId)
+                .addValue("now", now)
+                .addValue("expiresAt", now.plus(ttl));
+        return namedParameterJdbcTemplate.queryForList("""
+                WITH renewed AS (
+                    INSERT INTO price_job_leases (node_id, renewed_at, expires_at)
+                    VALUES (:nodeId, :now, :expiresAt)
+                    ON CONFLICT (node_id) DO UPDATE
+                    SET renewed_at = EXCLUDED.renewed_at, expires_at = EXCLUDED.expires_at
+                    RETURNING node_id
+                ), expired AS (
+                    DELETE FROM price_job_leases WHERE expires_at <= :now AND node_id <> :nodeId
+                )
+                SELECT node_id FROM price_job_leases WHERE expires_at > :now AND node_id <> :nodeId
+                UNION
+                SELECT node_id FROM renewed
+                ORDER BY node_id
+                """, params, String.class);
+    }
+
+    public void release(String nodeId) {
+        jdbcTemplate.update("DELETE FROM price_job_leases WHERE node_id = ?", nodeId);
+    }
+
+    /**
+     * Organizations with a sale since {@code activeSince} that fall into
+     * partition {@code partition} of {@code partitions}, locked for the current
+     * transaction. Organizations another node is working on right now are
+     * skipped rather than waited for.
+     */
+    public List<Long> lockActiveOrganizations(OffsetDateTime activeSince, int partition, int partitions) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("activeSince", activeSince)
+                .addValue("partition", partition)
+                .addValue("partitions", partitions)
+                .addValue("lockSpace", ORGANIZATION_LOCK_SPACE);
+        // Materialized so the lock is only tried for the partition's own rows
+        return namedParameterJdbcTemplate.queryForList("""
+                WITH owned AS MATERIALIZED (
+                    SELECT id FROM organizations
+                    WHERE last_sale_at >= :activeSince AND MOD(id, :partitions) = :partition
+                )
+                SELECT id FROM owned
+                WHERE pg_try_advisory_xact_lock((CAST(:lockSpace AS BIGINT) << 32) | (id & 4294967295))
+                ORDER BY id
+                """, params, Long.class);
+    }
+}
@@ -3,36 +3,42 @@ package com.borsibaar.repository;
 import com.borsibaar.entity.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
   boolean existsByOrganizationIdAndNameIgnoreCase(Long organizationId, String name);
 
-  @Query(value = """
-        SELECT DISTINCT p.*
-        FROM products p
-        JOIN inventory inv ON inv.product_id = p.id
-        JOIN categories cat ON p.category_id = cat.id
-        WHERE
-          cat.dynamic_pricing = TRUE
-          -- Org had at least one SALE in the last minute
-          AND EXISTS (
-            SELECT 1
-            FROM inventory_transactions it_org
-            JOIN inventory i_org ON i_org.id = it_org.inventory_id
-            WHERE i_org.organization_id = inv.organization_id
-              AND it_org.transaction_type = 'SALE'
-              AND it_org.created_at >= (CURRENT_TIMESTAMP - INTERVAL '1 minute')
-          )
-          -- This product had no SALE in the last minute
-          AND NOT EXISTS (
-            SELECT 1
-            FROM inventory_transactions it_self
-            WHERE it_self.inventory_id = inv.id
-              AND it_self.transaction_type = 'SALE'
-              AND it_self.created_at >= (CURRENT_TIMESTAMP - INTERVAL '1 minute')
-          )
-      """, nativeQuery = true)
-  List<Product> findByActiveOrgAndInactiveSalesLastMinute();
+  /**
+   * Loads every product of the organization together with its inventory and
+   * category in one query, for building the in-memory price book.
+   */
+  @Query("""
+        SELECT p FROM Product p
+        LEFT JOIN FETCH p.inventory
+        LEFT JOIN FETCH p.category
+        WHERE p.organizationId = :organizationId
+      """)
+  List<Product> findAllForPricingByOrganizationId(@Param("organizationId") Long organizationId);
+
+  /**
+   * Loads the given products with inventory, category and organization in one
+   * query, for preparing a sale basket.
+   */
+  @Query("""
+        SELECT p FROM Product p
+        LEFT JOIN FETCH p.inventory
+        LEFT JOIN FETCH p.category
+        LEFT JOIN FETCH p.organization
+        WHERE p.id IN :ids
+      """)
+  List<Product> findAllForSaleByIdIn(@Param("ids") Collection<Long> ids);
+
+  @Query("""
+        SELECT p.id FROM Product p
+        WHERE p.organizationId = :organizationId AND p.category.dynamicPricing = TRUE
+      """)
+  List<Long> findDynamicPricingIdsByOrganizationId(@Param("organizationId") Long organizationId);
 }
@@ -0,0 +1,51 @@
+package com.borsibaar.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+/**
+ * Idempotency keys of submitted sales. The unique (organization_id,
+ * idempotency_key) constraint is what makes a retried sale safe across nodes
+ * and restarts; the in-memory cache in front of it only saves the round trip.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SaleSubmissionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Claims the key for a new sale. Returns {@code false} when another sale
+     * already holds it; a concurrent claim waits for that sale's transaction to
+     * finish first, so a {@code false} result always refers to a committed sale.
+     */
+    public boolean claim(Long organizationId, String idempotencyKey, String saleId, OffsetDateTime createdAt) {
+        return jdbcTemplate.update("""
+                INSERT INTO sale_submissions (organization_id, idempotency_key, sale_id, created_at)
+                VALUES (?, ?, ?, ?)
+                ON CONFLICT (organization_id, idempotency_key) DO NOTHING
+                """, organizationId, idempotencyKey, saleId, createdAt) == 1;
+    }
+
+    public void saveResponse(Long organizationId, String idempotencyKey, String response) {
+        jdbcTemplate.update("UPDATE sale_submissions SET response = ? WHERE organization_id = ? AND idempotency_key = ?",
+                response, organizationId, idempotencyKey);
+    }
+
+    public Optional<String> findResponse(Long organizationId, String idempotencyKey) {
+        return jdbcTemplate.query(
+                "SELECT response FROM sale_submissions WHERE organization_id = ? AND idempotency_key = ?",
+                (rs, rowNum) -> rs.getString("response"), organizationId, idempotencyKey)
+                .stream()
+                .filter(response -> response != null)
+                .findFirst();
+    }
+
+    public int deleteCreatedBefore(OffsetDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM sale_submissions WHERE created_at < ?", cutoff);
+    }
+}
@@ -0,0 +1,257 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.dto.StationSalesStatsResponseDto;
+import com.borsibaar.dto.UserSalesStatsResponseDto;
+import com.borsibaar.entity.SalesRollupHourly;
+import com.borsibaar.pricing.SaleQuote;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Hourly sales totals ({@link SalesRollupHourly}), so the sales statistics read
+ * a few rows per hour instead of the whole ledger. Every sale adds itself in
+ * its own transaction; {@link #rebuild} recomputes a range of hours from
+ * {@code inventory_transactions}. Runs on the connection of the surrounding
+ * transaction.
+ * <p>
+ * On PostgreSQL the two are kept apart by transaction-level advisory locks
+ * keyed by (organization, UTC hour): sales take them shared, a rebuild takes
+ * the hours it replaces exclusively. Key 0 stands for all organizations and
+ * is always taken first. Other databases (H2 in tests) run without them.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SalesRollupRepository {
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO sales_rollup_hourly (organization_id, sale_hour, bar_station_id, user_id, product_id,
+                sales_count, quantity, revenue)
+            SELECT organization_id, sale_hour, bar_station_id, user_id, product_id,
+                   SUM(CASE WHEN id = first_line_id THEN 1 ELSE 0 END), SUM(quantity), SUM(quantity * price)
+            FROM (
+                SELECT i.organization_id, i.product_id, t.id,
+                       DATE_TRUNC('hour', t.created_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS sale_hour,
+                       COALESCE(t.bar_station_id, ?) AS bar_station_id,
+                       COALESCE(t.created_by, ?) AS user_id,
+                       CASE WHEN t.reference_id IS NULL THEN t.id
+                            ELSE MIN(t.id) OVER (PARTITION BY t.reference_id) END AS first_line_id,
+                       ABS(t.quantity_change) AS quantity, t.price_before AS price
+                FROM inventory_transactions t
+                JOIN inventory i ON i.id = t.inventory_id
+                WHERE t.transaction_type = 'SALE' AND t.created_at >= ? AND t.created_at < ?
+                  AND (CAST(? AS BIGINT) IS NULL OR i.organization_id = ?)
+            ) lines
+            GROUP BY organization_id, sale_hour, bar_station_id, user_id, product_id
+            """;
+
+    // First key of the advisory locks on an hour of every organization's rollup
+    private static final int ALL_ORGANIZATIONS = 0;
+    private static final RowCallbackHandler IGNORE_ROWS = rs -> { };
+
+    private final JdbcTemplate jdbcTemplate;
+    // Whether the database has advisory locks; determined on first use
+    private volatile Boolean postgres;
+
+    public static OffsetDateTime hourOf(OffsetDateTime time) {
+        return time.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /**
+     * Adds a sale's lines to the rollup rows of its hour. Rows are created
+     * first if missing, then added to in product id order, so concurrent sales
+     * never wait on each other's rows in a cycle. Waits for a {@link #rebuild}
+     * of the hour to commit.
+     */
+    public void addSale(Long organizationId, Long barStationId, UUID userId, List<SaleQuote> quotes,
+            OffsetDateTime soldAt) {
+        OffsetDateTime saleHour = hourOf(soldAt);
+        if (isPostgres()) {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock_shared(?, ?), pg_advisory_xact_lock_shared(?, ?)",
+                    IGNORE_ROWS, ALL_ORGANIZATIONS, hourKey(saleHour), organizationKey(organizationId),
+                    hourKey(saleHour));
+        }
+        long station = barStationId != null ? barStationId : SalesRollupHourly.NO_STATION;
+        UUID user = userId != null ? userId : SalesRollupHourly.NO_USER;
+
+        Map<Long, Object[]> byProduct = new TreeMap<>();
+        for (int i = 0; i < quotes.size(); i++) {
+            SaleQuote quote = quotes.get(i);
+            Object[] totals = byProduct.computeIfAbsent(quote.productId(),
+                    id -> new Object[] { 0L, BigDecimal.ZERO, BigDecimal.ZERO });
+            if (i == 0) {
+                totals[0] = 1L;
+            }
+            totals[1] = ((BigDecimal) totals[1]).add(quote.quantity());
+            totals[2] = ((BigDecimal) totals[2]).add(quote.totalPrice());
+        }
+
+        List<Object[]> keys = new ArrayList<>(byProduct.size());
+        List<Object[]> increments = new ArrayList<>(byProduct.size());
+        byProduct.forEach((productId, totals) -> {
+            keys.add(new Object[] { organizationId, saleHour, station, user, productId });
+            increments.add(new Object[] { totals[0], totals[1], totals[2], organizationId, saleHour, station, user,
+                    productId });
+        });
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO sales_rollup_hourly (organization_id, sale_hour, bar_station_id, user_id, product_id,
+                    sales_count, quantity, revenue)
+                VALUES (?, ?, ?, ?, ?, 0, 0, 0)
+                ON CONFLICT DO NOTHING
+                """, keys);
+        jdbcTemplate.batchUpdate("""
+                UPDATE sales_rollup_hourly
+                SET sales_count = sales_count + ?, quantity = quantity + ?, revenue = revenue + ?
+                WHERE organization_id = ? AND sale_hour = ? AND bar_station_id = ? AND user_id = ? AND product_id = ?
+                """, increments);
+    }
+
+    /**
+     * Replaces the rollup rows of the hours in {@code [from, to)}, of one
+     * organization or of all when {@code organizationId} is {@code null}, with
+     * totals recomputed from the ledger. {@code from} and {@code to} must be
+     * whole UTC hours, and after the months whose rows were archived by
+     * {@code LedgerArchiveJob}, or their totals are lost (the rebuild of
+     * {@code SalesRollupService} starts after them).
+     * <p>
+     * Sales committing meanwhile are neither lost nor counted twice: the
+     * hours are locked first, which waits for the sales that already added
+     * themselves to commit, so their lines are visible to the recomputation.
+     * Later sales wait for this transaction and add to the rebuilt rows. One
+     * lock is held per hour until the transaction ends.
+     *
+     * @return the number of rollup rows written
+     */
+    public int rebuild(Long organizationId, OffsetDateTime from, OffsetDateTime to) {
+        if (isPostgres()) {
+            lockHours(organizationId, from, to);
+        }
+        jdbcTemplate.update("""
+                DELETE FROM sales_rollup_hourly
+                WHERE (CAST(? AS BIGINT) IS NULL OR organization_id = ?) AND sale_hour >= ? AND sale_hour < ?
+                """, organizationId, organizationId, from, to);
+        return jdbcTemplate.update(REBUILD_SQL, SalesRollupHourly.NO_STATION, SalesRollupHourly.NO_USER, from, to,
+                organizationId, organizationId);
+    }
+
+    /**
+     * Times of the first and last sale in the ledger, of one organization or
+     * of all, or {@code null} if there are none.
+     */
+    public SaleSpan findSaleSpan(Long organizationId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT MIN(t.created_at) AS first_sale, MAX(t.created_at) AS last_sale
+                FROM inventory_transactions t
+                JOIN inventory i ON i.id = t.inventory_id
+                WHERE t.transaction_type = 'SALE' AND (CAST(? AS BIGINT) IS NULL OR i.organization_id = ?)
+                """, (rs, rowNum) -> {
+            OffsetDateTime first = rs.getObject("first_sale", OffsetDateTime.class);
+            return first != null ? new SaleSpan(first, rs.getObject("last_sale", OffsetDateTime.class)) : null;
+        }, organizationId, organizationId);
+    }
+
+    private void lockHours(Long organizationId, OffsetDateTime from, OffsetDateTime to) {
+        int firstHour = hourKey(from);
+        int lastHour = hourKey(to) - 1;
+        if (organizationId == null) {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, h) FROM generate_series(?, ?) h", IGNORE_ROWS,
+                    ALL_ORGANIZATIONS, firstHour, lastHour);
+            return;
+        }
+        // Shared, so rebuilds of other organizations run alongside while one of all organizations waits
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock_shared(?, h) FROM generate_series(?, ?) h", IGNORE_ROWS,
+                ALL_ORGANIZATIONS, firstHour, lastHour);
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, h) FROM generate_series(?, ?) h", IGNORE_ROWS,
+                organizationKey(organizationId), firstHour, lastHour);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private static int hourKey(OffsetDateTime hour) {
+        return (int) (hour.toEpochSecond() / 3600);
+    }
+
+    // Ids past Integer.MAX_VALUE share keys with smaller ones, which only makes their sales wait for each other
+    private static int organizationKey(Long organizationId) {
+        return (int) (organizationId % Integer.MAX_VALUE);
+    }
+
+    public record SaleSpan(OffsetDateTime first, OffsetDateTime last) {
+    }
+
+    /**
+     * Sales of the organization per seller and bar station, most sales first.
+     * Only whole hours are counted: {@code from} is rounded down to the hour,
+     * and an hour that starts before {@code to} counts entirely. Either bound
+     * may be {@code null}.
+     */
+    public List<UserSalesStatsResponseDto> sumByUserAndStation(Long organizationId, OffsetDateTime from,
+            OffsetDateTime to) {
+        OffsetDateTime fromHour = from != null ? hourOf(from) : null;
+        return jdbcTemplate.query("""
+                SELECT r.user_id, u.name AS user_name, u.email AS user_email, r.bar_station_id,
+                       s.name AS bar_station_name, SUM(r.sales_count) AS sales_count, SUM(r.revenue) AS revenue
+                FROM sales_rollup_hourly r
+                LEFT JOIN users u ON u.id = r.user_id
+                LEFT JOIN bar_stations s ON s.id = r.bar_station_id
+                WHERE r.organization_id = ? AND r.user_id <> ?
+                  AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR r.sale_hour >= ?)
+                  AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR r.sale_hour < ?)
+                GROUP BY r.user_id, u.name, u.email, r.bar_station_id, s.name
+                ORDER BY sales_count DESC
+                """, (rs, rowNum) -> {
+            String name = rs.getString("user_name");
+            long station = rs.getLong("bar_station_id");
+            return new UserSalesStatsResponseDto(
+                    rs.getObject("user_id", UUID.class).toString(),
+                    name != null ? name : "Unknown User",
+                    name != null ? rs.getString("user_email") : "unknown@email.com",
+                    rs.getLong("sales_count"),
+                    rs.getBigDecimal("revenue"),
+                    station != SalesRollupHourly.NO_STATION ? station : null,
+                    rs.getString("bar_station_name"));
+        }, organizationId, SalesRollupHourly.NO_USER, fromHour, fromHour, to, to);
+    }
+
+    /**
+     * As {@link #sumByUserAndStation}, per bar station only. Sales made
+     * outside a station are left out.
+     */
+    public List<StationSalesStatsResponseDto> sumByStation(Long organizationId, OffsetDateTime from,
+            OffsetDateTime to) {
+        OffsetDateTime fromHour = from != null ? hourOf(from) : null;
+        return jdbcTemplate.query("""
+                SELECT r.bar_station_id, s.name AS bar_station_name, SUM(r.sales_count) AS sales_count,
+                       SUM(r.revenue) AS revenue
+                FROM sales_rollup_hourly r
+                LEFT JOIN bar_stations s ON s.id = r.bar_station_id
+                WHERE r.organization_id = ? AND r.bar_station_id <> ?
+                  AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR r.sale_hour >= ?)
+                  AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR r.sale_hour < ?)
+                GROUP BY r.bar_station_id, s.name
+                ORDER BY sales_count DESC
+                """, (rs, rowNum) -> new StationSalesStatsResponseDto(
+                rs.getLong("bar_station_id"),
+                rs.getString("bar_station_name"),
+                rs.getLong("sales_count"),
+                rs.getBigDecimal("revenue")), organizationId, SalesRollupHourly.NO_STATION, fromHour, fromHour, to, to);
+    }
+}
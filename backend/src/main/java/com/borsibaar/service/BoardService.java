@@ -0,0 +1,92 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.BoardCategoryResponseDto;
+import com.borsibaar.dto.BoardResponseDto;
+import com.borsibaar.dto.InventoryResponseDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The public price board of an organization: every category with its priced
+ * products, kept as serialized JSON so that each screen polling it costs a
+ * buffer write.
+ * <p>
+ * A snapshot is rebuilt only once the organization's {@link InventoryVersions}
+ * version has moved, i.e. after a sale, stock, price or category change.
+ */
+@Service
+@RequiredArgsConstructor
+public class BoardService {
+
+    private record Snapshot(String version, byte[] json) {
+    }
+
+    private final InventoryService inventoryService;
+    private final CategoryRepository categoryRepository;
+    private final OrganizationRepository organizationRepository;
+    private final InventoryVersions inventoryVersions;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, Object> rebuildLocks = new ConcurrentHashMap<>();
+
+    /**
+     * The board as JSON bytes. The returned array is shared and must not be
+     * modified.
+     */
+    public byte[] getBoardJson(Long organizationId) {
+        Snapshot snapshot = snapshots.get(organizationId);
+        if (isCurrent(snapshot, organizationId)) {
+            return snapshot.json();
+        }
+        // One rebuild per organization at a time; the screens waiting for it get its result
+        synchronized (rebuildLocks.computeIfAbsent(organizationId, id -> new Object())) {
+            snapshot = snapshots.get(organizationId);
+            if (!isCurrent(snapshot, organizationId)) {
+                snapshot = build(organizationId);
+                snapshots.put(organizationId, snapshot);
+            }
+            return snapshot.json();
+        }
+    }
+
+    private boolean isCurrent(Snapshot snapshot, Long organizationId) {
+        return snapshot != null && snapshot.version().equals(inventoryVersions.current(organizationId));
+    }
+
+    private Snapshot build(Long organizationId) {
+        // Taken first, so a change committed while building makes the next request rebuild
+        String version = inventoryVersions.current(organizationId);
+        if (!organizationRepository.existsById(organizationId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Organization not found: " + organizationId);
+        }
+
+        Map<Long, List<InventoryResponseDto>> products = inventoryService
+                .getByOrganizationGroupedByCategory(organizationId);
+        List<BoardCategoryResponseDto> categories = new ArrayList<>();
+        for (Category category : categoryRepository.findAllByOrganizationId(organizationId)) {
+            categories.add(new BoardCategoryResponseDto(category.getId(), category.getName(),
+                    products.getOrDefault(category.getId(), List.of())));
+        }
+        BoardResponseDto board = new BoardResponseDto(organizationId, OffsetDateTime.now(), categories);
+        try {
+            return new Snapshot(version, objectMapper.writeValueAsBytes(board));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize price board", e);
+        }
+    }
+}
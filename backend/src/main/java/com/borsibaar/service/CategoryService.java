@@ -7,6 +7,9 @@ import com.borsibaar.exception.BadRequestException;
 import com.borsibaar.exception.DuplicateResourceException;
 import com.borsibaar.exception.NotFoundException;
 import com.borsibaar.mapper.CategoryMapper;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
 import com.borsibaar.repository.CategoryRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,10 +21,17 @@ import java.util.List;
 public class CategoryService {
     private final CategoryRepository categoryRepository;
     private final CategoryMapper categoryMapper;
+    private final PricingStrategies pricingStrategies;
+    private final PriceEngine priceEngine;
+    private final LazyPriceDecay lazyPriceDecay;
 
-    public CategoryService(CategoryRepository categoryRepository, CategoryMapper categoryMapper) {
+    public CategoryService(CategoryRepository categoryRepository, CategoryMapper categoryMapper,
+            PricingStrategies pricingStrategies, PriceEngine priceEngine, LazyPriceDecay lazyPriceDecay) {
         this.categoryRepository = categoryRepository;
         this.categoryMapper = categoryMapper;
+        this.pricingStrategies = pricingStrategies;
+        this.priceEngine = priceEngine;
+        this.lazyPriceDecay = lazyPriceDecay;
     }
 
     @Transactional
@@ -39,11 +49,24 @@ public class CategoryService {
         boolean dynamicPricing = request.dynamicPricing() != null ? request.dynamicPricing() : true;
         category.setDynamicPricing(dynamicPricing);
 
+        if (request.pricingStrategy() != null && !pricingStrategies.contains(request.pricingStrategy())) {
+            throw new BadRequestException("Unknown pricing strategy '" + request.pricingStrategy()
+                    + "', expected one of " + pricingStrategies.names());
+        }
+        // The price job decays prices linearly; other decays only apply on read
+        if (request.pricingStrategy() != null && !lazyPriceDecay.isEnabled()
+                && !pricingStrategies.decaysLinearly(request.pricingStrategy())) {
+            throw new BadRequestException("Pricing strategy '" + request.pricingStrategy()
+                    + "' requires app.pricing.lazy-decay.enabled");
+        }
+
         if (categoryRepository.existsByOrganizationIdAndNameIgnoreCase(organizationId, normalizedName)) {
             throw new DuplicateResourceException("Category '" + normalizedName + "' already exists");
         }
 
         Category saved = categoryRepository.save(category);
+        // The price board lists every category
+        priceEngine.markChangedAfterCompletion(organizationId);
         return categoryMapper.toResponse(saved);
     }
 
@@ -76,6 +99,7 @@ public class CategoryService {
                 .map(category -> {
                     CategoryResponseDto dto = categoryMapper.toResponse(category);
                     categoryRepository.delete(category);
+                    priceEngine.markChangedAfterCompletion(organizationId);
                     return dto;
                 })
                 .orElseThrow(() -> new NotFoundException("Category not found: " + id));
@@ -1,39 +1,60 @@
 package com.borsibaar.service;
 
+import com.borsibaar.archive.LedgerArchive;
 import com.borsibaar.dto.*;
-import com.borsibaar.entity.BarStation;
 import com.borsibaar.entity.Inventory;
 import com.borsibaar.entity.InventoryTransaction;
 import com.borsibaar.entity.Product;
 import com.borsibaar.entity.User;
 import com.borsibaar.mapper.InventoryMapper;
-import com.borsibaar.repository.BarStationRepository;
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.repository.InventoryListingRow;
 import com.borsibaar.repository.InventoryRepository;
 import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.LedgerRow;
 import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SalesRollupRepository;
 import com.borsibaar.repository.UserRepository;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StripedStockManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class InventoryService {
 
+    public static final int MAX_HISTORY_PAGE_SIZE = 500;
+    private static final int MAX_ADJUST_ATTEMPTS = 5;
+
     private final InventoryRepository inventoryRepository;
     private final InventoryTransactionRepository inventoryTransactionRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
-    private final BarStationRepository barStationRepository;
+    private final SalesRollupRepository salesRollupRepository;
     private final InventoryMapper inventoryMapper;
+    private final PriceEngine priceEngine;
+    private final StripedStockManager stripedStockManager;
+    private final LazyPriceDecay lazyPriceDecay;
+    private final SalesRateTracker salesRateTracker;
+    private final InventoryVersions inventoryVersions;
+    private final LedgerArchive ledgerArchive;
 
     @Transactional(readOnly = true)
     public List<InventoryResponseDto> getByOrganization(Long organizationId) {
@@ -42,46 +63,84 @@ public class InventoryService {
 
     @Transactional(readOnly = true)
     public List<InventoryResponseDto> getByOrganization(Long organizationId, Long categoryId) {
-        List<Inventory> inventories;
+        // Filtered, joined and sorted in the database; served to the public price board
+        List<InventoryListingRow> rows = inventoryRepository.findListing(organizationId, categoryId);
+        Map<Long, BigDecimal> shardTotals = stripedStockManager.shardTotals(
+                rows.stream().map(InventoryListingRow::id).toList());
+        OffsetDateTime now = OffsetDateTime.now();
+
+        return rows.stream()
+                .map(row -> toResponse(row, shardTotals, now))
+                .toList();
+    }
 
-        if (categoryId != null) {
-            inventories = inventoryRepository.findByOrganizationIdAndCategoryId(organizationId, categoryId);
-        } else {
-            inventories = inventoryRepository.findByOrganizationId(organizationId);
+    /**
+     * Same listing as {@link #getByOrganization(Long, Long)}, by category id,
+     * each still ordered by product name.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, List<InventoryResponseDto>> getByOrganizationGroupedByCategory(Long organizationId) {
+        List<InventoryListingRow> rows = inventoryRepository.findListing(organizationId, null);
+        Map<Long, BigDecimal> shardTotals = stripedStockManager.shardTotals(
+                rows.stream().map(InventoryListingRow::id).toList());
+        OffsetDateTime now = OffsetDateTime.now();
+
+        Map<Long, List<InventoryResponseDto>> byCategory = new LinkedHashMap<>();
+        for (InventoryListingRow row : rows) {
+            byCategory.computeIfAbsent(row.categoryId(), id -> new ArrayList<>())
+                    .add(toResponse(row, shardTotals, now));
         }
+        return byCategory;
+    }
 
-        return inventories.stream()
-                .map(inv -> {
-                    InventoryResponseDto base = inventoryMapper.toResponse(inv);
-                    Product product = productRepository.findById(inv.getProductId())
-                            .orElse(null);
-
-                    if (product == null)
-                        return null;
-                    if (!product.isActive()) {
-                        return null;
-                    }
-
-                    String productName = product.getName();
-                    BigDecimal unitPrice = Optional.ofNullable(inv.getAdjustedPrice())
-                            .orElse(product.getBasePrice());
-
-                    return new InventoryResponseDto(
-                            base.id(),
-                            base.organizationId(),
-                            base.productId(),
-                            productName,
-                            base.quantity(),
-                            unitPrice,
-                            product.getDescription(),
-                            product.getBasePrice(),
-                            product.getMinPrice(),
-                            product.getMaxPrice(),
-                            base.updatedAt());
-                })
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparing(InventoryResponseDto::productName))
-                .toList();
+    /**
+     * Products whose price, stock or listing changed since the client saw
+     * {@code since}, read from this node's change log. Falls back to the full
+     * listing when there is no {@code since} or the log cannot tell what
+     * changed since it.
+     */
+    @Transactional(readOnly = true)
+    public InventoryChangesResponseDto getChangesSince(Long organizationId, String since) {
+        // Read before the log: anything logged after it is sent again on the next poll
+        String version = inventoryVersions.current(organizationId);
+        Long sinceRevision = inventoryVersions.revisionOf(organizationId, since);
+        Set<Long> changed = sinceRevision != null ? priceEngine.changedSince(organizationId, sinceRevision) : null;
+        if (changed == null) {
+            return new InventoryChangesResponseDto(version, true, getByOrganization(organizationId, null), List.of());
+        }
+        if (changed.isEmpty()) {
+            return new InventoryChangesResponseDto(version, false, List.of(), List.of());
+        }
+
+        List<InventoryListingRow> rows = inventoryRepository.findListingByProductIds(organizationId, changed);
+        Map<Long, BigDecimal> shardTotals = stripedStockManager.shardTotals(
+                rows.stream().map(InventoryListingRow::id).toList());
+        OffsetDateTime now = OffsetDateTime.now();
+
+        Set<Long> removed = new TreeSet<>(changed);
+        List<InventoryResponseDto> products = new ArrayList<>(rows.size());
+        for (InventoryListingRow row : rows) {
+            removed.remove(row.productId());
+            products.add(toResponse(row, shardTotals, now));
+        }
+        return new InventoryChangesResponseDto(version, false, products, List.copyOf(removed));
+    }
+
+    private InventoryResponseDto toResponse(InventoryListingRow row, Map<Long, BigDecimal> shardTotals,
+            OffsetDateTime now) {
+        return new InventoryResponseDto(
+                row.id(),
+                row.organizationId(),
+                row.productId(),
+                row.categoryId(),
+                row.productName(),
+                row.quantity().add(shardTotals.getOrDefault(row.id(), BigDecimal.ZERO)),
+                lazyPriceDecay.currentPrice(row, now),
+                row.description(),
+                row.basePrice(),
+                row.minPrice(),
+                row.maxPrice(),
+                inventoryMapper.map(row.updatedAt()));
     }
 
     @Transactional(readOnly = true)
@@ -100,16 +159,18 @@ public class InventoryService {
         }
 
         String productName = product.getName();
-        BigDecimal unitPrice = Optional.ofNullable(inventory.getAdjustedPrice())
-                .orElse(product.getBasePrice());
+        BigDecimal unitPrice = lazyPriceDecay.currentPrice(inventory, product, OffsetDateTime.now());
         BigDecimal basePrice = product.getBasePrice();
+        BigDecimal quantity = base.quantity().add(stripedStockManager.shardTotals(List.of(inventory.getId()))
+                .getOrDefault(inventory.getId(), BigDecimal.ZERO));
 
         return new InventoryResponseDto(
                 base.id(),
                 base.organizationId(),
                 base.productId(),
+                product.getCategoryId(),
                 productName,
-                base.quantity(),
+                quantity,
                 unitPrice,
                 product.getDescription(), basePrice,
                 product.getMinPrice(),
@@ -133,28 +194,33 @@ public class InventoryService {
                     newInv.setAdjustedPrice(product.getBasePrice());
                     newInv.setCreatedAt(OffsetDateTime.now());
                     newInv.setUpdatedAt(OffsetDateTime.now());
+                    newInv.setPriceAnchoredAt(newInv.getCreatedAt());
                     return inventoryRepository.save(newInv);
                 });
+        inventory = foldStripedStock(inventory);
 
-        BigDecimal oldQuantity = inventory.getQuantity();
-        BigDecimal newQuantity = oldQuantity.add(request.quantity());
+        // Atomic increment so a concurrent sale's decrement is not overwritten
+        OffsetDateTime now = OffsetDateTime.now();
+        inventoryRepository.incrementStock(inventory.getId(), request.quantity(), now);
+        BigDecimal newQuantity = inventoryRepository.findQuantityById(inventory.getId());
+        BigDecimal oldQuantity = newQuantity.subtract(request.quantity());
 
         inventory.setQuantity(newQuantity);
-        inventory.setUpdatedAt(OffsetDateTime.now());
-        inventory = inventoryRepository.save(inventory);
+        inventory.setUpdatedAt(now);
 
-        BigDecimal currentPrice = Optional.ofNullable(inventory.getAdjustedPrice())
-                .orElse(product.getBasePrice());
+        BigDecimal currentPrice = lazyPriceDecay.currentPrice(inventory, product, OffsetDateTime.now());
 
         // Create transaction record
         createTransaction(inventory, "PURCHASE", request.quantity(),
                 oldQuantity, newQuantity, currentPrice, currentPrice, null, request.notes(), userId);
+        priceEngine.evictAfterCompletion(organizationId, List.of(productId));
 
         InventoryResponseDto base = inventoryMapper.toResponse(inventory);
         return new InventoryResponseDto(
                 base.id(),
                 base.organizationId(),
                 base.productId(),
+                product.getCategoryId(),
                 product.getName(),
                 base.quantity(),
                 currentPrice,
@@ -172,34 +238,39 @@ public class InventoryService {
                 .findByOrganizationIdAndProductId(organizationId, request.productId())
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "No inventory found for this product"));
-
-        BigDecimal oldQuantity = inventory.getQuantity();
-        BigDecimal newQuantity = oldQuantity.subtract(request.quantity());
-
-        if (newQuantity.compareTo(BigDecimal.ZERO) < 0) {
+        inventory = foldStripedStock(inventory);
+
+        // Guarded decrement: no row is updated when the stock would go negative
+        OffsetDateTime now = OffsetDateTime.now();
+        int updated = inventoryRepository.decrementStock(inventory.getId(), request.quantity(), now);
+        if (updated == 0) {
+            // The row read above may be stale by now, so report the current stock
+            BigDecimal available = inventoryRepository.findQuantityById(inventory.getId());
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST,
-                    "Insufficient stock. Available: " + oldQuantity + ", Requested: "
+                    "Insufficient stock. Available: " + available + ", Requested: "
                             + request.quantity());
         }
+        BigDecimal newQuantity = inventoryRepository.findQuantityById(inventory.getId());
+        BigDecimal oldQuantity = newQuantity.add(request.quantity());
 
         inventory.setQuantity(newQuantity);
-        inventory.setUpdatedAt(OffsetDateTime.now());
-        inventory = inventoryRepository.save(inventory);
+        inventory.setUpdatedAt(now);
 
-        BigDecimal currentPrice = Optional.ofNullable(inventory.getAdjustedPrice())
-                .orElse(product.getBasePrice());
+        BigDecimal currentPrice = lazyPriceDecay.currentPrice(inventory, product, OffsetDateTime.now());
 
         // Create transaction record (negative quantity change)
         createTransaction(inventory, "ADJUSTMENT", request.quantity().negate(),
                 oldQuantity, newQuantity, currentPrice, currentPrice, request.referenceId(),
                 request.notes(), userId);
+        priceEngine.evictAfterCompletion(organizationId, List.of(request.productId()));
 
         InventoryResponseDto base = inventoryMapper.toResponse(inventory);
         return new InventoryResponseDto(
                 base.id(),
                 base.organizationId(),
                 base.productId(),
+                product.getCategoryId(),
                 product.getName(),
                 base.quantity(),
                 currentPrice,
@@ -217,27 +288,39 @@ public class InventoryService {
                 .findByOrganizationIdAndProductId(organizationId, request.productId())
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "No inventory found for this product"));
+        inventory = foldStripedStock(inventory);
 
+        // Guarded replace: a sale committed since the read makes it update nothing, and the
+        // ledger change is then recorded against the stock it actually replaced
+        OffsetDateTime now = OffsetDateTime.now();
         BigDecimal oldQuantity = inventory.getQuantity();
+        for (int attempt = 1; inventoryRepository.replaceStock(inventory.getId(), oldQuantity,
+                request.newQuantity(), now) == 0; attempt++) {
+            if (attempt == MAX_ADJUST_ATTEMPTS) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Stock is changing too fast to adjust, please try again");
+            }
+            oldQuantity = inventoryRepository.findQuantityById(inventory.getId());
+        }
         BigDecimal quantityChange = request.newQuantity().subtract(oldQuantity);
 
         inventory.setQuantity(request.newQuantity());
-        inventory.setUpdatedAt(OffsetDateTime.now());
-        inventory = inventoryRepository.save(inventory);
+        inventory.setUpdatedAt(now);
 
-        BigDecimal currentPrice = Optional.ofNullable(inventory.getAdjustedPrice())
-                .orElse(product.getBasePrice());
+        BigDecimal currentPrice = lazyPriceDecay.currentPrice(inventory, product, OffsetDateTime.now());
 
         // Create transaction record
         createTransaction(inventory, "ADJUSTMENT", quantityChange,
                 oldQuantity, request.newQuantity(), currentPrice, currentPrice, null, request.notes(),
                 userId);
+        priceEngine.evictAfterCompletion(organizationId, List.of(request.productId()));
 
         InventoryResponseDto base = inventoryMapper.toResponse(inventory);
         return new InventoryResponseDto(
                 base.id(),
                 base.organizationId(),
                 base.productId(),
+                product.getCategoryId(),
                 product.getName(),
                 base.quantity(),
                 currentPrice,
@@ -247,176 +330,159 @@ public class InventoryService {
                 base.updatedAt());
     }
 
+    public StockContentionResponseDto getStockContention() {
+        return stripedStockManager.getContention();
+    }
+
+    /**
+     * Sales velocity of the organization's products from this node's
+     * in-memory counters, fastest selling first. Products without a sale
+     * since startup are left out.
+     */
+    public List<ProductVelocityResponseDto> getVelocity(Long organizationId, long windowSeconds) {
+        long windowMillis = windowSeconds * 1000;
+        if (windowSeconds <= 0 || windowMillis > SalesRateTracker.MAX_WINDOW_MILLIS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Window must be between 1 and "
+                    + SalesRateTracker.MAX_WINDOW_MILLIS / 1000 + " seconds");
+        }
+        return salesRateTracker.velocities(organizationId, windowMillis).stream()
+                .sorted(Comparator.comparingDouble(SalesRateTracker.Velocity::perMinute).reversed())
+                .map(velocity -> new ProductVelocityResponseDto(
+                        velocity.productId(),
+                        windowSeconds,
+                        velocity.soldInWindow(),
+                        velocity.perMinute(),
+                        OffsetDateTime.ofInstant(Instant.ofEpochMilli(velocity.lastSaleAt()), ZoneOffset.UTC)))
+                .toList();
+    }
+
     @Transactional(readOnly = true)
-    public List<InventoryTransactionResponseDto> getTransactionHistory(Long productId, Long organizationId) {
+    public InventoryTransactionPageResponseDto getTransactionHistory(Long productId, Long organizationId,
+            String type, OffsetDateTime from, OffsetDateTime to, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_HISTORY_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Limit must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
         Inventory inventory = inventoryRepository
                 .findByOrganizationIdAndProductId(organizationId, productId)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "No inventory found for this product"));
 
-        List<InventoryTransaction> transactions = inventoryTransactionRepository
-                .findByInventoryIdOrderByCreatedAtDesc(inventory.getId());
-
-        // Get all unique user IDs (filter out nulls)
-        List<UUID> userIds = transactions.stream()
-                .map(InventoryTransaction::getCreatedBy)
+        HistoryCursor after = cursor != null ? HistoryCursor.decode(cursor) : null;
+        // One row more than asked tells whether there is a next page
+        List<InventoryTransaction> transactions = inventoryTransactionRepository.findHistoryPage(inventory.getId(),
+                type, from, to, after != null ? after.createdAt() : null, after != null ? after.id() : null,
+                Limit.of(limit + 1));
+        // Archived rows are older than all rows of the table, so a page that runs out continues there
+        List<LedgerRow> archived = ledgerArchive.findHistory(organizationId, inventory.getId(), type, from, to,
+                after != null ? after.createdAt() : null, after != null ? after.id() : null,
+                limit + 1 - transactions.size());
+
+        List<UUID> userIds = Stream.concat(
+                        transactions.stream().map(InventoryTransaction::getCreatedBy),
+                        archived.stream().map(row -> row.createdBy() != null ? UUID.fromString(row.createdBy()) : null))
                 .filter(Objects::nonNull)
                 .distinct()
                 .toList();
-
-        // Fetch all users at once
         Map<UUID, User> userMap = userRepository.findAllById(userIds).stream()
                 .collect(Collectors.toMap(User::getId, user -> user));
 
-        // Map transactions with user information
-        return transactions.stream()
-                .map(transaction -> {
-                    User user = userMap.get(transaction.getCreatedBy());
-                    return new InventoryTransactionResponseDto(
-                            transaction.getId(),
-                            transaction.getInventoryId(),
-                            transaction.getTransactionType(),
-                            transaction.getQuantityChange(),
-                            transaction.getQuantityBefore(),
-                            transaction.getQuantityAfter(),
-                            transaction.getPriceBefore(),
-                            transaction.getPriceAfter(),
-                            transaction.getReferenceId(),
-                            transaction.getNotes(),
-                            transaction.getCreatedBy() != null
-                                    ? transaction.getCreatedBy().toString()
-                                    : null,
-                            user != null ? user.getName() : null,
-                            user != null ? user.getEmail() : null,
-                            transaction.getCreatedAt() != null ? transaction.getCreatedAt()
-                                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)
-                                    : null);
-                })
-                .toList();
+        List<InventoryTransactionResponseDto> items = new ArrayList<>();
+        transactions.forEach(transaction -> items.add(toHistoryItem(transaction, userMap)));
+        archived.forEach(row -> items.add(toHistoryItem(row, userMap)));
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items.subList(limit, items.size()).clear();
+            nextCursor = limit <= transactions.size()
+                    ? new HistoryCursor(transactions.get(limit - 1).getCreatedAt(),
+                            transactions.get(limit - 1).getId()).encode()
+                    : new HistoryCursor(archived.get(limit - 1 - transactions.size()).createdAt(),
+                            archived.get(limit - 1 - transactions.size()).id()).encode();
+        }
+        return new InventoryTransactionPageResponseDto(items, nextCursor);
     }
 
-    @Transactional(readOnly = true)
-    public List<UserSalesStatsResponseDto> getUserSalesStats(Long organizationId) {
-        // Get all sale transactions for the organization
-        List<InventoryTransaction> saleTransactions = inventoryTransactionRepository
-                .findSaleTransactionsByOrganizationId(organizationId);
-
-        // Group transactions by user and station
-        Map<String, List<InventoryTransaction>> transactionsByUserAndStation = saleTransactions.stream()
-                .filter(t -> t.getCreatedBy() != null)
-                .collect(Collectors.groupingBy(transaction -> {
-                    UUID userId = transaction.getCreatedBy();
-                    Long stationId = transaction.getBarStationId();
-                    return userId.toString() + "|"
-                            + (stationId != null ? stationId.toString() : "null");
-                }));
-
-        // Get all unique user IDs and station IDs
-        Set<UUID> userIds = saleTransactions.stream()
-                .map(InventoryTransaction::getCreatedBy)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+    private static InventoryTransactionResponseDto toHistoryItem(InventoryTransaction transaction,
+            Map<UUID, User> userMap) {
+        User user = userMap.get(transaction.getCreatedBy());
+        return new InventoryTransactionResponseDto(
+                transaction.getId(),
+                transaction.getInventoryId(),
+                transaction.getTransactionType(),
+                transaction.getQuantityChange(),
+                transaction.getQuantityBefore(),
+                transaction.getQuantityAfter(),
+                transaction.getPriceBefore(),
+                transaction.getPriceAfter(),
+                transaction.getReferenceId(),
+                transaction.getNotes(),
+                transaction.getCreatedBy() != null
+                        ? transaction.getCreatedBy().toString()
+                        : null,
+                user != null ? user.getName() : null,
+                user != null ? user.getEmail() : null,
+                transaction.getCreatedAt() != null ? transaction.getCreatedAt()
+                        .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)
+                        : null);
+    }
 
-        Set<Long> stationIds = saleTransactions.stream()
-                .map(InventoryTransaction::getBarStationId)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+    private static InventoryTransactionResponseDto toHistoryItem(LedgerRow row, Map<UUID, User> userMap) {
+        User user = row.createdBy() != null ? userMap.get(UUID.fromString(row.createdBy())) : null;
+        return new InventoryTransactionResponseDto(
+                row.id(),
+                row.inventoryId(),
+                row.transactionType(),
+                row.quantityChange(),
+                row.quantityBefore(),
+                row.quantityAfter(),
+                row.priceBefore(),
+                row.priceAfter(),
+                row.referenceId(),
+                row.notes(),
+                row.createdBy(),
+                user != null ? user.getName() : null,
+                user != null ? user.getEmail() : null,
+                row.createdAt().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+    }
 
-        // Fetch all users and stations at once
-        Map<UUID, User> userMap = userRepository.findAllById(new ArrayList<>(userIds)).stream()
-                .collect(Collectors.toMap(User::getId, user -> user));
+    /**
+     * Position after the last row of a history page, handed to clients as an
+     * opaque URL-safe string.
+     */
+    private record HistoryCursor(OffsetDateTime createdAt, Long id) {
 
-        Map<Long, BarStation> stationMap = barStationRepository.findAllById(new ArrayList<>(stationIds))
-                .stream()
-                .collect(Collectors.toMap(BarStation::getId, station -> station));
-
-        // Calculate statistics for each user-station combination
-        return transactionsByUserAndStation.entrySet().stream()
-                .map(entry -> {
-                    String[] parts = entry.getKey().split("\\|");
-                    UUID userId = UUID.fromString(parts[0]);
-                    Long stationId = null;
-                    if (parts.length > 1 && !parts[1].equals("null")) {
-                        try {
-                            stationId = Long.parseLong(parts[1]);
-                        } catch (NumberFormatException e) {
-                            stationId = null;
-                        }
-                    }
-
-                    List<InventoryTransaction> userStationTransactions = entry.getValue();
-                    User user = userMap.get(userId);
-                    BarStation station = stationId != null ? stationMap.get(stationId) : null;
-
-                    // Count unique sales (by referenceId)
-                    long salesCount = userStationTransactions.stream()
-                            .map(InventoryTransaction::getReferenceId)
-                            .filter(Objects::nonNull)
-                            .distinct()
-                            .count();
-
-                    // Calculate total revenue by getting all products and their prices
-                    BigDecimal totalRevenue = calculateTotalRevenue(userStationTransactions);
-
-                    return new UserSalesStatsResponseDto(
-                            userId.toString(),
-                            user != null ? user.getName() : "Unknown User",
-                            user != null ? user.getEmail() : "unknown@email.com",
-                            salesCount,
-                            totalRevenue,
-                            stationId,
-                            station != null ? station.getName() : null);
-                })
-                .sorted((a, b) -> Long.compare(b.salesCount(), a.salesCount())) // Sort by sales count
-                // desc
-                .toList();
+        String encode() {
+            String value = createdAt.toInstant() + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf('|');
+                return new HistoryCursor(
+                        OffsetDateTime.ofInstant(Instant.parse(value.substring(0, separator)), ZoneOffset.UTC),
+                        Long.parseLong(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
     }
 
+    /**
+     * Sales per seller and bar station from the hourly rollup, optionally
+     * within {@code [from, to)} (whole hours, see {@link SalesRollupRepository}).
+     */
     @Transactional(readOnly = true)
-    public List<StationSalesStatsResponseDto> getStationSalesStats(Long organizationId) {
-        // Get all sale transactions for the organization
-        List<InventoryTransaction> saleTransactions = inventoryTransactionRepository
-                .findSaleTransactionsByOrganizationId(organizationId);
-
-        // Group transactions by station
-        Map<Long, List<InventoryTransaction>> transactionsByStation = saleTransactions.stream()
-                .filter(t -> t.getBarStationId() != null)
-                .collect(Collectors.groupingBy(InventoryTransaction::getBarStationId));
-
-        // Get all unique station IDs
-        Set<Long> stationIds = transactionsByStation.keySet();
-
-        // Fetch all stations at once
-        Map<Long, BarStation> stationMap = barStationRepository.findAllById(new ArrayList<>(stationIds))
-                .stream()
-                .collect(Collectors.toMap(BarStation::getId, station -> station));
-
-        // Calculate statistics for each station
-        return transactionsByStation.entrySet().stream()
-                .map(entry -> {
-                    Long stationId = entry.getKey();
-                    List<InventoryTransaction> stationTransactions = entry.getValue();
-                    BarStation station = stationMap.get(stationId);
-
-                    // Count unique sales (by referenceId)
-                    long salesCount = stationTransactions.stream()
-                            .map(InventoryTransaction::getReferenceId)
-                            .filter(Objects::nonNull)
-                            .distinct()
-                            .count();
-
-                    // Calculate total revenue by getting all products and their prices
-                    BigDecimal totalRevenue = calculateTotalRevenue(stationTransactions);
-
-                    return new StationSalesStatsResponseDto(
-                            stationId,
-                            station != null ? station.getName() : null,
-                            salesCount,
-                            totalRevenue);
-                })
-                .sorted((a, b) -> Long.compare(b.salesCount(), a.salesCount())) // Sort by sales count
-                // desc
-                .toList();
+    public List<UserSalesStatsResponseDto> getUserSalesStats(Long organizationId, OffsetDateTime from,
+            OffsetDateTime to) {
+        return salesRollupRepository.sumByUserAndStation(organizationId, from, to);
+    }
+
+    @Transactional(readOnly = true)
+    public List<StationSalesStatsResponseDto> getStationSalesStats(Long organizationId, OffsetDateTime from,
+            OffsetDateTime to) {
+        return salesRollupRepository.sumByStation(organizationId, from, to);
     }
 
     private void createTransaction(Inventory inventory, String type, BigDecimal quantityChange,
@@ -438,6 +504,17 @@ public class InventoryService {
         inventoryTransactionRepository.save(transaction);
     }
 
+    /**
+     * Manual stock changes work on the inventory row alone, so a striped
+     * product's shard stock is moved back into the row first.
+     */
+    private Inventory foldStripedStock(Inventory inventory) {
+        if (!stripedStockManager.fold(inventory.getId())) {
+            return inventory;
+        }
+        return inventoryRepository.findById(inventory.getId()).orElseThrow();
+    }
+
     private Product getOrganizationProduct(Long organizationId, Long productId) {
         // Verify product exists and belongs to organization
         Product product = productRepository.findById(productId)
@@ -453,28 +530,4 @@ public class InventoryService {
         }
         return product;
     }
-
-
-    private BigDecimal calculateTotalRevenue(List<InventoryTransaction> userStationTransactions) {
-        return userStationTransactions.stream()
-                .map(transaction -> {
-                    // Get inventory to find product
-                    return inventoryRepository
-                            .findById(transaction.getInventoryId())
-                            .flatMap(inventory -> productRepository
-                                    .findById(inventory
-                                            .getProductId()))
-                            .map(product -> {
-                                // Calculate revenue for this
-                                // transaction
-                                BigDecimal quantitySold = transaction
-                                        .getQuantityChange()
-                                        .abs();
-                                return product.getBasePrice()
-                                        .multiply(quantitySold);
-                            })
-                            .orElse(BigDecimal.ZERO);
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
 }
@@ -0,0 +1,259 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.InventoryChangesResponseDto;
+import com.borsibaar.pricing.InventoryVersions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Pushes inventory changes to price boards and POS terminals as server-sent
+ * events, one stream per connection.
+ * <p>
+ * Every tick, each organization with subscribers whose {@link InventoryVersions}
+ * version has moved gets one event: the {@link InventoryChangesResponseDto}
+ * since the previous event, serialized once and queued to every subscriber.
+ * Events carry the version as their id, so a reconnecting client resumes with
+ * {@code Last-Event-ID} and receives only what it missed.
+ * <p>
+ * Each subscriber is written by its own virtual thread from a bounded queue. A
+ * subscriber whose queue is full is disconnected rather than slowing down the
+ * others; its client reconnects and resumes.
+ */
+@Slf4j
+@Service
+public class InventoryStreamService {
+
+    static final String EVENT_NAME = "inventory";
+
+    private static final Set<DataWithMediaType> HEARTBEAT = SseEmitter.event().comment("heartbeat").build();
+
+    private final InventoryService inventoryService;
+    private final InventoryVersions inventoryVersions;
+    private final ObjectMapper objectMapper;
+    private final int queueSize;
+    private final long heartbeatMillis;
+    private final long timeoutMillis;
+    private final Executor writers;
+    private final LongSupplier clock;
+
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InventoryStreamService(InventoryService inventoryService, InventoryVersions inventoryVersions,
+            ObjectMapper objectMapper,
+            @Value("${app.inventory.stream.queue-size:16}") int queueSize,
+            @Value("${app.inventory.stream.heartbeat-ms:15000}") long heartbeatMillis,
+            @Value("${app.inventory.stream.timeout-ms:1800000}") long timeoutMillis) {
+        this(inventoryService, inventoryVersions, objectMapper, queueSize, heartbeatMillis, timeoutMillis,
+                Executors.newVirtualThreadPerTaskExecutor(), System::currentTimeMillis);
+    }
+
+    InventoryStreamService(InventoryService inventoryService, InventoryVersions inventoryVersions,
+            ObjectMapper objectMapper, int queueSize, long heartbeatMillis, long timeoutMillis, Executor writers,
+            LongSupplier clock) {
+        this.inventoryService = inventoryService;
+        this.inventoryVersions = inventoryVersions;
+        this.objectMapper = objectMapper;
+        this.queueSize = queueSize;
+        this.heartbeatMillis = heartbeatMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.writers = writers;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens a stream of the organization's inventory changes. The first event
+     * holds the changes since {@code lastEventId}, or the full listing when it
+     * is absent or too old.
+     */
+    public SseEmitter subscribe(Long organizationId, String lastEventId) {
+        return subscribe(organizationId, lastEventId, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(Long organizationId, String lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(organizationId, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        // Joined before the first event is read, so that no tick can fall in between. Atomic with the
+        // removal of an empty channel in publish().
+        Channel channel = channels.compute(organizationId, (id, existing) -> {
+            Channel joined = existing != null ? existing : new Channel();
+            if (!subscriber.closed.get()) {
+                joined.subscribers.add(subscriber);
+            }
+            return joined;
+        });
+        // Ticks wait for the first event and only then include this subscriber; their changes may repeat
+        // some of it, which clients apply again harmlessly
+        synchronized (channel) {
+            try {
+                InventoryChangesResponseDto initial = inventoryService.getChangesSince(organizationId, lastEventId);
+                if (channel.version == null) {
+                    channel.version = initial.version();
+                }
+                subscriber.offer(event(initial));
+                subscriber.started = true;
+            } catch (RuntimeException e) {
+                subscriber.close();
+                throw e;
+            }
+        }
+        return emitter;
+    }
+
+    /**
+     * Sends each organization whose version moved since its last event the
+     * changes in between, and a heartbeat to quiet streams so that proxies
+     * keep them open and dead connections are noticed.
+     */
+    @Scheduled(fixedDelayString = "${app.inventory.stream.tick-ms:500}")
+    public void publish() {
+        long now = clock.getAsLong();
+        channels.forEach((organizationId, channel) -> {
+            if (channels.computeIfPresent(organizationId, (id, c) -> c.subscribers.isEmpty() ? null : c) == null) {
+                return;
+            }
+            synchronized (channel) {
+                try {
+                    if (channel.version == null) {
+                        // Its first subscriber is still reading its first event
+                        return;
+                    }
+                    if (!channel.version.equals(inventoryVersions.current(organizationId))) {
+                        InventoryChangesResponseDto changes = inventoryService.getChangesSince(organizationId,
+                                channel.version);
+                        channel.version = changes.version();
+                        channel.broadcast(event(changes), now);
+                    } else if (now - channel.lastSentAt >= heartbeatMillis) {
+                        channel.broadcast(HEARTBEAT, now);
+                    }
+                } catch (RuntimeException e) {
+                    // Retried on the next tick, since the channel's version did not move
+                    log.warn("Could not publish inventory changes of organization {}", organizationId, e);
+                }
+            }
+        });
+    }
+
+    public int subscriberCount() {
+        return channels.values().stream().mapToInt(channel -> channel.subscribers.size()).sum();
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        channels.values().forEach(channel -> channel.subscribers.forEach(Subscriber::disconnect));
+        if (writers instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+
+    private Set<DataWithMediaType> event(InventoryChangesResponseDto changes) {
+        try {
+            return SseEmitter.event()
+                    .id(changes.version())
+                    .name(EVENT_NAME)
+                    .data(objectMapper.writeValueAsString(changes))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize inventory changes", e);
+        }
+    }
+
+    private final class Channel {
+        // Guarded by the channel; null until its first subscriber has read its first event
+        private String version;
+        private long lastSentAt = clock.getAsLong();
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+        private void broadcast(Set<DataWithMediaType> event, long now) {
+            lastSentAt = now;
+            subscribers.forEach(subscriber -> {
+                if (subscriber.started) {
+                    subscriber.offer(event);
+                }
+            });
+        }
+    }
+
+    private final class Subscriber {
+        private final Long organizationId;
+        private final SseEmitter emitter;
+        private final Queue<Set<DataWithMediaType>> pending = new ArrayBlockingQueue<>(queueSize);
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Guarded by the channel; set once the first event is queued
+        private boolean started;
+
+        private Subscriber(Long organizationId, SseEmitter emitter) {
+            this.organizationId = organizationId;
+            this.emitter = emitter;
+        }
+
+        private void offer(Set<DataWithMediaType> event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!pending.offer(event)) {
+                log.debug("Disconnecting an inventory stream that fell {} events behind", queueSize);
+                disconnect();
+                return;
+            }
+            if (writing.compareAndSet(false, true)) {
+                writers.execute(this::write);
+            }
+        }
+
+        private void write() {
+            do {
+                Set<DataWithMediaType> event;
+                while (!closed.get() && (event = pending.poll()) != null) {
+                    try {
+                        emitter.send(event);
+                    } catch (IOException | IllegalStateException e) {
+                        close();
+                    }
+                }
+                writing.set(false);
+                // An event queued after the last poll but before the flag was cleared
+            } while (!closed.get() && !pending.isEmpty() && writing.compareAndSet(false, true));
+        }
+
+        private void disconnect() {
+            close();
+            // Completing waits for a send in progress, so not on the publishing thread
+            writers.execute(emitter::complete);
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                Channel channel = channels.get(organizationId);
+                if (channel != null) {
+                    channel.subscribers.remove(this);
+                }
+                pending.clear();
+            }
+        }
+    }
+}
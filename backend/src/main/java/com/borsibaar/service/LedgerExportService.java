@@ -0,0 +1,182 @@
+package com.borsibaar.service;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.repository.LedgerExportRepository;
+import com.borsibaar.repository.LedgerRow;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Writes an organization's inventory ledger as NDJSON or CSV while it is read
+ * from the database, one row at a time. Once the writer's buffer is full, rows
+ * go out to the client as they arrive; if the client goes away, the next write
+ * fails and stops the query.
+ * <p>
+ * Rows moved to the {@link LedgerArchive} are merged in by time, so the export
+ * covers the whole ledger.
+ */
+@Service
+@RequiredArgsConstructor
+public class LedgerExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String fileName() {
+            return "ledger." + extension;
+        }
+
+        public static Format of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format: " + name);
+            }
+        }
+    }
+
+    private static final String CSV_HEADER = "id,created_at,transaction_type,inventory_id,product_id,product_name,"
+            + "quantity_change,quantity_before,quantity_after,price_before,price_after,reference_id,bar_station_id,"
+            + "created_by,notes";
+    private static final Comparator<LedgerRow> LEDGER_ORDER = Comparator.comparing(LedgerRow::createdAt)
+            .thenComparing(LedgerRow::id);
+
+    private final LedgerExportRepository ledgerExportRepository;
+    private final ObjectMapper objectMapper;
+    private final LedgerArchive ledgerArchive;
+
+    /**
+     * Writes the ledger oldest first. The output stream is flushed, not closed.
+     *
+     * @throws UncheckedIOException when writing fails, e.g. the client
+     *                              disconnected; the query is stopped by then
+     */
+    @Transactional(readOnly = true)
+    public void export(Long organizationId, String type, OffsetDateTime from, OffsetDateTime to, Format format,
+            OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try {
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+                streamLedger(organizationId, type, from, to, row -> writeCsv(writer, row));
+            } else {
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+                streamLedger(organizationId, type, from, to, row -> writeJson(generator, row));
+                generator.flush();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void streamLedger(Long organizationId, String type, OffsetDateTime from, OffsetDateTime to,
+            Consumer<LedgerRow> consumer) {
+        Set<YearMonth> archivedMonths = new HashSet<>(ledgerArchive.months(organizationId));
+        if (archivedMonths.isEmpty()) {
+            ledgerExportRepository.streamLedger(organizationId, type, from, to, consumer);
+            return;
+        }
+        Iterator<LedgerRow> archived = ledgerArchive.ledger(organizationId, type, from, to);
+        LedgerRow[] nextArchived = { archived.hasNext() ? archived.next() : null };
+        ledgerExportRepository.streamLedger(organizationId, type, from, to, row -> {
+            // Left in the table by an archive run whose deletion did not commit
+            if (archivedMonths.contains(YearMonth.from(row.createdAt().withOffsetSameInstant(ZoneOffset.UTC)))) {
+                return;
+            }
+            while (nextArchived[0] != null && LEDGER_ORDER.compare(nextArchived[0], row) < 0) {
+                consumer.accept(nextArchived[0]);
+                nextArchived[0] = archived.hasNext() ? archived.next() : null;
+            }
+            consumer.accept(row);
+        });
+        for (; nextArchived[0] != null; nextArchived[0] = archived.hasNext() ? archived.next() : null) {
+            consumer.accept(nextArchived[0]);
+        }
+    }
+
+    private void writeJson(JsonGenerator generator, LedgerRow row) {
+        try {
+            objectMapper.writeValue(generator, row);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsv(Writer writer, LedgerRow row) {
+        try {
+            writer.write(String.valueOf(row.id()));
+            writeCsvField(writer, row.createdAt());
+            writeCsvField(writer, row.transactionType());
+            writeCsvField(writer, row.inventoryId());
+            writeCsvField(writer, row.productId());
+            writeCsvField(writer, row.productName());
+            writeCsvField(writer, row.quantityChange() != null ? row.quantityChange().toPlainString() : null);
+            writeCsvField(writer, row.quantityBefore() != null ? row.quantityBefore().toPlainString() : null);
+            writeCsvField(writer, row.quantityAfter() != null ? row.quantityAfter().toPlainString() : null);
+            writeCsvField(writer, row.priceBefore() != null ? row.priceBefore().toPlainString() : null);
+            writeCsvField(writer, row.priceAfter() != null ? row.priceAfter().toPlainString() : null);
+            writeCsvField(writer, row.referenceId());
+            writeCsvField(writer, row.barStationId());
+            writeCsvField(writer, row.createdBy());
+            writeCsvField(writer, row.notes());
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsvField(Writer writer, Object value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
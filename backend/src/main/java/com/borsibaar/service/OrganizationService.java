@@ -4,6 +4,9 @@ import com.borsibaar.dto.OrganizationRequestDto;
 import com.borsibaar.dto.OrganizationResponseDto;
 import com.borsibaar.entity.Organization;
 import com.borsibaar.mapper.OrganizationMapper;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
 import com.borsibaar.repository.OrganizationRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -18,14 +21,22 @@ public class OrganizationService {
 
     private final OrganizationRepository organizationRepository;
     private final OrganizationMapper organizationMapper;
+    private final PriceEngine priceEngine;
+    private final PricingStrategies pricingStrategies;
+    private final LazyPriceDecay lazyPriceDecay;
 
-    public OrganizationService(OrganizationRepository organizationRepository, OrganizationMapper organizationMapper) {
+    public OrganizationService(OrganizationRepository organizationRepository, OrganizationMapper organizationMapper,
+            PriceEngine priceEngine, PricingStrategies pricingStrategies, LazyPriceDecay lazyPriceDecay) {
         this.organizationRepository = organizationRepository;
         this.organizationMapper = organizationMapper;
+        this.priceEngine = priceEngine;
+        this.pricingStrategies = pricingStrategies;
+        this.lazyPriceDecay = lazyPriceDecay;
     }
 
     @Transactional
     public OrganizationResponseDto create(OrganizationRequestDto request) {
+        validatePricingStrategy(request);
         Organization organization = organizationMapper.toEntity(request);
         organization.setCreatedAt(OffsetDateTime.now());
         organization.setUpdatedAt(organization.getCreatedAt());
@@ -53,9 +64,25 @@ public class OrganizationService {
     public OrganizationResponseDto update(Long id, OrganizationRequestDto request) {
         Organization organization = organizationRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Organization not found: " + id));
+        validatePricingStrategy(request);
         organizationMapper.updateEntity(organization, request);
         organization.setUpdatedAt(OffsetDateTime.now());
         Organization saved = organizationRepository.save(organization);
+        // Price steps and strategy are cached in the price book
+        priceEngine.evictAfterCompletion(id);
         return organizationMapper.toResponse(saved);
     }
+
+    private void validatePricingStrategy(OrganizationRequestDto request) {
+        if (request.pricingStrategy() != null && !pricingStrategies.contains(request.pricingStrategy())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown pricing strategy '"
+                    + request.pricingStrategy() + "', expected one of " + pricingStrategies.names());
+        }
+        // The price job decays prices linearly; other decays only apply on read
+        if (request.pricingStrategy() != null && !lazyPriceDecay.isEnabled()
+                && !pricingStrategies.decaysLinearly(request.pricingStrategy())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Pricing strategy '"
+                    + request.pricingStrategy() + "' requires app.pricing.lazy-decay.enabled");
+        }
+    }
 }
@@ -0,0 +1,287 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.SaleRequestDto;
+import com.borsibaar.dto.SaleResponseDto;
+import com.borsibaar.pricing.PriceEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional group commit for bursts of concurrent sales.
+ * <p>
+ * Submitted sales are queued and a single committer thread processes up to
+ * {@code max-batch} of them in one database transaction, waiting at most
+ * {@code max-wait-ms} after the first one for others to arrive. Each sale runs
+ * under its own savepoint, so a rejected basket is rolled back on its own and
+ * the rest of the group still commits. A sale rolled back to its savepoint
+ * leaves nothing behind: its organization's price book is evicted and the
+ * work it registered for after commit is dropped. The callers are answered
+ * once the group has committed.
+ * <p>
+ * If the group transaction fails before its commit, nothing of it was
+ * written, and every sale of the group is processed again in a transaction of
+ * its own, so callers always get the outcome of their own sale. If the commit
+ * itself fails, the group may or may not have been written: only sales with an
+ * idempotency key are processed again, which returns the stored response of a
+ * sale that was written, and the others fail.
+ */
+@Slf4j
+@Component
+public class SaleGroupCommitter {
+
+    private final SalesService salesService;
+    private final PriceEngine priceEngine;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.sales.group-commit.enabled:false}")
+    private boolean enabled;
+    @Value("${app.sales.group-commit.max-batch:64}")
+    private int maxBatch;
+    @Value("${app.sales.group-commit.max-wait-ms:2}")
+    private long maxWaitMillis;
+    @Value("${app.sales.group-commit.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private BlockingQueue<PendingSale> queue;
+    private Thread committer;
+    private volatile boolean running;
+
+    public SaleGroupCommitter(SalesService salesService, PriceEngine priceEngine, DataSource dataSource,
+            PlatformTransactionManager transactionManager) {
+        this.salesService = salesService;
+        this.priceEngine = priceEngine;
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        committer = new Thread(this::run, "sale-group-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (committer == null) {
+            return;
+        }
+        running = false;
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(10));
+        List<PendingSale> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(sale -> sale.result().completeExceptionally(shuttingDown()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the sale for the next group and waits until the group has
+     * committed. Exceptions are those {@link SalesService#processSale} would
+     * have thrown for this sale alone.
+     */
+    public SaleResponseDto submit(SaleRequestDto request, UUID userId, Long organizationId,
+            String idempotencyKey) {
+        PendingSale sale = new PendingSale(request, userId, organizationId, idempotencyKey,
+                new CompletableFuture<>());
+        if (!running) {
+            throw shuttingDown();
+        }
+        if (!queue.offer(sale)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many sales in progress");
+        }
+        try {
+            return sale.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<PendingSale> group = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (group.size() < maxBatch) {
+                    queue.drainTo(group, maxBatch - group.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (group.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    PendingSale next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                group.forEach(sale -> sale.result().completeExceptionally(shuttingDown()));
+                return;
+            }
+            try {
+                commit(group);
+            } catch (RuntimeException | Error e) {
+                log.error("Group commit of {} sales failed", group.size(), e);
+                group.forEach(sale -> sale.result().completeExceptionally(e));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    void commit(List<PendingSale> group) {
+        SaleResponseDto[] responses = new SaleResponseDto[group.size()];
+        RuntimeException[] failures = new RuntimeException[group.size()];
+        boolean[] committing = new boolean[1];
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Hibernate's JPA dialect has no savepoint support, so they are set on the
+                // transaction's JDBC connection, which the sale's statements also run on
+                Connection connection = DataSourceUtils.getConnection(dataSource);
+                for (int i = 0; i < group.size(); i++) {
+                    PendingSale sale = group.get(i);
+                    Savepoint savepoint = savepoint(connection);
+                    List<TransactionSynchronization> registered =
+                            TransactionSynchronizationManager.getSynchronizations();
+                    try {
+                        responses[i] = salesService.processSaleInCurrentTransaction(sale.request(),
+                                sale.userId(), sale.organizationId(), sale.idempotencyKey());
+                        // Ledger rows of accepted sales must reach the database before a later
+                        // sale's failure clears the persistence context
+                        entityManager.flush();
+                        release(connection, savepoint);
+                    } catch (RuntimeException e) {
+                        rollback(connection, savepoint);
+                        entityManager.clear();
+                        // The sale may have failed after it was applied to the book
+                        priceEngine.evict(sale.organizationId());
+                        restoreSynchronizations(registered);
+                        responses[i] = null;
+                        failures[i] = e;
+                    }
+                }
+                committing[0] = true;
+            });
+        } catch (RuntimeException e) {
+            // Books may hold sales of the group that were not written
+            group.forEach(sale -> priceEngine.evict(sale.organizationId()));
+            if (!committing[0]) {
+                log.warn("Group of {} sales failed before its commit, processing them one by one", group.size(), e);
+                group.forEach(this::commitAlone);
+                return;
+            }
+            log.error("Commit of a group of {} sales failed, its outcome is unknown", group.size(), e);
+            for (PendingSale sale : group) {
+                if (sale.idempotencyKey() != null) {
+                    // Answers with the stored response if the group was written after all
+                    commitAlone(sale);
+                } else {
+                    sale.result().completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            if (failures[i] != null) {
+                group.get(i).result().completeExceptionally(failures[i]);
+            } else {
+                group.get(i).result().complete(responses[i]);
+            }
+        }
+    }
+
+    /**
+     * Drops the synchronizations registered since {@code registered} was
+     * taken, e.g. the sales tracking of a sale rolled back to its savepoint.
+     */
+    private static void restoreSynchronizations(List<TransactionSynchronization> registered) {
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        registered.forEach(TransactionSynchronizationManager::registerSynchronization);
+    }
+
+    private static Savepoint savepoint(Connection connection) {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException e) {
+            throw new TransactionSystemException("Could not create savepoint", e);
+        }
+    }
+
+    private static void release(Connection connection, Savepoint savepoint) {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new TransactionSystemException("Could not release savepoint", e);
+        }
+    }
+
+    private static void rollback(Connection connection, Savepoint savepoint) {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            throw new TransactionSystemException("Could not roll back to savepoint", e);
+        }
+    }
+
+    private void commitAlone(PendingSale sale) {
+        try {
+            sale.result().complete(salesService.processSale(sale.request(), sale.userId(),
+                    sale.organizationId(), sale.idempotencyKey()));
+        } catch (RuntimeException e) {
+            sale.result().completeExceptionally(e);
+        }
+    }
+
+    private static ResponseStatusException shuttingDown() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Sales are not being accepted right now");
+    }
+
+    record PendingSale(SaleRequestDto request, UUID userId, Long organizationId, String idempotencyKey,
+            CompletableFuture<SaleResponseDto> result) {
+    }
+}
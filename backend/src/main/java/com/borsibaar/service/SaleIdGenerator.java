@@ -0,0 +1,90 @@
+package com.borsibaar.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered, collision-free sale reference ids. Each id packs milliseconds
+ * since {@link #EPOCH} (41 bits), the node id (10 bits) and a per-millisecond
+ * counter (12 bits). When the counter runs out, or the clock steps back, ids
+ * continue from the last issued timestamp, so ids of one node never repeat and
+ * never go backwards.
+ * <p>
+ * The node id comes from {@code app.sales.node-id}. It defaults to 0 on a
+ * single node; with {@code app.pricing.cluster.enabled} every node must be
+ * given its own, or the application does not start.
+ */
+@Component
+public class SaleIdGenerator {
+
+    static final long EPOCH = 1735689600000L; // 2025-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private static final long UNSET_NODE_ID = -1;
+
+    private final long nodeBits;
+    private final LongSupplier clock;
+    private final AtomicLong lastId = new AtomicLong();
+
+    @Autowired
+    public SaleIdGenerator(@Value("${app.sales.node-id:-1}") long nodeId,
+            @Value("${app.pricing.cluster.enabled:false}") boolean clusterMode) {
+        this(configuredNodeId(nodeId, clusterMode));
+    }
+
+    SaleIdGenerator(long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SaleIdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("app.sales.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    private static long configuredNodeId(long nodeId, boolean clusterMode) {
+        if (nodeId != UNSET_NODE_ID) {
+            return nodeId;
+        }
+        if (clusterMode) {
+            // Two nodes on the default would issue the same ids in the same millisecond
+            throw new IllegalStateException("app.sales.node-id must be set to a number unique to each node "
+                    + "when app.pricing.cluster.enabled is set");
+        }
+        return 0;
+    }
+
+    public String nextSaleId() {
+        return "SALE-" + nextId();
+    }
+
+    long nextId() {
+        while (true) {
+            long last = lastId.get();
+            long lastTimestamp = last >>> TIMESTAMP_SHIFT;
+            long timestamp = clock.getAsLong() - EPOCH;
+
+            long next;
+            if (timestamp > lastTimestamp) {
+                next = (timestamp << TIMESTAMP_SHIFT) | nodeBits;
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = last + 1;
+            } else {
+                // Counter exhausted for this millisecond: borrow the next one
+                next = ((lastTimestamp + 1) << TIMESTAMP_SHIFT) | nodeBits;
+            }
+            if (lastId.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.SaleResponseDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, least-recently-used cache of sale responses by idempotency key, so a
+ * retried submission is answered without touching the database. Entries expire
+ * after the configured TTL; the database stays the source of truth.
+ */
+@Component
+public class SaleSubmissionCache {
+
+    private record Key(Long organizationId, String idempotencyKey) {
+    }
+
+    private record Entry(SaleResponseDto response, long expiresAt) {
+    }
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<Key, Entry> entries;
+
+    @Autowired
+    public SaleSubmissionCache(@Value("${app.sales.idempotency.cache-size:10000}") int maxEntries,
+            @Value("${app.sales.idempotency.cache-ttl:PT1H}") Duration ttl) {
+        this(maxEntries, ttl, System::currentTimeMillis);
+    }
+
+    SaleSubmissionCache(int maxEntries, Duration ttl, LongSupplier clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized SaleResponseDto get(Long organizationId, String idempotencyKey) {
+        Key key = new Key(organizationId, idempotencyKey);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= clock.getAsLong()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.response();
+    }
+
+    public synchronized void put(Long organizationId, String idempotencyKey, SaleResponseDto response) {
+        entries.put(new Key(organizationId, idempotencyKey), new Entry(response, clock.getAsLong() + ttlMillis));
+    }
+}
@@ -0,0 +1,75 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.SaleRequestDto;
+import com.borsibaar.dto.SaleResponseDto;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.stock.StockContentionMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Entry point for sale submissions from the POS. A submission carrying an
+ * idempotency key is processed at most once per organization; retries get the
+ * original response back.
+ */
+@Service
+@RequiredArgsConstructor
+public class SaleSubmissionService {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final SalesService salesService;
+    private final SaleSubmissionCache saleSubmissionCache;
+    private final SaleSubmissionRepository saleSubmissionRepository;
+    private final StockContentionMetrics contentionMetrics;
+    private final SaleGroupCommitter saleGroupCommitter;
+
+    @Value("${app.sales.idempotency.retention:P7D}")
+    private Duration retention;
+
+    public SaleResponseDto submit(SaleRequestDto request, UUID userId, Long organizationId, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            long startedAt = System.nanoTime();
+            SaleResponseDto response = process(request, userId, organizationId, null);
+            contentionMetrics.recordSale(System.nanoTime() - startedAt);
+            return response;
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        SaleResponseDto cached = saleSubmissionCache.get(organizationId, idempotencyKey);
+        if (cached != null) {
+            return cached;
+        }
+        long startedAt = System.nanoTime();
+        SaleResponseDto response = process(request, userId, organizationId, idempotencyKey);
+        contentionMetrics.recordSale(System.nanoTime() - startedAt);
+        saleSubmissionCache.put(organizationId, idempotencyKey, response);
+        return response;
+    }
+
+    private SaleResponseDto process(SaleRequestDto request, UUID userId, Long organizationId,
+            String idempotencyKey) {
+        if (saleGroupCommitter.isEnabled()) {
+            return saleGroupCommitter.submit(request, userId, organizationId, idempotencyKey);
+        }
+        return idempotencyKey == null
+                ? salesService.processSale(request, userId, organizationId)
+                : salesService.processSale(request, userId, organizationId, idempotencyKey);
+    }
+
+    @Scheduled(cron = "0 30 4 * * *")
+    public void purgeExpiredKeys() {
+        saleSubmissionRepository.deleteCreatedBefore(OffsetDateTime.now().minus(retention));
+    }
+}
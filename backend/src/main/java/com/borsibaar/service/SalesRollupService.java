@@ -0,0 +1,132 @@
+package com.borsibaar.service;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.dto.SalesRollupRebuildResponseDto;
+import com.borsibaar.repository.SalesRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Rebuilds the hourly sales rollup from the ledger, e.g. to backfill it after
+ * upgrading or to repair it. The range is split into chunks of
+ * {@code chunk-hours} hours that are rebuilt in parallel, each in a
+ * transaction of its own, so a large ledger neither holds one long
+ * transaction nor takes one thread.
+ * <p>
+ * Hours before the end of the months moved to the {@link LedgerArchive} are
+ * left as they are: the ledger table no longer holds their sales.
+ */
+@Slf4j
+@Service
+public class SalesRollupService {
+
+    private final SalesRollupRepository salesRollupRepository;
+    private final LedgerArchive ledgerArchive;
+    private final TransactionOperations transactions;
+    private final int chunkHours;
+    private final int parallelism;
+
+    @Value("${app.sales-rollup.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    @Autowired
+    public SalesRollupService(SalesRollupRepository salesRollupRepository,
+            LedgerArchive ledgerArchive,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.sales-rollup.rebuild.chunk-hours:168}") int chunkHours,
+            @Value("${app.sales-rollup.rebuild.parallelism:4}") int parallelism) {
+        this(salesRollupRepository, ledgerArchive, new TransactionTemplate(transactionManager), chunkHours,
+                parallelism);
+    }
+
+    SalesRollupService(SalesRollupRepository salesRollupRepository, LedgerArchive ledgerArchive,
+            TransactionOperations transactions, int chunkHours, int parallelism) {
+        this.salesRollupRepository = salesRollupRepository;
+        this.ledgerArchive = ledgerArchive;
+        this.transactions = transactions;
+        this.chunkHours = chunkHours;
+        this.parallelism = parallelism;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        SalesRollupRebuildResponseDto result = rebuild(null, null, null);
+        log.info("Rebuilt the sales rollup from {} to {}: {} rows in {} chunks", result.from(), result.to(),
+                result.rows(), result.chunks());
+    }
+
+    /**
+     * Rebuilds the rollup of one organization, or of all when
+     * {@code organizationId} is {@code null}, over whole UTC hours: {@code from}
+     * is rounded down and {@code to} up. Without bounds, the hours from the
+     * first to the last sale in the ledger are rebuilt. The range starts no
+     * earlier than the end of the archived months.
+     */
+    public SalesRollupRebuildResponseDto rebuild(Long organizationId, OffsetDateTime from, OffsetDateTime to) {
+        SalesRollupRepository.SaleSpan span = from == null || to == null
+                ? salesRollupRepository.findSaleSpan(organizationId)
+                : null;
+        if (span == null && (from == null || to == null)) {
+            return new SalesRollupRebuildResponseDto(from, to, 0, 0);
+        }
+        OffsetDateTime start = SalesRollupRepository.hourOf(from != null ? from : span.first());
+        OffsetDateTime archivedUntil = ledgerArchive.archivedUntil(organizationId);
+        if (archivedUntil != null && start.isBefore(archivedUntil)) {
+            start = archivedUntil;
+        }
+        OffsetDateTime end = to != null ? ceilHour(to) : SalesRollupRepository.hourOf(span.last()).plusHours(1);
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (OffsetDateTime chunkStart = start; chunkStart.isBefore(end); ) {
+            OffsetDateTime chunkEnd = chunkStart.plusHours(chunkHours);
+            chunks.add(new Chunk(chunkStart, chunkEnd.isBefore(end) ? chunkEnd : end));
+            chunkStart = chunkEnd;
+        }
+        if (chunks.isEmpty()) {
+            return new SalesRollupRebuildResponseDto(start, end, 0, 0);
+        }
+
+        long rows = 0;
+        try (ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()))) {
+            List<CompletableFuture<Integer>> results = chunks.stream()
+                    .map(chunk -> CompletableFuture.supplyAsync(() -> transactions.execute(
+                            status -> salesRollupRepository.rebuild(organizationId, chunk.from(), chunk.to())), workers))
+                    .toList();
+            for (CompletableFuture<Integer> result : results) {
+                rows += result.join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return new SalesRollupRebuildResponseDto(start, end, chunks.size(), rows);
+    }
+
+    private record Chunk(OffsetDateTime from, OffsetDateTime to) {
+    }
+
+    private static OffsetDateTime ceilHour(OffsetDateTime time) {
+        OffsetDateTime hour = SalesRollupRepository.hourOf(time);
+        return hour.isBefore(time) ? hour.plusHours(1) : hour;
+    }
+}
@@ -1,13 +1,19 @@
 package com.borsibaar.service;
 
 import com.borsibaar.dto.*;
-import com.borsibaar.entity.Category;
-import com.borsibaar.entity.Inventory;
 import com.borsibaar.entity.InventoryTransaction;
-import com.borsibaar.entity.Product;
+import com.borsibaar.jobs.PriceCorrectionJob;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.SaleQuote;
+import com.borsibaar.repository.InventoryBatchRepository;
 import com.borsibaar.repository.InventoryRepository;
 import com.borsibaar.repository.InventoryTransactionRepository;
-import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import com.borsibaar.stock.StockContentionMetrics;
+import com.borsibaar.stock.StripedStockManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -15,138 +21,186 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class SalesService {
 
+        private static final Duration ORGANIZATION_SALE_RESOLUTION = Duration.ofSeconds(1);
+
         private final InventoryRepository inventoryRepository;
+        private final InventoryBatchRepository inventoryBatchRepository;
         private final InventoryTransactionRepository inventoryTransactionRepository;
-        private final ProductRepository productRepository;
+        private final PriceEngine priceEngine;
+        private final SaleIdGenerator saleIdGenerator;
+        private final SaleSubmissionRepository saleSubmissionRepository;
+        private final ObjectMapper objectMapper;
+        private final StripedStockManager stripedStockManager;
+        private final StockContentionMetrics contentionMetrics;
+        private final PriceCorrectionJob priceCorrectionJob;
+        private final SalesRollupRepository salesRollupRepository;
 
         @Transactional
         public SaleResponseDto processSale(SaleRequestDto request, UUID userId, Long organizationId) {
+                return processSale(request, userId, organizationId, null);
+        }
+
+        /**
+         * Processes the sale unless {@code idempotencyKey} was already used by
+         * the organization, in which case the original sale's response is returned.
+         */
+        @Transactional
+        public SaleResponseDto processSale(SaleRequestDto request, UUID userId, Long organizationId,
+                        String idempotencyKey) {
+                return processSaleInCurrentTransaction(request, userId, organizationId, idempotencyKey);
+        }
+
+        /**
+         * Same as {@link #processSale(SaleRequestDto, UUID, Long, String)}, but without a
+         * transactional boundary of its own: a failing sale does not mark the caller's
+         * transaction rollback-only, so the caller can undo just this sale by rolling
+         * back to a savepoint. Used by {@link SaleGroupCommitter}.
+         */
+        public SaleResponseDto processSaleInCurrentTransaction(SaleRequestDto request, UUID userId,
+                        Long organizationId, String idempotencyKey) {
                 // Generate unique sale reference ID
-                String saleId = "SALE-" + System.currentTimeMillis();
+                String saleId = saleIdGenerator.nextSaleId();
+
+                if (idempotencyKey != null && !saleSubmissionRepository.claim(
+                                organizationId, idempotencyKey, saleId, OffsetDateTime.now())) {
+                        return saleSubmissionRepository.findResponse(organizationId, idempotencyKey)
+                                        .map(this::readResponse)
+                                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                                                        "Sale with this Idempotency-Key is still being processed"));
+                }
+
+                // Prices and stock are computed in memory from the locked inventory rows while
+                // holding the organization's price book, and written while still holding it so
+                // that row updates land in the same order as the in-memory changes.
+                List<SaleQuote> quotes = priceEngine.execute(organizationId, book -> {
+                        OffsetDateTime soldAt = OffsetDateTime.now();
+                        List<SaleQuote> applied = priceEngine.applySale(book, request.items(), soldAt);
+                        persistSale(applied, saleId, userId, organizationId, request.barStationId(), soldAt);
+                        return applied;
+                });
+                priceCorrectionJob.recordSale(organizationId,
+                                quotes.stream().map(SaleQuote::productId).distinct().toList());
 
                 List<SaleItemResponseDto> saleItems = new ArrayList<>();
                 BigDecimal totalAmount = BigDecimal.ZERO;
-
-                // Process each item in the sale
-                for (SaleItemRequestDto item : request.items()) {
-                        SaleItemResponseDto saleItem = processSaleItem(item, userId, organizationId, saleId,
-                                        request.barStationId());
+                for (SaleQuote quote : quotes) {
+                        SaleItemResponseDto saleItem = new SaleItemResponseDto(
+                                        quote.productId(),
+                                        quote.productName(),
+                                        quote.quantity(),
+                                        quote.priceBefore(),
+                                        quote.totalPrice());
                         saleItems.add(saleItem);
                         totalAmount = totalAmount.add(saleItem.totalPrice());
                 }
 
-                return new SaleResponseDto(
+                SaleResponseDto response = new SaleResponseDto(
                                 saleId,
                                 saleItems,
                                 totalAmount,
                                 request.notes(),
                                 OffsetDateTime.now());
+                if (idempotencyKey != null) {
+                        saleSubmissionRepository.saveResponse(organizationId, idempotencyKey, writeResponse(response));
+                }
+                return response;
         }
 
-        private SaleItemResponseDto processSaleItem(SaleItemRequestDto item, UUID userId, Long organizationId,
-                        String saleId, Long barStationId) {
-                // Verify product exists and belongs to organization
-                Product product = productRepository.findById(item.productId())
-                                .orElseThrow(() -> new ResponseStatusException(
-                                                HttpStatus.NOT_FOUND, "Product not found: " + item.productId()));
-
-                if (!product.getOrganizationId().equals(organizationId)) {
-                        throw new ResponseStatusException(
-                                        HttpStatus.FORBIDDEN, "Product does not belong to your organization");
+        private String writeResponse(SaleResponseDto response) {
+                try {
+                        return objectMapper.writeValueAsString(response);
+                } catch (JsonProcessingException e) {
+                        throw new IllegalStateException("Could not serialize sale response", e);
                 }
+        }
 
-                if (!product.isActive()) {
-                        throw new ResponseStatusException(
-                                        HttpStatus.BAD_REQUEST, "Product is not active: " + product.getName());
+        private SaleResponseDto readResponse(String json) {
+                try {
+                        return objectMapper.readValue(json, SaleResponseDto.class);
+                } catch (JsonProcessingException e) {
+                        throw new IllegalStateException("Could not read stored sale response", e);
                 }
+        }
 
-                // Get inventory for this product
-                /*
-                 * Inventory inventory = inventoryRepository
-                 * .findByOrganizationIdAndProductId(organizationId, item.productId())
-                 * .orElseThrow(() -> new ResponseStatusException(
-                 * HttpStatus.NOT_FOUND, "No inventory found for product: " +
-                 * product.getName()));
-                 */
-                Inventory inventory = Optional.ofNullable(product.getInventory())
-                                .orElseThrow(() -> new ResponseStatusException(
-                                                HttpStatus.NOT_FOUND,
-                                                "No inventory found for product: " + product.getName()));
-
-                // Check stock availability
-                BigDecimal oldQuantity = inventory.getQuantity();
-                BigDecimal newQuantity = oldQuantity.subtract(item.quantity());
-
-                if (newQuantity.compareTo(BigDecimal.ZERO) < 0) {
-                        throw new ResponseStatusException(
-                                        HttpStatus.BAD_REQUEST,
-                                        "Insufficient stock for " + product.getName() +
-                                                        ". Available: " + oldQuantity + ", Requested: "
-                                                        + item.quantity());
+        private void persistSale(List<SaleQuote> quotes, String saleId, UUID userId, Long organizationId,
+                        Long barStationId, OffsetDateTime now) {
+                inventoryBatchRepository.recordOrganizationSale(organizationId, now, ORGANIZATION_SALE_RESOLUTION);
+
+                // Striped (high-velocity) products take their stock from shard rows instead
+                List<SaleQuote> rowQuotes = new ArrayList<>(quotes.size());
+                List<SaleQuote> shardQuotes = new ArrayList<>();
+                for (SaleQuote quote : quotes) {
+                        (stripedStockManager.isStriped(quote.inventoryId()) ? shardQuotes : rowQuotes).add(quote);
                 }
 
-                // Calculate pricing
-                BigDecimal priceBeforeSale = Optional.ofNullable(inventory.getAdjustedPrice())
-                                .orElse(product.getBasePrice());
-                BigDecimal totalPrice = priceBeforeSale.multiply(item.quantity());
-
-                BigDecimal priceAfterSale = priceBeforeSale;
-                Category category = product.getCategory();
-                if (category != null && category.isDynamicPricing()) {
-                        priceAfterSale = priceBeforeSale.add(product.getOrganization().getPriceIncreaseStep());
-                        if (product.getMaxPrice() != null && priceAfterSale.compareTo(product.getMaxPrice()) > 0) {
-                                priceAfterSale = product.getMaxPrice();
+                // One JDBC batch of guarded decrements of the rows locked for pricing. A line is
+                // only rejected when its product was striped by another node before the lock.
+                if (!rowQuotes.isEmpty()) {
+                        long startedAt = System.nanoTime();
+                        int[] updated = inventoryBatchRepository.decrementStockAndSetPrices(rowQuotes, now);
+                        contentionMetrics.recordStockUpdate(rowQuotes.stream().map(SaleQuote::inventoryId).toList(),
+                                        System.nanoTime() - startedAt);
+                        for (int i = updated.length - 1; i >= 0; i--) {
+                                if (updated[i] == 0) {
+                                        // The product may have been striped by another node
+                                        SaleQuote quote = rowQuotes.remove(i);
+                                        if (!stripedStockManager.isEnabled()) {
+                                                throw insufficientStock(quote);
+                                        }
+                                        shardQuotes.add(quote);
+                                }
+                        }
+                }
+                for (SaleQuote quote : shardQuotes) {
+                        if (!stripedStockManager.decrement(quote, now)) {
+                                throw insufficientStock(quote);
                         }
                 }
 
+                // The quotes were priced from the locked rows, so they hold each line's stock
+                InventoryTransaction[] transactions = new InventoryTransaction[quotes.size()];
+                for (int i = 0; i < quotes.size(); i++) {
+                        transactions[i] = saleTransaction(quotes.get(i), saleId, userId, barStationId, now);
+                }
 
-                // Update inventory
-                inventory.setQuantity(newQuantity);
-                inventory.setUpdatedAt(OffsetDateTime.now());
-                inventory.setAdjustedPrice(priceAfterSale);
-
-                inventory = inventoryRepository.save(inventory);
-
-                // Create sale transaction
-                createSaleTransaction(inventory, item.quantity(),
-                                oldQuantity, newQuantity, priceBeforeSale, priceAfterSale,
-                                saleId, userId, barStationId);
+                // Sequence ids are allocated in memory, so these are flushed as one insert batch
+                inventoryTransactionRepository.saveAll(Arrays.asList(transactions));
+                salesRollupRepository.addSale(organizationId, barStationId, userId, quotes, now);
+        }
 
-                return new SaleItemResponseDto(
-                                item.productId(),
-                                product.getName(),
-                                item.quantity(),
-                                priceBeforeSale,
-                                totalPrice);
+        private ResponseStatusException insufficientStock(SaleQuote quote) {
+                return new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST,
+                                "Insufficient stock for " + quote.productName() +
+                                                ". Requested: " + quote.quantity());
         }
 
-        private void createSaleTransaction(Inventory inventory, BigDecimal quantity,
-                        BigDecimal quantityBefore, BigDecimal quantityAfter,
-                        BigDecimal priceBefore, BigDecimal priceAfter,
-                        String saleId, UUID userId, Long barStationId) {
+        private InventoryTransaction saleTransaction(SaleQuote quote, String saleId, UUID userId,
+                        Long barStationId, OffsetDateTime createdAt) {
                 InventoryTransaction transaction = new InventoryTransaction();
-                transaction.setInventory(inventory);
+                transaction.setInventory(inventoryRepository.getReferenceById(quote.inventoryId()));
                 transaction.setTransactionType("SALE");
-                transaction.setQuantityChange(quantity.negate()); // Negative for sales
-                transaction.setQuantityBefore(quantityBefore);
-                transaction.setQuantityAfter(quantityAfter);
-                transaction.setPriceBefore(priceBefore);
-                transaction.setPriceAfter(priceAfter);
+                transaction.setQuantityChange(quote.quantity().negate()); // Negative for sales
+                transaction.setQuantityBefore(quote.quantityBefore());
+                transaction.setQuantityAfter(quote.quantityAfter());
+                transaction.setPriceBefore(quote.priceBefore());
+                transaction.setPriceAfter(quote.priceAfter());
                 transaction.setReferenceId(saleId);
                 transaction.setNotes("POS Sale");
                 transaction.setCreatedBy(userId);
                 transaction.setBarStationId(barStationId);
-                transaction.setCreatedAt(OffsetDateTime.now());
-                inventoryTransactionRepository.save(transaction);
+                transaction.setCreatedAt(createdAt);
+                return transaction;
         }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package com.borsibaar.stock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with four logarithmic buckets per power of two
+ * of microseconds (about 19% resolution), covering up to roughly 17 minutes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 30 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(1, nanos / 1000)));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, in milliseconds;
+     * {@code 0} when nothing was recorded.
+     */
+    public double percentileMillis(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundMicros(i) / 1000.0;
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1) / 1000.0;
+    }
+
+    static int bucketOf(long micros) {
+        int bucket = (int) Math.floor(Math.log(micros) / Math.log(2) * SUB_BUCKETS);
+        return Math.min(Math.max(bucket, 0), BUCKETS - 1);
+    }
+
+    static double upperBoundMicros(int bucket) {
+        return Math.pow(2, (bucket + 1) / (double) SUB_BUCKETS);
+    }
+}
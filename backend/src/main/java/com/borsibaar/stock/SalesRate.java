@@ -0,0 +1,88 @@
+package com.borsibaar.stock;
+
+import java.util.Arrays;
+
+/**
+ * Sold quantity of one product in fixed-point units and its number of sales,
+ * over the last {@link #HORIZON_MILLIS} in {@link #BUCKET_MILLIS} buckets,
+ * plus an exponentially weighted rate. Fixed {@code long[]} rings, so memory
+ * per product does not grow with its sales.
+ */
+class SalesRate {
+
+    static final long BUCKET_MILLIS = 5_000;
+    static final int BUCKETS = 120;
+    static final long HORIZON_MILLIS = BUCKET_MILLIS * BUCKETS;
+    // Time constant of the rate: a sale's weight falls to 1/e after this long
+    static final double EWMA_TAU_MILLIS = 60_000;
+
+    private final long[] bucketIndexes = new long[BUCKETS];
+    private final long[] bucketUnits = new long[BUCKETS];
+    private final long[] bucketSales = new long[BUCKETS];
+    // Units per millisecond as of ewmaAt
+    private double ewma;
+    private long ewmaAt;
+    private long lastSaleAt;
+
+    SalesRate() {
+        Arrays.fill(bucketIndexes, -1);
+    }
+
+    synchronized void record(long units, long at) {
+        long index = at / BUCKET_MILLIS;
+        int slot = (int) (index % BUCKETS);
+        if (bucketIndexes[slot] != index) {
+            bucketIndexes[slot] = index;
+            bucketUnits[slot] = 0;
+            bucketSales[slot] = 0;
+        }
+        bucketUnits[slot] += units;
+        bucketSales[slot]++;
+
+        ewma = decayed(at) + units / EWMA_TAU_MILLIS;
+        ewmaAt = Math.max(ewmaAt, at);
+        lastSaleAt = Math.max(lastSaleAt, at);
+    }
+
+    /**
+     * Units sold in the buckets covering the last {@code windowMillis}, the
+     * current bucket included.
+     */
+    synchronized long unitsWithin(long now, long windowMillis) {
+        return sumWithin(bucketUnits, now, windowMillis);
+    }
+
+    /**
+     * Number of sales in the same buckets as {@link #unitsWithin(long, long)}.
+     */
+    synchronized long salesWithin(long now, long windowMillis) {
+        return sumWithin(bucketSales, now, windowMillis);
+    }
+
+    synchronized double unitsPerMillis(long now) {
+        return decayed(now);
+    }
+
+    synchronized long lastSaleAt() {
+        return lastSaleAt;
+    }
+
+    private long sumWithin(long[] buckets, long now, long windowMillis) {
+        long newest = now / BUCKET_MILLIS;
+        long oldest = newest - (windowMillis + BUCKET_MILLIS - 1) / BUCKET_MILLIS;
+        long sum = 0;
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            if (bucketIndexes[slot] > oldest && bucketIndexes[slot] <= newest) {
+                sum += buckets[slot];
+            }
+        }
+        return sum;
+    }
+
+    private double decayed(long now) {
+        if (now <= ewmaAt) {
+            return ewma;
+        }
+        return ewma * Math.exp(-(now - ewmaAt) / EWMA_TAU_MILLIS);
+    }
+}
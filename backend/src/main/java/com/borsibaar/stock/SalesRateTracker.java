@@ -0,0 +1,116 @@
+package com.borsibaar.stock;
+
+import com.borsibaar.pricing.FixedPoint;
+import com.borsibaar.pricing.SaleQuote;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * How fast each product sells on this node, fed by the sale path so that
+ * readers (pricing, the board, depletion estimates) never have to query the
+ * ledger. Sold quantities and sale counts within the last
+ * {@link #MAX_WINDOW_MILLIS} and an exponentially weighted rate are kept per
+ * product in fixed-size rings.
+ * <p>
+ * Counts start empty on startup and only include committed sales made through
+ * this node.
+ */
+@Component
+public class SalesRateTracker {
+
+    public static final long MAX_WINDOW_MILLIS = SalesRate.HORIZON_MILLIS;
+
+    /**
+     * @param soldInWindow quantity sold within the requested window
+     * @param perMinute    exponentially weighted quantity sold per minute
+     * @param lastSaleAt   epoch millis of the latest sale
+     */
+    public record Velocity(Long productId, BigDecimal soldInWindow, double perMinute, long lastSaleAt) {
+    }
+
+    private final Map<Long, Map<Long, SalesRate>> organizations = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    @Autowired
+    public SalesRateTracker() {
+        this(System::currentTimeMillis);
+    }
+
+    SalesRateTracker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Counts the sale's lines as sold at {@code soldAtMillis} once the current
+     * transaction commits.
+     */
+    public void recordSale(Long organizationId, List<SaleQuote> quotes, long soldAtMillis) {
+        List<SaleQuote> lines = List.copyOf(quotes);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(organizationId, lines, soldAtMillis);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(organizationId, lines, soldAtMillis);
+            }
+        });
+    }
+
+    /**
+     * Number of sales of the product in the {@link SalesRate#BUCKET_MILLIS}
+     * buckets covering {@code windowMillis} before {@code now}, the window
+     * capped at {@link #MAX_WINDOW_MILLIS}.
+     */
+    public int salesWithin(Long organizationId, Long productId, long now, long windowMillis) {
+        SalesRate rate = organizations.getOrDefault(organizationId, Map.of()).get(productId);
+        return rate != null ? (int) rate.salesWithin(now, Math.min(windowMillis, MAX_WINDOW_MILLIS)) : 0;
+    }
+
+    /**
+     * Velocity of one product, or {@code null} if this node has not sold it
+     * since startup.
+     */
+    public Velocity velocity(Long organizationId, Long productId, long windowMillis) {
+        SalesRate rate = organizations.getOrDefault(organizationId, Map.of()).get(productId);
+        return rate != null ? velocity(productId, rate, clock.getAsLong(), windowMillis) : null;
+    }
+
+    /**
+     * Velocities of every product of the organization this node has sold.
+     */
+    public List<Velocity> velocities(Long organizationId, long windowMillis) {
+        long now = clock.getAsLong();
+        List<Velocity> velocities = new ArrayList<>();
+        organizations.getOrDefault(organizationId, Map.of())
+                .forEach((productId, rate) -> velocities.add(velocity(productId, rate, now, windowMillis)));
+        return velocities;
+    }
+
+    private void record(Long organizationId, List<SaleQuote> quotes, long soldAtMillis) {
+        Map<Long, SalesRate> products = organizations.computeIfAbsent(organizationId,
+                id -> new ConcurrentHashMap<>());
+        for (SaleQuote quote : quotes) {
+            products.computeIfAbsent(quote.productId(), id -> new SalesRate())
+                    .record(FixedPoint.of(quote.quantity()), soldAtMillis);
+        }
+    }
+
+    private static Velocity velocity(Long productId, SalesRate rate, long now, long windowMillis) {
+        long window = Math.min(windowMillis, MAX_WINDOW_MILLIS);
+        return new Velocity(productId,
+                FixedPoint.toDecimal(rate.unitsWithin(now, window), 0),
+                rate.unitsPerMillis(now) * 60_000 / FixedPoint.ONE,
+                rate.lastSaleAt());
+    }
+}
@@ -0,0 +1,86 @@
+package com.borsibaar.stock;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sale latency and time spent in guarded stock updates, collected per window.
+ * A stock update that has to wait for another sale's row lock shows up as a
+ * slow update, so the per-inventory averages are a direct measure of lock
+ * contention on that row.
+ */
+@Component
+public class StockContentionMetrics {
+
+    /**
+     * Measurements of one window. Inventory stats are keyed by inventory id.
+     */
+    @Getter
+    public static class Window {
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long endedAt;
+        private final LatencyHistogram saleLatency = new LatencyHistogram();
+        private final LatencyHistogram stockUpdateLatency = new LatencyHistogram();
+        private final Map<Long, InventoryStats> inventories = new ConcurrentHashMap<>();
+    }
+
+    public static class InventoryStats {
+        private final LongAdder updates = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        public long getUpdates() {
+            return updates.sum();
+        }
+
+        public double getAverageWaitMillis() {
+            long count = updates.sum();
+            return count == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / count;
+        }
+    }
+
+    private final AtomicReference<Window> current = new AtomicReference<>(new Window());
+    private volatile Window lastCompleted = current.get();
+
+    public void recordSale(long nanos) {
+        current.get().saleLatency.record(nanos);
+    }
+
+    /**
+     * Records one guarded update statement (or batch), given the inventory row
+     * of each line it updated. The duration is split evenly over the lines, so
+     * a row's average is its share of the batch rather than the whole batch.
+     */
+    public void recordStockUpdate(List<Long> lineInventoryIds, long nanos) {
+        Window window = current.get();
+        window.stockUpdateLatency.record(nanos);
+        if (lineInventoryIds.isEmpty()) {
+            return;
+        }
+        long lineNanos = nanos / lineInventoryIds.size();
+        for (Long inventoryId : lineInventoryIds) {
+            InventoryStats stats = window.inventories.computeIfAbsent(inventoryId, id -> new InventoryStats());
+            stats.updates.increment();
+            stats.waitNanos.add(lineNanos);
+        }
+    }
+
+    /**
+     * Closes the current window and starts a new one.
+     */
+    public Window roll() {
+        Window completed = current.getAndSet(new Window());
+        completed.endedAt = System.currentTimeMillis();
+        lastCompleted = completed;
+        return completed;
+    }
+
+    public Window getLastCompleted() {
+        return lastCompleted;
+    }
+}
@@ -0,0 +1,358 @@
+package com.borsibaar.stock;
+
+import com.borsibaar.dto.StockContentionResponseDto;
+import com.borsibaar.pricing.SaleQuote;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryBatchRepository.PriceAfterSale;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryStockShardRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional striped-stock mode for high-velocity products.
+ * <p>
+ * A striped product's stock is moved from its {@code inventory} row into
+ * {@code stripes} shard rows. Sales take stock from one shard (round robin),
+ * or from several when no single shard has enough, and no longer touch the
+ * inventory row, so concurrent sales of the same product stop queueing on a
+ * single row lock. Available stock is the inventory row plus the sum of its
+ * shards.
+ * <p>
+ * A transaction that sells a product more than once (a basket with several
+ * lines of it, or a group of sales) only ever waits for shards above the ones
+ * it already holds, so two transactions cannot lock each other's shards in
+ * opposite order. Once it has taken from shard {@code n}, its later lines of
+ * that product only use shards {@code n} and up.
+ * <p>
+ * The post-sale price is kept in memory and written to the inventory row,
+ * with the time of the sale, every {@code flush-interval-ms}; until then the
+ * row shows the price before the sale. Prices a node did not flush before it
+ * stopped are restored from the sales ledger by the next evaluation of any
+ * node.
+ * <p>
+ * Products are promoted when their stock updates were both frequent and slow
+ * (waiting for row locks) during the last evaluation window, and folded back
+ * when traffic drops or the shards run low. Manual stock changes always fold
+ * the product first.
+ */
+@Slf4j
+@Component
+public class StripedStockManager {
+
+    private final InventoryRepository inventoryRepository;
+    private final InventoryBatchRepository inventoryBatchRepository;
+    private final InventoryStockShardRepository shardRepository;
+    private final StockContentionMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.sales.striped-stock.enabled:false}")
+    private boolean enabled;
+    @Value("${app.sales.striped-stock.stripes:4}")
+    private int stripes;
+    @Value("${app.sales.striped-stock.max-products:32}")
+    private int maxProducts;
+    @Value("${app.sales.striped-stock.promote-min-updates:100}")
+    private long promoteMinUpdates;
+    @Value("${app.sales.striped-stock.promote-wait-ms:10}")
+    private double promoteWaitMillis;
+    @Value("${app.sales.striped-stock.demote-below-updates:20}")
+    private long demoteBelowUpdates;
+    @Value("${app.sales.striped-stock.min-stripe-quantity:2}")
+    private BigDecimal minStripeQuantity;
+
+    private final Set<Long> striped = ConcurrentHashMap.newKeySet();
+    private final Map<Long, AtomicInteger> cursors = new ConcurrentHashMap<>();
+    private final Map<Long, PriceAfterSale> pendingPrices = new ConcurrentHashMap<>();
+
+    public StripedStockManager(InventoryRepository inventoryRepository,
+            InventoryBatchRepository inventoryBatchRepository,
+            InventoryStockShardRepository shardRepository,
+            StockContentionMetrics metrics,
+            PlatformTransactionManager transactionManager) {
+        this.inventoryRepository = inventoryRepository;
+        this.inventoryBatchRepository = inventoryBatchRepository;
+        this.shardRepository = shardRepository;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadStripedProducts() {
+        if (enabled) {
+            refreshStriped();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isStriped(Long inventoryId) {
+        return enabled && striped.contains(inventoryId);
+    }
+
+    /**
+     * Takes the sale line's quantity from one of the product's shards, or from
+     * several of them when no single one has enough. Returns {@code false} when
+     * the shards this transaction may still lock have too little stock left.
+     * Must run in the sale transaction.
+     */
+    public boolean decrement(SaleQuote quote, OffsetDateTime now) {
+        HeldShards held = heldShards();
+        int lowest = held.lowest.getOrDefault(quote.inventoryId(), 0);
+        int eligible = stripes - lowest;
+        int start = Math.floorMod(cursors.computeIfAbsent(quote.inventoryId(), id -> new AtomicInteger())
+                .getAndIncrement(), eligible);
+        long startedAt = System.nanoTime();
+        try {
+            for (int i = 0; i < eligible; i++) {
+                // A guarded update that finds too little stock leaves the shard unlocked
+                int shardNo = lowest + (start + i) % eligible;
+                if (shardRepository.decrement(quote.inventoryId(), shardNo, quote.quantity(), now) == 1) {
+                    held.lowest.put(quote.inventoryId(), shardNo);
+                    recordPriceAfterCommit(quote.inventoryId(), new PriceAfterSale(quote.priceAfter(), now));
+                    return true;
+                }
+            }
+            // Locks every shard from the lowest one up, so later lines may keep using all of them
+            if (!decrementAcrossShards(quote, lowest, now)) {
+                return false;
+            }
+            recordPriceAfterCommit(quote.inventoryId(), new PriceAfterSale(quote.priceAfter(), now));
+            return true;
+        } finally {
+            metrics.recordStockUpdate(List.of(quote.inventoryId()), System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * Stock held in shards per inventory row, for adding to the row's own
+     * quantity. Empty when striping is disabled.
+     */
+    public Map<Long, BigDecimal> shardTotals(Collection<Long> inventoryIds) {
+        if (!enabled || inventoryIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return shardRepository.sumByInventoryIds(inventoryIds);
+    }
+
+    /**
+     * Moves the product's shard stock back into its inventory row and writes
+     * its latest price. Joins the caller's transaction if there is one.
+     *
+     * @return whether the inventory row was changed
+     */
+    public boolean fold(Long inventoryId) {
+        if (!enabled) {
+            return false;
+        }
+        striped.remove(inventoryId);
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            // Inventory row first, then shards: the same lock order as the sale path
+            inventoryRepository.lockQuantityById(inventoryId);
+            Map<Integer, BigDecimal> shards = shardRepository.lockShards(inventoryId);
+            if (shards.isEmpty()) {
+                return false;
+            }
+            BigDecimal total = shards.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+            inventoryRepository.incrementStock(inventoryId, total, OffsetDateTime.now());
+            shardRepository.deleteByInventoryId(inventoryId);
+            PriceAfterSale price = pendingPrices.remove(inventoryId);
+            if (price != null) {
+                inventoryBatchRepository.updatePricesAfterSales(Map.of(inventoryId, price));
+            }
+            return true;
+        }));
+    }
+
+    /**
+     * Moves the inventory row's stock into the shards: whole units evenly, and
+     * any remainder into shard 0, so that all of it can be sold.
+     */
+    public boolean promote(Long inventoryId) {
+        Boolean promoted = transactionTemplate.execute(status -> {
+            BigDecimal quantity = inventoryRepository.lockQuantityById(inventoryId);
+            if (quantity == null || !shardRepository.lockShards(inventoryId).isEmpty()) {
+                // Gone, or already striped by another node
+                return quantity != null;
+            }
+            BigDecimal perStripe = quantity.divideToIntegralValue(BigDecimal.valueOf(stripes));
+            if (perStripe.compareTo(minStripeQuantity) < 0) {
+                return false;
+            }
+            OffsetDateTime now = OffsetDateTime.now();
+            List<BigDecimal> shards = new ArrayList<>(Collections.nCopies(stripes, perStripe));
+            shards.set(0, quantity.subtract(perStripe.multiply(BigDecimal.valueOf(stripes - 1))));
+            inventoryRepository.decrementStock(inventoryId, quantity, now);
+            shardRepository.insertShards(inventoryId, shards, now);
+            return true;
+        });
+        if (Boolean.TRUE.equals(promoted)) {
+            striped.add(inventoryId);
+        }
+        return Boolean.TRUE.equals(promoted);
+    }
+
+    @Scheduled(fixedDelayString = "${app.sales.striped-stock.flush-interval-ms:1000}")
+    public void flushPrices() {
+        if (pendingPrices.isEmpty()) {
+            return;
+        }
+        Map<Long, PriceAfterSale> prices = new HashMap<>(pendingPrices);
+        inventoryBatchRepository.updatePricesAfterSales(prices);
+        // Keep prices recorded while flushing for the next round
+        prices.forEach(pendingPrices::remove);
+    }
+
+    /**
+     * Closes the metrics window and promotes or demotes products based on it.
+     */
+    @Scheduled(fixedDelayString = "${app.sales.striped-stock.evaluation-interval-ms:10000}")
+    public void evaluate() {
+        StockContentionMetrics.Window window = metrics.roll();
+        if (!enabled) {
+            return;
+        }
+        refreshStriped();
+        restorePrices();
+
+        Map<Long, BigDecimal> totals = shardRepository.sumByInventoryIds(striped);
+        BigDecimal lowWatermark = minStripeQuantity.multiply(BigDecimal.valueOf(stripes));
+        for (Long inventoryId : new ArrayList<>(striped)) {
+            StockContentionMetrics.InventoryStats stats = window.getInventories().get(inventoryId);
+            long updates = stats != null ? stats.getUpdates() : 0;
+            BigDecimal total = totals.getOrDefault(inventoryId, BigDecimal.ZERO);
+            if (updates < demoteBelowUpdates || total.compareTo(lowWatermark) < 0) {
+                log.info("Folding striped stock of inventory {} ({} updates, {} in shards)", inventoryId, updates,
+                        total);
+                fold(inventoryId);
+            }
+        }
+
+        window.getInventories().forEach((inventoryId, stats) -> {
+            if (striped.size() >= maxProducts || striped.contains(inventoryId)) {
+                return;
+            }
+            if (stats.getUpdates() >= promoteMinUpdates && stats.getAverageWaitMillis() >= promoteWaitMillis) {
+                if (promote(inventoryId)) {
+                    log.info("Striped stock of inventory {} over {} shards ({} updates, {} ms average wait)",
+                            inventoryId, stripes, stats.getUpdates(), stats.getAverageWaitMillis());
+                }
+            }
+        });
+    }
+
+    public StockContentionResponseDto getContention() {
+        StockContentionMetrics.Window window = metrics.getLastCompleted();
+        return new StockContentionResponseDto(
+                Math.max(0, (window.getEndedAt() - window.getStartedAt()) / 1000),
+                window.getSaleLatency().count(),
+                window.getSaleLatency().percentileMillis(50),
+                window.getSaleLatency().percentileMillis(99),
+                window.getStockUpdateLatency().percentileMillis(99),
+                enabled,
+                striped.stream().sorted().toList());
+    }
+
+    private void refreshStriped() {
+        // Picks up products striped or folded by other nodes
+        List<Long> current = shardRepository.findStripedInventoryIds();
+        striped.retainAll(current);
+        striped.addAll(current);
+    }
+
+    private void restorePrices() {
+        // Sales of nodes that stopped before flushing: the ledger holds each sale's price
+        Map<Long, PriceAfterSale> unwritten = inventoryBatchRepository.findUnwrittenPricesAfterSales(striped);
+        unwritten.keySet().removeAll(pendingPrices.keySet());
+        inventoryBatchRepository.updatePricesAfterSales(unwritten);
+    }
+
+    /**
+     * Takes the quantity from the shards from {@code lowest} up, in shard
+     * order, each down to zero, after locking all of them.
+     */
+    private boolean decrementAcrossShards(SaleQuote quote, int lowest, OffsetDateTime now) {
+        Map<Integer, BigDecimal> shards = shardRepository.lockShards(quote.inventoryId(), lowest);
+        BigDecimal total = shards.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        if (total.compareTo(quote.quantity()) < 0) {
+            return false;
+        }
+        BigDecimal remaining = quote.quantity();
+        for (Map.Entry<Integer, BigDecimal> shard : shards.entrySet()) {
+            BigDecimal taken = shard.getValue().min(remaining);
+            if (taken.signum() > 0) {
+                shardRepository.decrement(quote.inventoryId(), shard.getKey(), taken, now);
+                remaining = remaining.subtract(taken);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The current transaction's {@link HeldShards}, registered on first use.
+     */
+    private static HeldShards heldShards() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new HeldShards();
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof HeldShards held) {
+                return held;
+            }
+        }
+        HeldShards held = new HeldShards();
+        TransactionSynchronizationManager.registerSynchronization(held);
+        return held;
+    }
+
+    private void recordPriceAfterCommit(Long inventoryId, PriceAfterSale price) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordPrice(inventoryId, price);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recordPrice(inventoryId, price);
+            }
+        });
+    }
+
+    private void recordPrice(Long inventoryId, PriceAfterSale price) {
+        // Sales commit out of order; keep the price of the latest one
+        pendingPrices.merge(inventoryId, price,
+                (pending, added) -> added.soldAt().isBefore(pending.soldAt()) ? pending : added);
+    }
+
+    /**
+     * Per inventory row, the lowest shard the transaction may still lock: the
+     * highest one it took stock from alone. Kept as a synchronization so that
+     * it ends with the transaction, and is dropped with the others when a sale
+     * is rolled back to its savepoint, which also releases its locks.
+     */
+    private static final class HeldShards implements TransactionSynchronization {
+        private final Map<Long, Integer> lowest = new HashMap<>();
+    }
+}
@@ -0,0 +1,62 @@
+package com.borsibaar;
+
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.Objects;
+
+/**
+ * The PostgreSQL database of the tests that need one. {@code TEST_POSTGRES_URL}
+ * points them at an existing database they may create their schema in (e.g.
+ * {@code jdbc:postgresql://localhost:5432/borsibaar_test}), with
+ * {@code TEST_POSTGRES_USER} and {@code TEST_POSTGRES_PASSWORD} defaulting to
+ * {@code postgres}. Without it, one container is started on first use and
+ * shared by every test of the run; those tests are skipped when neither is
+ * available.
+ */
+public final class PostgresTestDatabase {
+
+    private static final String IMAGE = "postgres:16-alpine";
+
+    private static PostgreSQLContainer<?> container;
+
+    private PostgresTestDatabase() {
+    }
+
+    /**
+     * For {@code @EnabledIf("com.borsibaar.PostgresTestDatabase#available")}.
+     */
+    public static boolean available() {
+        return configured() || DockerClientFactory.instance().isDockerAvailable();
+    }
+
+    public static String url() {
+        return configured() ? System.getenv("TEST_POSTGRES_URL") : container().getJdbcUrl();
+    }
+
+    public static String username() {
+        return configured() ? env("TEST_POSTGRES_USER") : container().getUsername();
+    }
+
+    public static String password() {
+        return configured() ? env("TEST_POSTGRES_PASSWORD") : container().getPassword();
+    }
+
+    private static boolean configured() {
+        String url = System.getenv("TEST_POSTGRES_URL");
+        return url != null && !url.isBlank();
+    }
+
+    // Stopped by Testcontainers when the test JVM exits
+    private static synchronized PostgreSQLContainer<?> container() {
+        if (container == null) {
+            container = new PostgreSQLContainer<>(IMAGE);
+            container.start();
+        }
+        return container;
+    }
+
+    private static String env(String name) {
+        return Objects.requireNonNullElse(System.getenv(name), "postgres");
+    }
+}
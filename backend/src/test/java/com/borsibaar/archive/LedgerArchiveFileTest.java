@@ -0,0 +1,80 @@
+package com.borsibaar.archive;
+
+import com.borsibaar.archive.LedgerArchiveFile.Column;
+import com.borsibaar.repository.LedgerRow;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerArchiveFileTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 6, 1, 20, 0, 0, 123_456_000, ZoneOffset.UTC);
+
+    @Test
+    void encode_RowsComeBackSortedAndUnchanged() {
+        String seller = UUID.randomUUID().toString();
+        LedgerRow sale = new LedgerRow(51L, START, "SALE", 7L, 3L, "Õlu \"kange\"", new BigDecimal("-2.0000"),
+                new BigDecimal("10.0000"), new BigDecimal("8.0000"), new BigDecimal("3.5000"),
+                new BigDecimal("4.0000"), "S-1", 2L, seller, "Tänan");
+        LedgerRow sameTime = new LedgerRow(50L, START, "SALE", 8L, 4L, "Cider", new BigDecimal("-1.0000"),
+                new BigDecimal("5.0000"), new BigDecimal("4.0000"), new BigDecimal("5.0000"),
+                new BigDecimal("5.0000"), "S-1", 2L, seller, null);
+        LedgerRow earlier = new LedgerRow(1L, START.minusDays(3), "PURCHASE", 7L, 3L, "Õlu \"kange\"",
+                new BigDecimal("10.0000"), BigDecimal.ZERO.setScale(4), new BigDecimal("10.0000"),
+                new BigDecimal("4.0000"), new BigDecimal("3.0000"), null, null, null, null);
+
+        LedgerArchiveFile file = new LedgerArchiveFile(ByteBuffer.wrap(
+                LedgerArchiveFile.encode(List.of(sale, sameTime, earlier))));
+
+        assertEquals(3, file.size());
+        assertEquals(earlier, file.row(0));
+        assertEquals(sameTime, file.row(1));
+        assertEquals(sale, file.row(2));
+        assertEquals(START.toInstant(), file.row(2).createdAt().toInstant());
+    }
+
+    @Test
+    void encode_RepeatingValuesTakeAFewBytesPerRow() {
+        List<LedgerRow> rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.add(new LedgerRow(1_000_000L + i * 50L, START.plusSeconds(i * 7L), i % 10 == 0 ? "ADJUSTMENT" : "SALE",
+                    100L + i % 20, 200L + i % 20, "Product " + i % 20, new BigDecimal("-1.0000"),
+                    BigDecimal.valueOf(500 - i % 500, 0).setScale(4), BigDecimal.valueOf(499 - i % 500, 0).setScale(4),
+                    new BigDecimal("4.5000"), new BigDecimal("4.5000"), "S-" + i / 3, 1L, null, null));
+        }
+
+        byte[] encoded = LedgerArchiveFile.encode(rows);
+
+        // Against more than 100 bytes per row in the table, before its indexes
+        assertTrue(encoded.length < rows.size() * 32, "Encoded size " + encoded.length);
+        LedgerArchiveFile file = new LedgerArchiveFile(ByteBuffer.wrap(encoded));
+        assertEquals(rows.get(9_999), file.row(9_999));
+        assertEquals(rows.get(9_999).id(), file.column(Column.ID)[9_999]);
+    }
+
+    @Test
+    void stringRefAndLongRef_MissingValue_MinusOne() {
+        LedgerArchiveFile file = new LedgerArchiveFile(ByteBuffer.wrap(LedgerArchiveFile.encode(List.of(
+                new LedgerRow(1L, START, "SALE", 7L, 3L, "Lager", BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE,
+                        BigDecimal.ONE, BigDecimal.ONE, null, null, null, null)))));
+
+        assertEquals(file.column(Column.TRANSACTION_TYPE)[0], file.stringRef("SALE"));
+        assertEquals(-1, file.stringRef("PURCHASE"));
+        assertEquals(file.column(Column.INVENTORY_ID)[0], file.longRef(7L));
+        assertEquals(-1, file.longRef(8L));
+    }
+
+    @Test
+    void open_NotAnArchive_Rejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LedgerArchiveFile(ByteBuffer.wrap(new byte[64])));
+    }
+}
@@ -0,0 +1,97 @@
+package com.borsibaar.archive;
+
+import com.borsibaar.repository.LedgerRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerArchiveTest {
+
+    private static final OffsetDateTime MAY = OffsetDateTime.of(2025, 5, 31, 23, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime JUNE = OffsetDateTime.of(2025, 6, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    @TempDir private Path directory;
+
+    private LedgerArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        archive = new LedgerArchive(directory);
+        archive.write(1L, YearMonth.of(2025, 5), List.of(row(1, MAY, 7L, "PURCHASE"), row(2, MAY, 7L, "SALE")));
+        archive.write(1L, YearMonth.of(2025, 6), List.of(row(3, JUNE, 7L, "SALE"), row(4, JUNE.plusMinutes(1), 8L,
+                "SALE"), row(5, JUNE.plusMinutes(2), 7L, "SALE")));
+    }
+
+    @Test
+    void findHistory_NewestFirstAcrossMonths() {
+        List<LedgerRow> rows = archive.findHistory(1L, 7L, null, null, null, null, null, 10);
+
+        assertEquals(List.of(5L, 3L, 2L, 1L), rows.stream().map(LedgerRow::id).toList());
+        assertEquals(List.of(YearMonth.of(2025, 6), YearMonth.of(2025, 5)), archive.months(1L));
+    }
+
+    @Test
+    void findHistory_CursorTypeAndRange() {
+        assertEquals(List.of(2L, 1L), ids(archive.findHistory(1L, 7L, null, null, null, JUNE, 3L, 10)));
+        // Same time as the cursor, lower id
+        assertEquals(List.of(1L), ids(archive.findHistory(1L, 7L, null, null, null, MAY, 2L, 10)));
+        assertEquals(List.of(5L, 3L, 2L), ids(archive.findHistory(1L, 7L, "SALE", null, null, null, null, 10)));
+        assertEquals(List.of(3L), ids(archive.findHistory(1L, 7L, null, JUNE, JUNE.plusMinutes(2), null, null, 10)));
+        assertEquals(List.of(5L, 3L), ids(archive.findHistory(1L, 7L, null, null, null, null, null, 2)));
+        assertTrue(archive.findHistory(2L, 7L, null, null, null, null, null, 10).isEmpty());
+        assertTrue(archive.findHistory(1L, 9L, null, null, null, null, null, 10).isEmpty());
+    }
+
+    @Test
+    void ledger_OldestFirstWithTypeAndRange() {
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(archive.ledger(1L, null, null, null)));
+        assertEquals(List.of(2L, 3L, 4L, 5L), ids(archive.ledger(1L, "SALE", null, null)));
+        assertEquals(List.of(3L, 4L), ids(archive.ledger(1L, null, JUNE, JUNE.plusMinutes(2))));
+        assertEquals(List.of(), ids(archive.ledger(1L, "PURCHASE", JUNE, null)));
+        assertEquals(List.of(), ids(archive.ledger(2L, null, null, null)));
+    }
+
+    @Test
+    void archivedUntil_EndOfNewestMonth() {
+        archive.write(2L, YearMonth.of(2025, 7), List.of(row(9, JUNE.plusMonths(1), 9L, "SALE")));
+
+        assertEquals(OffsetDateTime.of(2025, 7, 1, 0, 0, 0, 0, ZoneOffset.UTC), archive.archivedUntil(1L));
+        assertEquals(OffsetDateTime.of(2025, 8, 1, 0, 0, 0, 0, ZoneOffset.UTC), archive.archivedUntil(null));
+        assertNull(archive.archivedUntil(3L));
+    }
+
+    @Test
+    void write_MonthArchivedAgain_MergedWithoutDuplicates() {
+        archive.write(1L, YearMonth.of(2025, 5), List.of(row(2, MAY, 7L, "SALE"), row(6, MAY.plusMinutes(1), 7L,
+                "SALE")));
+
+        assertEquals(List.of(6L, 2L, 1L), ids(archive.findHistory(1L, 7L, null, null, JUNE, null, null, 10)));
+    }
+
+    private static List<Long> ids(List<LedgerRow> rows) {
+        return rows.stream().map(LedgerRow::id).toList();
+    }
+
+    private static List<Long> ids(Iterator<LedgerRow> rows) {
+        List<Long> ids = new ArrayList<>();
+        rows.forEachRemaining(row -> ids.add(row.id()));
+        return ids;
+    }
+
+    private static LedgerRow row(long id, OffsetDateTime createdAt, Long inventoryId, String type) {
+        return new LedgerRow(id, createdAt, type, inventoryId, inventoryId + 100, "Product " + inventoryId,
+                new BigDecimal("-1.0000"), new BigDecimal("10.0000"), new BigDecimal("9.0000"),
+                new BigDecimal("4.0000"), new BigDecimal("4.0000"), "S-" + id, null, null, null);
+    }
+}
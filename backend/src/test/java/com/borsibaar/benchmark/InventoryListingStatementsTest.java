@@ -0,0 +1,169 @@
+package com.borsibaar.benchmark;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.dto.InventoryChangesResponseDto;
+import com.borsibaar.dto.InventoryResponseDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.mapper.InventoryMapperImpl;
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryStockShardRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import com.borsibaar.service.InventoryService;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StockContentionMetrics;
+import com.borsibaar.stock.StripedStockManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the statements of the inventory listing the public price board polls,
+ * and of the change feed polled instead of it: one, however many products the
+ * organization has.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:inventorylisting;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ InventoryService.class, InventoryMapperImpl.class, PriceEngine.class, LazyPriceDecay.class,
+        PricingStrategies.class, LinearPricingStrategy.class, StripedStockManager.class, InventoryBatchRepository.class,
+        InventoryStockShardRepository.class, StockContentionMetrics.class, SalesRateTracker.class,
+        InventoryVersions.class, SalesRollupRepository.class, LedgerArchive.class,
+        InventoryListingStatementsTest.Config.class })
+class InventoryListingStatementsTest {
+
+    private static final int PRODUCTS = 50;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        static StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+    }
+
+    @Autowired private InventoryService inventoryService;
+    @Autowired private PriceEngine priceEngine;
+    @Autowired private StatementCounter statementCounter;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private Long organizationId;
+    private Long beerCategoryId;
+    private List<Long> productIds;
+
+    @BeforeEach
+    void setUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> createStock());
+    }
+
+    @Test
+    void getByOrganization_OneStatementForAllProducts() {
+        statementCounter.reset();
+        List<InventoryResponseDto> listing = inventoryService.getByOrganization(organizationId, null);
+        int statements = statementCounter.get();
+
+        // Every other product is inactive; the rest come back sorted by name
+        assertEquals(PRODUCTS / 2, listing.size());
+        assertEquals("Product 00", listing.get(0).productName());
+        assertEquals("Product 48", listing.get(listing.size() - 1).productName());
+        assertEquals(new BigDecimal("3.0000"), listing.get(0).unitPrice());
+        assertEquals(1, statements, "Expected a single statement, got " + statements);
+    }
+
+    @Test
+    void getByOrganization_Category_FilteredInTheSameStatement() {
+        statementCounter.reset();
+        List<InventoryResponseDto> listing = inventoryService.getByOrganization(organizationId, beerCategoryId);
+
+        assertEquals(List.of("Product 00", "Product 10", "Product 20", "Product 30", "Product 40"),
+                listing.stream().map(InventoryResponseDto::productName).toList());
+        assertEquals(1, statementCounter.get());
+    }
+
+    @Test
+    void getChangesSince_OneStatementForTheChangedProductsOnly() {
+        String version = inventoryService.getChangesSince(organizationId, null).version();
+        // One active, one inactive
+        priceEngine.evict(organizationId, productIds.subList(0, 2));
+
+        statementCounter.reset();
+        InventoryChangesResponseDto changes = inventoryService.getChangesSince(organizationId, version);
+
+        assertFalse(changes.full());
+        assertEquals(1, changes.products().size());
+        assertEquals(1, changes.removedProductIds().size());
+        assertEquals(1, statementCounter.get());
+
+        statementCounter.reset();
+        assertTrue(inventoryService.getChangesSince(organizationId, changes.version()).products().isEmpty());
+        assertEquals(0, statementCounter.get());
+    }
+
+    private void createStock() {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(new BigDecimal("0.10"));
+        org.setPriceDecreaseStep(new BigDecimal("0.10"));
+        org = organizationRepository.save(org);
+        organizationId = org.getId();
+
+        Category beer = category(org.getId(), "Beer");
+        Category other = category(org.getId(), "Other");
+        beerCategoryId = beer.getId();
+
+        productIds = new ArrayList<>();
+        // Saved in reverse so that the order has to come from the query
+        for (int i = PRODUCTS - 1; i >= 0; i--) {
+            Product product = new Product();
+            product.setOrganizationId(org.getId());
+            product.setCategoryId(i % 10 == 0 ? beer.getId() : other.getId());
+            product.setName("Product %02d".formatted(i));
+            product.setBasePrice(new BigDecimal("3.00"));
+            product.setActive(i % 2 == 0);
+            product = productRepository.save(product);
+            productIds.add(product.getId());
+            inventoryRepository.save(new Inventory(org.getId(), product, BigDecimal.TEN, product.getBasePrice()));
+        }
+    }
+
+    private Category category(Long organizationId, String name) {
+        Category category = new Category();
+        category.setOrganizationId(organizationId);
+        category.setName(name);
+        category.setDynamicPricing(true);
+        return categoryRepository.save(category);
+    }
+}
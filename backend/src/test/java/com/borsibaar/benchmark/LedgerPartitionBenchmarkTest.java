@@ -0,0 +1,232 @@
+package com.borsibaar.benchmark;
+
+import com.borsibaar.BorsibaarApplication;
+import com.borsibaar.PostgresTestDatabase;
+import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.LedgerExportRepository;
+import com.borsibaar.repository.LedgerPartitionRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The ledger queries that take a time range, timed on the monthly partitioned
+ * {@code inventory_transactions} and on an unpartitioned copy of it swapped in
+ * under the same name, over a year of ledger rows. Also checks that PostgreSQL
+ * prunes the partitions outside the range, including with the
+ * {@code CAST(? ...) IS NULL OR ...} filters of the optional bounds.
+ * <p>
+ * The database is the one of {@link PostgresTestDatabase}. {@code TEST_POSTGRES_LEDGER_ROWS}
+ * sets the number of rows (default 1,000,000; 10,000,000 takes several
+ * minutes to seed).
+ */
+@Slf4j
+@EnabledIf("com.borsibaar.PostgresTestDatabase#available")
+class LedgerPartitionBenchmarkTest {
+
+    private static final int MONTHS = 12;
+    private static final int INVENTORIES = 20;
+    private static final int RUNS = 5;
+    private static final Pattern RELATION = Pattern.compile("\"Relation Name\": \"(inventory_transactions[a-z0-9_]*)\"");
+
+    private final long rows = Long.parseLong(Objects.requireNonNullElse(System.getenv("TEST_POSTGRES_LEDGER_ROWS"),
+            "1000000"));
+    private final OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+    private final YearMonth measuredMonth = YearMonth.from(now).minusMonths(2);
+    private final OffsetDateTime monthStart = measuredMonth.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    private final OffsetDateTime weekStart = monthStart.plusDays(7);
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private Long organizationId;
+    private Long inventoryId;
+
+    @BeforeEach
+    void setUp() {
+        context = new SpringApplicationBuilder(BorsibaarApplication.class).run(
+                "--spring.datasource.url=" + PostgresTestDatabase.url(),
+                "--spring.datasource.username=" + PostgresTestDatabase.username(),
+                "--spring.datasource.password=" + PostgresTestDatabase.password(),
+                "--spring.datasource.driverClassName=org.postgresql.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:db/changelog/db.changelog-master.yaml",
+                "--spring.security.oauth2.client.registration.google.client-id=test",
+                "--spring.security.oauth2.client.registration.google.client-secret=test",
+                "--server.port=0");
+        jdbc = context.getBean(JdbcTemplate.class);
+
+        // Partitions of the past months, which a fresh database does not have yet
+        LedgerPartitionRepository partitions = context.getBean(LedgerPartitionRepository.class);
+        assertTrue(partitions.isPartitioned());
+        for (int i = 0; i <= MONTHS; i++) {
+            partitions.createMonth(YearMonth.from(now).minusMonths(i));
+        }
+        seed();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbc == null) {
+            return;
+        }
+        jdbc.execute("DROP TABLE IF EXISTS inventory_transactions_flat");
+        if (organizationId != null) {
+            jdbc.update("DELETE FROM sales_rollup_hourly WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM inventory_transactions WHERE inventory_id IN "
+                    + "(SELECT id FROM inventory WHERE organization_id = ?)", organizationId);
+            jdbc.update("DELETE FROM inventory WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM products WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM categories WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM organizations WHERE id = ?", organizationId);
+        }
+        context.close();
+    }
+
+    @Test
+    void rangeQueries_PartitionedAgainstUnpartitioned() {
+        Set<String> weekPartitions = scannedPartitions("""
+                SELECT COUNT(*) FROM inventory_transactions t
+                WHERE (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR t.created_at >= ?)
+                  AND (CAST(? AS TIMESTAMP WITH TIME ZONE) IS NULL OR t.created_at < ?)
+                """, weekStart, weekStart, weekStart.plusDays(7), weekStart.plusDays(7));
+        assertEquals(Set.of(LedgerPartitionRepository.partitionName(measuredMonth)), weekPartitions);
+
+        List<String> partitioned = measureAll();
+
+        copyToFlatTable();
+        swap("inventory_transactions", "inventory_transactions_partitioned");
+        swap("inventory_transactions_flat", "inventory_transactions");
+        List<String> unpartitioned;
+        try {
+            unpartitioned = measureAll();
+        } finally {
+            swap("inventory_transactions", "inventory_transactions_flat");
+            swap("inventory_transactions_partitioned", "inventory_transactions");
+        }
+
+        log.info("Ledger queries over {} rows, partitioned / unpartitioned (median of {} runs):", rows, RUNS);
+        for (int i = 0; i < partitioned.size(); i++) {
+            log.info("  {} / {}", partitioned.get(i), unpartitioned.get(i));
+        }
+    }
+
+    private List<String> measureAll() {
+        InventoryTransactionRepository transactions = context.getBean(InventoryTransactionRepository.class);
+        SalesRollupRepository salesRollup = context.getBean(SalesRollupRepository.class);
+        LedgerExportRepository ledgerExport = context.getBean(LedgerExportRepository.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(
+                context.getBean(PlatformTransactionManager.class));
+
+        List<String> results = new ArrayList<>();
+        results.add(measure("history page of a week", () -> transactions.findHistoryPage(inventoryId, null,
+                weekStart, weekStart.plusDays(7), null, null, Limit.of(50)).size()));
+        results.add(measure("history page after a cursor", () -> transactions.findHistoryPage(inventoryId, null,
+                null, null, weekStart, Long.MAX_VALUE, Limit.of(50)).size()));
+        results.add(measure("sales rollup rebuild of a week", () -> transactionTemplate.execute(status ->
+                salesRollup.rebuild(organizationId, weekStart, weekStart.plusDays(7)))));
+        results.add(measure("ledger export of a month", () -> {
+            AtomicLong count = new AtomicLong();
+            transactionTemplate.executeWithoutResult(status -> ledgerExport.streamLedger(organizationId, null,
+                    monthStart, monthStart.plusMonths(1), row -> count.incrementAndGet()));
+            return count.get();
+        }));
+        return results;
+    }
+
+    private String measure(String name, LongSupplier query) {
+        long[] millis = new long[RUNS];
+        long result = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            result = query.getAsLong();
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        assertTrue(result > 0, name);
+        Arrays.sort(millis);
+        return name + ": " + millis[RUNS / 2] + " ms";
+    }
+
+    private Set<String> scannedPartitions(String sql, Object... args) {
+        String plan = String.join("\n", jdbc.queryForList("EXPLAIN (FORMAT JSON) " + sql, String.class, args));
+        Set<String> relations = new TreeSet<>();
+        Matcher matcher = RELATION.matcher(plan);
+        while (matcher.find()) {
+            relations.add(matcher.group(1));
+        }
+        return relations;
+    }
+
+    private void seed() {
+        organizationId = jdbc.queryForObject("""
+                INSERT INTO organizations (name, price_increase_step, price_decrease_step, created_at, updated_at)
+                VALUES ('Ledger benchmark', 0.50, 0.50, now(), now()) RETURNING id
+                """, Long.class);
+        Long categoryId = jdbc.queryForObject("""
+                INSERT INTO categories (organization_id, name, dynamic_pricing) VALUES (?, 'Beer', TRUE) RETURNING id
+                """, Long.class, organizationId);
+        jdbc.update("""
+                INSERT INTO products (organization_id, category_id, name, base_price, min_price, is_active,
+                    created_at, updated_at)
+                SELECT ?, ?, 'Beer ' || n, 4.00, 1.00, TRUE, now(), now() FROM generate_series(1, ?) n
+                """, organizationId, categoryId, INVENTORIES);
+        jdbc.update("""
+                INSERT INTO inventory (organization_id, product_id, quantity, adjusted_price, created_at, updated_at)
+                SELECT organization_id, id, 100, 4.00, now(), now() FROM products WHERE organization_id = ?
+                """, organizationId);
+        inventoryId = jdbc.queryForObject("SELECT MIN(id) FROM inventory WHERE organization_id = ?", Long.class,
+                organizationId);
+
+        // Evenly spread over the past months, one in ten an adjustment
+        long spacingMillis = Math.max(1, (long) MONTHS * 30 * 24 * 3_600_000 / rows);
+        jdbc.update("""
+                INSERT INTO inventory_transactions (inventory_id, transaction_type, quantity_change, quantity_before,
+                    quantity_after, price_before, price_after, reference_id, created_at)
+                SELECT i.id, CASE WHEN g % 10 = 0 THEN 'ADJUSTMENT' ELSE 'SALE' END, -1, 100, 99, 4.00, 4.00,
+                       'bench-' || g, CAST(? AS TIMESTAMP WITH TIME ZONE) - g * ? * INTERVAL '1 millisecond'
+                FROM generate_series(1, ?) g
+                JOIN (SELECT id, ROW_NUMBER() OVER (ORDER BY id) - 1 AS n FROM inventory WHERE organization_id = ?) i
+                  ON i.n = g % ?
+                """, now, spacingMillis, rows, organizationId, INVENTORIES);
+        jdbc.execute("ANALYZE inventory_transactions");
+    }
+
+    private void copyToFlatTable() {
+        jdbc.execute("CREATE TABLE inventory_transactions_flat (LIKE inventory_transactions INCLUDING DEFAULTS)");
+        jdbc.execute("INSERT INTO inventory_transactions_flat SELECT * FROM inventory_transactions");
+        jdbc.execute("ALTER TABLE inventory_transactions_flat ADD PRIMARY KEY (id)");
+        jdbc.execute("CREATE INDEX ON inventory_transactions_flat (created_at)");
+        jdbc.execute("CREATE INDEX ON inventory_transactions_flat (transaction_type)");
+        jdbc.execute("CREATE INDEX ON inventory_transactions_flat (inventory_id, created_at DESC, id DESC)");
+        jdbc.execute("ANALYZE inventory_transactions_flat");
+    }
+
+    private void swap(String from, String to) {
+        jdbc.execute("ALTER TABLE " + from + " RENAME TO " + to);
+    }
+}
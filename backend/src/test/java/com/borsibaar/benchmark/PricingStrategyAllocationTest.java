@@ -0,0 +1,67 @@
+package com.borsibaar.benchmark;
+
+import com.borsibaar.pricing.DemandRatePricingStrategy;
+import com.borsibaar.pricing.ExponentialDecayPricingStrategy;
+import com.borsibaar.pricing.FixedPoint;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PricingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Pricing strategies run under the price book lock on every sale line, so they
+ * must not allocate. Measures the bytes allocated by this thread over a million
+ * evaluations once the code is warmed up.
+ */
+class PricingStrategyAllocationTest {
+
+    private static final int EVALUATIONS = 1_000_000;
+    // Leaves room for the measurement itself, not for anything per evaluation
+    private static final long ALLOWED_BYTES = 1_024;
+
+    private final List<PricingStrategy> strategies = List.of(new LinearPricingStrategy(),
+            new ExponentialDecayPricingStrategy(new BigDecimal("0.10")),
+            new DemandRatePricingStrategy(300_000, 10, 4));
+
+    @Test
+    void evaluate_AllStrategies_AllocateNothing() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        evaluate();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long checksum = evaluate();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum != 0);
+        assertTrue(allocated < ALLOWED_BYTES, "Allocated " + allocated + " bytes");
+    }
+
+    private long evaluate() {
+        long price = FixedPoint.of(new BigDecimal("4.00"));
+        long step = FixedPoint.of(new BigDecimal("0.50"));
+        long minPrice = FixedPoint.of(new BigDecimal("1.00"));
+        long checksum = 0;
+        for (int i = 0; i < EVALUATIONS; i++) {
+            PricingStrategy strategy = strategies.get(i % strategies.size());
+            checksum += strategy.priceAfterSale(price, step, FixedPoint.NO_LIMIT, i & 31);
+            checksum += strategy.priceAfterIdle(price, step, minPrice, i & 31);
+        }
+        return checksum;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Thread allocation counters are not available on this JVM");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
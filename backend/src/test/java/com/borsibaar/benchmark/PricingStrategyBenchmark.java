@@ -0,0 +1,79 @@
+package com.borsibaar.benchmark;
+
+import com.borsibaar.pricing.DemandRatePricingStrategy;
+import com.borsibaar.pricing.ExponentialDecayPricingStrategy;
+import com.borsibaar.pricing.FixedPoint;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PricingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one price evaluation per strategy, as done for every sale line
+ * and, with lazy decay, every price read. Not part of the test run; start
+ * {@link #main(String[])} on the test classpath. It runs with the GC profiler,
+ * whose {@code gc.alloc.rate.norm} should stay at 0 B/op;
+ * {@link PricingStrategyAllocationTest} checks the same on every build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingStrategyBenchmark {
+
+    @Param({ LinearPricingStrategy.NAME, ExponentialDecayPricingStrategy.NAME, DemandRatePricingStrategy.NAME })
+    public String strategyName;
+
+    private PricingStrategy strategy;
+    private long price;
+    private final long step = FixedPoint.of(new BigDecimal("0.50"));
+    private final long minPrice = FixedPoint.of(new BigDecimal("1.00"));
+    private final long maxPrice = FixedPoint.of(new BigDecimal("9.00"));
+    private int recentSales;
+
+    @Setup
+    public void setUp() {
+        strategy = switch (strategyName) {
+            case LinearPricingStrategy.NAME -> new LinearPricingStrategy();
+            case ExponentialDecayPricingStrategy.NAME -> new ExponentialDecayPricingStrategy(new BigDecimal("0.10"));
+            default -> new DemandRatePricingStrategy(300_000, 10, 4);
+        };
+        price = FixedPoint.of(new BigDecimal("4.00"));
+    }
+
+    @Benchmark
+    public long priceAfterSale() {
+        recentSales = (recentSales + 1) & 31;
+        return strategy.priceAfterSale(price, step, maxPrice, recentSales);
+    }
+
+    @Benchmark
+    public long priceAfterIdle() {
+        recentSales = (recentSales + 1) & 31;
+        return strategy.priceAfterIdle(price, step, minPrice, recentSales);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PricingStrategyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
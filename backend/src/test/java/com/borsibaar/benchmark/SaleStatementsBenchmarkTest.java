@@ -0,0 +1,138 @@
+package com.borsibaar.benchmark;
+
+import com.borsibaar.dto.SaleItemRequestDto;
+import com.borsibaar.dto.SaleRequestDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.jobs.PriceCorrectionJob;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryStockShardRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import com.borsibaar.service.SaleIdGenerator;
+import com.borsibaar.service.SalesService;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StockContentionMetrics;
+import com.borsibaar.stock.StripedStockManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts database round trips of a maximum-size (100 line) sale and of a one
+ * line sale. The price book is warmed up by a first sale so that only the
+ * steady-state cost is measured.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:salestatements;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ SalesService.class, PriceEngine.class, LazyPriceDecay.class, PricingStrategies.class,
+        LinearPricingStrategy.class, InventoryBatchRepository.class, SaleIdGenerator.class, SaleSubmissionRepository.class,
+        StripedStockManager.class, InventoryStockShardRepository.class, StockContentionMetrics.class,
+        SalesRateTracker.class, PriceCorrectionJob.class, SalesRollupRepository.class,
+        SaleStatementsBenchmarkTest.Config.class })
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class SaleStatementsBenchmarkTest {
+
+    private static final int ITEMS = 100;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        static StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+    }
+
+    @Autowired private SalesService salesService;
+    @Autowired private StatementCounter statementCounter;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void processSale_HundredItems_RoundTripsDoNotGrowWithLines() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        SaleRequestDto request = tx.execute(status -> createBasket());
+        SaleRequestDto singleItem = new SaleRequestDto(request.items().subList(0, 1), null, null);
+        Long organizationId = productRepository.findById(request.items().get(0).productId())
+                .orElseThrow().getOrganizationId();
+        salesService.processSale(request, UUID.randomUUID(), organizationId);
+
+        int singleItemRoundTrips = roundTrips(singleItem, organizationId);
+        int hundredItemRoundTrips = roundTrips(request, organizationId);
+
+        // Writing line by line took an update, a readback and an insert per line, 3 * 99 more here. Batched,
+        // the extra lines cost at most an insert batch and a sequence fetch per 50 ledger rows.
+        assertTrue(hundredItemRoundTrips - singleItemRoundTrips <= 2 * (ITEMS / 50),
+                "Round trips for a 1 item sale: " + singleItemRoundTrips + ", for a " + ITEMS + " item sale: "
+                        + hundredItemRoundTrips);
+        assertTrue(hundredItemRoundTrips <= 10, "Round trips for a " + ITEMS + " item sale: " + hundredItemRoundTrips);
+    }
+
+    private int roundTrips(SaleRequestDto request, Long organizationId) {
+        statementCounter.reset();
+        salesService.processSale(request, UUID.randomUUID(), organizationId);
+        return statementCounter.get();
+    }
+
+    private SaleRequestDto createBasket() {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(new BigDecimal("0.10"));
+        org.setPriceDecreaseStep(new BigDecimal("0.10"));
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Drinks");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        List<SaleItemRequestDto> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            Product product = new Product();
+            product.setOrganizationId(org.getId());
+            product.setCategoryId(category.getId());
+            product.setName("Product " + i);
+            product.setBasePrice(new BigDecimal("3.00"));
+            product.setActive(true);
+            product = productRepository.save(product);
+            inventoryRepository.save(new Inventory(org.getId(), product, BigDecimal.valueOf(1000), product.getBasePrice()));
+            items.add(new SaleItemRequestDto(product.getId(), BigDecimal.ONE));
+        }
+        return new SaleRequestDto(items, null, null);
+    }
+}
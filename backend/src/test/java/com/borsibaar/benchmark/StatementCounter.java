@@ -0,0 +1,86 @@
+package com.borsibaar.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test-only {@link DataSource} wrapper that counts database round trips: every
+ * {@code execute*} call on a statement counts once, a whole JDBC batch included.
+ * Transaction commits are counted separately.
+ */
+public class StatementCounter implements BeanPostProcessor {
+
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final AtomicInteger commits = new AtomicInteger();
+
+    public int get() {
+        return roundTrips.get();
+    }
+
+    public int getCommits() {
+        return commits.get();
+    }
+
+    public void reset() {
+        roundTrips.set(0);
+        commits.set(0);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (target, method, args) -> {
+                Object result = method.invoke(target, args);
+                return result instanceof Connection connection ? wrap(connection) : result;
+            });
+        }
+        return bean;
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            if (method.getName().equals("commit")) {
+                commits.incrementAndGet();
+            }
+            Object result = method.invoke(target, args);
+            if (result instanceof Statement statement) {
+                return wrap(statement, method.getReturnType());
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Statement> T wrap(Statement statement, Class<?> type) {
+        return (T) proxy(type, statement, (target, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                roundTrips.incrementAndGet();
+            }
+            return method.invoke(target, args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, Object target, Call call) {
+        InvocationHandler handler = (p, method, args) -> {
+            try {
+                return call.invoke(target, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private interface Call {
+        Object invoke(Object target, Method method, Object[] args) throws Throwable;
+    }
+}
@@ -0,0 +1,67 @@
+package com.borsibaar.controller;
+
+import com.borsibaar.service.BoardService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class BoardControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private BoardService boardService;
+
+    @MockitoBean
+    private ClientRegistrationRepository clientRegistrationRepository;
+
+    @Test
+    void getBoard_WritesSnapshotBytesAsJson() throws Exception {
+        when(boardService.getBoardJson(2L)).thenReturn(
+                "{\"organizationId\":2,\"categories\":[{\"id\":1,\"name\":\"Beer\",\"products\":[]}]}"
+                        .getBytes(StandardCharsets.UTF_8));
+
+        mockMvc.perform(get("/api/board/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.categories[0].name").value("Beer"));
+    }
+
+    @Test
+    void getBoard_CurrentETag_NotModifiedWithoutSnapshot() throws Exception {
+        String etag = mockMvc.perform(get("/api/board/4"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/board/4").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+        verify(boardService, times(1)).getBoardJson(4L);
+    }
+
+    @Test
+    void getBoard_UnknownOrganization_NotFound() throws Exception {
+        when(boardService.getBoardJson(9L)).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND));
+
+        mockMvc.perform(get("/api/board/9"))
+                .andExpect(status().isNotFound());
+    }
+}
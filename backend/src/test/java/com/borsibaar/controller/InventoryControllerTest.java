@@ -4,6 +4,9 @@ import com.borsibaar.dto.*;
 import com.borsibaar.entity.Role;
 import com.borsibaar.entity.User;
 import com.borsibaar.service.InventoryService;
+import com.borsibaar.service.InventoryStreamService;
+import com.borsibaar.service.LedgerExportService;
+import com.borsibaar.service.SalesRollupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -17,6 +20,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
@@ -26,6 +30,7 @@ import java.util.UUID;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -44,6 +49,15 @@ class InventoryControllerTest {
         @MockitoBean
         private InventoryService inventoryService;
 
+        @MockitoBean
+        private InventoryStreamService inventoryStreamService;
+
+        @MockitoBean
+        private LedgerExportService ledgerExportService;
+
+        @MockitoBean
+        private SalesRollupService salesRollupService;
+
         @MockitoBean
         private ClientRegistrationRepository clientRegistrationRepository;
 
@@ -64,6 +78,62 @@ class InventoryControllerTest {
                 verify(inventoryService).getByOrganization(42L, null);
         }
 
+        @Test
+        void getOrganizationInventory_CurrentETag_NotModifiedWithoutQuery() throws Exception {
+                when(inventoryService.getByOrganization(5L, null)).thenReturn(List.of());
+                String etag = mockMvc.perform(get("/api/inventory").param("organizationId", "5"))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getHeader("ETag");
+
+                mockMvc.perform(get("/api/inventory").param("organizationId", "5").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+                verify(inventoryService, times(1)).getByOrganization(5L, null);
+        }
+
+        @Test
+        void getChanges_PassesSinceToService() throws Exception {
+                when(inventoryService.getChangesSince(5L, "abc-5-7"))
+                                .thenReturn(new InventoryChangesResponseDto("abc-5-9", false, List.of(), List.of(12L)));
+
+                mockMvc.perform(get("/api/inventory/changes").param("organizationId", "5").param("since", "abc-5-7"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.version").value("abc-5-9"))
+                                .andExpect(jsonPath("$.full").value(false))
+                                .andExpect(jsonPath("$.removedProductIds[0]").value(12));
+        }
+
+        @Test
+        void streamChanges_LastEventIdResumesStream() throws Exception {
+                when(inventoryStreamService.subscribe(5L, "abc-5-7")).thenReturn(new SseEmitter());
+
+                mockMvc.perform(get("/api/inventory/stream").param("organizationId", "5")
+                                .header("Last-Event-ID", "abc-5-7"))
+                                .andExpect(request().asyncStarted());
+                verify(inventoryStreamService).subscribe(5L, "abc-5-7");
+        }
+
+        @Test
+        void exportTransactions_CsvOfUsersOrganization() throws Exception {
+                User user = userWithOrg(42L, "ADMIN");
+                setAuth(user);
+
+                mockMvc.perform(get("/api/inventory/transactions/export").param("format", "csv")
+                                .param("type", "SALE"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                                .andExpect(header().string("Content-Disposition", "attachment; filename=\"ledger.csv\""));
+                verify(ledgerExportService).export(eq(42L), eq("SALE"), isNull(), isNull(),
+                                eq(LedgerExportService.Format.CSV), any());
+        }
+
+        @Test
+        void exportTransactions_UnknownFormat_BadRequest() throws Exception {
+                setAuth(userWithOrg(42L, "ADMIN"));
+
+                mockMvc.perform(get("/api/inventory/transactions/export").param("format", "xml"))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void addStock_ReturnsCreated() throws Exception {
                 User user = userWithOrg(1L, "USER");
@@ -74,6 +144,7 @@ class InventoryControllerTest {
                                 100L,
                                 1L,
                                 10L,
+                                7L,
                                 "Cola",
                                 new BigDecimal("15"),
                                 new BigDecimal("2.50"),
@@ -98,7 +169,7 @@ class InventoryControllerTest {
         @Test
         void getOrganizationInventory_UsesQueryParams_WhenProvided() throws Exception {
                 when(inventoryService.getByOrganization(99L, 7L)).thenReturn(List.of(
-                                new InventoryResponseDto(1L, 99L, 10L, "Cola", BigDecimal.ONE, BigDecimal.TEN, "abc",
+                                new InventoryResponseDto(1L, 99L, 10L, 7L, "Cola", BigDecimal.ONE, BigDecimal.TEN, "abc",
                                                 BigDecimal.TEN, null, null, OffsetDateTime.now().toString())));
 
                 mockMvc.perform(get("/api/inventory").param("organizationId", "99").param("categoryId", "7"))
@@ -114,7 +185,7 @@ class InventoryControllerTest {
                 User user = userWithOrg(5L, "USER");
                 setAuth(user);
                 when(inventoryService.getByProductAndOrganization(10L, 5L)).thenReturn(
-                                new InventoryResponseDto(1L, 5L, 10L, "Water", BigDecimal.TEN, BigDecimal.ONE, "abc",
+                                new InventoryResponseDto(1L, 5L, 10L, 7L, "Water", BigDecimal.TEN, BigDecimal.ONE, "abc",
                                                 BigDecimal.ONE, null, null, OffsetDateTime.now().toString()));
 
                 mockMvc.perform(get("/api/inventory/product/{productId}", 10L))
@@ -131,7 +202,7 @@ class InventoryControllerTest {
                 RemoveStockRequestDto req = new RemoveStockRequestDto(20L, new BigDecimal("3"), "ref1", "note");
                 when(inventoryService.removeStock(any(RemoveStockRequestDto.class), any(UUID.class), eq(2L)))
                                 .thenReturn(
-                                                new InventoryResponseDto(2L, 2L, 20L, "Beer", new BigDecimal("7"),
+                                                new InventoryResponseDto(2L, 2L, 20L, 7L, "Beer", new BigDecimal("7"),
                                                                 new BigDecimal("4.00"), "abc", new BigDecimal("3.50"),
                                                                 null, null, OffsetDateTime.now().toString()));
 
@@ -151,7 +222,7 @@ class InventoryControllerTest {
                 AdjustStockRequestDto req = new AdjustStockRequestDto(30L, new BigDecimal("12"), "audit");
                 when(inventoryService.adjustStock(any(AdjustStockRequestDto.class), any(UUID.class), eq(3L)))
                                 .thenReturn(
-                                                new InventoryResponseDto(3L, 3L, 30L, "Juice", new BigDecimal("12"),
+                                                new InventoryResponseDto(3L, 3L, 30L, 7L, "Juice", new BigDecimal("12"),
                                                                 new BigDecimal("2.00"), "abc", new BigDecimal("2.00"),
                                                                 null, null, OffsetDateTime.now().toString()));
 
@@ -168,24 +239,43 @@ class InventoryControllerTest {
         void getTransactionHistory_ReturnsList() throws Exception {
                 User user = userWithOrg(4L, "USER");
                 setAuth(user);
-                when(inventoryService.getTransactionHistory(40L, 4L)).thenReturn(List.of(
-                                new InventoryTransactionResponseDto(1L, 99L, "SALE", BigDecimal.ONE.negate(),
-                                                BigDecimal.TEN, new BigDecimal("9"), BigDecimal.TEN, BigDecimal.TEN,
-                                                "ref", "n", UUID.randomUUID().toString(), "Alice", "a@b.c",
-                                                OffsetDateTime.now().toString())));
+                when(inventoryService.getTransactionHistory(40L, 4L, null, null, null, null, 50))
+                                .thenReturn(new InventoryTransactionPageResponseDto(List.of(
+                                                new InventoryTransactionResponseDto(1L, 99L, "SALE",
+                                                                BigDecimal.ONE.negate(), BigDecimal.TEN,
+                                                                new BigDecimal("9"), BigDecimal.TEN, BigDecimal.TEN,
+                                                                "ref", "n", UUID.randomUUID().toString(), "Alice",
+                                                                "a@b.c", OffsetDateTime.now().toString())),
+                                                "next"));
 
                 mockMvc.perform(get("/api/inventory/product/{productId}/history", 40L))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$", hasSize(1)));
+                                .andExpect(jsonPath("$.items", hasSize(1)))
+                                .andExpect(jsonPath("$.nextCursor").value("next"));
 
-                verify(inventoryService).getTransactionHistory(40L, 4L);
+                verify(inventoryService).getTransactionHistory(40L, 4L, null, null, null, null, 50);
+        }
+
+        @Test
+        void getTransactionHistory_PassesFiltersAndCursor() throws Exception {
+                OffsetDateTime from = OffsetDateTime.parse("2025-06-01T20:00:00Z");
+                when(inventoryService.getTransactionHistory(eq(40L), eq(4L), eq("SALE"), any(), isNull(), eq("abc"),
+                                eq(20))).thenReturn(new InventoryTransactionPageResponseDto(List.of(), null));
+
+                mockMvc.perform(get("/api/inventory/product/{productId}/history", 40L)
+                                .param("organizationId", "4").param("type", "SALE")
+                                .param("from", "2025-06-01T20:00:00Z").param("cursor", "abc").param("limit", "20"))
+                                .andExpect(status().isOk());
+
+                verify(inventoryService).getTransactionHistory(eq(40L), eq(4L), eq("SALE"),
+                                argThat(at -> at.isEqual(from)), isNull(), eq("abc"), eq(20));
         }
 
         @Test
         void getUserSalesStats_ReturnsList() throws Exception {
                 User user = userWithOrg(6L, "USER");
                 setAuth(user);
-                when(inventoryService.getUserSalesStats(6L)).thenReturn(List.of(
+                when(inventoryService.getUserSalesStats(6L, null, null)).thenReturn(List.of(
                                 new UserSalesStatsResponseDto(UUID.randomUUID().toString(), "U", "u@x", 2L,
                                                 new BigDecimal("12.00"), 1L, "S")));
 
@@ -193,21 +283,75 @@ class InventoryControllerTest {
                                 .andExpect(status().isOk())
                                 .andExpect(jsonPath("$", hasSize(1)));
 
-                verify(inventoryService).getUserSalesStats(6L);
+                verify(inventoryService).getUserSalesStats(6L, null, null);
         }
 
         @Test
         void getStationSalesStats_ReturnsList() throws Exception {
                 User user = userWithOrg(7L, "USER");
                 setAuth(user);
-                when(inventoryService.getStationSalesStats(7L)).thenReturn(List.of(
-                                new StationSalesStatsResponseDto(1L, "Main", 3L, new BigDecimal("30.00"))));
+                OffsetDateTime from = OffsetDateTime.parse("2025-06-01T18:00:00Z");
+                when(inventoryService.getStationSalesStats(eq(7L), argThat(at -> at.isEqual(from)), isNull()))
+                                .thenReturn(List.of(new StationSalesStatsResponseDto(1L, "Main", 3L,
+                                                new BigDecimal("30.00"))));
 
-                mockMvc.perform(get("/api/inventory/station-sales-stats"))
+                mockMvc.perform(get("/api/inventory/station-sales-stats").param("from", "2025-06-01T18:00:00Z"))
                                 .andExpect(status().isOk())
                                 .andExpect(jsonPath("$", hasSize(1)));
+        }
+
+        @Test
+        void rebuildSalesRollup_AsAdmin_RebuildsOwnOrganization() throws Exception {
+                setAuth(userWithOrg(9L, "ADMIN"));
+                when(salesRollupService.rebuild(9L, null, null)).thenReturn(new SalesRollupRebuildResponseDto(
+                                OffsetDateTime.parse("2025-06-01T18:00:00Z"), OffsetDateTime.parse("2025-06-02T18:00:00Z"),
+                                1, 12L));
+
+                mockMvc.perform(post("/api/inventory/sales-rollup/rebuild"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.rows").value(12));
+        }
+
+        @Test
+        void rebuildSalesRollup_AsUser_Forbidden() throws Exception {
+                setAuth(userWithOrg(9L, "USER"));
+
+                mockMvc.perform(post("/api/inventory/sales-rollup/rebuild"))
+                                .andExpect(status().isForbidden());
+        }
 
-                verify(inventoryService).getStationSalesStats(7L);
+        @Test
+        void getStockContention_AsAdmin_ReturnsMetrics() throws Exception {
+                User user = userWithOrg(8L, "ADMIN");
+                setAuth(user);
+                when(inventoryService.getStockContention()).thenReturn(
+                                new StockContentionResponseDto(10L, 250L, 4.8, 38.1, 27.0, true, List.of(11L)));
+
+                mockMvc.perform(get("/api/inventory/contention"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.saleLatencyP99Millis").value(38.1))
+                                .andExpect(jsonPath("$.stripedInventoryIds", hasSize(1)));
+        }
+
+        @Test
+        void getStockContention_AsNonAdmin_ReturnsForbidden() throws Exception {
+                User user = userWithOrg(8L, "USER");
+                setAuth(user);
+
+                mockMvc.perform(get("/api/inventory/contention"))
+                                .andExpect(status().isForbidden());
+        }
+
+        @Test
+        void getVelocity_PublicOrganization_DefaultWindow() throws Exception {
+                when(inventoryService.getVelocity(3L, 300L)).thenReturn(List.of(new ProductVelocityResponseDto(
+                                5L, 300L, new BigDecimal("12"), 2.4, OffsetDateTime.now())));
+
+                mockMvc.perform(get("/api/inventory/velocity").param("organizationId", "3"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$", hasSize(1)))
+                                .andExpect(jsonPath("$[0].soldInWindow").value(12))
+                                .andExpect(jsonPath("$[0].soldPerMinute").value(2.4));
         }
 
         private static User userWithOrg(Long orgId, String roleName) {
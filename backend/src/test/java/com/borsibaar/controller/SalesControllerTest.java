@@ -6,7 +6,7 @@ import com.borsibaar.dto.SaleRequestDto;
 import com.borsibaar.dto.SaleResponseDto;
 import com.borsibaar.entity.Role;
 import com.borsibaar.entity.User;
-import com.borsibaar.service.SalesService;
+import com.borsibaar.service.SaleSubmissionService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -29,6 +29,8 @@ import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -45,7 +47,7 @@ class SalesControllerTest {
     private ObjectMapper objectMapper;
 
     @MockitoBean
-    private SalesService salesService;
+    private SaleSubmissionService saleSubmissionService;
 
     @MockitoBean
     private ClientRegistrationRepository clientRegistrationRepository;
@@ -63,7 +65,7 @@ class SalesControllerTest {
         SaleRequestDto req = new SaleRequestDto(List.of(new SaleItemRequestDto(10L, new BigDecimal("2"))), "note", 5L);
         SaleItemResponseDto itemResp = new SaleItemResponseDto(10L, "Cola", new BigDecimal("2"), new BigDecimal("3.00"), new BigDecimal("6.00"));
         SaleResponseDto resp = new SaleResponseDto("SALE-1", List.of(itemResp), new BigDecimal("6.00"), "note", OffsetDateTime.now());
-        when(salesService.processSale(any(SaleRequestDto.class), any(UUID.class), anyLong())).thenReturn(resp);
+        when(saleSubmissionService.submit(any(SaleRequestDto.class), any(UUID.class), anyLong(), isNull())).thenReturn(resp);
 
         mockMvc.perform(post("/api/sales")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -73,7 +75,26 @@ class SalesControllerTest {
                 .andExpect(jsonPath("$.items[0].productName").value("Cola"))
                 .andExpect(jsonPath("$.totalAmount").value(6.00));
 
-        verify(salesService).processSale(any(SaleRequestDto.class), any(UUID.class), anyLong());
+        verify(saleSubmissionService).submit(any(SaleRequestDto.class), any(UUID.class), anyLong(), isNull());
+    }
+
+    @Test
+    void processSale_PassesIdempotencyKey() throws Exception {
+        User user = userWithOrg(1L, "USER");
+        setAuth(user);
+
+        SaleRequestDto req = new SaleRequestDto(List.of(new SaleItemRequestDto(10L, BigDecimal.ONE)), null, null);
+        SaleResponseDto resp = new SaleResponseDto("SALE-1", List.of(), new BigDecimal("3.00"), null, OffsetDateTime.now());
+        when(saleSubmissionService.submit(any(SaleRequestDto.class), eq(user.getId()), eq(1L), eq("tablet-7-0042"))).thenReturn(resp);
+
+        mockMvc.perform(post("/api/sales")
+                        .header("Idempotency-Key", "tablet-7-0042")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.saleId").value("SALE-1"));
+
+        verify(saleSubmissionService).submit(any(SaleRequestDto.class), eq(user.getId()), eq(1L), eq("tablet-7-0042"));
     }
 
     private static User userWithOrg(Long orgId, String roleName) {
@@ -0,0 +1,177 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.BorsibaarApplication;
+import com.borsibaar.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two application contexts sharing one PostgreSQL database, as two backend
+ * nodes would. The database is the one of {@link PostgresTestDatabase}.
+ */
+@EnabledIf("com.borsibaar.PostgresTestDatabase#available")
+class ClusterPriceCorrectionJobPostgresTest {
+
+    private static final int ORGANIZATIONS = 4;
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+    private JdbcTemplate jdbc;
+    private final List<Long> organizationIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        nodeA = start("test-node-a", 1);
+        nodeB = start("test-node-b", 2);
+        jdbc = nodeA.getBean(JdbcTemplate.class);
+        for (int i = 0; i < ORGANIZATIONS; i++) {
+            organizationIds.add(seedOrganization("Cluster test " + i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbc != null && !organizationIds.isEmpty()) {
+            String ids = String.join(",", organizationIds.stream().map(String::valueOf).toList());
+            jdbc.update("DELETE FROM inventory_transactions WHERE inventory_id IN "
+                    + "(SELECT id FROM inventory WHERE organization_id IN (" + ids + "))");
+            jdbc.update("DELETE FROM inventory WHERE organization_id IN (" + ids + ")");
+            jdbc.update("DELETE FROM products WHERE organization_id IN (" + ids + ")");
+            jdbc.update("DELETE FROM categories WHERE organization_id IN (" + ids + ")");
+            jdbc.update("DELETE FROM organizations WHERE id IN (" + ids + ")");
+            jdbc.update("DELETE FROM price_job_leases WHERE node_id LIKE 'test-node-%'");
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+    }
+
+    @Test
+    void twoNodes_DecayEveryOrganizationOnceAndTakeOverFromAStoppedNode() throws InterruptedException {
+        awaitPrices("3.50");
+        assertEquals(2, liveLeases());
+
+        // Nothing is decayed twice within the minute, whichever node got there first
+        Thread.sleep(1_000);
+        assertPrices("3.50");
+        for (Long organizationId : organizationIds) {
+            assertEquals(1, jdbc.queryForObject("""
+                    SELECT COUNT(*) FROM inventory_transactions it JOIN inventory i ON i.id = it.inventory_id
+                    WHERE i.organization_id = ? AND it.transaction_type = 'ADJUSTMENT'
+                    """, Integer.class, organizationId));
+        }
+
+        nodeB.close();
+        nodeB = null;
+        makeIdle();
+        awaitPrices("3.00");
+        assertEquals(1, liveLeases());
+    }
+
+    @Test
+    void deadNode_PartitionsReassignedOnceItsLeaseExpires() throws InterruptedException {
+        awaitPrices("3.50");
+
+        // A node that took a lease and then died without releasing it
+        jdbc.update("""
+                INSERT INTO price_job_leases (node_id, renewed_at, expires_at)
+                VALUES ('test-node-0', now(), now() + interval '1500 milliseconds')
+                """);
+        makeIdle();
+        awaitPrices("3.00");
+        assertEquals(2, liveLeases());
+    }
+
+    private ConfigurableApplicationContext start(String nodeId, int saleNodeId) {
+        // Command line arguments, so they win over the H2 settings of the test properties
+        return new SpringApplicationBuilder(BorsibaarApplication.class).run(
+                "--spring.datasource.url=" + PostgresTestDatabase.url(),
+                "--spring.datasource.username=" + PostgresTestDatabase.username(),
+                "--spring.datasource.password=" + PostgresTestDatabase.password(),
+                "--spring.datasource.driverClassName=org.postgresql.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:db/changelog/db.changelog-master.yaml",
+                "--spring.security.oauth2.client.registration.google.client-id=test",
+                "--spring.security.oauth2.client.registration.google.client-secret=test",
+                "--server.port=0",
+                "--app.pricing.cluster.enabled=true",
+                "--app.pricing.cluster.node-id=" + nodeId,
+                "--app.sales.node-id=" + saleNodeId,
+                "--app.pricing.cluster.lease-ttl-ms=1500",
+                "--app.pricing.cluster.tick-ms=200");
+    }
+
+    private Long seedOrganization(String name) {
+        Long organizationId = jdbc.queryForObject("""
+                INSERT INTO organizations (name, price_increase_step, price_decrease_step, created_at, updated_at,
+                    last_sale_at)
+                VALUES (?, 0.50, 0.50, now(), now(), now()) RETURNING id
+                """, Long.class, name);
+        Long categoryId = jdbc.queryForObject("""
+                INSERT INTO categories (organization_id, name, dynamic_pricing) VALUES (?, 'Beer', TRUE) RETURNING id
+                """, Long.class, organizationId);
+        Long productId = jdbc.queryForObject("""
+                INSERT INTO products (organization_id, category_id, name, base_price, min_price, is_active,
+                    created_at, updated_at)
+                VALUES (?, ?, 'Lager', 4.00, 1.00, TRUE, now(), now()) RETURNING id
+                """, Long.class, organizationId, categoryId);
+        jdbc.update("""
+                INSERT INTO inventory (organization_id, product_id, quantity, adjusted_price, created_at, updated_at,
+                    price_anchored_at)
+                VALUES (?, ?, 10, 4.00, now(), now(), now() - interval '2 minutes')
+                """, organizationId, productId);
+        return organizationId;
+    }
+
+    private void makeIdle() {
+        for (Long organizationId : organizationIds) {
+            jdbc.update("UPDATE inventory SET price_anchored_at = now() - interval '2 minutes' WHERE organization_id = ?",
+                    organizationId);
+            jdbc.update("UPDATE organizations SET last_sale_at = now() WHERE id = ?", organizationId);
+        }
+    }
+
+    private int liveLeases() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM price_job_leases WHERE expires_at > now()", Integer.class);
+    }
+
+    private void awaitPrices(String price) throws InterruptedException {
+        await(() -> organizationIds.stream().allMatch(id -> price(id).compareTo(new BigDecimal(price)) == 0));
+        assertPrices(price);
+    }
+
+    private void assertPrices(String price) {
+        for (Long organizationId : organizationIds) {
+            assertEquals(0, price(organizationId).compareTo(new BigDecimal(price)),
+                    "Price of organization " + organizationId);
+        }
+    }
+
+    private BigDecimal price(Long organizationId) {
+        return jdbc.queryForObject("SELECT adjusted_price FROM inventory WHERE organization_id = ?",
+                BigDecimal.class, organizationId);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryBatchRepository.PriceDecay;
+import com.borsibaar.repository.PriceJobLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterPriceCorrectionJobTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Mock private InventoryBatchRepository inventoryBatchRepository;
+    @Mock private PriceJobLeaseRepository priceJobLeaseRepository;
+    @Mock private PriceEngine priceEngine;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private ClusterPriceCorrectionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new ClusterPriceCorrectionJob(inventoryBatchRepository, priceJobLeaseRepository, priceEngine,
+                transactionManager, () -> NOW);
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "nodeId", "node-b");
+        ReflectionTestUtils.setField(job, "leaseTtlMillis", 3_000L);
+    }
+
+    @Test
+    void adjustPrices_DecaysOwnPartitionOfActiveOrganizations() {
+        when(priceJobLeaseRepository.renewAndFindLiveNodes("node-b", at(NOW), Duration.ofSeconds(3)))
+                .thenReturn(List.of("node-a", "node-b", "node-c"));
+        when(priceJobLeaseRepository.lockActiveOrganizations(at(NOW - 60_000), 1, 3)).thenReturn(List.of(1L, 4L));
+        when(inventoryBatchRepository.decayIdlePrices(List.of(1L, 4L), at(NOW - 60_000), "REDUCE-" + NOW, at(NOW)))
+                .thenReturn(List.of(new PriceDecay(5L, 1L, null, BigDecimal.ONE, new BigDecimal("3.50")),
+                        new PriceDecay(9L, 4L, at(NOW - 1_000), BigDecimal.ONE, null)));
+
+        job.adjustPrices();
+
+        // Organization 4's product was sold after the lock was taken, so its book stays
+        verify(priceEngine).evictAfterCompletion(1L, List.of(5L));
+        verify(priceEngine, never()).evictAfterCompletion(eq(4L), anyCollection());
+    }
+
+    @Test
+    void adjustPrices_NoActiveOrganizationInPartition_NothingDecayed() {
+        when(priceJobLeaseRepository.renewAndFindLiveNodes(eq("node-b"), any(), any())).thenReturn(List.of("node-b"));
+        when(priceJobLeaseRepository.lockActiveOrganizations(any(), eq(0), eq(1))).thenReturn(List.of());
+
+        job.adjustPrices();
+
+        verifyNoInteractions(inventoryBatchRepository, priceEngine);
+    }
+
+    @Test
+    void adjustPrices_LazyDecayOrDisabled_DoesNotTakeALease() {
+        ReflectionTestUtils.setField(job, "lazyDecay", true);
+        job.adjustPrices();
+        job.releaseLease();
+
+        ReflectionTestUtils.setField(job, "lazyDecay", false);
+        ReflectionTestUtils.setField(job, "enabled", false);
+        job.adjustPrices();
+
+        verifyNoInteractions(priceJobLeaseRepository, inventoryBatchRepository);
+    }
+
+    @Test
+    void releaseLease_DeletesOwnLeaseRow() {
+        job.releaseLease();
+
+        verify(priceJobLeaseRepository).release("node-b");
+    }
+
+    private static OffsetDateTime at(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,140 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.LedgerArchiveRepository;
+import com.borsibaar.repository.LedgerExportRepository;
+import com.borsibaar.repository.LedgerPartitionRepository;
+import com.borsibaar.repository.LedgerRow;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the job against the schema, with the archive in a temporary directory.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ledgerarchive;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ LedgerArchiveRepository.class, LedgerExportRepository.class, LedgerPartitionRepository.class,
+        LedgerArchive.class })
+class LedgerArchiveJobTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.of(2025, 12, 10, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @DynamicPropertySource
+    static void archiveDirectory(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("app.ledger-archive.directory",
+                Files.createTempDirectory("ledger-archive").toAbsolutePath()::toString);
+    }
+
+    @Autowired private LedgerArchiveRepository ledgerArchiveRepository;
+    @Autowired private LedgerExportRepository ledgerExportRepository;
+    @Autowired private LedgerPartitionRepository ledgerPartitionRepository;
+    @Autowired private LedgerArchive ledgerArchive;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+
+    private LedgerArchiveJob job;
+    private Inventory inventory;
+
+    @BeforeEach
+    void setUp() {
+        job = new LedgerArchiveJob(ledgerArchiveRepository, ledgerExportRepository, ledgerPartitionRepository,
+                ledgerArchive, transactionManager, () -> NOW.toInstant().toEpochMilli());
+        ReflectionTestUtils.setField(job, "maxAgeDays", 180);
+        inventory = createInventory();
+        // 180 days before NOW is in June, so May and earlier are archived
+        transaction("PURCHASE", OffsetDateTime.of(2025, 4, 30, 23, 59, 0, 0, ZoneOffset.UTC));
+        transaction("SALE", OffsetDateTime.of(2025, 5, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        transaction("SALE", OffsetDateTime.of(2025, 5, 31, 23, 59, 59, 999_999_000, ZoneOffset.UTC));
+        transaction("SALE", OffsetDateTime.of(2025, 6, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        transaction("SALE", NOW.minusDays(1));
+        inventoryTransactionRepository.flush();
+    }
+
+    @Test
+    void archive_WholeMonthsOlderThanMaxAge_MovedToArchive() {
+        assertEquals(3, job.archive());
+
+        assertEquals(2, inventoryTransactionRepository.count());
+        List<LedgerRow> archived = ledgerArchive.findHistory(inventory.getProduct().getOrganizationId(),
+                inventory.getId(), null, null, null, null, null, 10);
+        assertEquals(3, archived.size());
+        assertEquals(OffsetDateTime.of(2025, 5, 31, 23, 59, 59, 999_999_000, ZoneOffset.UTC),
+                archived.get(0).createdAt());
+        assertEquals("PURCHASE", archived.get(2).transactionType());
+        assertEquals("Lager", archived.get(2).productName());
+
+        // Nothing left to move
+        assertEquals(0, job.archive());
+    }
+
+    private void transaction(String type, OffsetDateTime createdAt) {
+        InventoryTransaction transaction = new InventoryTransaction();
+        transaction.setInventory(inventory);
+        transaction.setTransactionType(type);
+        transaction.setQuantityChange(BigDecimal.ONE);
+        transaction.setQuantityBefore(BigDecimal.TEN);
+        transaction.setQuantityAfter(BigDecimal.TEN);
+        transaction.setPriceBefore(new BigDecimal("3.50"));
+        transaction.setPriceAfter(new BigDecimal("4.00"));
+        transaction.setCreatedAt(createdAt);
+        inventoryTransactionRepository.save(transaction);
+    }
+
+    private Inventory createInventory() {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Drinks");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName("Lager");
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, BigDecimal.TEN, BigDecimal.TEN));
+    }
+}
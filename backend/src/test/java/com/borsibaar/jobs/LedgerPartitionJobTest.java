@@ -0,0 +1,76 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.repository.LedgerPartitionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerPartitionJobTest {
+
+    // Already 1 December in Tallinn, still November in UTC
+    private static final long NOW = OffsetDateTime.of(2026, 11, 30, 23, 30, 0, 0, ZoneOffset.UTC)
+            .toInstant().toEpochMilli();
+
+    @Mock private LedgerPartitionRepository ledgerPartitionRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private LedgerPartitionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new LedgerPartitionJob(ledgerPartitionRepository, transactionManager, () -> NOW);
+        ReflectionTestUtils.setField(job, "monthsAhead", 2);
+    }
+
+    @Test
+    void createPartitions_CurrentUtcMonthAndMonthsAhead() {
+        when(ledgerPartitionRepository.isPartitioned()).thenReturn(true);
+
+        job.createPartitions();
+
+        InOrder inOrder = inOrder(ledgerPartitionRepository);
+        inOrder.verify(ledgerPartitionRepository).createMonth(YearMonth.of(2026, 11));
+        inOrder.verify(ledgerPartitionRepository).createMonth(YearMonth.of(2026, 12));
+        inOrder.verify(ledgerPartitionRepository).createMonth(YearMonth.of(2027, 1));
+        verify(ledgerPartitionRepository, times(3)).createMonth(any());
+    }
+
+    @Test
+    void createPartitions_OneFails_OthersStillCreated() {
+        when(ledgerPartitionRepository.isPartitioned()).thenReturn(true);
+        doThrow(new IllegalStateException("already exists"))
+                .when(ledgerPartitionRepository).createMonth(YearMonth.of(2026, 11));
+
+        job.createPartitions();
+
+        verify(ledgerPartitionRepository).createMonth(YearMonth.of(2027, 1));
+    }
+
+    @Test
+    void createPartitions_NotPartitioned_NothingCreated() {
+        when(ledgerPartitionRepository.isPartitioned()).thenReturn(false);
+
+        job.createPartitions();
+
+        verify(ledgerPartitionRepository, never()).createMonth(any());
+    }
+
+    @Test
+    void partitionName_YearAndMonth() {
+        assertEquals("inventory_transactions_p202701", LedgerPartitionRepository.partitionName(YearMonth.of(2027, 1)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.borsibaar.jobs;
+
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryBatchRepository.PriceDecay;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriceCorrectionJobTest {
+
+    @Mock private InventoryBatchRepository inventoryBatchRepository;
+    @Mock private ProductRepository productRepository;
+    @Mock private OrganizationRepository organizationRepository;
+    @Mock private PriceEngine priceEngine;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private PriceCorrectionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new PriceCorrectionJob(inventoryBatchRepository, productRepository, organizationRepository, priceEngine,
+                transactionManager, now::get);
+        when(productRepository.findDynamicPricingIdsByOrganizationId(1L)).thenReturn(List.of(5L, 6L));
+    }
+
+    @Test
+    void adjustPrices_ProductIdleWhileOrganizationSells_PriceLowered() {
+        job.recordSale(1L, List.of(5L));
+        job.adjustPrices();
+        now.addAndGet(30_000);
+        job.recordSale(1L, List.of(5L));
+        job.adjustPrices();
+        when(organizationRepository.findIdsWithSalesSince(any(OffsetDateTime.class))).thenReturn(List.of(1L));
+        when(inventoryBatchRepository.decayPrices(eq(List.of(6L)), any(), anyString(), any()))
+                .thenReturn(List.of(decayed(6L, "3.50")));
+
+        now.addAndGet(31_000);
+        job.adjustPrices();
+
+        // Only the product that was not sold in the last minute
+        verify(inventoryBatchRepository).decayPrices(eq(List.of(6L)), eq(at(now.get() - 60_000)), anyString(), any());
+        verify(priceEngine).evictAfterCompletion(1L, List.of(6L));
+    }
+
+    @Test
+    void adjustPrices_OrganizationQuiet_WaitsForItsNextSale() {
+        job.recordSale(1L, List.of(5L));
+        job.adjustPrices();
+
+        when(organizationRepository.findIdsWithSalesSince(any(OffsetDateTime.class))).thenReturn(List.of(), List.of(1L));
+        now.addAndGet(120_000);
+        job.adjustPrices();
+        verifyNoInteractions(inventoryBatchRepository);
+
+        job.recordSale(1L, List.of(7L));
+        job.adjustPrices();
+        when(inventoryBatchRepository.decayPrices(anyCollection(), any(), anyString(), any()))
+                .thenReturn(List.of(decayed(5L, "3.50"), decayed(6L, "3.50")));
+        now.addAndGet(30_000);
+        job.recordSale(1L, List.of(7L));
+        now.addAndGet(30_000);
+        job.adjustPrices();
+
+        verify(inventoryBatchRepository).decayPrices(argThat(ids -> ids.size() == 2 && ids.containsAll(List.of(5L, 6L))),
+                any(), anyString(), any());
+    }
+
+    @Test
+    void adjustPrices_ProductAtMinimumPrice_NoLongerTracked() {
+        job.recordSale(1L, List.of(5L));
+        job.adjustPrices();
+        when(organizationRepository.findIdsWithSalesSince(any(OffsetDateTime.class))).thenReturn(List.of(1L));
+        when(inventoryBatchRepository.decayPrices(anyCollection(), any(), anyString(), any()))
+                .thenReturn(List.of(decayed(6L, "0.50")));
+
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(30_000);
+            job.recordSale(1L, List.of(5L));
+            job.adjustPrices();
+        }
+
+        // Reached the minimum on its first decay, so it is not looked at again
+        verify(inventoryBatchRepository, times(1)).decayPrices(anyCollection(), any(), anyString(), any());
+    }
+
+    @Test
+    void adjustPrices_ProductSoldOnAnotherNode_WaitsUntilIdleThere() {
+        job.recordSale(1L, List.of(5L));
+        job.adjustPrices();
+        when(organizationRepository.findIdsWithSalesSince(any(OffsetDateTime.class))).thenReturn(List.of(1L));
+        OffsetDateTime soldElsewhere = at(now.get() + 50_000);
+        when(inventoryBatchRepository.decayPrices(eq(List.of(6L)), any(), anyString(), any()))
+                .thenReturn(List.of(new PriceDecay(6L, 1L, soldElsewhere, new BigDecimal("0.50"), null)),
+                        List.of(decayed(6L, "3.50")));
+
+        now.addAndGet(55_000);
+        job.recordSale(1L, List.of(5L));
+        now.addAndGet(6_000);
+        job.adjustPrices();
+        verify(priceEngine, never()).evictAfterCompletion(anyLong(), anyCollection());
+
+        // A minute after the other node's sale
+        now.addAndGet(50_000);
+        job.adjustPrices();
+        verify(inventoryBatchRepository, times(2)).decayPrices(eq(List.of(6L)), any(), anyString(), any());
+        verify(priceEngine).evictAfterCompletion(1L, List.of(6L));
+    }
+
+    private static PriceDecay decayed(Long productId, String priceAfter) {
+        return new PriceDecay(productId, 1L, null, new BigDecimal("0.50"), new BigDecimal(priceAfter));
+    }
+
+    private static OffsetDateTime at(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,34 @@
+package com.borsibaar.pricing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTest {
+
+    private final ChangeLog changeLog = new ChangeLog(2);
+
+    @Test
+    void changedSince_OlderThanCapacity_Unknown() {
+        for (long productId = 5; productId <= 7; productId++) {
+            changeLog.record(List.of(productId));
+        }
+
+        assertEquals(3, changeLog.revision());
+        assertEquals(Set.of(6L, 7L), changeLog.changedSince(1));
+        assertNull(changeLog.changedSince(0));
+    }
+
+    @Test
+    void changedSince_NoProductsIsNotEverything() {
+        changeLog.record(List.of());
+        changeLog.record(List.of(5L));
+
+        assertEquals(Set.of(5L), changeLog.changedSince(0));
+        changeLog.record(null);
+        assertNull(changeLog.changedSince(2));
+    }
+}
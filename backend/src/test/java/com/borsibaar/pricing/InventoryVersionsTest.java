@@ -0,0 +1,66 @@
+package com.borsibaar.pricing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryVersionsTest {
+
+    @Mock private PriceEngine priceEngine;
+
+    private long now = 1_000_000L;
+
+    @Test
+    void current_MovesWithRevisionOnly() {
+        InventoryVersions versions = new InventoryVersions(priceEngine, false, 5_000, () -> now);
+        when(priceEngine.revision(1L)).thenReturn(3L);
+        when(priceEngine.revision(2L)).thenReturn(3L);
+
+        String version = versions.current(1L);
+        now += 60_000;
+        assertEquals(version, versions.current(1L));
+        assertNotEquals(version, versions.current(2L));
+
+        when(priceEngine.revision(1L)).thenReturn(4L);
+        assertNotEquals(version, versions.current(1L));
+    }
+
+    @Test
+    void current_TimeBound_AlsoMovesEveryWindow() {
+        InventoryVersions versions = new InventoryVersions(priceEngine, true, 5_000, () -> now);
+        when(priceEngine.revision(1L)).thenReturn(3L);
+
+        String version = versions.current(1L);
+        now += 4_999;
+        assertEquals(version, versions.current(1L));
+        now += 1;
+        assertNotEquals(version, versions.current(1L));
+    }
+
+    @Test
+    void revisionOf_OnlyVersionsOfThisProcessAndWindow() {
+        InventoryVersions versions = new InventoryVersions(priceEngine, true, 5_000, () -> now);
+        when(priceEngine.revision(1L)).thenReturn(3L);
+        String version = versions.current(1L);
+
+        assertEquals(3L, versions.revisionOf(1L, version));
+        assertNull(versions.revisionOf(2L, version));
+        assertNull(versions.revisionOf(1L, "x" + version));
+        assertNull(versions.revisionOf(1L, null));
+        now += 5_000;
+        assertNull(versions.revisionOf(1L, version));
+    }
+
+    @Test
+    void current_NeverRepeatsAcrossProcesses() {
+        when(priceEngine.revision(1L)).thenReturn(0L);
+
+        assertNotEquals(new InventoryVersions(priceEngine, false, 5_000, () -> now).current(1L),
+                new InventoryVersions(priceEngine, false, 5_000, () -> now).current(1L));
+    }
+}
@@ -0,0 +1,67 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyPriceDecayTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2025-06-01T21:00:00Z");
+
+    private final PricingStrategies pricingStrategies = new PricingStrategies(List.of(new LinearPricingStrategy()));
+    private final LazyPriceDecay lazyPriceDecay = new LazyPriceDecay(true, pricingStrategies);
+
+    @Test
+    void currentPrice_OrganizationSelling_OneStepPerIdleMinute() {
+        Inventory inventory = inventory("4.00", NOW.minusSeconds(150), NOW.minusSeconds(5), true);
+
+        assertEquals(new BigDecimal("3.00"), lazyPriceDecay.currentPrice(inventory, inventory.getProduct(), NOW));
+    }
+
+    @Test
+    void currentPrice_OrganizationQuiet_StopsAMinuteAfterItsLastSale() {
+        // Sold at 20:00 and nothing since: one step, not sixty
+        Inventory inventory = inventory("4.00", NOW.minusHours(1), NOW.minusHours(1), true);
+
+        assertEquals(new BigDecimal("3.50"), lazyPriceDecay.currentPrice(inventory, inventory.getProduct(), NOW));
+    }
+
+    @Test
+    void currentPrice_NeverBelowMinimumNorRaisedToIt() {
+        Inventory decaying = inventory("4.00", NOW.minusHours(1), NOW, true);
+        Inventory belowMinimum = inventory("0.80", NOW.minusHours(1), NOW, true);
+
+        assertEquals(new BigDecimal("1.00"), lazyPriceDecay.currentPrice(decaying, decaying.getProduct(), NOW));
+        assertEquals(new BigDecimal("0.80"), lazyPriceDecay.currentPrice(belowMinimum, belowMinimum.getProduct(), NOW));
+    }
+
+    @Test
+    void currentPrice_DisabledOrStaticPricing_StoredPrice() {
+        Inventory inventory = inventory("4.00", NOW.minusHours(1), NOW, true);
+        Inventory fixedPrice = inventory("4.00", NOW.minusHours(1), NOW, false);
+
+        assertEquals(new BigDecimal("4.00"),
+                new LazyPriceDecay(false, pricingStrategies).currentPrice(inventory, inventory.getProduct(), NOW));
+        assertEquals(new BigDecimal("4.00"), lazyPriceDecay.currentPrice(fixedPrice, fixedPrice.getProduct(), NOW));
+    }
+
+    private static Inventory inventory(String price, OffsetDateTime anchoredAt, OffsetDateTime organizationLastSaleAt,
+            boolean dynamicPricing) {
+        Organization org = new Organization(); org.setId(1L); org.setPriceDecreaseStep(new BigDecimal("0.50"));
+        org.setLastSaleAt(organizationLastSaleAt);
+        Category category = new Category(); category.setId(1L); category.setDynamicPricing(dynamicPricing);
+        Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setOrganization(org);
+        product.setCategory(category); product.setBasePrice(new BigDecimal(price)); product.setMinPrice(new BigDecimal("1.00"));
+        Inventory inventory = new Inventory(); inventory.setId(105L); inventory.setProduct(product);
+        inventory.setAdjustedPrice(new BigDecimal(price)); inventory.setPriceAnchoredAt(anchoredAt);
+        return inventory;
+    }
+}
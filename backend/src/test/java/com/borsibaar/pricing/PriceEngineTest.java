@@ -0,0 +1,272 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.dto.SaleItemRequestDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StripedStockManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriceEngineTest {
+
+    @Mock private ProductRepository productRepository;
+    @Mock private OrganizationRepository organizationRepository;
+    @Mock private InventoryBatchRepository inventoryBatchRepository;
+    @Mock private StripedStockManager stripedStockManager;
+
+    private final PricingStrategies pricingStrategies = new PricingStrategies(List.of(new LinearPricingStrategy()));
+    private PriceEngine priceEngine;
+    private Organization org;
+
+    @BeforeEach
+    void setUp() {
+        priceEngine = new PriceEngine(productRepository, organizationRepository, inventoryBatchRepository,
+                stripedStockManager, new LazyPriceDecay(false, pricingStrategies), pricingStrategies,
+                new SalesRateTracker());
+        org = new Organization(); org.setId(1L); org.setPriceIncreaseStep(new BigDecimal("0.50")); org.setPriceDecreaseStep(new BigDecimal("0.50"));
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(org));
+    }
+
+    @Test
+    void applySale_DynamicPricing_IncreasesPerLineUpToMax() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), new BigDecimal("3.80"), new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(
+                new SaleItemRequestDto(5L, BigDecimal.ONE),
+                new SaleItemRequestDto(5L, new BigDecimal("2")))));
+
+        assertEquals(new BigDecimal("3.00"), quotes.get(0).priceBefore());
+        assertEquals(new BigDecimal("3.50"), quotes.get(0).priceAfter());
+        assertEquals(new BigDecimal("3.50"), quotes.get(1).priceBefore());
+        assertEquals(new BigDecimal("3.80"), quotes.get(1).priceAfter());
+        assertEquals(new BigDecimal("7"), quotes.get(1).quantityAfter());
+        assertEquals(new BigDecimal("7.00"), quotes.get(1).totalPrice());
+    }
+
+    @Test
+    void applySale_InvalidLine_LeavesBookUntouched() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        Product cider = product(6L, "Cider", new BigDecimal("4.00"), null, BigDecimal.ONE, true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer, cider));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(
+                        new SaleItemRequestDto(5L, BigDecimal.ONE),
+                        new SaleItemRequestDto(6L, new BigDecimal("2"))))));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+
+        // The failed basket is not reflected in the next sale
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        assertEquals(new BigDecimal("3.00"), quotes.get(0).priceBefore());
+        assertEquals(new BigDecimal("10"), quotes.get(0).quantityBefore());
+    }
+
+    @Test
+    void applySale_KeepsStateBetweenSalesWithoutReloading() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), false);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+
+        assertEquals(new BigDecimal("9"), quotes.get(0).quantityBefore());
+        // Category without dynamic pricing keeps the price
+        assertEquals(new BigDecimal("3.00"), quotes.get(0).priceAfter());
+        verify(productRepository, times(1)).findAllForPricingByOrganizationId(1L);
+    }
+
+    @Test
+    void applySale_ProductsOutsideBook_LoadedInOneQueryAndRejectedBeforeMutation() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        Product newCider = product(6L, "Cider", new BigDecimal("4.00"), null, new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+        when(productRepository.findAllForSaleByIdIn(Set.of(6L, 7L))).thenReturn(List.of(newCider));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(
+                        new SaleItemRequestDto(5L, BigDecimal.ONE),
+                        new SaleItemRequestDto(6L, BigDecimal.ONE),
+                        new SaleItemRequestDto(7L, BigDecimal.ONE)))));
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+        verify(productRepository, times(1)).findAllForSaleByIdIn(anyCollection());
+        verify(productRepository, never()).findById(anyLong());
+
+        // Nothing of the rejected basket was applied
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        assertEquals(new BigDecimal("10"), quotes.get(0).quantityBefore());
+    }
+
+    @Test
+    void applySale_LazyDecay_PricesIdleTimeAndAnchorsAtSale() {
+        priceEngine = new PriceEngine(productRepository, organizationRepository, inventoryBatchRepository,
+                stripedStockManager, new LazyPriceDecay(true, pricingStrategies), pricingStrategies,
+                new SalesRateTracker());
+        OffsetDateTime soldAt = OffsetDateTime.parse("2025-06-01T21:00:00Z");
+        org.setLastSaleAt(soldAt.minusSeconds(30));
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        beer.setMinPrice(new BigDecimal("1.00"));
+        beer.getInventory().setPriceAnchoredAt(soldAt.minusSeconds(245));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(
+                new SaleItemRequestDto(5L, BigDecimal.ONE),
+                new SaleItemRequestDto(5L, BigDecimal.ONE)), soldAt));
+
+        // Four idle minutes, down to the minimum; the second line continues from the first
+        assertEquals(new BigDecimal("1.00"), quotes.get(0).priceBefore());
+        assertEquals(new BigDecimal("1.50"), quotes.get(0).priceAfter());
+        assertEquals(new BigDecimal("1.50"), quotes.get(1).priceBefore());
+
+        // Decays from this sale, but only for a minute as nothing else was sold
+        quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), soldAt.plusMinutes(5)));
+        assertEquals(new BigDecimal("1.50"), quotes.get(0).priceBefore());
+    }
+
+    @Test
+    void applySale_CategoryStrategy_RaisesByRecentSalesIncludingEarlierLines() {
+        PricingStrategies strategies = new PricingStrategies(List.of(new LinearPricingStrategy(),
+                new DemandRatePricingStrategy(300_000, 1, 4)));
+        priceEngine = new PriceEngine(productRepository, organizationRepository, inventoryBatchRepository,
+                stripedStockManager, new LazyPriceDecay(false, strategies), strategies,
+                new SalesRateTracker());
+        OffsetDateTime soldAt = OffsetDateTime.parse("2025-06-01T21:00:00Z");
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        beer.getCategory().setPricingStrategy(DemandRatePricingStrategy.NAME);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(
+                new SaleItemRequestDto(5L, BigDecimal.ONE),
+                new SaleItemRequestDto(5L, BigDecimal.ONE),
+                new SaleItemRequestDto(5L, BigDecimal.ONE)), soldAt));
+
+        assertEquals(new BigDecimal("3.50"), quotes.get(0).priceAfter());
+        assertEquals(new BigDecimal("4.00"), quotes.get(1).priceAfter());
+        assertEquals(new BigDecimal("5.00"), quotes.get(2).priceAfter());
+
+        // Three sales within the window, then none
+        quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), soldAt.plusMinutes(1)));
+        assertEquals(new BigDecimal("6.50"), quotes.get(0).priceAfter());
+        quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), soldAt.plusMinutes(10)));
+        assertEquals(new BigDecimal("7.00"), quotes.get(0).priceAfter());
+    }
+
+    @Test
+    void revision_MovesOnSaleAndEviction() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+        assertEquals(0, priceEngine.revision(1L));
+
+        priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        assertEquals(1, priceEngine.revision(1L));
+        priceEngine.evict(1L);
+        assertEquals(2, priceEngine.revision(1L));
+        assertEquals(0, priceEngine.revision(2L));
+    }
+
+    @Test
+    void changedSince_ProductsOfEachRevisionUntilAnEviction() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        Product cider = product(6L, "Cider", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer, cider));
+        assertEquals(Set.of(), priceEngine.changedSince(1L, 0));
+
+        priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        priceEngine.evictAfterCompletion(1L, List.of(6L));
+        priceEngine.markChangedAfterCompletion(1L);
+
+        assertEquals(Set.of(5L, 6L), priceEngine.changedSince(1L, 0));
+        assertEquals(Set.of(6L), priceEngine.changedSince(1L, 1));
+        assertEquals(Set.of(), priceEngine.changedSince(1L, 3));
+        // Not reached yet
+        assertNull(priceEngine.changedSince(1L, 4));
+
+        priceEngine.evict(1L);
+        assertNull(priceEngine.changedSince(1L, 3));
+        assertEquals(Set.of(), priceEngine.changedSince(1L, 4));
+    }
+
+    @Test
+    void evict_ReloadsBookOnNextUse() {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        priceEngine.evict(1L);
+        priceEngine.execute(1L, book -> priceEngine.applySale(book, List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+
+        verify(productRepository, times(2)).findAllForPricingByOrganizationId(1L);
+    }
+
+    @Test
+    void execute_ReloadedBeforeCommit_EvictedAgainOnCommit() throws Exception {
+        Product beer = product(5L, "Beer", new BigDecimal("3.00"), null, new BigDecimal("10"), true);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(beer));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                    List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+            // Evicted and reloaded by another request before the sale commits
+            priceEngine.evict(1L);
+            BigDecimal reloaded = CompletableFuture.supplyAsync(
+                    () -> priceEngine.execute(1L, book -> book.get(5L).getPrice())).get(5, TimeUnit.SECONDS);
+            assertEquals(new BigDecimal("3.00"), reloaded);
+
+            beer.getInventory().setAdjustedPrice(new BigDecimal("3.50"));
+            beer.getInventory().setQuantity(new BigDecimal("9"));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        List<SaleQuote> quotes = priceEngine.execute(1L, book -> priceEngine.applySale(book,
+                List.of(new SaleItemRequestDto(5L, BigDecimal.ONE))));
+        assertEquals(new BigDecimal("3.50"), quotes.get(0).priceBefore());
+        assertEquals(new BigDecimal("9"), quotes.get(0).quantityBefore());
+        verify(productRepository, times(3)).findAllForPricingByOrganizationId(1L);
+    }
+
+    private static Product product(Long id, String name, BigDecimal price, BigDecimal maxPrice, BigDecimal quantity,
+            boolean dynamicPricing) {
+        Category category = new Category(); category.setId(1L); category.setDynamicPricing(dynamicPricing);
+        Product product = new Product(); product.setId(id); product.setOrganizationId(1L); product.setActive(true);
+        product.setName(name); product.setBasePrice(price); product.setMaxPrice(maxPrice); product.setCategory(category);
+        Inventory inventory = new Inventory(); inventory.setId(id + 100); inventory.setProduct(product);
+        inventory.setQuantity(quantity); inventory.setAdjustedPrice(price);
+        product.setInventory(inventory);
+        return product;
+    }
+}
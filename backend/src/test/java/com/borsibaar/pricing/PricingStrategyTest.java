@@ -0,0 +1,88 @@
+package com.borsibaar.pricing;
+
+import com.borsibaar.stock.SalesRateTracker;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingStrategyTest {
+
+    private static final long NO_LIMIT = FixedPoint.NO_LIMIT;
+
+    private final LinearPricingStrategy linear = new LinearPricingStrategy();
+    private final ExponentialDecayPricingStrategy exponential = new ExponentialDecayPricingStrategy(new BigDecimal("0.50"));
+    private final DemandRatePricingStrategy demandRate = new DemandRatePricingStrategy(300_000, 4, 3);
+
+    @Test
+    void linear_OneStepPerSaleAndIdleMinuteWithinBounds() {
+        assertEquals(units("3.50"), linear.priceAfterSale(units("3.00"), units("0.50"), NO_LIMIT, 0));
+        assertEquals(units("3.20"), linear.priceAfterSale(units("3.00"), units("0.50"), units("3.20"), 0));
+        assertEquals(units("2.00"), linear.priceAfterIdle(units("3.00"), units("0.50"), units("1.00"), 2));
+        assertEquals(units("1.00"), linear.priceAfterIdle(units("3.00"), units("0.50"), units("1.00"), 60));
+        // Far more idle minutes than the price could ever drop
+        assertEquals(units("1.00"), linear.priceAfterIdle(units("3.00"), units("0.50"), units("1.00"), Long.MAX_VALUE));
+    }
+
+    @Test
+    void exponentialDecay_HalvesDistanceToMinimumPerIdleMinute() {
+        assertEquals(units("3.00"), exponential.priceAfterIdle(units("5.00"), 0, units("1.00"), 1));
+        assertEquals(units("1.50"), exponential.priceAfterIdle(units("5.00"), 0, units("1.00"), 3));
+        assertEquals(units("1.00"), exponential.priceAfterIdle(units("5.00"), 0, units("1.00"), 1_000));
+        assertEquals(units("3.50"), exponential.priceAfterSale(units("3.00"), units("0.50"), NO_LIMIT, 10));
+    }
+
+    @Test
+    void exponentialDecay_SmallRateOverLongIdle_MatchesClosedForm() {
+        ExponentialDecayPricingStrategy slow = new ExponentialDecayPricingStrategy(new BigDecimal("0.0001"));
+
+        // A week idle
+        long price = slow.priceAfterIdle(units("5.00"), 0, units("1.00"), 10_080);
+        assertEquals(1 + 4 * Math.pow(0.9999, 10_080), price / (double) FixedPoint.ONE, 0.001);
+        assertEquals(units("1.00"), slow.priceAfterIdle(units("5.00"), 0, units("1.00"), Long.MAX_VALUE));
+        assertEquals(units("5.00"), slow.priceAfterIdle(units("5.00"), 0, units("1.00"), 0));
+    }
+
+    @Test
+    void demandRate_StepScalesWithRecentSalesBetweenOneAndMaxMultiplier() {
+        assertEquals(units("3.50"), demandRate.priceAfterSale(units("3.00"), units("0.50"), NO_LIMIT, 0));
+        assertEquals(units("3.75"), demandRate.priceAfterSale(units("3.00"), units("0.50"), NO_LIMIT, 6));
+        assertEquals(units("4.50"), demandRate.priceAfterSale(units("3.00"), units("0.50"), NO_LIMIT, 40));
+        assertEquals(units("4.00"), demandRate.priceAfterSale(units("3.00"), units("0.50"), units("4.00"), 40));
+        assertEquals(units("2.50"), demandRate.priceAfterIdle(units("3.00"), units("0.50"), units("1.00"), 1));
+    }
+
+    @Test
+    void demandRate_WindowLongerThanTrackedSales_Rejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new DemandRatePricingStrategy(SalesRateTracker.MAX_WINDOW_MILLIS + 1, 4, 3));
+        assertEquals(SalesRateTracker.MAX_WINDOW_MILLIS,
+                new DemandRatePricingStrategy(SalesRateTracker.MAX_WINDOW_MILLIS, 4, 3).salesWindowMillis());
+    }
+
+    @Test
+    void resolve_CategoryBeforeOrganizationUnknownFallsBackToLinear() {
+        PricingStrategies strategies = new PricingStrategies(List.of(linear, exponential, demandRate));
+
+        assertSame(demandRate, strategies.resolve(DemandRatePricingStrategy.NAME, ExponentialDecayPricingStrategy.NAME));
+        assertSame(exponential, strategies.resolve(null, ExponentialDecayPricingStrategy.NAME));
+        assertSame(linear, strategies.resolve(null, null));
+        assertSame(linear, strategies.resolve("surge", null));
+        assertThrows(IllegalStateException.class,
+                () -> new PricingStrategies(List.of(linear, new LinearPricingStrategy())));
+    }
+
+    @Test
+    void fixedPoint_KeepsScaleThePriceWasEnteredWith() {
+        assertEquals(35_000, FixedPoint.of(new BigDecimal("3.5")));
+        assertEquals(new BigDecimal("3.50"), FixedPoint.toDecimal(35_000, 2));
+        assertEquals(new BigDecimal("3.125"), FixedPoint.toDecimal(31_250, 2));
+        assertEquals(new BigDecimal("4"), FixedPoint.toDecimal(40_000, 0));
+    }
+
+    private static long units(String price) {
+        return FixedPoint.of(new BigDecimal(price));
+    }
+}
@@ -0,0 +1,81 @@
+package com.borsibaar.pricing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final TimingWheel<String> wheel = new TimingWheel<>(1_000, 8, 3, 0);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void advance_FiresOnFirstTickAtOrAfterDeadline() {
+        wheel.schedule("a", 2_500);
+        wheel.schedule("b", 5_000);
+
+        wheel.advance(2_999, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(3_000, fired::add);
+        assertEquals(List.of("a"), fired);
+        wheel.advance(10_000, fired::add);
+        assertEquals(List.of("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_TimersOnHigherLevels_CascadeDownAndFireInOrder() {
+        // Level 0 covers 8s, level 1 64s, level 2 512s
+        wheel.schedule("far", 300_000);
+        wheel.schedule("mid", 40_000);
+        wheel.schedule("near", 7_000);
+
+        wheel.advance(39_000, fired::add);
+        assertEquals(List.of("near"), fired);
+        wheel.advance(299_000, fired::add);
+        assertEquals(List.of("near", "mid"), fired);
+        wheel.advance(300_000, fired::add);
+        assertEquals(List.of("near", "mid", "far"), fired);
+    }
+
+    @Test
+    void advance_BeyondTopLevel_StillFiresAtDeadline() {
+        wheel.schedule("later", 2_000_000);
+
+        wheel.advance(1_999_000, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(2_000_000, fired::add);
+        assertEquals(List.of("later"), fired);
+    }
+
+    @Test
+    void schedule_ReplacesEarlierTimerAndCancelRemovesIt() {
+        wheel.schedule("a", 3_000);
+        wheel.schedule("a", 20_000);
+        wheel.schedule("b", 3_000);
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        wheel.advance(19_000, fired::add);
+        assertEquals(List.of(), fired);
+        assertTrue(wheel.isScheduled("a"));
+        wheel.advance(20_000, fired::add);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void advance_CallbackReschedules_FiresAgainLater() {
+        wheel.schedule("a", 1_000);
+
+        wheel.advance(1_000, key -> {
+            fired.add(key);
+            wheel.schedule(key, 4_000);
+        });
+        wheel.advance(10_000, fired::add);
+
+        assertEquals(List.of("a", "a"), fired);
+    }
+}
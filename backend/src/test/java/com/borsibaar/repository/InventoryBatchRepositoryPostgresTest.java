@@ -0,0 +1,180 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.BorsibaarApplication;
+import com.borsibaar.PostgresTestDatabase;
+import com.borsibaar.repository.InventoryBatchRepository.PriceDecay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The single-statement price decay of {@link InventoryBatchRepository} on
+ * PostgreSQL, which the H2 tests cannot run ({@code UPDATE ... FROM} in a
+ * data-modifying CTE). The database is the one of {@link PostgresTestDatabase}.
+ */
+@EnabledIf("com.borsibaar.PostgresTestDatabase#available")
+class InventoryBatchRepositoryPostgresTest {
+
+    private static final String REFERENCE_ID = "decay-test";
+
+    private final OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+    private final OffsetDateTime idleSince = now.minusMinutes(1);
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private InventoryBatchRepository repository;
+    private TransactionTemplate tx;
+    private Long organizationId;
+    private Long categoryId;
+
+    @BeforeEach
+    void setUp() {
+        context = new SpringApplicationBuilder(BorsibaarApplication.class).run(
+                "--spring.datasource.url=" + PostgresTestDatabase.url(),
+                "--spring.datasource.username=" + PostgresTestDatabase.username(),
+                "--spring.datasource.password=" + PostgresTestDatabase.password(),
+                "--spring.datasource.driverClassName=org.postgresql.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:db/changelog/db.changelog-master.yaml",
+                "--spring.security.oauth2.client.registration.google.client-id=test",
+                "--spring.security.oauth2.client.registration.google.client-secret=test",
+                "--server.port=0");
+        jdbc = context.getBean(JdbcTemplate.class);
+        repository = context.getBean(InventoryBatchRepository.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        organizationId = jdbc.queryForObject("""
+                INSERT INTO organizations (name, price_increase_step, price_decrease_step, created_at, updated_at)
+                VALUES ('Decay test', 0.50, 0.50, now(), now()) RETURNING id
+                """, Long.class);
+        categoryId = jdbc.queryForObject("""
+                INSERT INTO categories (organization_id, name, dynamic_pricing) VALUES (?, 'Beer', TRUE) RETURNING id
+                """, Long.class, organizationId);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbc != null && organizationId != null) {
+            jdbc.update("DELETE FROM inventory_transactions WHERE inventory_id IN "
+                    + "(SELECT id FROM inventory WHERE organization_id = ?)", organizationId);
+            jdbc.update("DELETE FROM inventory WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM products WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM categories WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM organizations WHERE id = ?", organizationId);
+        }
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void decayPrices_OnlyIdleProductsAboveMinimum_ClampedAndLedgered() {
+        Long idle = product("Idle", "4.00", "1.00", now.minusMinutes(2));
+        Long recent = product("Recent", "4.00", "1.00", now.minusSeconds(10));
+        Long nearMinimum = product("Near minimum", "1.20", "1.00", now.minusMinutes(2));
+        Long atMinimum = product("At minimum", "1.00", "1.00", now.minusMinutes(2));
+
+        Map<Long, PriceDecay> decays = decay(List.of(idle, recent, nearMinimum, atMinimum));
+
+        assertEquals(0, new BigDecimal("3.50").compareTo(decays.get(idle).priceAfter()));
+        assertEquals(0, new BigDecimal("1.00").compareTo(decays.get(nearMinimum).priceAfter()));
+        assertNull(decays.get(recent).priceAfter());
+        assertNull(decays.get(atMinimum).priceAfter());
+        assertEquals(0, new BigDecimal("3.50").compareTo(price(idle)));
+        assertEquals(0, new BigDecimal("4.00").compareTo(price(recent)));
+
+        List<Map<String, Object>> ledger = jdbc.queryForList("""
+                SELECT i.product_id, it.transaction_type, it.quantity_change, it.price_before, it.price_after
+                FROM inventory_transactions it JOIN inventory i ON i.id = it.inventory_id
+                WHERE i.organization_id = ? AND it.reference_id = ?
+                ORDER BY i.product_id
+                """, organizationId, REFERENCE_ID);
+        assertEquals(2, ledger.size());
+        assertEquals(idle, ((Number) ledger.get(0).get("product_id")).longValue());
+        assertEquals("ADJUSTMENT", ledger.get(0).get("transaction_type"));
+        assertEquals(0, BigDecimal.ZERO.compareTo((BigDecimal) ledger.get(0).get("quantity_change")));
+        assertEquals(0, new BigDecimal("4.00").compareTo((BigDecimal) ledger.get(0).get("price_before")));
+        assertEquals(0, new BigDecimal("3.50").compareTo((BigDecimal) ledger.get(0).get("price_after")));
+        assertEquals(0, new BigDecimal("1.00").compareTo((BigDecimal) ledger.get(1).get("price_after")));
+
+        // The decayed rows were anchored now, so a second run within the minute changes nothing
+        assertTrue(decay(List.of(idle, nearMinimum)).values().stream().allMatch(row -> row.priceAfter() == null));
+    }
+
+    @Test
+    void decayPrices_RowLockedBySale_WaitsAndSkipsTheSoldProduct() throws Exception {
+        Long productId = product("Sold meanwhile", "4.00", "1.00", now.minusMinutes(2));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> sale = CompletableFuture.runAsync(() -> tx.executeWithoutResult(status -> {
+            jdbc.update("UPDATE inventory SET quantity = quantity - 1, last_sale_at = now() WHERE product_id = ?",
+                    productId);
+            locked.countDown();
+            await(release);
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Map<Long, PriceDecay>> decay = CompletableFuture.supplyAsync(() -> decay(List.of(productId)));
+        assertThrows(TimeoutException.class, () -> decay.get(500, TimeUnit.MILLISECONDS));
+        release.countDown();
+        sale.get(5, TimeUnit.SECONDS);
+
+        // Re-read after the sale committed: no longer idle
+        assertNull(decay.get(5, TimeUnit.SECONDS).get(productId).priceAfter());
+        assertEquals(0, new BigDecimal("4.00").compareTo(price(productId)));
+    }
+
+    private Map<Long, PriceDecay> decay(List<Long> productIds) {
+        return tx.execute(status -> repository.decayPrices(productIds, idleSince, REFERENCE_ID, now)).stream()
+                .collect(Collectors.toMap(PriceDecay::productId, Function.identity()));
+    }
+
+    private Long product(String name, String price, String minPrice, OffsetDateTime anchoredAt) {
+        Long productId = jdbc.queryForObject("""
+                INSERT INTO products (organization_id, category_id, name, base_price, min_price, is_active,
+                    created_at, updated_at)
+                VALUES (?, ?, ?, ?, ?, TRUE, now(), now()) RETURNING id
+                """, Long.class, organizationId, categoryId, name, new BigDecimal(price), new BigDecimal(minPrice));
+        jdbc.update("""
+                INSERT INTO inventory (organization_id, product_id, quantity, adjusted_price, created_at, updated_at,
+                    price_anchored_at)
+                VALUES (?, ?, 10, ?, now(), now(), ?)
+                """, organizationId, productId, new BigDecimal(price), anchoredAt);
+        return productId;
+    }
+
+    private BigDecimal price(Long productId) {
+        return jdbc.queryForObject("SELECT adjusted_price FROM inventory WHERE product_id = ?", BigDecimal.class,
+                productId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.pricing.SaleQuote;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test for the guarded stock decrement: many bar stations selling the same
+ * product at once must never take the stock below zero or lose an update.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stockconcurrency;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;LOCK_TIMEOUT=30000",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(InventoryBatchRepository.class)
+class InventoryRepositoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 25;
+    private static final int INITIAL_STOCK = 150;
+
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private InventoryBatchRepository inventoryBatchRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void decrementStockAndSetPrices_ConcurrentSales_NeverOversell() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(BigDecimal.valueOf(INITIAL_STOCK)).getId());
+        List<SaleQuote> sale = List.of(new SaleQuote(null, inventoryId, "Lager", BigDecimal.ONE,
+                null, null, BigDecimal.TEN, BigDecimal.TEN));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    Integer updated = tx.execute(status -> inventoryBatchRepository.decrementStockAndSetPrices(
+                            sale, OffsetDateTime.now())[0]);
+                    if (updated != null && updated == 1) {
+                        accepted.incrementAndGet();
+                    } else {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        BigDecimal remaining = tx.execute(status -> inventoryRepository.findQuantityById(inventoryId));
+        assertEquals(INITIAL_STOCK, accepted.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - INITIAL_STOCK, rejected.get());
+        assertEquals(0, remaining.compareTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    void decrementStock_MoreThanAvailable_LeavesRowUntouched() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(BigDecimal.valueOf(2)).getId());
+
+        Integer updated = tx.execute(status -> inventoryRepository.decrementStock(
+                inventoryId, BigDecimal.valueOf(3), OffsetDateTime.now()));
+
+        assertEquals(0, updated);
+        BigDecimal remaining = tx.execute(status -> inventoryRepository.findQuantityById(inventoryId));
+        assertEquals(0, remaining.compareTo(BigDecimal.valueOf(2)));
+    }
+
+    @Test
+    void replaceStock_ChangedSinceRead_LeavesRowUntouched() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(BigDecimal.valueOf(5)).getId());
+        tx.execute(status -> inventoryRepository.decrementStock(inventoryId, BigDecimal.ONE, OffsetDateTime.now()));
+
+        Integer stale = tx.execute(status -> inventoryRepository.replaceStock(
+                inventoryId, BigDecimal.valueOf(5), BigDecimal.valueOf(8), OffsetDateTime.now()));
+        Integer current = tx.execute(status -> inventoryRepository.replaceStock(
+                inventoryId, BigDecimal.valueOf(4), BigDecimal.valueOf(8), OffsetDateTime.now()));
+
+        assertEquals(0, stale);
+        assertEquals(1, current);
+        BigDecimal remaining = tx.execute(status -> inventoryRepository.findQuantityById(inventoryId));
+        assertEquals(0, remaining.compareTo(BigDecimal.valueOf(8)));
+    }
+
+    private Inventory createInventory(BigDecimal quantity) {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Beer");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName("Lager " + System.nanoTime());
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, quantity, BigDecimal.TEN));
+    }
+}
@@ -0,0 +1,118 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keyset pages of the ledger must neither skip nor repeat rows, also where
+ * several rows share a timestamp.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:transactionhistory;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class InventoryTransactionHistoryTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 6, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+
+    private Inventory inventory;
+
+    @BeforeEach
+    void setUp() {
+        inventory = createInventory();
+        // Three rows per minute, every fourth one a purchase
+        for (int i = 0; i < 30; i++) {
+            transaction(i % 4 == 0 ? "PURCHASE" : "SALE", START.plusMinutes(i / 3));
+        }
+    }
+
+    @Test
+    void findHistoryPage_PagesCoverEveryRowOnceNewestFirst() {
+        List<InventoryTransaction> all = new ArrayList<>();
+        List<InventoryTransaction> page = inventoryTransactionRepository.findHistoryPage(inventory.getId(), null,
+                null, null, null, null, Limit.of(7));
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            InventoryTransaction last = page.get(page.size() - 1);
+            page = inventoryTransactionRepository.findHistoryPage(inventory.getId(), null, null, null,
+                    last.getCreatedAt(), last.getId(), Limit.of(7));
+        }
+
+        assertEquals(30, all.size());
+        assertEquals(30, all.stream().map(InventoryTransaction::getId).distinct().count());
+        for (int i = 1; i < all.size(); i++) {
+            assertFalse(all.get(i).getCreatedAt().isAfter(all.get(i - 1).getCreatedAt()));
+        }
+    }
+
+    @Test
+    void findHistoryPage_TypeAndTimeRange() {
+        List<InventoryTransaction> purchases = inventoryTransactionRepository.findHistoryPage(inventory.getId(),
+                "PURCHASE", START.plusMinutes(2), START.plusMinutes(6), null, null, Limit.of(100));
+
+        // Rows 8, 12 and 16 fall in minutes 2 to 5
+        assertEquals(3, purchases.size());
+        assertTrue(purchases.stream().allMatch(tx -> "PURCHASE".equals(tx.getTransactionType())));
+    }
+
+    private void transaction(String type, OffsetDateTime createdAt) {
+        InventoryTransaction transaction = new InventoryTransaction();
+        transaction.setInventory(inventory);
+        transaction.setTransactionType(type);
+        transaction.setQuantityChange(BigDecimal.ONE);
+        transaction.setQuantityBefore(BigDecimal.TEN);
+        transaction.setQuantityAfter(BigDecimal.TEN);
+        transaction.setPriceBefore(BigDecimal.ONE);
+        transaction.setPriceAfter(BigDecimal.ONE);
+        transaction.setCreatedAt(createdAt);
+        inventoryTransactionRepository.save(transaction);
+    }
+
+    private Inventory createInventory() {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Beer");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName("Lager");
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, BigDecimal.TEN, BigDecimal.TEN));
+    }
+}
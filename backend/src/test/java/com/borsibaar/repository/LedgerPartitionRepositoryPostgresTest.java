@@ -0,0 +1,122 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.BorsibaarApplication;
+import com.borsibaar.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Creating a month whose rows already went to the default partition of the
+ * ledger on PostgreSQL, the database of {@link PostgresTestDatabase}.
+ */
+@EnabledIf("com.borsibaar.PostgresTestDatabase#available")
+class LedgerPartitionRepositoryPostgresTest {
+
+    // Far beyond the months the partition job creates ahead
+    private final YearMonth month = YearMonth.now(ZoneOffset.UTC).plusYears(5);
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private LedgerPartitionRepository repository;
+    private TransactionTemplate tx;
+    private Long organizationId;
+    private Long inventoryId;
+
+    @BeforeEach
+    void setUp() {
+        context = new SpringApplicationBuilder(BorsibaarApplication.class).run(
+                "--spring.datasource.url=" + PostgresTestDatabase.url(),
+                "--spring.datasource.username=" + PostgresTestDatabase.username(),
+                "--spring.datasource.password=" + PostgresTestDatabase.password(),
+                "--spring.datasource.driverClassName=org.postgresql.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:db/changelog/db.changelog-master.yaml",
+                "--spring.security.oauth2.client.registration.google.client-id=test",
+                "--spring.security.oauth2.client.registration.google.client-secret=test",
+                "--server.port=0");
+        jdbc = context.getBean(JdbcTemplate.class);
+        repository = context.getBean(LedgerPartitionRepository.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        organizationId = jdbc.queryForObject("""
+                INSERT INTO organizations (name, price_increase_step, price_decrease_step, created_at, updated_at)
+                VALUES ('Partition test', 0.50, 0.50, now(), now()) RETURNING id
+                """, Long.class);
+        Long categoryId = jdbc.queryForObject("""
+                INSERT INTO categories (organization_id, name, dynamic_pricing) VALUES (?, 'Beer', TRUE) RETURNING id
+                """, Long.class, organizationId);
+        Long productId = jdbc.queryForObject("""
+                INSERT INTO products (organization_id, category_id, name, base_price, is_active, created_at, updated_at)
+                VALUES (?, ?, 'Lager', 4.00, TRUE, now(), now()) RETURNING id
+                """, Long.class, organizationId, categoryId);
+        inventoryId = jdbc.queryForObject("""
+                INSERT INTO inventory (organization_id, product_id, quantity, adjusted_price, created_at, updated_at)
+                VALUES (?, ?, 100, 4.00, now(), now()) RETURNING id
+                """, Long.class, organizationId, productId);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbc != null && organizationId != null) {
+            jdbc.update("DELETE FROM inventory_transactions WHERE inventory_id = ?", inventoryId);
+            jdbc.execute("DROP TABLE IF EXISTS " + LedgerPartitionRepository.partitionName(month));
+            jdbc.update("DELETE FROM inventory WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM products WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM categories WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM organizations WHERE id = ?", organizationId);
+        }
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void createMonth_RowsOfTheMonthInDefaultPartition_MovesThemIntoTheNewPartition() {
+        OffsetDateTime inMonth = month.atDay(10).atStartOfDay().atOffset(ZoneOffset.UTC);
+        addLedgerRow(inMonth);
+        addLedgerRow(inMonth.plusDays(3));
+        // The next month has no partition either and stays where it is
+        addLedgerRow(month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+        assertEquals(3, countIn("inventory_transactions_default"));
+
+        assertEquals(Integer.valueOf(2), tx.execute(status -> repository.createMonth(month)));
+
+        assertEquals(2, countIn(LedgerPartitionRepository.partitionName(month)));
+        assertEquals(1, countIn("inventory_transactions_default"));
+        assertEquals(3, jdbc.queryForObject("SELECT COUNT(*) FROM inventory_transactions WHERE inventory_id = ?",
+                Integer.class, inventoryId));
+        // The default partition is attached again, and creating the month again does nothing
+        assertEquals(Integer.valueOf(0), tx.execute(status -> repository.createMonth(month)));
+        assertEquals(Boolean.TRUE, jdbc.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_inherits
+                               WHERE inhrelid = to_regclass('inventory_transactions_default'))
+                """, Boolean.class));
+    }
+
+    private void addLedgerRow(OffsetDateTime createdAt) {
+        jdbc.update("""
+                INSERT INTO inventory_transactions (id, inventory_id, transaction_type, quantity_change,
+                    quantity_before, quantity_after, created_at)
+                VALUES (nextval('inventory_transactions_seq'), ?, 'ADJUSTMENT', 0, 100, 100, ?)
+                """, inventoryId, createdAt);
+    }
+
+    private int countIn(String table) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE inventory_id = ?", Integer.class,
+                inventoryId);
+    }
+}
@@ -0,0 +1,189 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.BorsibaarApplication;
+import com.borsibaar.PostgresTestDatabase;
+import com.borsibaar.pricing.SaleQuote;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sales and rollup rebuilds of the same hour interleaved on PostgreSQL, where
+ * the advisory locks of {@link SalesRollupRepository} keep them apart. The
+ * database is the one of {@link PostgresTestDatabase}.
+ */
+@EnabledIf("com.borsibaar.PostgresTestDatabase#available")
+class SalesRollupRepositoryPostgresTest {
+
+    private final OffsetDateTime hour = SalesRollupRepository.hourOf(OffsetDateTime.now(ZoneOffset.UTC))
+            .minusHours(1);
+    private final UUID userId = UUID.randomUUID();
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private SalesRollupRepository repository;
+    private TransactionTemplate tx;
+    private Long organizationId;
+    private Long productId;
+    private Long inventoryId;
+
+    @BeforeEach
+    void setUp() {
+        context = new SpringApplicationBuilder(BorsibaarApplication.class).run(
+                "--spring.datasource.url=" + PostgresTestDatabase.url(),
+                "--spring.datasource.username=" + PostgresTestDatabase.username(),
+                "--spring.datasource.password=" + PostgresTestDatabase.password(),
+                "--spring.datasource.driverClassName=org.postgresql.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect",
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:db/changelog/db.changelog-master.yaml",
+                "--spring.security.oauth2.client.registration.google.client-id=test",
+                "--spring.security.oauth2.client.registration.google.client-secret=test",
+                "--server.port=0");
+        jdbc = context.getBean(JdbcTemplate.class);
+        repository = context.getBean(SalesRollupRepository.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        organizationId = jdbc.queryForObject("""
+                INSERT INTO organizations (name, price_increase_step, price_decrease_step, created_at, updated_at)
+                VALUES ('Rollup test', 0.50, 0.50, now(), now()) RETURNING id
+                """, Long.class);
+        Long categoryId = jdbc.queryForObject("""
+                INSERT INTO categories (organization_id, name, dynamic_pricing) VALUES (?, 'Beer', TRUE) RETURNING id
+                """, Long.class, organizationId);
+        productId = jdbc.queryForObject("""
+                INSERT INTO products (organization_id, category_id, name, base_price, min_price, is_active,
+                    created_at, updated_at)
+                VALUES (?, ?, 'Lager', 4.00, 1.00, TRUE, now(), now()) RETURNING id
+                """, Long.class, organizationId, categoryId);
+        inventoryId = jdbc.queryForObject("""
+                INSERT INTO inventory (organization_id, product_id, quantity, adjusted_price, created_at, updated_at)
+                VALUES (?, ?, 100, 4.00, now(), now()) RETURNING id
+                """, Long.class, organizationId, productId);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbc != null && organizationId != null) {
+            jdbc.update("DELETE FROM sales_rollup_hourly WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM inventory_transactions WHERE inventory_id IN "
+                    + "(SELECT id FROM inventory WHERE organization_id = ?)", organizationId);
+            jdbc.update("DELETE FROM inventory WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM products WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM categories WHERE organization_id = ?", organizationId);
+            jdbc.update("DELETE FROM organizations WHERE id = ?", organizationId);
+        }
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void rebuild_SaleAddedButUncommitted_WaitsAndCountsItOnce() throws Exception {
+        CountDownLatch added = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // First sale of the hour, so its rollup row is new
+        CompletableFuture<Void> sale = CompletableFuture.runAsync(() -> tx.executeWithoutResult(status -> {
+            sell("s1", "2");
+            added.countDown();
+            await(release);
+        }));
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> rebuild = CompletableFuture.supplyAsync(() -> rebuild(organizationId));
+        assertThrows(TimeoutException.class, () -> rebuild.get(500, TimeUnit.MILLISECONDS));
+        release.countDown();
+        sale.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, rebuild.get(5, TimeUnit.SECONDS));
+        assertTotals(1, "2");
+    }
+
+    @Test
+    void addSale_RebuildUncommitted_WaitsAndAddsToRebuiltRows() throws Exception {
+        tx.executeWithoutResult(status -> sell("s1", "1"));
+        CountDownLatch rebuilt = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> rebuild = CompletableFuture.runAsync(() -> tx.executeWithoutResult(status -> {
+            repository.rebuild(organizationId, hour, hour.plusHours(1));
+            rebuilt.countDown();
+            await(release);
+        }));
+        assertTrue(rebuilt.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> sale = CompletableFuture.runAsync(() -> tx.executeWithoutResult(
+                status -> sell("s2", "3")));
+        assertThrows(TimeoutException.class, () -> sale.get(500, TimeUnit.MILLISECONDS));
+        release.countDown();
+        rebuild.get(5, TimeUnit.SECONDS);
+        sale.get(5, TimeUnit.SECONDS);
+
+        assertTotals(2, "4");
+        // And the same once rebuilt again
+        List<Map<String, Object>> added = rollupRows();
+        rebuild(organizationId);
+        assertEquals(added, rollupRows());
+    }
+
+    private void sell(String referenceId, String quantity) {
+        BigDecimal sold = new BigDecimal(quantity);
+        OffsetDateTime soldAt = hour.plusMinutes(10);
+        jdbc.update("""
+                INSERT INTO inventory_transactions (inventory_id, transaction_type, quantity_change, quantity_before,
+                    quantity_after, price_before, price_after, reference_id, created_by, created_at)
+                VALUES (?, 'SALE', ?, 100, ?, 4.00, 4.00, ?, ?, ?)
+                """, inventoryId, sold.negate(), BigDecimal.valueOf(100).subtract(sold), referenceId, userId, soldAt);
+        BigDecimal price = new BigDecimal("4.00");
+        repository.addSale(organizationId, null, userId, List.of(new SaleQuote(productId, inventoryId, "Lager", sold,
+                BigDecimal.valueOf(100), BigDecimal.valueOf(100).subtract(sold), price, price)), soldAt);
+    }
+
+    private int rebuild(Long rebuiltOrganizationId) {
+        return tx.execute(status -> repository.rebuild(rebuiltOrganizationId, hour, hour.plusHours(1)));
+    }
+
+    private void assertTotals(long salesCount, String quantity) {
+        Map<String, Object> row = jdbc.queryForMap("""
+                SELECT SUM(sales_count) AS sales_count, SUM(quantity) AS quantity FROM sales_rollup_hourly
+                WHERE organization_id = ? AND sale_hour = ?
+                """, organizationId, hour);
+        assertEquals(salesCount, ((Number) row.get("sales_count")).longValue());
+        assertEquals(0, new BigDecimal(quantity).compareTo((BigDecimal) row.get("quantity")));
+    }
+
+    private List<Map<String, Object>> rollupRows() {
+        return jdbc.queryForList("""
+                SELECT sale_hour, bar_station_id, user_id, product_id, sales_count, quantity, revenue
+                FROM sales_rollup_hourly WHERE organization_id = ?
+                ORDER BY sale_hour, bar_station_id, user_id, product_id
+                """, organizationId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
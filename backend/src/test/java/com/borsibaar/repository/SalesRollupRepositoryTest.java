@@ -0,0 +1,214 @@
+package com.borsibaar.repository;
+
+import com.borsibaar.dto.StationSalesStatsResponseDto;
+import com.borsibaar.dto.UserSalesStatsResponseDto;
+import com.borsibaar.entity.BarStation;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.entity.User;
+import com.borsibaar.pricing.SaleQuote;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sales added one by one must leave the same rollup rows as a rebuild from the
+ * ledger, and the statistics read from them must count each sale once. The
+ * interleaving of the two on PostgreSQL is in
+ * {@code SalesRollupRepositoryPostgresTest}.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:salesrollup;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SalesRollupRepository.class)
+class SalesRollupRepositoryTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 6, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired private SalesRollupRepository salesRollupRepository;
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private BarStationRepository barStationRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private Long organizationId;
+    private User bob;
+    private BarStation main;
+
+    @BeforeEach
+    void setUp() {
+        organizationId = organization("Org");
+        Inventory lager = inventory(organizationId, "Lager");
+        Inventory cider = inventory(organizationId, "Cider");
+        bob = userRepository.save(User.builder().organizationId(organizationId).name("Bob").email("bob@bar.ee")
+                .build());
+        main = barStationRepository.save(BarStation.builder().organizationId(organizationId).name("Main").build());
+
+        // Two products in one sale, sold at 3.00 and 5.50
+        sale("o1", START.plusMinutes(10), bob.getId(), main.getId(),
+                line(lager, "2", "3.00"), line(cider, "1", "5.50"));
+        sale("o2", START.plusMinutes(50), bob.getId(), main.getId(), line(lager, "1", "4.00"));
+        // The next hour, without a station
+        sale("o3", START.plusMinutes(70), bob.getId(), null, line(lager, "1", "4.00"));
+        // A seller who no longer exists
+        sale("o4", START.plusMinutes(20), UUID.randomUUID(), main.getId(), line(cider, "3", "2.00"));
+        // Not a sale
+        ledgerRow(lager, "PURCHASE", "p1", BigDecimal.TEN, new BigDecimal("4.00"), bob.getId(), main.getId(),
+                START.plusMinutes(30));
+        // Another organization's
+        sale("x1", START.plusMinutes(10), bob.getId(), main.getId(),
+                line(inventory(organization("Other"), "Lager"), "5", "4.00"));
+        inventoryTransactionRepository.flush();
+    }
+
+    @Test
+    void rebuild_SameRowsAsAddedSales() {
+        List<Map<String, Object>> added = rollupRows();
+
+        int written = salesRollupRepository.rebuild(null, START, START.plusHours(2));
+
+        assertEquals(added.size(), written);
+        assertEquals(added, rollupRows());
+    }
+
+    @Test
+    void rebuild_OneOrganization_OthersLeftAlone() {
+        jdbcTemplate.update("DELETE FROM sales_rollup_hourly WHERE organization_id = ?", organizationId);
+
+        salesRollupRepository.rebuild(organizationId, START, START.plusHours(1));
+
+        // o3 is in the hour after the rebuilt one
+        assertEquals(1L, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sales_rollup_hourly WHERE organization_id <> ?", Long.class, organizationId));
+        assertEquals(3L, salesRollupRepository.sumByStation(organizationId, null, null).get(0).salesCount());
+        assertTrue(salesRollupRepository.sumByUserAndStation(organizationId, null, null).stream()
+                .noneMatch(row -> row.barStationId() == null));
+    }
+
+    @Test
+    void sumByUserAndStation_CountsEachSaleOnce() {
+        List<UserSalesStatsResponseDto> stats = salesRollupRepository.sumByUserAndStation(organizationId, null, null);
+
+        assertEquals(3, stats.size());
+        UserSalesStatsResponseDto bobAtMain = stats.get(0);
+        assertEquals(bob.getId().toString(), bobAtMain.userId());
+        assertEquals("Bob", bobAtMain.userName());
+        assertEquals(main.getId(), bobAtMain.barStationId());
+        assertEquals("Main", bobAtMain.barStationName());
+        assertEquals(2L, bobAtMain.salesCount());
+        assertEquals(0, new BigDecimal("15.50").compareTo(bobAtMain.totalRevenue()));
+
+        UserSalesStatsResponseDto unknown = stats.stream()
+                .filter(row -> !row.userId().equals(bob.getId().toString())).findFirst().orElseThrow();
+        assertEquals("Unknown User", unknown.userName());
+        assertEquals(0, new BigDecimal("6.00").compareTo(unknown.totalRevenue()));
+    }
+
+    @Test
+    void sumByStation_TimeRangeInWholeHours() {
+        List<StationSalesStatsResponseDto> all = salesRollupRepository.sumByStation(organizationId, null, null);
+        assertEquals(1, all.size());
+        assertEquals(3L, all.get(0).salesCount());
+        assertEquals(0, new BigDecimal("21.50").compareTo(all.get(0).totalRevenue()));
+
+        // From 20:30 counts the whole hour from 20:00; o3 (at 21:10, no station) is not counted anyway
+        List<StationSalesStatsResponseDto> fromHalfPast = salesRollupRepository.sumByStation(organizationId,
+                START.plusMinutes(30), null);
+        assertEquals(3L, fromHalfPast.get(0).salesCount());
+        assertTrue(salesRollupRepository.sumByStation(organizationId, START.plusHours(1), null).isEmpty());
+    }
+
+    private List<Map<String, Object>> rollupRows() {
+        return jdbcTemplate.queryForList("""
+                SELECT organization_id, sale_hour, bar_station_id, user_id, product_id, sales_count, quantity, revenue
+                FROM sales_rollup_hourly
+                ORDER BY organization_id, sale_hour, bar_station_id, user_id, product_id
+                """);
+    }
+
+    private record Line(Inventory inventory, BigDecimal quantity, BigDecimal price) {
+    }
+
+    private static Line line(Inventory inventory, String quantity, String price) {
+        return new Line(inventory, new BigDecimal(quantity), new BigDecimal(price));
+    }
+
+    private void sale(String referenceId, OffsetDateTime soldAt, UUID userId, Long barStationId, Line... lines) {
+        List<SaleQuote> quotes = new ArrayList<>();
+        for (Line line : lines) {
+            ledgerRow(line.inventory(), "SALE", referenceId, line.quantity().negate(), line.price(), userId,
+                    barStationId, soldAt);
+            quotes.add(new SaleQuote(line.inventory().getProduct().getId(), line.inventory().getId(), "",
+                    line.quantity(), BigDecimal.TEN, BigDecimal.TEN.subtract(line.quantity()), line.price(),
+                    line.price()));
+        }
+        salesRollupRepository.addSale(lines[0].inventory().getProduct().getOrganizationId(), barStationId, userId,
+                quotes, soldAt);
+    }
+
+    private void ledgerRow(Inventory inventory, String type, String referenceId, BigDecimal quantityChange,
+            BigDecimal price, UUID userId, Long barStationId, OffsetDateTime createdAt) {
+        InventoryTransaction transaction = new InventoryTransaction();
+        transaction.setInventory(inventory);
+        transaction.setTransactionType(type);
+        transaction.setReferenceId(referenceId);
+        transaction.setQuantityChange(quantityChange);
+        transaction.setQuantityBefore(BigDecimal.TEN);
+        transaction.setQuantityAfter(BigDecimal.TEN.add(quantityChange));
+        transaction.setPriceBefore(price);
+        transaction.setPriceAfter(price);
+        transaction.setCreatedBy(userId);
+        transaction.setBarStationId(barStationId);
+        transaction.setCreatedAt(createdAt);
+        inventoryTransactionRepository.save(transaction);
+    }
+
+    private Long organization(String name) {
+        Organization org = new Organization();
+        org.setName(name);
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        return organizationRepository.save(org).getId();
+    }
+
+    private Inventory inventory(Long organizationId, String name) {
+        Category category = new Category();
+        category.setOrganizationId(organizationId);
+        category.setName("Drinks " + name);
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(organizationId);
+        product.setCategoryId(category.getId());
+        product.setName(name);
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(organizationId, product, BigDecimal.TEN, BigDecimal.TEN));
+    }
+}
@@ -0,0 +1,92 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.InventoryResponseDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BoardServiceTest {
+
+    @Mock private InventoryService inventoryService;
+    @Mock private CategoryRepository categoryRepository;
+    @Mock private OrganizationRepository organizationRepository;
+    @Mock private InventoryVersions inventoryVersions;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private BoardService boardService;
+
+    @BeforeEach
+    void setUp() {
+        boardService = new BoardService(inventoryService, categoryRepository, organizationRepository,
+                inventoryVersions, objectMapper);
+    }
+
+    @Test
+    void getBoardJson_GroupsProductsUnderEveryCategory() throws Exception {
+        stubBoard();
+
+        JsonNode board = objectMapper.readTree(boardService.getBoardJson(2L));
+
+        assertEquals(2, board.get("organizationId").asLong());
+        assertEquals("Beer", board.at("/categories/0/name").asText());
+        assertEquals("Lager", board.at("/categories/0/products/0/productName").asText());
+        assertEquals(0, board.at("/categories/1/products").size());
+    }
+
+    @Test
+    void getBoardJson_SameVersion_ServesSnapshot() {
+        stubBoard();
+
+        byte[] first = boardService.getBoardJson(2L);
+        assertSame(first, boardService.getBoardJson(2L));
+        verify(inventoryService, times(1)).getByOrganizationGroupedByCategory(2L);
+    }
+
+    @Test
+    void getBoardJson_VersionMoved_Rebuilds() {
+        stubBoard();
+
+        byte[] first = boardService.getBoardJson(2L);
+        when(inventoryVersions.current(2L)).thenReturn("a-2-8");
+
+        assertNotSame(first, boardService.getBoardJson(2L));
+        verify(inventoryService, times(2)).getByOrganizationGroupedByCategory(2L);
+    }
+
+    @Test
+    void getBoardJson_UnknownOrganization_NotFound() {
+        when(organizationRepository.existsById(9L)).thenReturn(false);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> boardService.getBoardJson(9L));
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    }
+
+    private void stubBoard() {
+        when(inventoryVersions.current(2L)).thenReturn("a-2-7");
+        when(organizationRepository.existsById(2L)).thenReturn(true);
+        Category beer = new Category(); beer.setId(1L); beer.setName("Beer");
+        Category snacks = new Category(); snacks.setId(3L); snacks.setName("Snacks");
+        when(categoryRepository.findAllByOrganizationId(2L)).thenReturn(List.of(beer, snacks));
+        when(inventoryService.getByOrganizationGroupedByCategory(2L)).thenReturn(Map.of(1L, List.of(
+                new InventoryResponseDto(10L, 2L, 5L, 1L, "Lager", BigDecimal.TEN, new BigDecimal("3.50"), null,
+                        new BigDecimal("3.00"), null, null, "2025-06-01T21:00:00Z"))));
+    }
+}
@@ -7,6 +7,11 @@ import com.borsibaar.exception.BadRequestException;
 import com.borsibaar.exception.DuplicateResourceException;
 import com.borsibaar.exception.NotFoundException;
 import com.borsibaar.mapper.CategoryMapper;
+import com.borsibaar.pricing.ExponentialDecayPricingStrategy;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
 import com.borsibaar.repository.CategoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,8 +19,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,6 +36,13 @@ class CategoryServiceTest {
     private CategoryRepository categoryRepository;
     @Mock
     private CategoryMapper categoryMapper;
+    @Mock
+    private PriceEngine priceEngine;
+    @Mock
+    private LazyPriceDecay lazyPriceDecay;
+    @Spy
+    private PricingStrategies pricingStrategies = new PricingStrategies(List.of(new LinearPricingStrategy(),
+            new ExponentialDecayPricingStrategy(new BigDecimal("0.10"))));
 
     @InjectMocks
     private CategoryService categoryService;
@@ -69,6 +83,26 @@ class CategoryServiceTest {
         assertThrows(BadRequestException.class, () -> categoryService.create(bad, 1L));
     }
 
+    @Test
+    void create_UnknownPricingStrategy_ThrowsBadRequest() {
+        CategoryRequestDto bad = new CategoryRequestDto("Drinks", null, "surge");
+        when(categoryMapper.toEntity(bad)).thenReturn(new Category());
+        assertThrows(BadRequestException.class, () -> categoryService.create(bad, 1L));
+        verify(categoryRepository, never()).save(any());
+    }
+
+    @Test
+    void create_ExponentialDecayWithoutLazyDecay_ThrowsBadRequest() {
+        CategoryRequestDto exponential = new CategoryRequestDto("Drinks", null, ExponentialDecayPricingStrategy.NAME);
+        when(categoryMapper.toEntity(exponential)).thenReturn(new Category());
+        when(lazyPriceDecay.isEnabled()).thenReturn(false);
+
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> categoryService.create(exponential, 1L));
+        assertTrue(ex.getMessage().contains("lazy-decay"));
+        verify(categoryRepository, never()).save(any());
+    }
+
     @Test
     void create_Duplicate_ThrowsDuplicateResource() {
         when(categoryMapper.toEntity(request)).thenReturn(new Category());
@@ -1,37 +1,52 @@
 package com.borsibaar.service;
 
+import com.borsibaar.archive.LedgerArchive;
 import com.borsibaar.dto.AddStockRequestDto;
+import com.borsibaar.dto.InventoryChangesResponseDto;
 import com.borsibaar.dto.InventoryResponseDto;
+import com.borsibaar.dto.InventoryTransactionPageResponseDto;
 import com.borsibaar.dto.InventoryTransactionResponseDto;
 import com.borsibaar.dto.RemoveStockRequestDto;
 import com.borsibaar.dto.AdjustStockRequestDto;
 import com.borsibaar.dto.StationSalesStatsResponseDto;
 import com.borsibaar.dto.UserSalesStatsResponseDto;
-import com.borsibaar.entity.BarStation;
 import com.borsibaar.entity.Inventory;
 import com.borsibaar.entity.InventoryTransaction;
 import com.borsibaar.entity.Product;
 import com.borsibaar.entity.User;
 import com.borsibaar.mapper.InventoryMapper;
-import com.borsibaar.repository.BarStationRepository;
+import com.borsibaar.pricing.InventoryVersions;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
+import com.borsibaar.stock.StripedStockManager;
+import com.borsibaar.repository.InventoryListingRow;
 import com.borsibaar.repository.InventoryRepository;
 import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.LedgerRow;
 import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SalesRollupRepository;
 import com.borsibaar.repository.UserRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -53,11 +68,27 @@ class InventoryServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private BarStationRepository barStationRepository;
+    private SalesRollupRepository salesRollupRepository;
 
     @Mock
     private InventoryMapper inventoryMapper;
 
+    @Mock
+    private PriceEngine priceEngine;
+
+    @Mock
+    private StripedStockManager stripedStockManager;
+
+    @Spy
+    private LazyPriceDecay lazyPriceDecay = new LazyPriceDecay(false,
+            new PricingStrategies(List.of(new LinearPricingStrategy())));
+
+    @Mock
+    private InventoryVersions inventoryVersions;
+
+    @Mock
+    private LedgerArchive ledgerArchive;
+
     @Mock
     private ClientRegistrationRepository clientRegistrationRepository;
 
@@ -71,8 +102,9 @@ class InventoryServiceTest {
         when(productRepository.findById(5L)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByOrganizationIdAndProductId(1L, 5L)).thenReturn(Optional.empty());
         when(inventoryRepository.save(any(Inventory.class))).thenAnswer(inv -> { Inventory i = inv.getArgument(0); i.setId(77L); return i; });
+        when(inventoryRepository.findQuantityById(77L)).thenReturn(BigDecimal.valueOf(10));
         when(inventoryMapper.toResponse(any())).thenAnswer(inv -> {
-            Inventory i = inv.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), "P", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString()); });
+            Inventory i = inv.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), null, "P", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString()); });
 
         AddStockRequestDto request = new AddStockRequestDto(5L, BigDecimal.valueOf(10), "Notes");
         InventoryResponseDto dto = inventoryService.addStock(request, userId, 1L);
@@ -95,9 +127,13 @@ class InventoryServiceTest {
         Inventory inv = new Inventory(); inv.setId(9L); inv.setOrganizationId(1L); inv.setProduct(product); inv.setProductId(5L); inv.setQuantity(BigDecimal.valueOf(2)); inv.setAdjustedPrice(BigDecimal.ONE); inv.setUpdatedAt(OffsetDateTime.now());
         when(productRepository.findById(5L)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByOrganizationIdAndProductId(1L, 5L)).thenReturn(Optional.of(inv));
+        // Another sale took stock after the row was read
+        when(inventoryRepository.findQuantityById(9L)).thenReturn(BigDecimal.ONE);
         RemoveStockRequestDto request = new RemoveStockRequestDto(5L, BigDecimal.valueOf(5), null, null);
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> inventoryService.removeStock(request, userId, 1L));
         assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        assertEquals("Insufficient stock. Available: 1, Requested: 5", ex.getReason());
+        verify(inventoryTransactionRepository, never()).save(any(InventoryTransaction.class));
     }
 
     @Test
@@ -106,10 +142,10 @@ class InventoryServiceTest {
         Inventory inv = new Inventory(); inv.setId(9L); inv.setOrganizationId(1L); inv.setProduct(product); inv.setProductId(5L); inv.setQuantity(BigDecimal.valueOf(5)); inv.setAdjustedPrice(BigDecimal.valueOf(2)); inv.setUpdatedAt(OffsetDateTime.now());
         when(productRepository.findById(5L)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByOrganizationIdAndProductId(1L, 5L)).thenReturn(Optional.of(inv));
-        when(inventoryRepository.save(any(Inventory.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(inventoryRepository.replaceStock(eq(9L), eq(BigDecimal.valueOf(5)), eq(BigDecimal.valueOf(8)), any()))
+                .thenReturn(1);
         when(inventoryMapper.toResponse(any())).thenAnswer(a -> {
-            Inventory i = a.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), "Prod", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString()); });
+            Inventory i = a.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), null, "Prod", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString()); });
 
         AdjustStockRequestDto request = new AdjustStockRequestDto(5L, BigDecimal.valueOf(8), "Adj");
         InventoryResponseDto dto = inventoryService.adjustStock(request, userId, 1L);
@@ -118,17 +154,93 @@ class InventoryServiceTest {
     }
 
     @Test
-    void getByOrganization_FiltersInactiveProducts() {
-        Inventory inv1 = new Inventory(); inv1.setId(1L); inv1.setOrganizationId(1L); inv1.setProductId(10L); inv1.setQuantity(BigDecimal.ONE); inv1.setUpdatedAt(OffsetDateTime.now());
-        Inventory inv2 = new Inventory(); inv2.setId(2L); inv2.setOrganizationId(1L); inv2.setProductId(11L); inv2.setQuantity(BigDecimal.ONE); inv2.setUpdatedAt(OffsetDateTime.now());
-        when(inventoryRepository.findByOrganizationId(1L)).thenReturn(List.of(inv1, inv2));
-        Product p1 = new Product(); p1.setId(10L); p1.setActive(true); p1.setBasePrice(BigDecimal.ONE); p1.setName("A");
-        Product p2 = new Product(); p2.setId(11L); p2.setActive(false); p2.setBasePrice(BigDecimal.ONE); p2.setName("B");
-        when(productRepository.findById(10L)).thenReturn(Optional.of(p1));
-        when(productRepository.findById(11L)).thenReturn(Optional.of(p2));
-        when(inventoryMapper.toResponse(inv1)).thenReturn(new InventoryResponseDto(1L,1L,10L,"A",BigDecimal.ONE,BigDecimal.ONE, "abc", null,null,null,OffsetDateTime.now().toString()));
+    void adjustStock_SoldMeanwhile_ChangeRecordedAgainstCurrentStock() {
+        Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.valueOf(2));
+        Inventory inv = new Inventory(); inv.setId(9L); inv.setOrganizationId(1L); inv.setProduct(product); inv.setProductId(5L); inv.setQuantity(BigDecimal.valueOf(5)); inv.setAdjustedPrice(BigDecimal.valueOf(2)); inv.setUpdatedAt(OffsetDateTime.now());
+        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByOrganizationIdAndProductId(1L, 5L)).thenReturn(Optional.of(inv));
+        when(inventoryRepository.replaceStock(eq(9L), eq(BigDecimal.valueOf(5)), eq(BigDecimal.valueOf(8)), any()))
+                .thenReturn(0);
+        when(inventoryRepository.findQuantityById(9L)).thenReturn(BigDecimal.valueOf(4));
+        when(inventoryRepository.replaceStock(eq(9L), eq(BigDecimal.valueOf(4)), eq(BigDecimal.valueOf(8)), any()))
+                .thenReturn(1);
+        when(inventoryMapper.toResponse(any())).thenAnswer(a -> {
+            Inventory i = a.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), null, "Prod", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString()); });
+
+        inventoryService.adjustStock(new AdjustStockRequestDto(5L, BigDecimal.valueOf(8), "Count"), userId, 1L);
+
+        ArgumentCaptor<InventoryTransaction> transaction = ArgumentCaptor.forClass(InventoryTransaction.class);
+        verify(inventoryTransactionRepository).save(transaction.capture());
+        assertEquals(BigDecimal.valueOf(4), transaction.getValue().getQuantityChange());
+        assertEquals(BigDecimal.valueOf(4), transaction.getValue().getQuantityBefore());
+    }
+
+    @Test
+    void getByOrganization_MapsListingRowsWithShardStock() {
+        OffsetDateTime updatedAt = OffsetDateTime.now();
+        InventoryListingRow row = new InventoryListingRow(1L, 1L, 10L, 3L, "A", "abc", BigDecimal.ONE, new BigDecimal("2.50"),
+                updatedAt, updatedAt, BigDecimal.ONE, null, null, true, null, BigDecimal.ONE, updatedAt, null);
+        when(inventoryRepository.findListing(1L, null)).thenReturn(List.of(row));
+        when(stripedStockManager.shardTotals(List.of(1L))).thenReturn(Map.of(1L, new BigDecimal("4")));
+        when(inventoryMapper.map(updatedAt)).thenReturn("updated");
+
         List<InventoryResponseDto> result = inventoryService.getByOrganization(1L);
+
         assertEquals(1, result.size());
+        assertEquals(new BigDecimal("5"), result.get(0).quantity());
+        assertEquals(new BigDecimal("2.50"), result.get(0).unitPrice());
+        assertEquals("updated", result.get(0).updatedAt());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void getChangesSince_KnownVersion_OnlyChangedProducts() {
+        OffsetDateTime updatedAt = OffsetDateTime.now();
+        InventoryListingRow row = new InventoryListingRow(1L, 1L, 10L, 3L, "A", "abc", BigDecimal.ONE, new BigDecimal("2.50"),
+                updatedAt, updatedAt, BigDecimal.ONE, null, null, true, null, BigDecimal.ONE, updatedAt, null);
+        when(inventoryVersions.current(1L)).thenReturn("e-1-9");
+        when(inventoryVersions.revisionOf(1L, "e-1-7")).thenReturn(7L);
+        when(priceEngine.changedSince(1L, 7L)).thenReturn(Set.of(10L, 11L));
+        when(inventoryRepository.findListingByProductIds(1L, Set.of(10L, 11L))).thenReturn(List.of(row));
+        when(stripedStockManager.shardTotals(List.of(1L))).thenReturn(Map.of());
+
+        InventoryChangesResponseDto changes = inventoryService.getChangesSince(1L, "e-1-7");
+
+        assertEquals("e-1-9", changes.version());
+        assertFalse(changes.full());
+        assertEquals(List.of(10L), changes.products().stream().map(InventoryResponseDto::productId).toList());
+        // Lets clients place a product they did not list yet
+        assertEquals(3L, changes.products().get(0).categoryId());
+        // Deleted or deactivated since
+        assertEquals(List.of(11L), changes.removedProductIds());
+        verify(inventoryRepository, never()).findListing(any(), any());
+    }
+
+    @Test
+    void getChangesSince_NothingChanged_NoQuery() {
+        when(inventoryVersions.current(1L)).thenReturn("e-1-7");
+        when(inventoryVersions.revisionOf(1L, "e-1-7")).thenReturn(7L);
+        when(priceEngine.changedSince(1L, 7L)).thenReturn(Set.of());
+
+        InventoryChangesResponseDto changes = inventoryService.getChangesSince(1L, "e-1-7");
+
+        assertTrue(changes.products().isEmpty());
+        verifyNoInteractions(inventoryRepository);
+    }
+
+    @Test
+    void getChangesSince_ChangesNoLongerKnown_FullListing() {
+        when(inventoryVersions.current(1L)).thenReturn("e-1-9000");
+        when(inventoryVersions.revisionOf(1L, "e-1-7")).thenReturn(7L);
+        when(priceEngine.changedSince(1L, 7L)).thenReturn(null);
+        when(inventoryRepository.findListing(1L, null)).thenReturn(List.of());
+        when(stripedStockManager.shardTotals(List.of())).thenReturn(Map.of());
+
+        InventoryChangesResponseDto changes = inventoryService.getChangesSince(1L, "e-1-7");
+
+        assertTrue(changes.full());
+        assertEquals("e-1-9000", changes.version());
+        verify(inventoryRepository, never()).findListingByProductIds(any(), any());
     }
 
     @Test
@@ -156,8 +268,9 @@ class InventoryServiceTest {
         Inventory inv = new Inventory(); inv.setId(10L); inv.setOrganizationId(1L); inv.setProduct(product); inv.setProductId(5L); inv.setQuantity(new BigDecimal("10")); inv.setAdjustedPrice(new BigDecimal("2.00")); inv.setUpdatedAt(OffsetDateTime.now());
         when(productRepository.findById(5L)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByOrganizationIdAndProductId(1L, 5L)).thenReturn(Optional.of(inv));
-        when(inventoryRepository.save(any(Inventory.class))).thenAnswer(a -> a.getArgument(0));
-        when(inventoryMapper.toResponse(any())).thenAnswer(a -> { Inventory i = a.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), "Prod", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString());});
+        when(inventoryRepository.decrementStock(eq(10L), eq(new BigDecimal("3")), any(OffsetDateTime.class))).thenReturn(1);
+        when(inventoryRepository.findQuantityById(10L)).thenReturn(new BigDecimal("7"));
+        when(inventoryMapper.toResponse(any())).thenAnswer(a -> { Inventory i = a.getArgument(0); return new InventoryResponseDto(i.getId(), i.getOrganizationId(), i.getProductId(), null, "Prod", i.getQuantity(), i.getAdjustedPrice(), product.getDescription(), null, null, null, i.getUpdatedAt().toString());});
 
         RemoveStockRequestDto request = new RemoveStockRequestDto(5L, new BigDecimal("3"), "sale-1", "note");
         InventoryResponseDto dto = inventoryService.removeStock(request, userId, 1L);
@@ -178,75 +291,96 @@ class InventoryServiceTest {
         tx.setQuantityChange(new BigDecimal("-1")); tx.setQuantityBefore(BigDecimal.TEN); tx.setQuantityAfter(new BigDecimal("9"));
         tx.setPriceBefore(BigDecimal.ONE); tx.setPriceAfter(BigDecimal.ONE); tx.setReferenceId("ref"); tx.setNotes("n");
         tx.setCreatedBy(uid); tx.setCreatedAt(OffsetDateTime.now());
-        when(inventoryTransactionRepository.findByInventoryIdOrderByCreatedAtDesc(100L)).thenReturn(List.of(tx));
+        when(inventoryTransactionRepository.findHistoryPage(100L, null, null, null, null, null, Limit.of(51)))
+                .thenReturn(List.of(tx));
         User user = new User(); user.setId(uid); user.setName("Alice"); user.setEmail("a@b.c");
         when(userRepository.findAllById(anyList())).thenReturn(List.of(user));
 
-        List<InventoryTransactionResponseDto> result = inventoryService.getTransactionHistory(10L, 1L);
-        assertEquals(1, result.size());
-        assertEquals(uid.toString(), result.get(0).createdBy());
-        assertEquals("Alice", result.get(0).createdByName());
+        InventoryTransactionPageResponseDto result = inventoryService.getTransactionHistory(10L, 1L, null, null, null,
+                null, 50);
+        assertEquals(1, result.items().size());
+        assertEquals(uid.toString(), result.items().get(0).createdBy());
+        assertEquals("Alice", result.items().get(0).createdByName());
+        assertNull(result.nextCursor());
     }
 
     @Test
-    void getUserSalesStats_ComputesCountsAndRevenue() {
-        Long orgId = 1L;
-        UUID uid = UUID.randomUUID();
-        Long stationId = 7L;
-        // two transactions for same user/station, different inventories
-        InventoryTransaction t1 = new InventoryTransaction(); t1.setInventoryId(11L); t1.setTransactionType("SALE"); t1.setReferenceId("o1"); t1.setQuantityChange(new BigDecimal("-2")); t1.setCreatedBy(uid); t1.setBarStationId(stationId);
-        InventoryTransaction t2 = new InventoryTransaction(); t2.setInventoryId(12L); t2.setTransactionType("SALE"); t2.setReferenceId("o2"); t2.setQuantityChange(new BigDecimal("-1")); t2.setCreatedBy(uid); t2.setBarStationId(stationId);
-        when(inventoryTransactionRepository.findSaleTransactionsByOrganizationId(orgId)).thenReturn(List.of(t1, t2));
-
-        // inventories map to products with base prices
-        Inventory inv1 = new Inventory(); inv1.setId(11L); inv1.setProductId(101L);
-        Inventory inv2 = new Inventory(); inv2.setId(12L); inv2.setProductId(102L);
-        when(inventoryRepository.findById(11L)).thenReturn(Optional.of(inv1));
-        when(inventoryRepository.findById(12L)).thenReturn(Optional.of(inv2));
-        Product p1 = new Product(); p1.setId(101L); p1.setBasePrice(new BigDecimal("3.00"));
-        Product p2 = new Product(); p2.setId(102L); p2.setBasePrice(new BigDecimal("5.00"));
-        when(productRepository.findById(101L)).thenReturn(Optional.of(p1));
-        when(productRepository.findById(102L)).thenReturn(Optional.of(p2));
-
-        User user = new User(); user.setId(uid); user.setName("Bob"); user.setEmail("b@c.d");
-        when(userRepository.findAllById(anyList())).thenReturn(List.of(user));
-        BarStation station = new BarStation(); station.setId(stationId); station.setName("Main");
-        when(barStationRepository.findAllById(anyList())).thenReturn(List.of(station));
-
-        List<UserSalesStatsResponseDto> stats = inventoryService.getUserSalesStats(orgId);
-        assertEquals(1, stats.size());
-        UserSalesStatsResponseDto s = stats.get(0);
-        assertEquals(2L, s.salesCount());
-        // revenue = 2*3 + 1*5 = 11
-        assertEquals(new BigDecimal("11.00"), s.totalRevenue());
-        assertEquals("Bob", s.userName());
-    }
-
-    @Test
-    void getStationSalesStats_ComputesCountsAndRevenue() {
-        Long orgId = 1L;
-        Long stationId = 7L;
-        InventoryTransaction t1 = new InventoryTransaction(); t1.setInventoryId(11L); t1.setTransactionType("SALE"); t1.setReferenceId("o1"); t1.setQuantityChange(new BigDecimal("-2")); t1.setBarStationId(stationId);
-        InventoryTransaction t2 = new InventoryTransaction(); t2.setInventoryId(12L); t2.setTransactionType("SALE"); t2.setReferenceId("o2"); t2.setQuantityChange(new BigDecimal("-1")); t2.setBarStationId(stationId);
-        when(inventoryTransactionRepository.findSaleTransactionsByOrganizationId(orgId)).thenReturn(List.of(t1, t2));
-
-        Inventory inv1 = new Inventory(); inv1.setId(11L); inv1.setProductId(101L);
-        Inventory inv2 = new Inventory(); inv2.setId(12L); inv2.setProductId(102L);
-        when(inventoryRepository.findById(11L)).thenReturn(Optional.of(inv1));
-        when(inventoryRepository.findById(12L)).thenReturn(Optional.of(inv2));
-        Product p1 = new Product(); p1.setId(101L); p1.setBasePrice(new BigDecimal("3.00"));
-        Product p2 = new Product(); p2.setId(102L); p2.setBasePrice(new BigDecimal("5.00"));
-        when(productRepository.findById(101L)).thenReturn(Optional.of(p1));
-        when(productRepository.findById(102L)).thenReturn(Optional.of(p2));
-
-        BarStation station = new BarStation(); station.setId(stationId); station.setName("Main");
-        when(barStationRepository.findAllById(anyList())).thenReturn(List.of(station));
-
-        List<StationSalesStatsResponseDto> stats = inventoryService.getStationSalesStats(orgId);
-        assertEquals(1, stats.size());
-        StationSalesStatsResponseDto s = stats.get(0);
-        assertEquals(2L, s.salesCount());
-        assertEquals(new BigDecimal("11.00"), s.totalRevenue());
-        assertEquals("Main", s.barStationName());
+    void getTransactionHistory_FullPage_CursorContinuesAfterLastRow() {
+        Inventory inv = new Inventory(); inv.setId(100L);
+        when(inventoryRepository.findByOrganizationIdAndProductId(1L, 10L)).thenReturn(Optional.of(inv));
+        OffsetDateTime at = OffsetDateTime.parse("2025-06-01T20:00:00.123456Z");
+        List<InventoryTransaction> rows = new ArrayList<>();
+        for (long id = 3; id >= 1; id--) {
+            InventoryTransaction tx = new InventoryTransaction(); tx.setId(id); tx.setCreatedAt(at);
+            rows.add(tx);
+        }
+        when(inventoryTransactionRepository.findHistoryPage(100L, "SALE", null, null, null, null, Limit.of(3)))
+                .thenReturn(rows);
+
+        InventoryTransactionPageResponseDto first = inventoryService.getTransactionHistory(10L, 1L, "SALE", null,
+                null, null, 2);
+        assertEquals(2, first.items().size());
+
+        inventoryService.getTransactionHistory(10L, 1L, "SALE", null, null, first.nextCursor(), 2);
+        verify(inventoryTransactionRepository).findHistoryPage(100L, "SALE", null, null, at, 2L, Limit.of(3));
+    }
+
+    @Test
+    void getTransactionHistory_TableRunsOut_ContinuesInArchive() {
+        Inventory inv = new Inventory(); inv.setId(100L);
+        when(inventoryRepository.findByOrganizationIdAndProductId(1L, 10L)).thenReturn(Optional.of(inv));
+        InventoryTransaction hot = new InventoryTransaction(); hot.setId(9L);
+        hot.setCreatedAt(OffsetDateTime.parse("2025-12-01T20:00:00Z"));
+        when(inventoryTransactionRepository.findHistoryPage(100L, null, null, null, null, null, Limit.of(3)))
+                .thenReturn(List.of(hot));
+        OffsetDateTime archivedAt = OffsetDateTime.parse("2025-05-31T23:00:00Z");
+        List<LedgerRow> archived = new ArrayList<>();
+        for (long id = 3; id >= 2; id--) {
+            archived.add(new LedgerRow(id, archivedAt, "SALE", 100L, 10L, "Lager", BigDecimal.ONE.negate(),
+                    BigDecimal.TEN, new BigDecimal("9"), BigDecimal.ONE, BigDecimal.ONE, null, null, null, null));
+        }
+        when(ledgerArchive.findHistory(1L, 100L, null, null, null, null, null, 2)).thenReturn(archived);
+
+        InventoryTransactionPageResponseDto first = inventoryService.getTransactionHistory(10L, 1L, null, null,
+                null, null, 2);
+        assertEquals(List.of(9L, 3L), first.items().stream().map(InventoryTransactionResponseDto::id).toList());
+
+        // The next page starts in the archive, after its first row
+        when(inventoryTransactionRepository.findHistoryPage(100L, null, null, null, archivedAt, 3L, Limit.of(3)))
+                .thenReturn(List.of());
+        when(ledgerArchive.findHistory(1L, 100L, null, null, null, archivedAt, 3L, 3))
+                .thenReturn(List.of(archived.get(1)));
+        assertEquals(List.of(2L), inventoryService.getTransactionHistory(10L, 1L, null, null, null,
+                first.nextCursor(), 2).items().stream().map(InventoryTransactionResponseDto::id).toList());
+    }
+
+    @Test
+    void getTransactionHistory_LimitOrCursorInvalid_BadRequest() {
+        ResponseStatusException tooLarge = assertThrows(ResponseStatusException.class,
+                () -> inventoryService.getTransactionHistory(10L, 1L, null, null, null, null, 501));
+        assertEquals(HttpStatus.BAD_REQUEST, tooLarge.getStatusCode());
+
+        when(inventoryRepository.findByOrganizationIdAndProductId(1L, 10L)).thenReturn(Optional.of(new Inventory()));
+        ResponseStatusException badCursor = assertThrows(ResponseStatusException.class,
+                () -> inventoryService.getTransactionHistory(10L, 1L, null, null, null, "not a cursor", 50));
+        assertEquals(HttpStatus.BAD_REQUEST, badCursor.getStatusCode());
+    }
+
+    @Test
+    void getUserSalesStats_ReadFromRollup() {
+        UserSalesStatsResponseDto row = new UserSalesStatsResponseDto(UUID.randomUUID().toString(), "Bob", "b@c.d",
+                2L, new BigDecimal("11.00"), 7L, "Main");
+        OffsetDateTime from = OffsetDateTime.parse("2025-06-01T18:00:00Z");
+        when(salesRollupRepository.sumByUserAndStation(1L, from, null)).thenReturn(List.of(row));
+
+        assertEquals(List.of(row), inventoryService.getUserSalesStats(1L, from, null));
+    }
+
+    @Test
+    void getStationSalesStats_ReadFromRollup() {
+        StationSalesStatsResponseDto row = new StationSalesStatsResponseDto(7L, "Main", 2L, new BigDecimal("11.00"));
+        when(salesRollupRepository.sumByStation(1L, null, null)).thenReturn(List.of(row));
+
+        assertEquals(List.of(row), inventoryService.getStationSalesStats(1L, null, null));
     }
 }
@@ -0,0 +1,181 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.InventoryChangesResponseDto;
+import com.borsibaar.pricing.InventoryVersions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryStreamServiceTest {
+
+    @Mock private InventoryService inventoryService;
+    @Mock private InventoryVersions inventoryVersions;
+
+    private long now = 1_000_000L;
+    private final List<Runnable> pendingWrites = new ArrayList<>();
+    private boolean writeImmediately = true;
+    private InventoryStreamService streamService;
+
+    @BeforeEach
+    void setUp() {
+        Executor writers = task -> {
+            if (writeImmediately) {
+                task.run();
+            } else {
+                pendingWrites.add(task);
+            }
+        };
+        streamService = new InventoryStreamService(inventoryService, inventoryVersions, new ObjectMapper(), 2,
+                15_000, 60_000, writers, () -> now);
+    }
+
+    @Test
+    void subscribe_FirstEventResumesFromLastEventId() {
+        when(inventoryService.getChangesSince(1L, "v3")).thenReturn(changes("v5"));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        streamService.subscribe(1L, "v3", emitter);
+
+        assertEquals(1, emitter.events.size());
+        assertTrue(text(emitter.events.get(0)).contains("id:v5"));
+        assertTrue(text(emitter.events.get(0)).contains("event:" + InventoryStreamService.EVENT_NAME));
+    }
+
+    @Test
+    void publish_VersionMoved_OneSerializedEventForEverySubscriber() {
+        when(inventoryService.getChangesSince(eq(1L), any())).thenReturn(changes("v1"));
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        streamService.subscribe(1L, null, first);
+        streamService.subscribe(1L, null, second);
+
+        when(inventoryVersions.current(1L)).thenReturn("v1");
+        streamService.publish();
+        assertEquals(1, first.events.size());
+
+        when(inventoryVersions.current(1L)).thenReturn("v2");
+        when(inventoryService.getChangesSince(1L, "v1")).thenReturn(changes("v2"));
+        streamService.publish();
+
+        assertEquals(2, first.events.size());
+        assertSame(first.events.get(1), second.events.get(1));
+        verify(inventoryService, times(1)).getChangesSince(1L, "v1");
+    }
+
+    @Test
+    void subscribe_TickWhileReadingFirstEvent_ChangesNotMissed() throws InterruptedException {
+        Thread[] tick = new Thread[1];
+        when(inventoryService.getChangesSince(1L, null)).thenReturn(changes("v1")).thenAnswer(invocation -> {
+            // The second subscriber has read v1 when a sale moves the version and a tick runs
+            tick[0] = new Thread(streamService::publish);
+            tick[0].start();
+            tick[0].join(200);
+            return changes("v1");
+        });
+        when(inventoryService.getChangesSince(1L, "v1")).thenReturn(changes("v2"));
+        when(inventoryVersions.current(1L)).thenReturn("v2");
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        streamService.subscribe(1L, null, first);
+
+        streamService.subscribe(1L, null, second);
+        tick[0].join();
+
+        assertEquals(2, second.events.size());
+        assertTrue(text(second.events.get(0)).contains("id:v1"));
+        assertTrue(text(second.events.get(1)).contains("id:v2"));
+        assertSame(first.events.get(1), second.events.get(1));
+    }
+
+    @Test
+    void publish_QuietStream_Heartbeat() {
+        when(inventoryService.getChangesSince(1L, null)).thenReturn(changes("v1"));
+        when(inventoryVersions.current(1L)).thenReturn("v1");
+        RecordingEmitter emitter = new RecordingEmitter();
+        streamService.subscribe(1L, null, emitter);
+
+        now += 14_999;
+        streamService.publish();
+        assertEquals(1, emitter.events.size());
+        now += 1;
+        streamService.publish();
+        assertEquals(2, emitter.events.size());
+        assertTrue(text(emitter.events.get(1)).startsWith(":"));
+    }
+
+    @Test
+    void publish_SlowSubscriber_DisconnectedWithoutHoldingUpOthers() {
+        when(inventoryService.getChangesSince(1L, null)).thenReturn(changes("v1"));
+        when(inventoryService.getChangesSince(1L, "v1")).thenReturn(changes("v2"));
+        when(inventoryService.getChangesSince(1L, "v2")).thenReturn(changes("v3"));
+        when(inventoryService.getChangesSince(1L, "v3")).thenReturn(changes("v4"));
+        RecordingEmitter slow = new RecordingEmitter();
+        writeImmediately = false;
+        streamService.subscribe(1L, null, slow);
+        writeImmediately = true;
+        RecordingEmitter fast = new RecordingEmitter();
+        streamService.subscribe(1L, null, fast);
+
+        // The slow subscriber's writes never run, so its queue of two fills up
+        for (String version : List.of("v2", "v3", "v4")) {
+            when(inventoryVersions.current(1L)).thenReturn(version);
+            streamService.publish();
+        }
+
+        assertEquals(4, fast.events.size());
+        assertEquals(1, streamService.subscriberCount());
+    }
+
+    @Test
+    void publish_SendFails_SubscriberRemoved() {
+        when(inventoryService.getChangesSince(1L, null)).thenReturn(changes("v1"));
+        RecordingEmitter emitter = new RecordingEmitter();
+        streamService.subscribe(1L, null, emitter);
+        emitter.failing = true;
+
+        now += 15_000;
+        when(inventoryVersions.current(1L)).thenReturn("v1");
+        streamService.publish();
+
+        assertEquals(0, streamService.subscriberCount());
+    }
+
+    private static InventoryChangesResponseDto changes(String version) {
+        return new InventoryChangesResponseDto(version, false, List.of(), List.of());
+    }
+
+    private static String text(Set<DataWithMediaType> event) {
+        StringBuilder text = new StringBuilder();
+        event.forEach(part -> text.append(part.getData()));
+        return text.toString();
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Set<DataWithMediaType>> events = new CopyOnWriteArrayList<>();
+        private boolean failing;
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            events.add(items);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.borsibaar.service;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.LedgerExportRepository;
+import com.borsibaar.repository.LedgerRow;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The export runs the real query, so the SQL is checked against the schema.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ledgerexport;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.ledger-export.fetch-size=4"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(LedgerExportRepository.class)
+class LedgerExportServiceTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 6, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired private LedgerExportRepository ledgerExportRepository;
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    @TempDir private Path archiveDirectory;
+
+    private LedgerArchive ledgerArchive;
+    private LedgerExportService ledgerExportService;
+    private Inventory inventory;
+    private Long organizationId;
+
+    @BeforeEach
+    void setUp() {
+        ledgerArchive = new LedgerArchive(archiveDirectory.toString());
+        ledgerExportService = new LedgerExportService(ledgerExportRepository, objectMapper, ledgerArchive);
+        inventory = createInventory("Org", "Lager, \"cold\"");
+        organizationId = inventory.getProduct().getOrganizationId();
+        for (int i = 0; i < 10; i++) {
+            transaction(inventory, i % 5 == 0 ? "PURCHASE" : "SALE", START.plusMinutes(i));
+        }
+        Inventory other = createInventory("Other", "Cider");
+        transaction(other, "SALE", START);
+        inventoryTransactionRepository.flush();
+    }
+
+    @Test
+    void export_Ndjson_OneObjectPerLineOldestFirst() throws IOException {
+        String[] lines = export(null, null, null, LedgerExportService.Format.NDJSON).split("\n");
+
+        assertEquals(10, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("PURCHASE", first.get("transactionType").asText());
+        assertEquals("Lager, \"cold\"", first.get("productName").asText());
+        for (String line : lines) {
+            assertEquals(organizationId, inventoryRepository.findById(objectMapper.readTree(line)
+                    .get("inventoryId").asLong()).orElseThrow().getProduct().getOrganizationId());
+        }
+    }
+
+    @Test
+    void export_Csv_HeaderAndQuotedFields() {
+        String[] lines = export(null, null, null, LedgerExportService.Format.CSV).split("\n");
+
+        assertEquals(11, lines.length);
+        assertTrue(lines[0].startsWith("id,created_at,transaction_type,"));
+        assertTrue(lines[1].contains(",\"Lager, \"\"cold\"\"\","));
+    }
+
+    @Test
+    void export_TypeAndTimeRange() {
+        String ndjson = export("SALE", START.plusMinutes(2), START.plusMinutes(6),
+                LedgerExportService.Format.NDJSON);
+
+        // Minutes 2, 3 and 4; minute 5 is a purchase
+        assertEquals(3, ndjson.split("\n").length);
+        assertFalse(ndjson.contains("PURCHASE"));
+    }
+
+    @Test
+    void export_ArchivedMonth_MergedOldestFirstWithoutDuplicates() throws IOException {
+        // Archived, but left in the table by a deletion that did not commit
+        InventoryTransaction leftOver = transaction(inventory, "SALE", START.minusDays(1));
+        inventoryTransactionRepository.flush();
+        ledgerArchive.write(organizationId, YearMonth.of(2025, 5), List.of(
+                archivedRow(900_000L, START.minusDays(2), "PURCHASE"),
+                archivedRow(leftOver.getId(), START.minusDays(1), "SALE")));
+
+        List<Long> ids = Arrays.stream(export(null, null, null, LedgerExportService.Format.NDJSON).split("\n"))
+                .map(this::readId)
+                .toList();
+        assertEquals(12, ids.size());
+        assertEquals(List.of(900_000L, leftOver.getId()), ids.subList(0, 2));
+
+        assertEquals(9, export("SALE", null, null, LedgerExportService.Format.NDJSON).split("\n").length);
+        assertEquals(10, export(null, START, null, LedgerExportService.Format.NDJSON).split("\n").length);
+    }
+
+    @Test
+    void export_ClientGone_StopsWithError() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(UncheckedIOException.class, () -> ledgerExportService.export(organizationId, null, null, null,
+                LedgerExportService.Format.CSV, broken));
+    }
+
+    @Test
+    void format_Unknown_BadRequest() {
+        assertEquals(LedgerExportService.Format.CSV, LedgerExportService.Format.of("csv"));
+        assertThrows(ResponseStatusException.class, () -> LedgerExportService.Format.of("xml"));
+    }
+
+    private String export(String type, OffsetDateTime from, OffsetDateTime to, LedgerExportService.Format format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ledgerExportService.export(organizationId, type, from, to, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private long readId(String line) {
+        try {
+            return objectMapper.readTree(line).get("id").asLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private LedgerRow archivedRow(Long id, OffsetDateTime createdAt, String type) {
+        return new LedgerRow(id, createdAt, type, inventory.getId(), inventory.getProduct().getId(),
+                inventory.getProduct().getName(), BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, null, null, null, null);
+    }
+
+    private InventoryTransaction transaction(Inventory inventory, String type, OffsetDateTime createdAt) {
+        InventoryTransaction transaction = new InventoryTransaction();
+        transaction.setInventory(inventory);
+        transaction.setTransactionType(type);
+        transaction.setQuantityChange(BigDecimal.ONE);
+        transaction.setQuantityBefore(BigDecimal.TEN);
+        transaction.setQuantityAfter(BigDecimal.TEN);
+        transaction.setPriceBefore(BigDecimal.ONE);
+        transaction.setPriceAfter(BigDecimal.ONE);
+        transaction.setCreatedAt(createdAt);
+        return inventoryTransactionRepository.save(transaction);
+    }
+
+    private Inventory createInventory(String organizationName, String productName) {
+        Organization org = new Organization();
+        org.setName(organizationName);
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Drinks");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName(productName);
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, BigDecimal.TEN, BigDecimal.TEN));
+    }
+}
@@ -4,11 +4,17 @@ import com.borsibaar.dto.OrganizationRequestDto;
 import com.borsibaar.dto.OrganizationResponseDto;
 import com.borsibaar.entity.Organization;
 import com.borsibaar.mapper.OrganizationMapper;
+import com.borsibaar.pricing.ExponentialDecayPricingStrategy;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
 import com.borsibaar.repository.OrganizationRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
@@ -28,6 +34,13 @@ class OrganizationServiceTest {
     private OrganizationRepository organizationRepository;
     @Mock
     private OrganizationMapper organizationMapper;
+    @Mock
+    private PriceEngine priceEngine;
+    @Mock
+    private LazyPriceDecay lazyPriceDecay;
+    @Spy
+    private PricingStrategies pricingStrategies = new PricingStrategies(List.of(new LinearPricingStrategy(),
+            new ExponentialDecayPricingStrategy(new BigDecimal("0.10"))));
 
     @InjectMocks
     private OrganizationService organizationService;
@@ -46,6 +59,36 @@ class OrganizationServiceTest {
         verify(organizationRepository).save(entity);
     }
 
+    @Test
+    void update_UnknownPricingStrategy_BadRequestAndNothingSaved() {
+        when(organizationRepository.findById(3L)).thenReturn(Optional.of(new Organization()));
+        OrganizationRequestDto request = new OrganizationRequestDto("Org", BigDecimal.valueOf(0.5),
+                BigDecimal.valueOf(0.5), "surge");
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> organizationService.update(3L, request));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verify(organizationRepository, never()).save(any());
+    }
+
+    @Test
+    void update_ExponentialDecay_OnlyAcceptedWithLazyDecay() {
+        Organization organization = new Organization();
+        when(organizationRepository.findById(3L)).thenReturn(Optional.of(organization));
+        OrganizationRequestDto request = new OrganizationRequestDto("Org", BigDecimal.valueOf(0.5),
+                BigDecimal.valueOf(0.5), ExponentialDecayPricingStrategy.NAME);
+        when(lazyPriceDecay.isEnabled()).thenReturn(false, true);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> organizationService.update(3L, request));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verify(organizationRepository, never()).save(any());
+
+        when(organizationRepository.save(organization)).thenReturn(organization);
+        organizationService.update(3L, request);
+        verify(organizationRepository).save(organization);
+    }
+
     @Test
     void getById_NotFound_Throws() {
         when(organizationRepository.findById(99L)).thenReturn(Optional.empty());
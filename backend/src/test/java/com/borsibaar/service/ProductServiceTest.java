@@ -7,6 +7,7 @@ import com.borsibaar.entity.Inventory;
 import com.borsibaar.entity.InventoryTransaction;
 import com.borsibaar.entity.Product;
 import com.borsibaar.mapper.ProductMapper;
+import com.borsibaar.pricing.PriceEngine;
 import com.borsibaar.repository.CategoryRepository;
 import com.borsibaar.repository.InventoryRepository;
 import com.borsibaar.repository.InventoryTransactionRepository;
@@ -36,6 +37,7 @@ class ProductServiceTest {
     @Mock private UserRepository userRepository;
     @Mock private InventoryRepository inventoryRepository;
     @Mock private InventoryTransactionRepository inventoryTransactionRepository;
+    @Mock private PriceEngine priceEngine;
 
     @InjectMocks private ProductService productService;
 
@@ -0,0 +1,250 @@
+package com.borsibaar.service;
+
+import com.borsibaar.benchmark.StatementCounter;
+import com.borsibaar.dto.SaleItemRequestDto;
+import com.borsibaar.dto.SaleRequestDto;
+import com.borsibaar.dto.SaleResponseDto;
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.jobs.PriceCorrectionJob;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryStockShardRepository;
+import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StockContentionMetrics;
+import com.borsibaar.stock.StripedStockManager;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:groupcommit;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.sales.group-commit.enabled=true",
+        "app.sales.group-commit.max-wait-ms=200"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ SaleGroupCommitter.class, SalesService.class, PriceEngine.class, LazyPriceDecay.class,
+        PricingStrategies.class, LinearPricingStrategy.class, InventoryBatchRepository.class, SaleIdGenerator.class,
+        SaleSubmissionRepository.class, StripedStockManager.class, InventoryStockShardRepository.class,
+        StockContentionMetrics.class, SalesRateTracker.class, PriceCorrectionJob.class, SalesRollupRepository.class,
+        SaleGroupCommitterTest.Config.class })
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class SaleGroupCommitterTest {
+
+    private static final int SALES = 10;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        static StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+    }
+
+    @Autowired private SaleGroupCommitter saleGroupCommitter;
+    @Autowired private StatementCounter statementCounter;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private SalesRateTracker salesRateTracker;
+    @MockitoSpyBean private PriceCorrectionJob priceCorrectionJob;
+    @MockitoSpyBean private SaleSubmissionRepository saleSubmissionRepository;
+
+    @Test
+    void submit_ConcurrentSales_CommittedTogetherAndBadBasketFailsAlone() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Inventory inventory = tx.execute(status -> createInventory(BigDecimal.valueOf(SALES)));
+        Long productId = inventory.getProduct().getId();
+        Long organizationId = inventory.getProduct().getOrganizationId();
+
+        List<SaleRequestDto> requests = new ArrayList<>();
+        for (int i = 0; i < SALES; i++) {
+            requests.add(new SaleRequestDto(List.of(new SaleItemRequestDto(productId, BigDecimal.ONE)), null, null));
+        }
+        // More than is left at any point
+        requests.add(SALES / 2, new SaleRequestDto(
+                List.of(new SaleItemRequestDto(productId, BigDecimal.valueOf(100))), null, null));
+
+        statementCounter.reset();
+        ExecutorService pool = Executors.newFixedThreadPool(requests.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SaleResponseDto>> results = new ArrayList<>();
+        for (SaleRequestDto request : requests) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return saleGroupCommitter.submit(request, UUID.randomUUID(), organizationId, null);
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        int rejected = 0;
+        for (Future<SaleResponseDto> result : results) {
+            try {
+                assertNotNull(result.get(30, TimeUnit.SECONDS).saleId());
+                succeeded++;
+            } catch (ExecutionException e) {
+                ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, e.getCause());
+                assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+                rejected++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(SALES, succeeded);
+        assertEquals(1, rejected);
+        assertEquals(0, BigDecimal.ZERO.compareTo(tx.execute(status -> inventoryRepository.findQuantityById(inventory.getId()))));
+        assertEquals(SALES, inventoryTransactionRepository.findAll().stream()
+                .filter(transaction -> transaction.getInventory().getId().equals(inventory.getId()))
+                .count());
+        assertNotNull(inventoryRepository.findById(inventory.getId()).orElseThrow().getLastSaleAt());
+        assertNotNull(organizationRepository.findById(organizationId).orElseThrow().getLastSaleAt());
+        assertTrue(statementCounter.getCommits() < SALES,
+                "Expected sales to share commits, got " + statementCounter.getCommits() + " commits");
+    }
+
+    @Test
+    void submit_SaleFailsAfterPricing_LeavesNoTraceForTheNextSale() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Inventory inventory = tx.execute(status -> createInventory(BigDecimal.TEN));
+        Long productId = inventory.getProduct().getId();
+        Long organizationId = inventory.getProduct().getOrganizationId();
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(productId, BigDecimal.ONE)),
+                null, null);
+        // Fails once the basket was applied to the price book
+        doThrow(new IllegalStateException("Timer wheel full")).doCallRealMethod()
+                .when(priceCorrectionJob).recordSale(eq(organizationId), anyCollection());
+
+        assertThrows(IllegalStateException.class,
+                () -> saleGroupCommitter.submit(request, UUID.randomUUID(), organizationId, null));
+        SaleResponseDto next = saleGroupCommitter.submit(request, UUID.randomUUID(), organizationId, null);
+
+        assertEquals(0, BigDecimal.TEN.compareTo(next.items().get(0).unitPrice()));
+        assertEquals(0, new BigDecimal("9").compareTo(
+                tx.execute(status -> inventoryRepository.findQuantityById(inventory.getId()))));
+        assertEquals(0, BigDecimal.ONE.compareTo(
+                salesRateTracker.velocity(organizationId, productId, 60_000).soldInWindow()));
+    }
+
+    @Test
+    void submit_CommitFailsWithUnknownOutcome_KeyedSaleGetsItsResponseAndOthersAreNotRetried() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Inventory inventory = tx.execute(status -> createInventory(BigDecimal.TEN));
+        Long productId = inventory.getProduct().getId();
+        Long organizationId = inventory.getProduct().getOrganizationId();
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(productId, BigDecimal.ONE)),
+                null, null);
+        // Stands in for sale_submissions, whose ON CONFLICT clause H2 does not support
+        Map<String, String> submissions = new ConcurrentHashMap<>();
+        doAnswer(invocation -> submissions.putIfAbsent(invocation.getArgument(1), "") == null)
+                .when(saleSubmissionRepository).claim(eq(organizationId), anyString(), anyString(), any());
+        doAnswer(invocation -> submissions.put(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(saleSubmissionRepository).saveResponse(eq(organizationId), anyString(), anyString());
+        doAnswer(invocation -> Optional.ofNullable(submissions.get(invocation.getArgument(1)))
+                .filter(response -> !response.isEmpty()))
+                .when(saleSubmissionRepository).findResponse(eq(organizationId), anyString());
+        // The group is written, but the commit reports a failure
+        Answer<Object> failingCommit = invocation -> {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    throw new IllegalStateException("Connection reset");
+                }
+            });
+            return invocation.callRealMethod();
+        };
+        doAnswer(failingCommit).doAnswer(failingCommit).doCallRealMethod()
+                .when(priceCorrectionJob).recordSale(eq(organizationId), anyCollection());
+
+        SaleResponseDto keyed = saleGroupCommitter.submit(request, UUID.randomUUID(), organizationId, "key-1");
+        assertThrows(IllegalStateException.class,
+                () -> saleGroupCommitter.submit(request, UUID.randomUUID(), organizationId, null));
+
+        assertNotNull(keyed.saleId());
+        // Each sale was charged once
+        assertEquals(0, new BigDecimal("8").compareTo(
+                tx.execute(status -> inventoryRepository.findQuantityById(inventory.getId()))));
+        assertEquals(2, inventoryTransactionRepository.findAll().stream()
+                .filter(transaction -> transaction.getInventory().getId().equals(inventory.getId()))
+                .count());
+    }
+
+    private Inventory createInventory(BigDecimal quantity) {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Beer");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName("Lager");
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, quantity, BigDecimal.TEN));
+    }
+}
@@ -0,0 +1,75 @@
+package com.borsibaar.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaleIdGeneratorTest {
+
+    @Test
+    void nextId_SameMillisecond_IncreasesWithoutCollisions() {
+        SaleIdGenerator generator = new SaleIdGenerator(3, () -> SaleIdGenerator.EPOCH + 1000);
+
+        long previous = 0;
+        Set<Long> ids = new HashSet<>();
+        // More ids than fit into one millisecond
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertTrue(ids.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void nextId_ClockStepsBack_StaysMonotonic() {
+        AtomicLong now = new AtomicLong(SaleIdGenerator.EPOCH + 5000);
+        SaleIdGenerator generator = new SaleIdGenerator(1, now::get);
+
+        long before = generator.nextId();
+        now.set(SaleIdGenerator.EPOCH + 4000);
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+    }
+
+    @Test
+    void nextId_DifferentNodes_NeverCollide() {
+        SaleIdGenerator first = new SaleIdGenerator(1, () -> SaleIdGenerator.EPOCH + 1000);
+        SaleIdGenerator second = new SaleIdGenerator(2, () -> SaleIdGenerator.EPOCH + 1000);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ids.add(first.nextId()));
+            assertTrue(ids.add(second.nextId()));
+        }
+    }
+
+    @Test
+    void nextSaleId_ConcurrentCallers_AllUnique() {
+        SaleIdGenerator generator = new SaleIdGenerator(0);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        IntStream.range(0, 50_000).parallel().forEach(i -> ids.add(generator.nextSaleId()));
+
+        assertEquals(50_000, ids.size());
+    }
+
+    @Test
+    void constructor_NodeIdOutOfRange_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new SaleIdGenerator(1024));
+    }
+
+    @Test
+    void constructor_NodeIdUnsetInClusterMode_Throws() {
+        assertThrows(IllegalStateException.class, () -> new SaleIdGenerator(-1, true));
+        assertTrue(new SaleIdGenerator(-1, false).nextId() > 0);
+        assertTrue(new SaleIdGenerator(5, true).nextId() > 0);
+    }
+}
@@ -0,0 +1,113 @@
+package com.borsibaar.service;
+
+import com.borsibaar.dto.SaleItemRequestDto;
+import com.borsibaar.dto.SaleRequestDto;
+import com.borsibaar.dto.SaleResponseDto;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.stock.StockContentionMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SaleSubmissionServiceTest {
+
+    @Mock private SalesService salesService;
+    @Mock private SaleSubmissionRepository saleSubmissionRepository;
+    @Mock private SaleGroupCommitter saleGroupCommitter;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final UUID userId = UUID.randomUUID();
+    private final SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), null, null);
+    private final SaleResponseDto response = new SaleResponseDto("SALE-1", List.of(), BigDecimal.ONE, null, OffsetDateTime.now());
+
+    private SaleSubmissionService saleSubmissionService;
+
+    @BeforeEach
+    void setUp() {
+        SaleSubmissionCache cache = new SaleSubmissionCache(2, Duration.ofMinutes(10), now::get);
+        saleSubmissionService = new SaleSubmissionService(salesService, cache, saleSubmissionRepository,
+                new StockContentionMetrics(), saleGroupCommitter);
+    }
+
+    @Test
+    void submit_Retry_AnsweredFromCache() {
+        when(salesService.processSale(request, userId, 1L, "key-1")).thenReturn(response);
+
+        SaleResponseDto first = saleSubmissionService.submit(request, userId, 1L, "key-1");
+        SaleResponseDto retry = saleSubmissionService.submit(request, userId, 1L, "key-1");
+
+        assertSame(first, retry);
+        verify(salesService, times(1)).processSale(request, userId, 1L, "key-1");
+    }
+
+    @Test
+    void submit_SameKeyOtherOrganization_ProcessedSeparately() {
+        when(salesService.processSale(eq(request), eq(userId), anyLong(), eq("key-1"))).thenReturn(response);
+
+        saleSubmissionService.submit(request, userId, 1L, "key-1");
+        saleSubmissionService.submit(request, userId, 2L, "key-1");
+
+        verify(salesService).processSale(request, userId, 2L, "key-1");
+    }
+
+    @Test
+    void submit_CacheEntryExpiredOrEvicted_FallsBackToSalesService() {
+        when(salesService.processSale(eq(request), eq(userId), eq(1L), anyString())).thenReturn(response);
+
+        saleSubmissionService.submit(request, userId, 1L, "key-1");
+        now.addAndGet(Duration.ofMinutes(11).toMillis());
+        saleSubmissionService.submit(request, userId, 1L, "key-1");
+        // Cache holds two entries, so key-1 is pushed out by key-2 and key-3
+        saleSubmissionService.submit(request, userId, 1L, "key-2");
+        saleSubmissionService.submit(request, userId, 1L, "key-3");
+        saleSubmissionService.submit(request, userId, 1L, "key-1");
+
+        verify(salesService, times(3)).processSale(request, userId, 1L, "key-1");
+    }
+
+    @Test
+    void submit_WithoutKey_ProcessesEverySubmission() {
+        when(salesService.processSale(request, userId, 1L)).thenReturn(response);
+
+        saleSubmissionService.submit(request, userId, 1L, null);
+        saleSubmissionService.submit(request, userId, 1L, " ");
+
+        verify(salesService, times(2)).processSale(request, userId, 1L);
+    }
+
+    @Test
+    void submit_GroupCommitEnabled_QueuesSaleForCommitter() {
+        when(saleGroupCommitter.isEnabled()).thenReturn(true);
+        when(saleGroupCommitter.submit(request, userId, 1L, "key-1")).thenReturn(response);
+
+        assertSame(response, saleSubmissionService.submit(request, userId, 1L, "key-1"));
+        // The committed response is cached like any other
+        assertSame(response, saleSubmissionService.submit(request, userId, 1L, "key-1"));
+
+        verify(saleGroupCommitter, times(1)).submit(request, userId, 1L, "key-1");
+        verifyNoInteractions(salesService);
+    }
+
+    @Test
+    void submit_KeyTooLong_Throws() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> saleSubmissionService.submit(request, userId, 1L, "k".repeat(101)));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verifyNoInteractions(salesService);
+    }
+}
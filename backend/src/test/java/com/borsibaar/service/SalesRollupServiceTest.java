@@ -0,0 +1,101 @@
+package com.borsibaar.service;
+
+import com.borsibaar.archive.LedgerArchive;
+import com.borsibaar.dto.SalesRollupRebuildResponseDto;
+import com.borsibaar.repository.SalesRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SalesRollupServiceTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.parse("2025-06-01T20:00:00Z");
+
+    @Mock private SalesRollupRepository salesRollupRepository;
+    @Mock private LedgerArchive ledgerArchive;
+
+    private SalesRollupService salesRollupService;
+
+    @BeforeEach
+    void setUp() {
+        salesRollupService = new SalesRollupService(salesRollupRepository, ledgerArchive,
+                TransactionOperations.withoutTransaction(), 24, 3);
+    }
+
+    @Test
+    void rebuild_WholeLedger_WholeHoursInChunks() {
+        when(salesRollupRepository.findSaleSpan(1L)).thenReturn(new SalesRollupRepository.SaleSpan(
+                START.plusMinutes(15), START.plusHours(50).plusMinutes(5)));
+        when(salesRollupRepository.rebuild(eq(1L), any(), any())).thenReturn(10);
+
+        SalesRollupRebuildResponseDto result = salesRollupService.rebuild(1L, null, null);
+
+        assertEquals(START, result.from());
+        assertEquals(START.plusHours(51), result.to());
+        assertEquals(3, result.chunks());
+        assertEquals(30, result.rows());
+        verify(salesRollupRepository).rebuild(1L, START, START.plusHours(24));
+        verify(salesRollupRepository).rebuild(1L, START.plusHours(24), START.plusHours(48));
+        verify(salesRollupRepository).rebuild(1L, START.plusHours(48), START.plusHours(51));
+    }
+
+    @Test
+    void rebuild_GivenRange_RoundedOutToHours() {
+        when(salesRollupRepository.rebuild(1L, START, START.plusHours(2))).thenReturn(4);
+
+        SalesRollupRebuildResponseDto result = salesRollupService.rebuild(1L, START.plusMinutes(30),
+                START.plusHours(1).plusMinutes(1));
+
+        assertEquals(1, result.chunks());
+        assertEquals(4, result.rows());
+        verify(salesRollupRepository, never()).findSaleSpan(any());
+    }
+
+    @Test
+    void rebuild_RangeReachingIntoArchive_StartsAfterArchivedMonths() {
+        when(ledgerArchive.archivedUntil(1L)).thenReturn(START.plusHours(4));
+        when(salesRollupRepository.rebuild(1L, START.plusHours(4), START.plusHours(6))).thenReturn(2);
+
+        SalesRollupRebuildResponseDto result = salesRollupService.rebuild(1L, START, START.plusHours(6));
+
+        assertEquals(START.plusHours(4), result.from());
+        assertEquals(1, result.chunks());
+        verify(salesRollupRepository, never()).rebuild(1L, START, START.plusHours(4));
+    }
+
+    @Test
+    void rebuild_RangeWithinArchive_NothingToDo() {
+        when(ledgerArchive.archivedUntil(null)).thenReturn(START.plusHours(10));
+
+        SalesRollupRebuildResponseDto result = salesRollupService.rebuild(null, START, START.plusHours(6));
+
+        assertEquals(0, result.chunks());
+        verify(salesRollupRepository, never()).rebuild(any(), any(), any());
+    }
+
+    @Test
+    void rebuild_NoSales_NothingToDo() {
+        SalesRollupRebuildResponseDto result = salesRollupService.rebuild(null, null, null);
+
+        assertEquals(0, result.chunks());
+        verify(salesRollupRepository, never()).rebuild(any(), any(), any());
+    }
+
+    @Test
+    void rebuild_ChunkFails_Rethrown() {
+        when(salesRollupRepository.rebuild(eq(1L), any(), any())).thenThrow(new IllegalStateException("Deadlock"));
+
+        assertThrows(IllegalStateException.class, () -> salesRollupService.rebuild(1L, START, START.plusHours(1)));
+    }
+}
@@ -3,15 +3,30 @@ package com.borsibaar.service;
 import com.borsibaar.dto.SaleItemRequestDto;
 import com.borsibaar.dto.SaleRequestDto;
 import com.borsibaar.dto.SaleResponseDto;
+import com.borsibaar.entity.Category;
 import com.borsibaar.entity.Inventory;
 import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
 import com.borsibaar.entity.Product;
+import com.borsibaar.jobs.PriceCorrectionJob;
+import com.borsibaar.pricing.LazyPriceDecay;
+import com.borsibaar.pricing.LinearPricingStrategy;
+import com.borsibaar.pricing.PriceEngine;
+import com.borsibaar.pricing.PricingStrategies;
+import com.borsibaar.repository.InventoryBatchRepository;
 import com.borsibaar.repository.InventoryRepository;
 import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.OrganizationRepository;
 import com.borsibaar.repository.ProductRepository;
+import com.borsibaar.repository.SaleSubmissionRepository;
+import com.borsibaar.repository.SalesRollupRepository;
+import com.borsibaar.stock.SalesRateTracker;
+import com.borsibaar.stock.StockContentionMetrics;
+import com.borsibaar.stock.StripedStockManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
@@ -20,7 +35,9 @@ import org.springframework.web.server.ResponseStatusException;
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,21 +47,40 @@ import static org.mockito.Mockito.*;
 class SalesServiceTest {
 
     @Mock private InventoryRepository inventoryRepository;
+    @Mock private InventoryBatchRepository inventoryBatchRepository;
     @Mock private InventoryTransactionRepository inventoryTransactionRepository;
     @Mock private ProductRepository productRepository;
+    @Mock private OrganizationRepository organizationRepository;
+    @Mock private SaleSubmissionRepository saleSubmissionRepository;
+    @Mock private StripedStockManager stripedStockManager;
+    @Mock private PriceCorrectionJob priceCorrectionJob;
+    @Mock private SalesRollupRepository salesRollupRepository;
 
-    @InjectMocks private SalesService salesService;
+    private SalesService salesService;
 
     private final UUID userId = UUID.randomUUID();
 
+    @BeforeEach
+    void setUp() {
+        PricingStrategies pricingStrategies = new PricingStrategies(List.of(new LinearPricingStrategy()));
+        PriceEngine priceEngine = new PriceEngine(productRepository, organizationRepository, inventoryBatchRepository,
+                stripedStockManager, new LazyPriceDecay(false, pricingStrategies), pricingStrategies,
+                new SalesRateTracker());
+        salesService = new SalesService(inventoryRepository, inventoryBatchRepository, inventoryTransactionRepository, priceEngine,
+                new SaleIdGenerator(0), saleSubmissionRepository, new ObjectMapper().findAndRegisterModules(),
+                stripedStockManager, new StockContentionMetrics(), priceCorrectionJob, salesRollupRepository);
+        Organization org = new Organization(); org.setId(1L); org.setPriceIncreaseStep(BigDecimal.ONE); org.setPriceDecreaseStep(BigDecimal.ONE);
+        lenient().when(organizationRepository.findById(1L)).thenReturn(Optional.of(org));
+    }
+
     @Test
     void processSale_SingleItem_SuccessPriceIncreaseCapped() {
         Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.valueOf(10)); product.setMaxPrice(BigDecimal.valueOf(10)); product.setName("Beer");
         Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.valueOf(20)); inventory.setAdjustedPrice(BigDecimal.valueOf(10)); inventory.setUpdatedAt(OffsetDateTime.now());
         product.setInventory(inventory);
-        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
-        when(inventoryRepository.save(inventory)).thenReturn(inventory);
-        when(inventoryTransactionRepository.save(any(InventoryTransaction.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
+        when(inventoryBatchRepository.decrementStockAndSetPrices(anyList(), any(OffsetDateTime.class))).thenReturn(new int[] { 1 });
+        when(inventoryRepository.getReferenceById(9L)).thenReturn(inventory);
 
         SaleItemRequestDto item = new SaleItemRequestDto(5L, BigDecimal.valueOf(2));
         SaleRequestDto request = new SaleRequestDto(List.of(item), "note", 1L);
@@ -52,8 +88,85 @@ class SalesServiceTest {
         assertEquals(1, response.items().size());
         assertEquals(BigDecimal.valueOf(20), response.totalAmount());
         // Price capped at max (10)
-        assertEquals(BigDecimal.valueOf(10), inventory.getAdjustedPrice());
-        verify(inventoryTransactionRepository).save(any(InventoryTransaction.class));
+        verify(inventoryBatchRepository).decrementStockAndSetPrices(argThat(quotes -> quotes.size() == 1
+                && quotes.get(0).inventoryId().equals(9L)
+                && quotes.get(0).priceAfter().equals(BigDecimal.valueOf(10))), any(OffsetDateTime.class));
+        verify(inventoryTransactionRepository).saveAll(argThat((List<InventoryTransaction> transactions) -> transactions.size() == 1
+                && transactions.get(0).getQuantityBefore().equals(BigDecimal.valueOf(20))
+                && transactions.get(0).getQuantityAfter().equals(BigDecimal.valueOf(18))));
+        verify(salesRollupRepository).addSale(eq(1L), eq(1L), eq(userId),
+                argThat(quotes -> quotes.size() == 1 && quotes.get(0).productId().equals(5L)),
+                any(OffsetDateTime.class));
+    }
+
+    @Test
+    void processSale_RowsChangedByAnotherNode_ChargesAndLedgersTheStoredPriceAndStock() {
+        Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.valueOf(10)); product.setName("Beer");
+        Category category = new Category(); category.setDynamicPricing(true); product.setCategory(category);
+        Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.valueOf(20)); inventory.setAdjustedPrice(BigDecimal.valueOf(10));
+        product.setInventory(inventory);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
+        // Sold twice on another node since this node loaded its book
+        when(inventoryBatchRepository.lockForSale(Set.of(9L))).thenReturn(Map.of(9L, new InventoryBatchRepository.SaleRow(
+                BigDecimal.valueOf(18), BigDecimal.ZERO, BigDecimal.valueOf(12), OffsetDateTime.now(), OffsetDateTime.now())));
+        when(inventoryBatchRepository.decrementStockAndSetPrices(anyList(), any(OffsetDateTime.class))).thenReturn(new int[] { 1 });
+        when(inventoryRepository.getReferenceById(9L)).thenReturn(inventory);
+
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), null, null);
+        SaleResponseDto response = salesService.processSale(request, userId, 1L);
+
+        assertEquals(BigDecimal.valueOf(12), response.totalAmount());
+        verify(inventoryBatchRepository).decrementStockAndSetPrices(argThat(quotes ->
+                quotes.get(0).priceAfter().compareTo(BigDecimal.valueOf(13)) == 0), any(OffsetDateTime.class));
+        verify(inventoryTransactionRepository).saveAll(argThat((List<InventoryTransaction> transactions) ->
+                transactions.get(0).getQuantityBefore().equals(BigDecimal.valueOf(18))
+                        && transactions.get(0).getQuantityAfter().equals(BigDecimal.valueOf(17))
+                        && transactions.get(0).getPriceBefore().equals(BigDecimal.valueOf(12))));
+    }
+
+    @Test
+    void processSale_WithIdempotencyKey_StoresResponseForRetries() {
+        Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
+        Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.TEN); inventory.setAdjustedPrice(BigDecimal.ONE);
+        product.setInventory(inventory);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
+        when(saleSubmissionRepository.claim(eq(1L), eq("key-1"), startsWith("SALE-"), any(OffsetDateTime.class))).thenReturn(true);
+        when(inventoryBatchRepository.decrementStockAndSetPrices(anyList(), any(OffsetDateTime.class))).thenReturn(new int[] { 1 });
+        when(inventoryRepository.getReferenceById(9L)).thenReturn(inventory);
+
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), null, null);
+        SaleResponseDto response = salesService.processSale(request, userId, 1L, "key-1");
+
+        verify(saleSubmissionRepository).saveResponse(eq(1L), eq("key-1"), contains("\"saleId\":\"" + response.saleId() + "\""));
+    }
+
+    @Test
+    void processSale_IdempotencyKeyAlreadyUsed_ReturnsOriginalSale() {
+        when(saleSubmissionRepository.claim(eq(1L), eq("key-1"), anyString(), any(OffsetDateTime.class))).thenReturn(false);
+        when(saleSubmissionRepository.findResponse(1L, "key-1")).thenReturn(Optional.of(
+                "{\"saleId\":\"SALE-42\",\"items\":[],\"totalAmount\":3.00,\"notes\":null,\"timestamp\":\"2025-05-01T20:00:00Z\"}"));
+
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), null, null);
+        SaleResponseDto response = salesService.processSale(request, userId, 1L, "key-1");
+
+        assertEquals("SALE-42", response.saleId());
+        assertEquals(new BigDecimal("3.00"), response.totalAmount());
+        verifyNoInteractions(productRepository, inventoryBatchRepository, inventoryTransactionRepository);
+    }
+
+    @Test
+    void processSale_GuardedDecrementRejected_ThrowsWithoutLedgerRow() {
+        Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
+        Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.TEN); inventory.setAdjustedPrice(BigDecimal.ONE);
+        product.setInventory(inventory);
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
+        // Another node sold the stock in the meantime: the database rejects the decrement
+        when(inventoryBatchRepository.decrementStockAndSetPrices(anyList(), any(OffsetDateTime.class))).thenReturn(new int[] { 0 });
+
+        SaleRequestDto request = new SaleRequestDto(List.of(new SaleItemRequestDto(5L, BigDecimal.ONE)), null, null);
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> salesService.processSale(request, userId, 1L));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verifyNoInteractions(inventoryTransactionRepository);
     }
 
     @Test
@@ -61,11 +174,12 @@ class SalesServiceTest {
         Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
         Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.ONE); inventory.setAdjustedPrice(BigDecimal.ONE);
         product.setInventory(inventory);
-        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
         SaleItemRequestDto item = new SaleItemRequestDto(5L, BigDecimal.valueOf(5));
         SaleRequestDto request = new SaleRequestDto(List.of(item), null, null);
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> salesService.processSale(request, userId, 1L));
         assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verifyNoInteractions(inventoryTransactionRepository);
     }
 
     @Test
@@ -73,7 +187,7 @@ class SalesServiceTest {
         Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(false); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
         Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(1L); inventory.setQuantity(BigDecimal.ONE); inventory.setAdjustedPrice(BigDecimal.ONE);
         product.setInventory(inventory);
-        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
         SaleItemRequestDto item = new SaleItemRequestDto(5L, BigDecimal.ONE);
         SaleRequestDto request = new SaleRequestDto(List.of(item), null, null);
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> salesService.processSale(request, userId, 1L));
@@ -85,7 +199,8 @@ class SalesServiceTest {
         Product product = new Product(); product.setId(5L); product.setOrganizationId(2L); product.setActive(true); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
         Inventory inventory = new Inventory(); inventory.setId(9L); inventory.setProduct(product); inventory.setProductId(5L); inventory.setOrganizationId(2L); inventory.setQuantity(BigDecimal.ONE); inventory.setAdjustedPrice(BigDecimal.ONE);
         product.setInventory(inventory);
-        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of());
+        when(productRepository.findAllForSaleByIdIn(Set.of(5L))).thenReturn(List.of(product));
         SaleItemRequestDto item = new SaleItemRequestDto(5L, BigDecimal.ONE);
         SaleRequestDto request = new SaleRequestDto(List.of(item), null, null);
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> salesService.processSale(request, userId, 1L));
@@ -95,7 +210,7 @@ class SalesServiceTest {
     @Test
     void processSale_ProductInventoryMissing_Throws() {
         Product product = new Product(); product.setId(5L); product.setOrganizationId(1L); product.setActive(true); product.setBasePrice(BigDecimal.ONE); product.setName("Beer");
-        when(productRepository.findById(5L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllForPricingByOrganizationId(1L)).thenReturn(List.of(product));
         SaleItemRequestDto item = new SaleItemRequestDto(5L, BigDecimal.ONE);
         SaleRequestDto request = new SaleRequestDto(List.of(item), null, null);
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> salesService.processSale(request, userId, 1L));
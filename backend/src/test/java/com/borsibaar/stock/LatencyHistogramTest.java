@@ -0,0 +1,29 @@
+package com.borsibaar.stock;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentileMillis_ReportsTailWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(2_000_000); // 2 ms
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(80_000_000); // 80 ms
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(2.0, histogram.percentileMillis(50), 2.0 * 0.2);
+        assertEquals(2.0, histogram.percentileMillis(99), 2.0 * 0.2);
+        assertEquals(80.0, histogram.percentileMillis(99.9), 80.0 * 0.2);
+    }
+
+    @Test
+    void percentileMillis_Empty_ReturnsZero() {
+        assertEquals(0, new LatencyHistogram().percentileMillis(99));
+    }
+}
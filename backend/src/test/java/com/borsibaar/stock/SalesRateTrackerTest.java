@@ -0,0 +1,78 @@
+package com.borsibaar.stock;
+
+import com.borsibaar.pricing.SaleQuote;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesRateTrackerTest {
+
+    private long now = 1_000_000_000L;
+    private final SalesRateTracker tracker = new SalesRateTracker(() -> now);
+
+    @Test
+    void velocity_CountsQuantityWithinWindowOnly() {
+        tracker.recordSale(1L, List.of(quote(5L, "2"), quote(5L, "1.5"), quote(6L, "1")), now);
+        now += 120_000;
+        tracker.recordSale(1L, List.of(quote(5L, "1")), now);
+
+        assertEquals(new BigDecimal("4.5"), tracker.velocity(1L, 5L, 300_000).soldInWindow());
+        assertEquals(new BigDecimal("1"), tracker.velocity(1L, 5L, 60_000).soldInWindow());
+        assertEquals(now, tracker.velocity(1L, 5L, 60_000).lastSaleAt());
+
+        // Older than the rings keep
+        now += SalesRateTracker.MAX_WINDOW_MILLIS;
+        assertEquals(new BigDecimal("0"), tracker.velocity(1L, 5L, SalesRateTracker.MAX_WINDOW_MILLIS).soldInWindow());
+    }
+
+    @Test
+    void velocity_RateFollowsSteadySalesAndDecaysWhenIdle() {
+        // One per second for ten minutes
+        for (int i = 0; i < 600; i++) {
+            tracker.recordSale(1L, List.of(quote(5L, "1")), now);
+            now += 1_000;
+        }
+        double steady = tracker.velocity(1L, 5L, 60_000).perMinute();
+        assertEquals(60, steady, 60 * 0.05);
+
+        now += (long) SalesRate.EWMA_TAU_MILLIS;
+        assertEquals(steady / Math.E, tracker.velocity(1L, 5L, 60_000).perMinute(), 0.01);
+    }
+
+    @Test
+    void recordSale_InTransaction_CountedOncePerLineAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tracker.recordSale(1L, List.of(quote(5L, "2"), quote(5L, "1")), now);
+            assertEquals(0, tracker.salesWithin(1L, 5L, now, 60_000));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(2, tracker.salesWithin(1L, 5L, now, 60_000));
+        assertEquals(0, tracker.salesWithin(1L, 5L, now + 120_000, 60_000));
+        assertEquals(0, tracker.salesWithin(1L, 6L, now, 60_000));
+    }
+
+    @Test
+    void velocities_OnlyTheOrganizationsSoldProducts() {
+        tracker.recordSale(1L, List.of(quote(5L, "1"), quote(6L, "1")), now);
+        tracker.recordSale(2L, List.of(quote(7L, "1")), now);
+
+        assertEquals(2, tracker.velocities(1L, 60_000).size());
+        assertNull(tracker.velocity(2L, 5L, 60_000));
+        assertTrue(tracker.velocities(3L, 60_000).isEmpty());
+    }
+
+    private static SaleQuote quote(Long productId, String quantity) {
+        BigDecimal price = new BigDecimal("3.00");
+        return new SaleQuote(productId, productId + 100, "Beer", new BigDecimal(quantity), BigDecimal.TEN,
+                BigDecimal.TEN.subtract(new BigDecimal(quantity)), price, price);
+    }
+}
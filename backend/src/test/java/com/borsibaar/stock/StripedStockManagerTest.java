@@ -0,0 +1,245 @@
+package com.borsibaar.stock;
+
+import com.borsibaar.entity.Category;
+import com.borsibaar.entity.Inventory;
+import com.borsibaar.entity.InventoryTransaction;
+import com.borsibaar.entity.Organization;
+import com.borsibaar.entity.Product;
+import com.borsibaar.pricing.SaleQuote;
+import com.borsibaar.repository.CategoryRepository;
+import com.borsibaar.repository.InventoryBatchRepository;
+import com.borsibaar.repository.InventoryRepository;
+import com.borsibaar.repository.InventoryStockShardRepository;
+import com.borsibaar.repository.InventoryTransactionRepository;
+import com.borsibaar.repository.OrganizationRepository;
+import com.borsibaar.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stripedstock;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.sales.striped-stock.enabled=true",
+        "app.sales.striped-stock.stripes=4",
+        "app.sales.striped-stock.promote-min-updates=5",
+        "app.sales.striped-stock.promote-wait-ms=0",
+        "app.sales.striped-stock.demote-below-updates=1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ StripedStockManager.class, StockContentionMetrics.class, InventoryStockShardRepository.class,
+        InventoryBatchRepository.class })
+class StripedStockManagerTest {
+
+    @Autowired private StripedStockManager stripedStockManager;
+    @Autowired private StockContentionMetrics metrics;
+    @Autowired private InventoryStockShardRepository shardRepository;
+    @Autowired private InventoryRepository inventoryRepository;
+    @Autowired private InventoryTransactionRepository inventoryTransactionRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private OrganizationRepository organizationRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void promote_MovesAllStockIntoShards_RemainderIntoTheFirst() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("103.5")).getId());
+
+        assertTrue(stripedStockManager.promote(inventoryId));
+
+        assertTrue(stripedStockManager.isStriped(inventoryId));
+        assertEquals(0, BigDecimal.ZERO.compareTo(tx.execute(status -> inventoryRepository.findQuantityById(inventoryId))));
+        Map<Integer, BigDecimal> shards = tx.execute(status -> shardRepository.lockShards(inventoryId));
+        assertEquals(0, new BigDecimal("28.5").compareTo(shards.get(0)));
+        assertEquals(0, new BigDecimal("25").compareTo(shards.get(3)));
+        // Even the remainder can be sold
+        assertEquals(Boolean.TRUE, tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, new BigDecimal("103.5")), OffsetDateTime.now())));
+    }
+
+    @Test
+    void decrement_SameProductTwiceInOneTransaction_NeverGoesBackToALowerShard() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("40")).getId());
+        stripedStockManager.promote(inventoryId);
+
+        tx.executeWithoutResult(status -> {
+            // Round robin takes shards 0 and 1, then skips shard 2 for 3
+            for (int i = 0; i < 3; i++) {
+                assertTrue(stripedStockManager.decrement(quote(inventoryId, BigDecimal.ONE), OffsetDateTime.now()));
+            }
+            assertTrue(stripedStockManager.decrement(quote(inventoryId, new BigDecimal("9")), OffsetDateTime.now()));
+            // Shards 0 to 2 may be locked by another sale waiting for shard 3
+            assertFalse(stripedStockManager.decrement(quote(inventoryId, BigDecimal.ONE), OffsetDateTime.now()));
+        });
+
+        Map<Integer, BigDecimal> shards = tx.execute(status -> shardRepository.lockShards(inventoryId));
+        assertEquals(0, new BigDecimal("9").compareTo(shards.get(0)));
+        assertEquals(0, new BigDecimal("9").compareTo(shards.get(1)));
+        assertEquals(0, new BigDecimal("10").compareTo(shards.get(2)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(shards.get(3)));
+        // A new transaction may use all shards again
+        assertEquals(Boolean.TRUE, tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, new BigDecimal("28")), OffsetDateTime.now())));
+    }
+
+    @Test
+    void decrement_SpreadsSalesOverShardsAndTakesFromSeveralWhenNoShardHasEnough() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("40")).getId());
+        stripedStockManager.promote(inventoryId);
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals(Boolean.TRUE, tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, BigDecimal.ONE), OffsetDateTime.now())));
+        }
+        // Each shard holds 10, two of them were taken from each
+        assertEquals(0, new BigDecimal("32").compareTo(stripedStockManager.shardTotals(List.of(inventoryId)).get(inventoryId)));
+        // No shard holds 9 any more, together they do
+        assertEquals(Boolean.TRUE, tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, new BigDecimal("9")), OffsetDateTime.now())));
+        assertEquals(0, new BigDecimal("23").compareTo(stripedStockManager.shardTotals(List.of(inventoryId)).get(inventoryId)));
+        assertEquals(Boolean.FALSE, tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, new BigDecimal("24")), OffsetDateTime.now())));
+        assertEquals(0, new BigDecimal("23").compareTo(stripedStockManager.shardTotals(List.of(inventoryId)).get(inventoryId)));
+    }
+
+    @Test
+    void fold_MovesShardStockBackAndWritesLatestPriceWithItsSaleTime() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("21")).getId());
+        stripedStockManager.promote(inventoryId);
+        OffsetDateTime soldAt = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, new BigDecimal("2")), soldAt));
+
+        assertTrue(stripedStockManager.fold(inventoryId));
+
+        assertFalse(stripedStockManager.isStriped(inventoryId));
+        assertTrue(stripedStockManager.shardTotals(List.of(inventoryId)).isEmpty());
+        Inventory inventory = inventoryRepository.findById(inventoryId).orElseThrow();
+        assertEquals(0, new BigDecimal("19").compareTo(inventory.getQuantity()));
+        assertEquals(0, new BigDecimal("12").compareTo(inventory.getAdjustedPrice()));
+        assertTrue(soldAt.isEqual(inventory.getLastSaleAt()));
+        assertTrue(soldAt.isEqual(inventory.getPriceAnchoredAt()));
+    }
+
+    @Test
+    void flushPrices_WritesEachSaleTimeAndKeepsNewerPrices() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("40")).getId());
+        stripedStockManager.promote(inventoryId);
+        OffsetDateTime soldAt = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        tx.execute(status -> stripedStockManager.decrement(quote(inventoryId, BigDecimal.ONE), soldAt));
+        // Committed later, but sold earlier
+        tx.execute(status -> stripedStockManager.decrement(
+                new SaleQuote(null, inventoryId, "Lager", BigDecimal.ONE, null, null, BigDecimal.TEN,
+                        new BigDecimal("11")), soldAt.minusSeconds(1)));
+
+        stripedStockManager.flushPrices();
+
+        Inventory inventory = inventoryRepository.findById(inventoryId).orElseThrow();
+        assertEquals(0, new BigDecimal("12").compareTo(inventory.getAdjustedPrice()));
+        assertTrue(soldAt.isEqual(inventory.getLastSaleAt()));
+
+        // An older price does not replace the written one
+        tx.execute(status -> stripedStockManager.decrement(
+                new SaleQuote(null, inventoryId, "Lager", BigDecimal.ONE, null, null, BigDecimal.TEN,
+                        new BigDecimal("13")), soldAt.minusSeconds(2)));
+        stripedStockManager.flushPrices();
+        assertEquals(0, new BigDecimal("12").compareTo(
+                inventoryRepository.findById(inventoryId).orElseThrow().getAdjustedPrice()));
+    }
+
+    @Test
+    void evaluate_RestoresPricesOfSalesThatWereNeverFlushed() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Inventory inventory = tx.execute(status -> createInventory(new BigDecimal("40")));
+        stripedStockManager.promote(inventory.getId());
+        // Sold on a node that stopped before flushing: only the ledger has the price
+        OffsetDateTime soldAt = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        InventoryTransaction sale = new InventoryTransaction();
+        sale.setInventory(inventory);
+        sale.setTransactionType("SALE");
+        sale.setQuantityChange(BigDecimal.ONE.negate());
+        sale.setQuantityBefore(new BigDecimal("40"));
+        sale.setQuantityAfter(new BigDecimal("39"));
+        sale.setPriceBefore(BigDecimal.TEN);
+        sale.setPriceAfter(new BigDecimal("14"));
+        sale.setCreatedAt(soldAt);
+        inventoryTransactionRepository.save(sale);
+
+        stripedStockManager.evaluate();
+
+        Inventory restored = inventoryRepository.findById(inventory.getId()).orElseThrow();
+        assertEquals(0, new BigDecimal("14").compareTo(restored.getAdjustedPrice()));
+        assertTrue(soldAt.isEqual(restored.getPriceAnchoredAt()));
+    }
+
+    @Test
+    void recordStockUpdate_SplitsBatchTimeOverItsLines() {
+        StockContentionMetrics batchMetrics = new StockContentionMetrics();
+
+        batchMetrics.recordStockUpdate(List.of(1L, 2L, 2L, 3L), 8_000_000);
+
+        Map<Long, StockContentionMetrics.InventoryStats> inventories = batchMetrics.roll().getInventories();
+        assertEquals(1, inventories.get(1L).getUpdates());
+        assertEquals(2.0, inventories.get(1L).getAverageWaitMillis());
+        assertEquals(2, inventories.get(2L).getUpdates());
+        assertEquals(2.0, inventories.get(2L).getAverageWaitMillis());
+    }
+
+    @Test
+    void evaluate_PromotesBusyRowsAndFoldsThemWhenTrafficStops() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long inventoryId = tx.execute(status -> createInventory(new BigDecimal("50")).getId());
+
+        for (int i = 0; i < 5; i++) {
+            metrics.recordStockUpdate(List.of(inventoryId), 1_000_000);
+        }
+        stripedStockManager.evaluate();
+        assertTrue(stripedStockManager.isStriped(inventoryId));
+
+        stripedStockManager.evaluate();
+        assertFalse(stripedStockManager.isStriped(inventoryId));
+        assertEquals(0, new BigDecimal("50").compareTo(tx.execute(status -> inventoryRepository.findQuantityById(inventoryId))));
+    }
+
+    private static SaleQuote quote(Long inventoryId, BigDecimal quantity) {
+        return new SaleQuote(null, inventoryId, "Lager", quantity, null, null, BigDecimal.TEN, new BigDecimal("12"));
+    }
+
+    private Inventory createInventory(BigDecimal quantity) {
+        Organization org = new Organization();
+        org.setName("Org");
+        org.setPriceIncreaseStep(BigDecimal.ONE);
+        org.setPriceDecreaseStep(BigDecimal.ONE);
+        org = organizationRepository.save(org);
+
+        Category category = new Category();
+        category.setOrganizationId(org.getId());
+        category.setName("Beer");
+        category.setDynamicPricing(true);
+        category = categoryRepository.save(category);
+
+        Product product = new Product();
+        product.setOrganizationId(org.getId());
+        product.setCategoryId(category.getId());
+        product.setName("Lager " + System.nanoTime());
+        product.setBasePrice(BigDecimal.TEN);
+        product.setActive(true);
+        product = productRepository.save(product);
+
+        return inventoryRepository.save(new Inventory(org.getId(), product, quantity, BigDecimal.TEN));
+    }
+}
@@ -1,9 +1,11 @@
 "use client";
 
-import { useState, useEffect, useCallback } from "react";
+import { useState, useEffect, useCallback, useRef } from "react";
 import { useParams, useRouter } from "next/navigation";
 import { AlertCircle, ArrowLeft } from "lucide-react";
 import { Button } from "@/components/ui/button";
+import { randomUUID } from "@/lib/utils";
+import { applyInventoryChanges, subscribeInventory } from "@/lib/inventoryChanges";
 import clsx from "clsx";
 import { POSHeader } from "./POSHeader";
 import { ProductCard } from "./ProductCard";
@@ -12,6 +14,33 @@ import { Product, Category, CartItem, CurrentUser, BarStation } from "./types";
 
 export const dynamic = "force-dynamic";
 
+const SALE_ATTEMPTS = 3;
+
+// Retries a sale whose response was lost or that failed on the server side. Safe with
+// the same Idempotency-Key, since the backend charges a key only once.
+async function submitSale(body: string, idempotencyKey: string): Promise<Response> {
+  for (let attempt = 1; ; attempt++) {
+    try {
+      const response = await fetch("/api/backend/sales", {
+        method: "POST",
+        headers: {
+          "Content-Type": "application/json",
+          "Idempotency-Key": idempotencyKey,
+        },
+        body,
+      });
+      if (response.status < 500 || attempt === SALE_ATTEMPTS) {
+        return response;
+      }
+    } catch (err) {
+      if (attempt === SALE_ATTEMPTS) {
+        throw err;
+      }
+    }
+    await new Promise((resolve) => setTimeout(resolve, 500 * attempt));
+  }
+}
+
 export default function POSStation() {
   const params = useParams();
   const router = useRouter();
@@ -27,6 +56,11 @@ export default function POSStation() {
   const [cart, setCart] = useState<CartItem[]>([]);
   const [isProcessingSale, setIsProcessingSale] = useState(false);
   const [currentUser, setCurrentUser] = useState<CurrentUser | null>(null);
+  // Key of the sale being attempted, kept until it goes through or the cart changes, so
+  // that submitting the same cart again after an error cannot charge it twice
+  const saleKey = useRef<string | null>(null);
+  // Once the stream has delivered, its products are newer than any listing response
+  const streamed = useRef(false);
 
   // Fetch station and validate access
   const fetchStation = useCallback(async () => {
@@ -50,29 +84,28 @@ export default function POSStation() {
     }
   }, [stationId]);
 
+  // All categories are listed; the selected one is filtered in place
   const fetchProducts = useCallback(async () => {
     try {
       setLoading(true);
 
-      const url = selectedCategory
-        ? `/api/backend/inventory?categoryId=${selectedCategory}`
-        : "/api/backend/inventory";
-
-      const response = await fetch(url, {
+      const response = await fetch("/api/backend/inventory", {
         cache: "no-store",
       });
 
       if (!response.ok) throw new Error("Failed to fetch products");
 
       const data = await response.json();
-      setProducts(data);
+      if (!streamed.current) {
+        setProducts(data);
+      }
       setError(null);
     } catch (err) {
       setError(err instanceof Error ? err.message : "Unknown error");
     } finally {
       setLoading(false);
     }
-  }, [selectedCategory]);
+  }, []);
 
   const fetchCategories = async () => {
     try {
@@ -110,17 +143,19 @@ export default function POSStation() {
       setCart(JSON.parse(savedCart));
     }
 
-    const refreshInterval = setInterval(fetchProducts, 1000 * 60);
-    return () => clearInterval(refreshInterval);
+    // Prices and stock are pushed by the backend as changes and merged in
+    const unsubscribe = subscribeInventory<Product>("/api/backend/inventory/stream", (changes) => {
+      streamed.current = true;
+      setProducts((current) => applyInventoryChanges(current, changes));
+    });
+    return unsubscribe;
   }, [stationId, fetchProducts, fetchStation]);
 
-  useEffect(() => {
-    fetchProducts();
-  }, [selectedCategory, fetchProducts]);
-
   useEffect(() => {
     // Save cart to localStorage with station-specific key
     localStorage.setItem(`pos-cart-${stationId}`, JSON.stringify(cart));
+    // A different cart is a different sale
+    saleKey.current = null;
   }, [cart, stationId]);
 
   const addToCart = (product: Product) => {
@@ -195,21 +230,19 @@ export default function POSStation() {
         barStationId: parseInt(stationId),
       };
 
-      const response = await fetch("/api/backend/sales", {
-        method: "POST",
-        headers: {
-          "Content-Type": "application/json",
-        },
-        body: JSON.stringify(saleRequest),
-      });
+      saleKey.current ??= randomUUID();
+      const response = await submitSale(
+        JSON.stringify(saleRequest),
+        saleKey.current
+      );
 
       if (!response.ok) {
         const errorText = await response.text();
         throw new Error(errorText || "Failed to process sale");
       }
 
+      // The sale's new prices and stock arrive on the stream
       clearCart();
-      fetchProducts();
     } catch (err) {
       alert(
         `Error processing sale: ${
@@ -221,8 +254,10 @@ export default function POSStation() {
     }
   };
 
-  const filteredProducts = products.filter((product) =>
-    product.productName.toLowerCase().includes(searchTerm.toLowerCase())
+  const filteredProducts = products.filter(
+    (product) =>
+      (selectedCategory === null || product.categoryId === selectedCategory) &&
+      product.productName.toLowerCase().includes(searchTerm.toLowerCase())
   );
 
   if (error) {
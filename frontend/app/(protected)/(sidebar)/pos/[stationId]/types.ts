@@ -2,6 +2,7 @@ export interface Product {
   id: number;
   organizationId: number;
   productId: number;
+  categoryId: number;
   productName: string;
   quantity: number;
   unitPrice: number;
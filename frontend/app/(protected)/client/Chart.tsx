@@ -88,15 +88,15 @@ export default function PriceHistoryGraphFancy({
     try {
       setError(null);
       const res = await fetch(
-        `/api/backend/inventory/product/${productInv.productId}/history`,
+        `/api/backend/inventory/product/${productInv.productId}/history?limit=500`,
         {
           cache: "no-store",
           credentials: "include",
         },
       );
       if (!res.ok) throw new Error(`HTTP ${res.status}`);
-      const historyJson: HistoryDto[] = await res.json();
-      setCurrent({ productInv, priceHistory: historyJson });
+      const historyPage: { items: HistoryDto[] } = await res.json();
+      setCurrent({ productInv, priceHistory: historyPage.items });
     } catch (e) {
       setError(e?.message || "Failed to fetch history");
     }
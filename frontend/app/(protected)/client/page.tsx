@@ -1,15 +1,22 @@
 "use client";
 
 import clsx from "clsx";
-import React, { useEffect, useState } from "react";
+import React, { useEffect, useMemo, useState } from "react";
 import Chart from "./Chart";
 import Image from "next/image";
+import { applyInventoryChanges, subscribeInventory } from "@/lib/inventoryChanges";
 
 type Category = { id: number; name: string; organizationId?: number };
+type Board = {
+  organizationId: number;
+  generatedAt: string;
+  categories: (Category & { products: InvDto[] })[];
+};
 export type InvDto = {
   id: number;
   organizationId: number;
   productId: number;
+  categoryId: number;
   productName: string;
   description: string;
   quantity: number;
@@ -34,58 +41,34 @@ const sponsors = [
 
 export default function ClientProductsByCategory() {
   const [cats, setCats] = useState<Category[]>([]);
-  const [groups, setGroups] = useState<Record<string, InvDto[]>>({});
+  const [products, setProducts] = useState<InvDto[]>([]);
   const [loading, setLoading] = useState(false);
   const [err, setErr] = useState<string | null>(null);
 
   useEffect(() => {
     let alive = true;
+    const organizationId = 2;
+    const categoryIds = new Set<number>();
+    // Once the stream has delivered, its products are newer than any board response
+    let streamed = false;
 
     const load = async () => {
       setLoading(true);
       try {
-        const organizationId = 2;
-
-        const cRes = await fetch(
-          `/api/backend/categories?organizationId=${organizationId}`,
-          {
-            cache: "no-store",
-            credentials: "include",
-          }
-        );
-        if (!cRes.ok) throw new Error(`Categories HTTP ${cRes.status}`);
-        const cJson = await cRes.json();
-        const categoryList: Category[] = Array.isArray(cJson)
-          ? cJson
-          : cJson?.items ?? cJson?.content ?? [];
-
-        if (!alive) return;
-        setCats(categoryList);
-
-        const fetches = categoryList.map(async (c) => {
-          const res = await fetch(
-            `/api/backend/inventory?categoryId=${c.id}&organizationId=${organizationId}`,
-            {
-              cache: "no-store",
-              credentials: "include",
-            }
-          );
-          if (!res.ok)
-            throw new Error(`Inventory HTTP ${res.status} (cat ${c.id})`);
-          const j = await res.json();
-          const arr: InvDto[] = Array.isArray(j)
-            ? j
-            : j?.items ?? j?.content ?? [];
-          return [c.name, arr] as const;
+        const res = await fetch(`/api/backend/board/${organizationId}`, {
+          cache: "no-store",
+          credentials: "include",
         });
+        if (!res.ok) throw new Error(`Board HTTP ${res.status}`);
+        const board: Board = await res.json();
 
-        const results = await Promise.all(fetches);
         if (!alive) return;
-
-        const grouped = Object.fromEntries(
-          results.filter(([, arr]) => arr.length > 0)
-        );
-        setGroups(grouped);
+        setCats(board.categories);
+        categoryIds.clear();
+        board.categories.forEach((c) => categoryIds.add(c.id));
+        if (!streamed) {
+          setProducts(board.categories.flatMap((c) => c.products));
+        }
         setErr(null);
       } catch (e) {
         if (!alive) return;
@@ -96,13 +79,37 @@ export default function ClientProductsByCategory() {
     };
 
     load();
-    const refreshInterval = setInterval(load, 1000 * 15);
+    // Prices and stock are pushed as changes and merged in; the board itself is only reloaded for
+    // a category it does not know yet, and once a minute for category names
+    const unsubscribe = subscribeInventory<InvDto>(
+      `/api/backend/inventory/stream?organizationId=${organizationId}`,
+      (changes) => {
+        if (!alive) return;
+        streamed = true;
+        setProducts((current) => applyInventoryChanges(current, changes));
+        if (changes.products.some((p) => p.categoryId != null && !categoryIds.has(p.categoryId))) {
+          load();
+        }
+      }
+    );
+    const refreshInterval = setInterval(load, 1000 * 60);
     return () => {
+      unsubscribe();
       clearInterval(refreshInterval);
       alive = false;
     };
   }, []);
 
+  const groups = useMemo(
+    () =>
+      Object.fromEntries(
+        cats
+          .map((c) => [c.name, products.filter((p) => p.categoryId === c.id)] as const)
+          .filter(([, items]) => items.length > 0)
+      ),
+    [cats, products]
+  );
+
   const totalItems = Object.values(groups).reduce(
     (sum, arr) => sum + arr.length,
     0
@@ -0,0 +1,37 @@
+import { NextRequest, NextResponse } from "next/server";
+import { backendUrl } from "@/utils/constants";
+
+// Proxy for the public price board; the body is passed through unparsed
+export async function GET(
+  request: NextRequest,
+  { params }: { params: Promise<{ organizationId: string }> }
+) {
+  const { organizationId } = await params;
+  try {
+    const response = await fetch(
+      `${backendUrl}/api/board/${encodeURIComponent(organizationId)}`,
+      {
+        method: "GET",
+        headers: {
+          Cookie: request.headers.get("cookie") || "",
+        },
+        credentials: "include",
+        cache: "no-store",
+      }
+    );
+
+    return new NextResponse(await response.arrayBuffer(), {
+      status: response.status,
+      headers: {
+        "Content-Type":
+          response.headers.get("content-type") || "application/json",
+      },
+    });
+  } catch (error) {
+    console.error("Proxy error (board):", error);
+    return NextResponse.json(
+      { error: "Failed to fetch price board" },
+      { status: 500 }
+    );
+  }
+}
@@ -6,8 +6,10 @@ export async function GET(
     { params }: { params: Promise<{ productId: string }> }
 ) {
     try {
+        // Paging and filter parameters (cursor, limit, type, from, to) are passed on as they are
+        const { search } = new URL(request.url);
         const response = await fetch(
-            `${backendUrl}/api/inventory/product/${(await params).productId}/history`,
+            `${backendUrl}/api/inventory/product/${(await params).productId}/history${search}`,
             {
                 method: "GET",
                 headers: {
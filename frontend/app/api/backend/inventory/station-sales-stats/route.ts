@@ -3,7 +3,9 @@ import { backendUrl } from "@/utils/constants";
 
 export async function GET(request: NextRequest) {
     try {
-        const response = await fetch(`${backendUrl}/api/inventory/station-sales-stats`, {
+        // Optional time range (from, to) is passed on as it is
+        const { search } = new URL(request.url);
+        const response = await fetch(`${backendUrl}/api/inventory/station-sales-stats${search}`, {
             method: "GET",
             headers: {
                 Cookie: request.headers.get("cookie") || "",
@@ -0,0 +1,52 @@
+import { NextRequest, NextResponse } from "next/server";
+import { backendUrl } from "@/utils/constants";
+
+// Proxy for the server-sent inventory changes; the event stream is passed through as it arrives
+export async function GET(request: NextRequest) {
+  const { searchParams } = new URL(request.url);
+  const organizationId = searchParams.get("organizationId");
+
+  const url = new URL(`${backendUrl}/api/inventory/stream`);
+  if (organizationId) {
+    url.searchParams.append("organizationId", organizationId);
+  }
+
+  const headers: Record<string, string> = {
+    Cookie: request.headers.get("cookie") || "",
+    Accept: "text/event-stream",
+  };
+  const lastEventId = request.headers.get("last-event-id");
+  if (lastEventId) {
+    headers["Last-Event-ID"] = lastEventId;
+  }
+
+  try {
+    const response = await fetch(url.toString(), {
+      method: "GET",
+      headers,
+      credentials: "include",
+      cache: "no-store",
+      signal: request.signal,
+    });
+
+    if (!response.ok || !response.body) {
+      const text = await response.text();
+      return new NextResponse(text, { status: response.status });
+    }
+
+    return new Response(response.body, {
+      status: response.status,
+      headers: {
+        "Content-Type": "text/event-stream",
+        "Cache-Control": "no-cache, no-transform",
+        Connection: "keep-alive",
+      },
+    });
+  } catch (error) {
+    console.error("Proxy error (inventory stream):", error);
+    return NextResponse.json(
+      { error: "Failed to open inventory stream" },
+      { status: 500 }
+    );
+  }
+}
@@ -0,0 +1,56 @@
+import assert from "node:assert/strict";
+import { afterEach, beforeEach, test } from "node:test";
+import { NextRequest } from "next/server";
+import { POST } from "./route";
+
+const realFetch = globalThis.fetch;
+let charged: number;
+let saleIdsByKey: Map<string, number>;
+
+beforeEach(() => {
+    charged = 0;
+    saleIdsByKey = new Map();
+    // Stands in for the backend: a key is charged once, repeats get the first response
+    globalThis.fetch = async (_input: RequestInfo | URL, init?: RequestInit) => {
+        const key = new Headers(init?.headers).get("Idempotency-Key");
+        let saleId = key ? saleIdsByKey.get(key) : undefined;
+        if (saleId === undefined) {
+            saleId = ++charged;
+            if (key) {
+                saleIdsByKey.set(key, saleId);
+            }
+        }
+        return Response.json({ saleId: `SALE-${saleId}` });
+    };
+});
+
+afterEach(() => {
+    globalThis.fetch = realFetch;
+});
+
+function sale(idempotencyKey?: string) {
+    return new NextRequest("http://localhost:3000/api/backend/sales", {
+        method: "POST",
+        headers: {
+            "Content-Type": "application/json",
+            ...(idempotencyKey ? { "Idempotency-Key": idempotencyKey } : {}),
+        },
+        body: JSON.stringify({ items: [{ productId: 1, quantity: 2 }], barStationId: 1 }),
+    });
+}
+
+test("the same sale submitted twice is charged once", async () => {
+    const first = await POST(sale("3f1c2a9e-6b7d-4e8f-9a0b-1c2d3e4f5a6b"));
+    const retry = await POST(sale("3f1c2a9e-6b7d-4e8f-9a0b-1c2d3e4f5a6b"));
+
+    assert.equal(charged, 1);
+    assert.equal(first.status, 200);
+    assert.deepEqual(await retry.json(), await first.json());
+});
+
+test("sales with different keys are charged separately", async () => {
+    await POST(sale("3f1c2a9e-6b7d-4e8f-9a0b-1c2d3e4f5a6b"));
+    await POST(sale("7d6c5b4a-3e2f-4a1b-8c9d-0e1f2a3b4c5d"));
+
+    assert.equal(charged, 2);
+});
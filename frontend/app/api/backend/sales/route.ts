@@ -4,12 +4,15 @@ import { backendUrl } from "@/utils/constants";
 export async function POST(request: NextRequest) {
     try {
         const body = await request.json();
+        // Lets the backend recognise a resubmitted sale and answer it without charging again
+        const idempotencyKey = request.headers.get("idempotency-key");
 
         const response = await fetch(`${backendUrl}/api/sales`, {
             method: "POST",
             headers: {
                 "Content-Type": "application/json",
                 Cookie: request.headers.get("cookie") || "",
+                ...(idempotencyKey ? { "Idempotency-Key": idempotencyKey } : {}),
             },
             credentials: "include",
             body: JSON.stringify(body),
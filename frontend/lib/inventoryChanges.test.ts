@@ -0,0 +1,40 @@
+import assert from "node:assert/strict";
+import { test } from "node:test";
+import { applyInventoryChanges, InventoryChanges } from "./inventoryChanges";
+
+type Row = { productId: number; categoryId: number; unitPrice: number };
+
+const listing: Row[] = [
+    { productId: 1, categoryId: 1, unitPrice: 3 },
+    { productId: 2, categoryId: 1, unitPrice: 4 },
+    { productId: 3, categoryId: 2, unitPrice: 5 },
+];
+
+function changes(full: boolean, products: Row[], removedProductIds: number[] = []): InventoryChanges<Row> {
+    return { version: "7", full, products, removedProductIds };
+}
+
+test("changed products replace their entry in place, new ones are appended", () => {
+    const next = applyInventoryChanges(listing, changes(false, [
+        { productId: 4, categoryId: 2, unitPrice: 6 },
+        { productId: 2, categoryId: 1, unitPrice: 4.5 },
+    ]));
+
+    assert.deepEqual(next.map((row) => [row.productId, row.unitPrice]), [[1, 3], [2, 4.5], [3, 5], [4, 6]]);
+});
+
+test("removed products are dropped and the same event applies only once", () => {
+    const event = changes(false, [{ productId: 1, categoryId: 1, unitPrice: 2 }], [3]);
+
+    const once = applyInventoryChanges(listing, event);
+    const twice = applyInventoryChanges(once, event);
+
+    assert.deepEqual(once.map((row) => row.productId), [1, 2]);
+    assert.deepEqual(twice, once);
+});
+
+test("a full event replaces the listing", () => {
+    const next = applyInventoryChanges(listing, changes(true, [{ productId: 9, categoryId: 1, unitPrice: 1 }]));
+
+    assert.deepEqual(next.map((row) => row.productId), [9]);
+});
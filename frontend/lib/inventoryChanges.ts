@@ -0,0 +1,66 @@
+// Inventory changes pushed by the backend on /api/backend/inventory/stream. When `full` is set,
+// `products` is the whole listing; otherwise only what changed since the previous event.
+export type InventoryChanges<T extends ListedProduct> = {
+  version: string;
+  full: boolean;
+  products: T[];
+  removedProductIds: number[];
+};
+
+type ListedProduct = { productId: number };
+
+const REOPEN_DELAY_MS = 5000;
+
+// Applies one event to a listing: a full event replaces it, otherwise changed products take the
+// place of their entry or are appended, and removed ones are dropped. Applying the same event
+// again changes nothing.
+export function applyInventoryChanges<T extends ListedProduct>(
+  current: T[],
+  changes: InventoryChanges<T>
+): T[] {
+  if (changes.full) {
+    return changes.products;
+  }
+  const updates = new Map(changes.products.map((product) => [product.productId, product]));
+  const removed = new Set(changes.removedProductIds);
+  const next: T[] = [];
+  for (const product of current) {
+    if (removed.has(product.productId)) continue;
+    const update = updates.get(product.productId);
+    updates.delete(product.productId);
+    next.push(update ?? product);
+  }
+  return [...next, ...updates.values()];
+}
+
+// Follows the inventory stream until the returned function is called. The browser reconnects a
+// dropped stream by itself and resumes from the last event id, and the backend answers a gap it
+// cannot fill with a full event. A stream the browser gave up on is reopened here, which starts
+// over with a full event.
+export function subscribeInventory<T extends ListedProduct>(
+  url: string,
+  onChanges: (changes: InventoryChanges<T>) => void
+): () => void {
+  let events: EventSource;
+  let reopen: ReturnType<typeof setTimeout> | undefined;
+  let closed = false;
+
+  const open = () => {
+    events = new EventSource(url);
+    events.addEventListener("inventory", (event) =>
+      onChanges(JSON.parse((event as MessageEvent<string>).data))
+    );
+    events.addEventListener("error", () => {
+      if (!closed && events.readyState === EventSource.CLOSED) {
+        reopen = setTimeout(open, REOPEN_DELAY_MS);
+      }
+    });
+  };
+
+  open();
+  return () => {
+    closed = true;
+    clearTimeout(reopen);
+    events.close();
+  };
+}
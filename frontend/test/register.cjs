@@ -0,0 +1,29 @@
+/* eslint-disable @typescript-eslint/no-require-imports */
+// Lets `node --test` run the TypeScript tests without a build step: .ts files are
+// compiled to CommonJS with the project's own TypeScript, and the "@/" path alias
+// of tsconfig.json is resolved from the project root. Preloaded with --require, as
+// --import would make Node load the test files as ES modules.
+const Module = require("node:module");
+const { readFileSync } = require("node:fs");
+const { join } = require("node:path");
+const ts = require("typescript");
+
+const root = join(__dirname, "..");
+
+const resolveFilename = Module._resolveFilename;
+Module._resolveFilename = function (request, ...rest) {
+  const aliased = request.startsWith("@/") ? join(root, request.slice(2)) : request;
+  return resolveFilename.call(this, aliased, ...rest);
+};
+
+require.extensions[".ts"] = (module, filename) => {
+  const { outputText } = ts.transpileModule(readFileSync(filename, "utf8"), {
+    compilerOptions: {
+      module: ts.ModuleKind.CommonJS,
+      target: ts.ScriptTarget.ES2022,
+      esModuleInterop: true,
+    },
+    fileName: filename,
+  });
+  module._compile(outputText, filename);
+};